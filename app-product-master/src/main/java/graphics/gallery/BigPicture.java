@@ -7,6 +7,7 @@ import hibernate.model.Metadata;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.util.List;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
@@ -69,14 +70,15 @@ public class BigPicture extends StackPane {
 
   public static String getReadable(ImageData imageData){
     int maxTagsPrint = 5;
-    int amountTags = imageData.getTags().size();
+    List<String> tags = imageData.getTagNames();
+    int amountTags = tags.size();
     String unKnownMarker = "unknown";
 
     Metadata metadata = imageData.getMetadata();
     StringBuilder stringBuilder = new StringBuilder("");
-    if(imageData.getTags() != null && !imageData.getTags().isEmpty()){
+    if(!tags.isEmpty()){
       for(int i = 0 ; i < amountTags && i < maxTagsPrint ; i++){
-        stringBuilder.append(imageData.getTags().get(0) + ", ");
+        stringBuilder.append(tags.get(i) + ", ");
       }
       if(amountTags > maxTagsPrint) stringBuilder.append("...more tags.");
     }else stringBuilder.append("no tags found.");
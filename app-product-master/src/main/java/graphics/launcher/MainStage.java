@@ -37,6 +37,7 @@ public class MainStage extends Application {
 
     private static final Logger LOGGER = LogManager.getLogger(MainStage.class);
     private static Stage mainStage;
+    private AppLayoutController controller;
     public static void main(String[] args) {
         launch(args);
     }
@@ -47,7 +48,9 @@ public class MainStage extends Application {
         mainStage = primaryStage;
         primaryStage.setTitle("Flagship");
         primaryStage.getIcons().add(new Image(getClass().getClassLoader().getResource("app-icon-temp.png").openStream()));
-        Parent root = FXMLLoader.load(getClass().getResource("/views/AppLayout2.fxml"));
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/AppLayout2.fxml"));
+        Parent root = loader.load();
+        controller = loader.getController();
         primaryStage.setFullScreenExitHint("Press ESC or upper right menu-icon to exit.");
         primaryStage.setFullScreenExitKeyCombination(KeyCombination.keyCombination("ESC"));
         AppLayoutController.getRequestFullScreenProperty().addListener((observable, oldValue, newValue) -> {
@@ -66,6 +69,12 @@ public class MainStage extends Application {
 
     }
 
+    @Override
+    public void stop() {
+        LOGGER.info("Closing program. Saving pending changes...");
+        if(controller != null) controller.close();
+    }
+
     /**
      * @author Eivind Berger_Nilsen
      * UserPrompter-class contains user-dialog windows utilized in this application.
@@ -8,7 +8,6 @@ import graphics.launcher.MainStage;
 import hibernate.model.ImageData;
 import java.io.File;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
 import java.util.Set;
@@ -25,6 +24,7 @@ import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuButton;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.SplitPane;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TreeItem;
@@ -32,6 +32,7 @@ import javafx.scene.control.TreeView;
 import javafx.scene.effect.ColorAdjust;
 import javafx.scene.effect.GaussianBlur;
 import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.text.Text;
 import javafx.scene.web.WebView;
@@ -62,6 +63,9 @@ public class AppLayoutController implements Initializable, ChangeListener<ImageD
     @FXML private MenuItem addFolderBtn;
     @FXML private TextField searchField;
     @FXML private Button searchFieldClearBtn;
+    @FXML private HBox importBox;
+    @FXML private ProgressBar importProgressBar;
+    @FXML private Button importCancelBtn;
 
     //Other
     private static final Logger LOGGER = Logger.getLogger(AppLayoutController.class);
@@ -74,6 +78,7 @@ public class AppLayoutController implements Initializable, ChangeListener<ImageD
     private final MenuItem OPEN_FILE = new MenuItem("Open selected files");
     private final MenuItem ADD_FILES = new MenuItem("Add files");
     private final MenuItem ADD_FOLDER = new Menu("Add folder");
+    private final MenuItem RETRY_SKIPPED = new MenuItem("Retry skipped files");
     private final MenuItem REMOVE_FILES = new MenuItem("Remove selected files");
     private final MenuItem PRINT_TO_PDF = new MenuItem("Print selected files");
     private final MenuItem SET_TAGS = new MenuItem("Tag pictures");
@@ -97,7 +102,12 @@ public class AppLayoutController implements Initializable, ChangeListener<ImageD
 
          */
 
-        IMAGE_MANAGER.pullFromHibernate();
+        IMAGE_MANAGER.pullFromHibernate()
+            .thenRun(() -> GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails("")));
+        IMAGE_MANAGER.setOnPulled(() -> {
+            GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails(""));
+            Map.refreshMarkers();
+        });
         identityText.setText(String.format("Logged in as %s with UUID %s", Device.getUsername(), Device.getUUID()));
         mainSplitPane.getItems().setAll(IMAGE_MANAGER.getFileMenu(), GALLERY_VIEW);
         mainSplitPane.setDividerPositions(0.25);
@@ -111,9 +121,13 @@ public class AppLayoutController implements Initializable, ChangeListener<ImageD
         IMAGE_MANAGER.getTagsMenu().setContextMenu(ALBUM_CONTEXT_MENU);
         IMAGE_MANAGER.getFileMenu().setContextMenu(FILE_CONTEXT_MENU);
         Map.getFullImageRequest().addListener(this);
+        Map.setMarkerLoader(IMAGE_MANAGER::getImagesInBoundingBox);
         IMAGE_MANAGER.thumbnailSelectedProperty().addListener(this);
         IMAGE_MANAGER.getFileMenu().setShowRoot(false);
         IMAGE_MANAGER.getTagsMenu().setShowRoot(false);
+        importBox.visibleProperty().bind(IMAGE_MANAGER.importingProperty());
+        importBox.managedProperty().bind(importBox.visibleProperty());
+        importProgressBar.progressProperty().bind(IMAGE_MANAGER.importProgressProperty());
 
 
         /*
@@ -127,10 +141,10 @@ public class AppLayoutController implements Initializable, ChangeListener<ImageD
             .getSelectionModel().getSelectedItems().addListener((ListChangeListener<? super TreeItem<String>>) c -> {
                 c.next();
                 if(c.getList().size() > 0){
-                    FILE_CONTEXT_MENU.getItems().setAll(OPEN_FILE, ADD_FILES, ADD_FOLDER,
+                    FILE_CONTEXT_MENU.getItems().setAll(OPEN_FILE, ADD_FILES, ADD_FOLDER, RETRY_SKIPPED,
                         REMOVE_FILES, PRINT_TO_PDF, SET_TAGS, TOGGLE_CONVERGENT_SCROLL);
                 }else if(c.getList().stream().allMatch(TreeItem::isLeaf) && c.getList().size() == 1) {
-                    FILE_CONTEXT_MENU.getItems().setAll(OPEN_FILE, ADD_FILES, ADD_FOLDER,
+                    FILE_CONTEXT_MENU.getItems().setAll(OPEN_FILE, ADD_FILES, ADD_FOLDER, RETRY_SKIPPED,
                         REMOVE_FILES, PRINT_TO_PDF, SET_TAGS, TOGGLE_CONVERGENT_SCROLL, INFO);
                 }else{
                     FILE_CONTEXT_MENU.getItems().setAll(TOGGLE_CONVERGENT_SCROLL);
@@ -178,26 +192,32 @@ public class AppLayoutController implements Initializable, ChangeListener<ImageD
         ADD_FILES.setOnAction(event -> {
             Set<File> selectedFiles = MainStage.UserPrompter.queryFiles();
             if(selectedFiles != null){
-                IMAGE_MANAGER.addImages(selectedFiles);
-                GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails(""));
-                Map.addMarkers(new ArrayList<>(IMAGE_MANAGER.getImageDataSet()));
+                IMAGE_MANAGER.addImages(selectedFiles).thenRun(() -> {
+                    GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails(""));
+                    Map.refreshMarkers();
+                });
             }
             else event.consume();
         });
         ADD_FOLDER.setOnAction(event -> {
             Set<File> selectedFiles = MainStage.UserPrompter.queryDirectory();
             if(selectedFiles != null){
-                IMAGE_MANAGER.addImages(selectedFiles);
-                GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails(""));
-                Map.addMarkers(new ArrayList<>(IMAGE_MANAGER.getImageDataSet()));
+                IMAGE_MANAGER.addImages(selectedFiles).thenRun(() -> {
+                    GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails(""));
+                    Map.refreshMarkers();
+                });
             }
             else event.consume();
         });
+        RETRY_SKIPPED.setOnAction(event -> IMAGE_MANAGER.retryQuarantined().thenRun(() -> {
+            GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails(""));
+            Map.refreshMarkers();
+        }));
         REMOVE_FILES.setOnAction(event -> {
             if(IMAGE_MANAGER.getFileMenu().getSelectionModel().getSelectedItems() != null){
                 IMAGE_MANAGER.removeImages(IMAGE_MANAGER.getFiles(IMAGE_MANAGER.getFileMenu().getSelectionModel().getSelectedItems()));
                 GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails(""));
-                Map.addMarkers(new ArrayList<>(IMAGE_MANAGER.getImageDataSet()));
+                Map.refreshMarkers();
             }
             else event.consume();
         });
@@ -226,7 +246,7 @@ public class AppLayoutController implements Initializable, ChangeListener<ImageD
         MAP_VIEW.getEngine().setOnStatusChanged(engineEvent -> {
             mapBtn.setOnAction(buttonEvent -> {
                 mainSplitPane.getItems().replaceAll(node -> node instanceof GalleryPane ? MAP_VIEW : node);
-                Map.addMarkers(new ArrayList<>(IMAGE_MANAGER.getImageDataSet()));
+                Map.refreshMarkers();
                 imagesBtnRotate.setId("imagesBtn");
                 imagesBtnRotate.setText("Gallery");
             });
@@ -257,20 +277,23 @@ public class AppLayoutController implements Initializable, ChangeListener<ImageD
             Set<File> images = MainStage.UserPrompter.queryFiles();
             if(images == null) event.consume();
             else {
-                IMAGE_MANAGER.addImages(images);
-                GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails(""));
-                Map.addMarkers(new ArrayList<>(IMAGE_MANAGER.getImageDataSet()));
+                IMAGE_MANAGER.addImages(images).thenRun(() -> {
+                    GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails(""));
+                    Map.refreshMarkers();
+                });
             }
         });
         addFolderBtn.setOnAction(event -> {
             Set<File> images = MainStage.UserPrompter.queryDirectory();
             if(images == null) event.consume();
             else {
-                IMAGE_MANAGER.addImages(images);
-                GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails(""));
-                Map.addMarkers(new ArrayList<>(IMAGE_MANAGER.getImageDataSet()));
+                IMAGE_MANAGER.addImages(images).thenRun(() -> {
+                    GALLERY_VIEW.getContent().setAll(IMAGE_MANAGER.getImageThumbnails(""));
+                    Map.refreshMarkers();
+                });
             }
         });
+        importCancelBtn.setOnAction(event -> IMAGE_MANAGER.cancelImport());
         zoomInBtn.setOnAction(event -> GALLERY_VIEW.zoomIn());
         zoomOutBtn.setOnAction(event -> GALLERY_VIEW.zoomOut());
         searchField.textProperty().addListener((observable, oldValue, newValue) ->
@@ -278,6 +301,14 @@ public class AppLayoutController implements Initializable, ChangeListener<ImageD
     }
 
 
+    /**
+     * Invoked when the application exits.
+     */
+
+    public void close(){
+        IMAGE_MANAGER.close();
+    }
+
     /**
      * Property for requesting full-screen to the stage-class.
      * @return The listener object.
@@ -299,7 +330,9 @@ public class AppLayoutController implements Initializable, ChangeListener<ImageD
     public void changed(ObservableValue<? extends ImageData> observable, ImageData oldValue, ImageData newValue) {
         if(newValue != null){
             contentLayer.getChildren().removeIf(node -> node instanceof ImageView);
-            BigPicture bigPicture = new BigPicture(newValue);
+            // Map markers hold detached copies without tags, so show the library's own copy of the image
+            ImageData libraryImageData = IMAGE_MANAGER.getImageData(new File(newValue.getPath()));
+            BigPicture bigPicture = new BigPicture(libraryImageData != null ? libraryImageData : newValue);
 
             contentLayer.getChildren().add(bigPicture);
             bigPicture.prefWidthProperty().bind(contentLayer.widthProperty());
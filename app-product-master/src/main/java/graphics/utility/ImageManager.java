@@ -4,17 +4,35 @@ import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import graphics.gallery.ImageThumbnail;
 import graphics.launcher.MainStage;
+import hibernate.api.AsyncDataAPI;
+import hibernate.api.ChangeSet;
+import hibernate.api.Purger;
 import hibernate.api.DataAPI;
+import hibernate.api.LibrarySnapshot;
+import hibernate.api.SnapshotWriter;
 import hibernate.model.Album;
 import hibernate.model.ImageData;
 import hibernate.model.Metadata;
 import hibernate.model.User;
+import hibernate.sync.Replicator;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TreeItem;
@@ -23,6 +41,10 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import utility.Device;
+import utility.MetadataCache;
+import utility.MetadataExtractor;
+import utility.MetadataQuarantine;
 
 public class ImageManager extends FileManager {
 
@@ -38,17 +60,54 @@ public class ImageManager extends FileManager {
   private final BiMap<File, ImageData> IMAGE_DATA = HashBiMap.create(1000);
   private final BiMap<File, TreeItem<String>> TREE_ITEMS = HashBiMap.create(1000);
   private final ObjectProperty<ImageData> THUMBNAIL_SELECTED_EVENT = new SimpleObjectProperty<>();
-  private final User USER;
-  private final DataAPI DATA_API = new DataAPI();
+  private final CompletableFuture<User> USER;
+  private final DataAPI DATA_API = new DataAPI(DataAPI.LOCAL_PERSISTENCE_UNIT, Collections.emptyMap());
+  private final AsyncDataAPI ASYNC_API = new AsyncDataAPI(DATA_API);
+  private final Replicator REPLICATOR = new Replicator(DATA_API, DataAPI.PERSISTENCE_UNIT,
+      () -> new DataAPI(DataAPI.PERSISTENCE_UNIT, Replicator.remoteProperties(Device.getUUID())),
+      Device.getUsername(), Device.getUUID(), Device.getUUID());
+  private static final Duration REPLICATION_INTERVAL = Duration.ofSeconds(30);
+  private final Purger PURGER = new Purger(DATA_API);
+  private static final Duration PURGE_INTERVAL = Duration.ofMinutes(5);
   private final TreeView<String> TREE_VIEW = new TreeView<>();
   private final TreeItem<String> ROOT = new TreeItem<>("Albums");
+  private static final int TAG_PAGE_SIZE = 500;
+  private static final int IMPORT_THRESHOLD = 1000; // Larger sets are imported without a persistence context
+  private static final int MAP_MARKER_LIMIT = 2000;
+  private static final Path SNAPSHOT_PATH = Paths.get(System.getProperty("user.home"), ".app-product", "library.snapshot");
+  private static final Path METADATA_CACHE_PATH = Paths.get(System.getProperty("user.home"), ".app-product", "metadata.cache");
+  private final MetadataCache METADATA_CACHE = new MetadataCache(METADATA_CACHE_PATH);
+  private static final Duration SNAPSHOT_DELAY = Duration.ofSeconds(10);
+  private final SnapshotWriter SNAPSHOT_WRITER = new SnapshotWriter(DATA_API, SNAPSHOT_PATH, SNAPSHOT_DELAY);
+  private final Set<File> SNAPSHOT_FILES = new HashSet<>();
+  private boolean reconciled = false;
+  private static final Path QUARANTINE_PATH = Paths.get(System.getProperty("user.home"), ".app-product", "metadata.quarantine");
+  private final MetadataExtractor METADATA_EXTRACTOR = new MetadataExtractor(new MetadataQuarantine(QUARANTINE_PATH));
+  private final AtomicBoolean PROGRESS_PENDING = new AtomicBoolean(false);
+  private final DoubleProperty IMPORT_PROGRESS = new SimpleDoubleProperty(1.0);
+  private final BooleanProperty IMPORTING = new SimpleBooleanProperty(false);
+  private MetadataExtractor.Extraction currentImport;
+  private Runnable onPulled = () -> {};
 
   /**
    * Initiation with login.
+   * The user is loaded on the persistence thread, like everything else written through {@link AsyncDataAPI},
+   * without waiting for it. Until {@link #pullFromHibernate()} has loaded the library, it is shown from the
+   * {@link LibrarySnapshot} written the last time it changed.
+   * Metadata read from image files is kept in a {@link MetadataCache}, so files that are imported again are not parsed.
+   * The cache's file is read by the first import, not here.
+   * The library is read from the local database, which is replicated to the remote database in the background.
+   * When replication pulls changes into the local database, such as the whole library the first time it runs,
+   * the library is loaded again, see {@link #setOnPulled(Runnable)}.
    */
 
   public ImageManager(){
-    this.USER = DATA_API.login();
+    this.USER = ASYNC_API.login();
+    Metadata.setCache(METADATA_CACHE);
+    loadSnapshot();
+    REPLICATOR.setPullListener(pulled -> ASYNC_API.getUiExecutor().execute(this::reloadAfterPull));
+    REPLICATOR.start(REPLICATION_INTERVAL);
+    PURGER.start(PURGE_INTERVAL);
     ROOT.setExpanded(true);
     getTagsMenu().setRoot(ROOT);
     getTagsMenu().getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
@@ -81,6 +140,21 @@ public class ImageManager extends FileManager {
     return IMAGE_DATA.values();
   }
 
+  /**
+   * Retrieves the images inside a part of the map from the database, newest first.
+   * Only images with coordinates inside the box are read, at most {@value #MAP_MARKER_LIMIT} of them.
+   * They are detached copies without their tags, see {@link #getImageData(File)} for the library's own copy.
+   * @param south southern latitude.
+   * @param west western longitude.
+   * @param north northern latitude.
+   * @param east eastern longitude.
+   * @return The images, once they have been read.
+   */
+
+  public CompletableFuture<List<ImageData>> getImagesInBoundingBox(double south, double west, double north, double east){
+    return withUser(user -> ASYNC_API.getImagesInBoundingBox(user, south, west, north, east, MAP_MARKER_LIMIT));
+  }
+
   /**
    * Returns the ImageData belonging to provided file if present.
    * @param file imagefile.
@@ -93,22 +167,100 @@ public class ImageManager extends FileManager {
 
   /**
    * User-method for adding images to the {@link TreeView}.
+   * The metadata of the images is read in parallel by the {@link MetadataExtractor}, with its progress shown by
+   * {@link #importProgressProperty()}. The images are then added on the JavaFX thread and saved on the persistence thread.
+   * Files whose metadata cannot be read within the extractor's limits are skipped, see {@link #retryQuarantined()}.
    * @param files imagefiles to add.
+   * @return Completes on the JavaFX thread once the images have been added, or fails if the import was cancelled.
    */
 
-  public void addImages(Set<File> files){
-    files
-        .stream()
-        .filter(this::addFile)
-        .forEach(file -> {
-              ImageData newImageData = new ImageData();
-              newImageData.setPath(file.getAbsolutePath());
-              newImageData.setUser(USER);
-              USER.addImage(newImageData);
-              newImageData.setMetadata(Metadata.generate(file.getAbsolutePath()));
-              IMAGE_DATA.forcePut(file,newImageData);
-            });
-    pushToHibernate();
+  public CompletableFuture<Void> addImages(Set<File> files){
+    MetadataExtractor.Extraction extraction = METADATA_EXTRACTOR.extract(files, (done, total) -> showImportProgress());
+    currentImport = extraction;
+    IMPORT_PROGRESS.set(extraction.getProgress());
+    IMPORTING.set(true);
+    extraction.getResult().whenComplete((metadata, ex) -> METADATA_CACHE.flush());
+
+    CompletableFuture<Void> added = extraction.getResult().thenAcceptAsync(metadata -> {
+      List<ImageData> newImageData = metadata.entrySet()
+          .stream()
+          .filter(entry -> addFile(entry.getKey()))
+          .map(entry -> {
+                ImageData imageData = new ImageData();
+                imageData.setPath(entry.getKey().getAbsolutePath());
+                imageData.setMetadata(entry.getValue());
+                IMAGE_DATA.forcePut(entry.getKey(),imageData);
+                return imageData;
+              })
+          .collect(Collectors.toList());
+      CompletableFuture<?> saved = newImageData.size() >= IMPORT_THRESHOLD
+          ? withUser(user -> ASYNC_API.importImages(user, newImageData))
+          : withUser(user -> ASYNC_API.saveImages(user, newImageData));
+      saved.whenComplete((result, ex) -> logFailure("Could not save images", ex));
+      writeSnapshotAfter(saved);
+    }, ASYNC_API.getUiExecutor());
+    added.whenCompleteAsync((result, ex) -> {
+      if(extraction == currentImport){
+        currentImport = null;
+        IMPORTING.set(false);
+      }
+      if(extraction.getResult().isCancelled()) LOGGER.info("Import of " + files.size() + " files was cancelled.");
+      extraction.getFailures().forEach((file, reason) -> LOGGER.warn("Skipped " + file + ": " + reason));
+    }, ASYNC_API.getUiExecutor());
+    return added;
+  }
+
+  /**
+   * User-method for importing the files that earlier imports skipped, because their metadata could not be read
+   * in time. They are released from the {@link MetadataQuarantine} and read again.
+   * @return Completes on the JavaFX thread once the images have been added.
+   */
+
+  public CompletableFuture<Void> retryQuarantined(){
+    MetadataQuarantine quarantine = METADATA_EXTRACTOR.getQuarantine();
+    Set<File> files = new HashSet<>(quarantine.getFiles().keySet());
+    quarantine.release(files);
+    return addImages(files);
+  }
+
+  /**
+   * Cancels the import that is reading metadata, if any. Images that have not been added yet are not added.
+   */
+
+  public void cancelImport(){
+    if(currentImport != null) currentImport.cancel();
+  }
+
+  /**
+   * Shows the progress of the current import on the JavaFX thread.
+   * Progress reported while an update is waiting to be shown is included in it.
+   */
+
+  private void showImportProgress(){
+    if(!PROGRESS_PENDING.getAndSet(true)){
+      ASYNC_API.getUiExecutor().execute(() -> {
+        PROGRESS_PENDING.set(false);
+        if(currentImport != null) IMPORT_PROGRESS.set(currentImport.getProgress());
+      });
+    }
+  }
+
+  /**
+   * Progress of the import that is reading metadata, from 0 to 1.
+   * @return The progress.
+   */
+
+  public ReadOnlyDoubleProperty importProgressProperty(){
+    return IMPORT_PROGRESS;
+  }
+
+  /**
+   * Whether an import is reading metadata.
+   * @return true while importing.
+   */
+
+  public ReadOnlyBooleanProperty importingProperty(){
+    return IMPORTING;
   }
 
   /**
@@ -117,13 +269,17 @@ public class ImageManager extends FileManager {
    */
 
   public void removeImages(Set<File> files){
+    List<ImageData> removedImages = new ArrayList<>();
     for (File file : files) {
-      USER.deleteImage(IMAGE_DATA.remove(file));
+      ImageData removedImageData = IMAGE_DATA.remove(file);
+      if(removedImageData != null) removedImages.add(removedImageData);
       IMAGES.remove(file);
       TREE_ITEMS.remove(file);
       removeFile(file);
     }
-    pushToHibernate();
+    CompletableFuture<Integer> removed = withUser(user -> ASYNC_API.removeImages(user, removedImages));
+    removed.whenComplete((count, ex) -> logFailure("Could not remove images", ex));
+    writeSnapshotAfter(removed);
   }
 
   /**
@@ -200,7 +356,7 @@ public class ImageManager extends FileManager {
         .stream()
         .map(this::procureImageThumbnail)
         .filter(imageThumbnail -> imageThumbnail.getImageView().getId().contains(searchConstraints) ||
-            IMAGE_DATA.get(IMAGES.inverse().get(imageThumbnail)).getTags().toString().contains(searchConstraints)
+            IMAGE_DATA.get(IMAGES.inverse().get(imageThumbnail)).getTagNames().toString().contains(searchConstraints)
         || IMAGE_DATA.get(IMAGES.inverse().get(imageThumbnail)).getMetadata().toString().contains(searchConstraints))
         .collect(Collectors.toList());
   }
@@ -249,6 +405,10 @@ public class ImageManager extends FileManager {
    */
 
   public boolean addToTags(Collection<TreeItem<String>> selectedFiles){
+    if(!reconciled){
+      LOGGER.info("The library is still loading, tags cannot be added yet.");
+      return false;
+    }
     Set<ImageData> imageDataList = reduceTreeItems(selectedFiles)
         .stream()
         .map(treeItem -> getImageData(getFile(treeItem)))
@@ -256,12 +416,11 @@ public class ImageManager extends FileManager {
 
     String tag = MainStage.UserPrompter.queryName("Please choose a tag.");
     if(!tag.isBlank()){
-      imageDataList.forEach(imageData -> {
-        if(!imageData.getTags().contains(tag)){
-          imageData.getTags().add(tag);
-        }
-      });
-      pushToHibernate();
+      ChangeSet changes = new ChangeSet();
+      imageDataList.forEach(imageData -> changes.addTag(imageData, tag));
+      CompletableFuture<Boolean> committed = ASYNC_API.commit(changes);
+      committed.whenComplete((result, ex) -> logFailure("Could not add tag", ex));
+      writeSnapshotAfter(committed);
       refreshTagsTree();
       return true;
     }
@@ -275,66 +434,213 @@ public class ImageManager extends FileManager {
    */
 
   public void deleteFromTags(List<TreeItem<String>> treeItems){
+    if(!reconciled){
+      LOGGER.info("The library is still loading, tags cannot be removed yet.");
+      return;
+    }
+    ChangeSet changes = new ChangeSet();
     treeItems.stream().forEach(treeItem -> {
-      for (ImageData current : USER.getImages()) {
+      for (ImageData current : IMAGE_DATA.values()) {
         if (current.getPath().contains(treeItem.getValue())) {
-          current.getTags().remove(treeItem.getParent().getValue());
+          changes.removeTag(current, treeItem.getParent().getValue());
         }
       }
     });
 
-    pushToHibernate();
+    CompletableFuture<Boolean> committed = ASYNC_API.commit(changes);
+    committed.whenComplete((result, ex) -> logFailure("Could not remove tag", ex));
+    writeSnapshotAfter(committed);
     refreshTagsTree();
   }
 
   /**
    * Method invoked to refresh tags treeView.
+   * The tags and their counts come from a grouped query, and the images under a tag are only
+   * looked up once that tag's children are requested.
+   * The counts are queried after any edits submitted before, and the tree is updated on the JavaFX thread.
    */
 
   private void refreshTagsTree(){
-    List<TreeItem<String>> treeItemsList = new ArrayList<TreeItem<String>>();
-    USER.getImagesByTags().forEach((key, value) -> {
-      TreeItem<String> tagTreeItem = new TreeItem<>(key);
-      tagTreeItem.getChildren().setAll(
-              value.stream()
-                      .map(imageData -> new TreeItem<>(IMAGE_DATA.inverse().get(imageData).getName()))
-                      .collect(Collectors.toList())
-      );
-      treeItemsList.add(tagTreeItem);
-    });
-    ROOT.getChildren().setAll(treeItemsList);
+    withUser(ASYNC_API::getTagCounts)
+        .thenAcceptAsync(tagCounts -> {
+          List<TreeItem<String>> treeItemsList = new ArrayList<TreeItem<String>>();
+          tagCounts.forEach((tag, count) -> treeItemsList.add(createTagTreeItem(tag, count)));
+          ROOT.getChildren().setAll(treeItemsList);
+        }, ASYNC_API.getUiExecutor())
+        .whenComplete((ignored, ex) -> logFailure("Could not refresh tags", ex));
   }
 
   /**
-   * Privately invoked for push changes to hibernate.
+   * Creates a tag node that loads its image children the first time they are requested.
+   * @param tag the tag.
+   * @param count number of images with the tag.
+   * @return The tag node.
    */
 
-  private void pushToHibernate(){
-    DATA_API.saveUser(USER);
+  private TreeItem<String> createTagTreeItem(String tag, long count){
+    return new LazyTreeItem<>(tag, count == 0, () -> loadTagChildren(tag), ASYNC_API.getUiExecutor());
   }
 
   /**
-   * User-method for pulling data.
+   * Pages through the ids of the images with a tag on the persistence thread, and creates a node for each known
+   * file on the JavaFX thread.
+   * @param tag the tag.
+   * @return Completes on the JavaFX thread with the image nodes.
    */
 
-  public void pullFromHibernate(){
-    List<ImageData> deleteList = new ArrayList<>();
+  private CompletableFuture<List<TreeItem<String>>> loadTagChildren(String tag){
+    return withUser(user -> loadTagImageIds(user, tag, 0, new HashSet<>()))
+        .thenApplyAsync(imageIds -> IMAGE_DATA.entrySet()
+            .stream()
+            .filter(entry -> imageIds.contains(entry.getValue().getImageID()))
+            .map(entry -> new TreeItem<>(entry.getKey().getName()))
+            .collect(Collectors.toList()), ASYNC_API.getUiExecutor());
+  }
 
-    USER.getImages()
-        .stream()
-        .filter(imageData -> {
-          File newFile = new File(imageData.getPath());
-          if(addFile(newFile)){
-            IMAGE_DATA.inverse().forcePut(imageData, newFile);
-            return false;
-          }else return true;
-        }).forEach(deleteList::add);
-
-        deleteList.forEach(imageData -> {
-      LOGGER.info("File: " + imageData.getPath() + " not found locally.\n" +
-          "Deleting reference from remote SQL.");
-      USER.deleteImage(imageData);
+  /**
+   * Collects the ids of the images with a tag, requesting the next page once the previous one has arrived.
+   * @param user the user.
+   * @param tag the tag.
+   * @param afterImageId the last id of the previous page, or 0 for the first page.
+   * @param imageIds the ids collected so far.
+   * @return Completes with all the ids.
+   */
+
+  private CompletableFuture<Set<Integer>> loadTagImageIds(User user, String tag, int afterImageId, Set<Integer> imageIds){
+    return ASYNC_API.getImageIdsByTag(user, tag, afterImageId, TAG_PAGE_SIZE).thenCompose(page -> {
+      imageIds.addAll(page);
+      return page.size() < TAG_PAGE_SIZE ? CompletableFuture.completedFuture(imageIds) :
+          loadTagImageIds(user, tag, page.get(page.size() - 1), imageIds);
     });
-    refreshTagsTree();
+  }
+
+  /**
+   * User-method for pulling data.
+   * The images are loaded on the persistence thread and added on the JavaFX thread, replacing the ones shown
+   * from the snapshot. Images that were in the snapshot but are no longer in the database are removed.
+   * @return Completes on the JavaFX thread once the images have been added.
+   */
+
+  public CompletableFuture<Void> pullFromHibernate(){
+    return withUser(ASYNC_API::getImages).thenAcceptAsync(images -> {
+      List<ImageData> deleteList = new ArrayList<>();
+
+      images.stream()
+          .filter(imageData -> {
+            File newFile = new File(imageData.getPath());
+            if(addFile(newFile)){
+              IMAGE_DATA.inverse().forcePut(imageData, newFile);
+              SNAPSHOT_FILES.remove(newFile);
+              return false;
+            }else return true;
+          }).forEach(deleteList::add);
+
+      SNAPSHOT_FILES.forEach(file -> {
+        IMAGE_DATA.remove(file);
+        IMAGES.remove(file);
+        if(file.isFile()) removeFile(file);
+      });
+      SNAPSHOT_FILES.clear();
+      reconciled = true;
+
+      ChangeSet changes = new ChangeSet();
+      deleteList.forEach(imageData -> {
+        LOGGER.info("File: " + imageData.getPath() + " not found locally.\n" +
+            "Deleting reference from remote SQL.");
+        changes.removeImage(imageData);
+      });
+      CompletableFuture<Boolean> committed = ASYNC_API.commit(changes);
+      committed.whenComplete((result, ex) -> logFailure("Could not remove missing images", ex));
+      writeSnapshotAfter(committed);
+      refreshTagsTree();
+    }, ASYNC_API.getUiExecutor());
+  }
+
+  /**
+   * Sets what is run on the JavaFX thread once the library has been loaded again, after replication pulled changes.
+   * @param onPulled the action, such as showing the new images.
+   */
+
+  public void setOnPulled(Runnable onPulled){
+    this.onPulled = onPulled;
+  }
+
+  /**
+   * Loads the library again after replication pulled changes into the local database.
+   */
+
+  private void reloadAfterPull(){
+    pullFromHibernate()
+        .thenRun(() -> onPulled.run())
+        .whenComplete((ignored, ex) -> logFailure("Could not load pulled images", ex));
+  }
+
+  /**
+   * Shows the images of the last {@link LibrarySnapshot}, if it belongs to this device's user.
+   * The snapshot is read once, without waiting for the database.
+   */
+
+  private void loadSnapshot(){
+    LibrarySnapshot.open(SNAPSHOT_PATH)
+        .filter(snapshot -> snapshot.isOwnedBy(Device.getUsername(), Device.getUUID()))
+        .ifPresent(snapshot -> {
+          for(int i = 0; i < snapshot.size(); i++){
+            File file = new File(snapshot.getPath(i));
+            if(addFile(file)){
+              IMAGE_DATA.forcePut(file, snapshot.toImageData(i));
+              SNAPSHOT_FILES.add(file);
+            }
+          }
+          LOGGER.info("Showing " + SNAPSHOT_FILES.size() + " images from the library snapshot");
+        });
+  }
+
+  /**
+   * Writes a new {@link LibrarySnapshot} once a change has been written to the database.
+   * The snapshot is written by the {@link SnapshotWriter} in the background, {@link #SNAPSHOT_DELAY} after the
+   * change, so a burst of changes writes one snapshot and the persistence thread never streams the library for it.
+   * @param change the change.
+   */
+
+  private void writeSnapshotAfter(CompletableFuture<?> change){
+    change.whenComplete((result, ex) -> USER.thenAccept(SNAPSHOT_WRITER::request));
+  }
+
+  /**
+   * Shuts the image manager down when the application exits.
+   * An import that is reading metadata is cancelled, and replication and purging stop after their current run.
+   * The operations queued on the persistence thread are then finished, and a {@link LibrarySnapshot} that is still
+   * waiting to be written is written, before this returns. Changes that were not replicated yet are replicated on
+   * the next start.
+   */
+
+  public void close(){
+    METADATA_EXTRACTOR.close();
+    REPLICATOR.close();
+    PURGER.close();
+    ASYNC_API.close();
+    SNAPSHOT_WRITER.close();
+    METADATA_CACHE.close();
+  }
+
+  /**
+   * Runs an operation once the user has logged in.
+   * @param operation the operation, given the user.
+   * @param <R> the type of the result.
+   * @return The operation's future.
+   */
+
+  private <R> CompletableFuture<R> withUser(Function<User, CompletableFuture<R>> operation){
+    return USER.thenCompose(operation);
+  }
+
+  /**
+   * Logs a failed persistence operation.
+   * @param message description of the operation.
+   * @param ex the exception, or null if the operation succeeded.
+   */
+
+  private void logFailure(String message, Throwable ex){
+    if(ex != null) LOGGER.error(message, ex);
   }
 }
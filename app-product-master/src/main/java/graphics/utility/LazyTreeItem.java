@@ -0,0 +1,68 @@
+package graphics.utility;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * @author Karl Labrador
+ * A {@link TreeItem} that loads its children the first time they are requested, for example when it is expanded.
+ * Whether it is a leaf is known up front, so the tree shows an expand arrow without loading anything.
+ * The children are loaded in the background and added on the UI thread once they are ready, so expanding the
+ * item never waits for the database.
+ * @param <T> The type of the item's value.
+ */
+
+public class LazyTreeItem<T> extends TreeItem<T> {
+  private static final Logger LOGGER = LogManager.getLogger(LazyTreeItem.class);
+  private final Supplier<CompletableFuture<List<TreeItem<T>>>> CHILDREN_LOADER;
+  private final Executor UI_EXECUTOR;
+  private final boolean LEAF;
+  private boolean loaded = false;
+
+  /**
+   * Creates an item whose children are not loaded yet.
+   * @param value The item's value.
+   * @param leaf True if the item has no children.
+   * @param childrenLoader Starts loading the children, called at most once and on the UI thread.
+   * @param uiExecutor Runs work on the UI thread, where the children are added.
+   */
+
+  public LazyTreeItem(T value, boolean leaf, Supplier<CompletableFuture<List<TreeItem<T>>>> childrenLoader, Executor uiExecutor){
+    super(value);
+    this.LEAF = leaf;
+    this.CHILDREN_LOADER = childrenLoader;
+    this.UI_EXECUTOR = uiExecutor;
+  }
+
+  @Override
+  public boolean isLeaf(){
+    return LEAF;
+  }
+
+  /**
+   * Gets the children. The first call starts loading them and returns the empty list, which is filled once
+   * the children have been loaded.
+   * @return The children.
+   */
+
+  @Override
+  public ObservableList<TreeItem<T>> getChildren(){
+    if(!loaded){
+      loaded = true;
+      CHILDREN_LOADER.get().whenCompleteAsync((children, ex) -> {
+        if(ex != null){
+          LOGGER.error("Could not load the children of " + getValue(), ex);
+        } else {
+          super.getChildren().setAll(children);
+        }
+      }, UI_EXECUTOR);
+    }
+    return super.getChildren();
+  }
+}
@@ -1,10 +1,17 @@
 package hibernate.api;
 
+import hibernate.dao.FetchPlan;
 import hibernate.model.Album;
+import hibernate.model.AlbumImage;
+import hibernate.model.GalleryRow;
 import hibernate.model.ImageData;
+import hibernate.model.Tag;
 import hibernate.model.User;
 
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * API Interface for data accessing
@@ -15,26 +22,51 @@ import java.util.List;
  */
 public interface API {
     // Users
+    User login();
     User getUser(int userid);
     User getUser(String username, String uuid);
     List<User> getAllUsers();
     User createUser(User user);
     User createUser(String username, String uuid);
     User saveUser(User user);
+    boolean commit(ChangeSet changeSet);
     void deleteUser(User user);
 
     // Images
     ImageData getImage(int imageid);
+    ImageData getImage(int imageid, FetchPlan plan);
     List<ImageData> getImages(User user);
+    List<ImageData> getImages(User user, int afterImageId, int limit);
+    List<ImageData> getImages(User user, int afterImageId, int limit, FetchPlan plan);
+    List<GalleryRow> getGalleryRows(User user, int afterImageId, int limit);
+    List<ImageData> getImagesInBoundingBox(User user, double south, double west, double north, double east, int limit);
     ImageData saveImage(User user, ImageData imagedata);
+    List<ImageData> saveImages(User user, Collection<ImageData> images);
+    int importImages(User user, Iterable<ImageData> images);
     void deleteImage(ImageData imagedata);
+    int removeImages(User user, Collection<ImageData> images);
+    int removeImagesUnder(User user, String pathPrefix);
+    int purgeDeletedImages(int chunkSize);
+    List<ImageData> getImagesByTag(User user, String tag);
+    int writeSnapshot(User user, Path path);
+
+    // Tags
+    Tag getTag(String name);
+    Map<String, Long> getTagCounts(User user);
+    List<Integer> getImageIdsByTag(User user, String tag, int afterImageId, int limit);
+
+    // Facets
+    Facets getFacets(User user);
 
     // Album
     Album createAlbum(User user);
     Album getAlbum(int albumid);
+    Album getAlbum(int albumid, FetchPlan plan);
     List<Album> getAlbums(User user);
     void addImages(Album album, ImageData image);
     void addImages(Album album, List<ImageData> images);
+    List<AlbumImage> getAlbumImages(Album album, int afterPosition, int limit);
+    boolean moveAlbumImage(Album album, int fromPosition, int toPosition);
     Album saveAlbum(Album album);
     void deleteAlbum(Album album);
     void setAlbumTitle(Album album, String title);
@@ -0,0 +1,73 @@
+package hibernate.api;
+
+import hibernate.dao.FetchPlan;
+import hibernate.model.Album;
+import hibernate.model.AlbumImage;
+import hibernate.model.GalleryRow;
+import hibernate.model.ImageData;
+import hibernate.model.Tag;
+import hibernate.model.User;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterpart to {@link API}. Every operation returns at once with a CompletableFuture
+ * that completes when the operation has run on the persistence thread.
+ *
+ * @author Karl Labrador
+ */
+public interface AsyncAPI {
+    // Users
+    CompletableFuture<User> login();
+    CompletableFuture<User> getUser(int userid);
+    CompletableFuture<User> getUser(String username, String uuid);
+    CompletableFuture<List<User>> getAllUsers();
+    CompletableFuture<User> createUser(User user);
+    CompletableFuture<User> createUser(String username, String uuid);
+    CompletableFuture<User> saveUser(User user);
+    CompletableFuture<Boolean> commit(ChangeSet changeSet);
+    CompletableFuture<Void> deleteUser(User user);
+
+    // Images
+    CompletableFuture<ImageData> getImage(int imageid);
+    CompletableFuture<ImageData> getImage(int imageid, FetchPlan plan);
+    CompletableFuture<List<ImageData>> getImages(User user);
+    CompletableFuture<List<ImageData>> getImages(User user, int afterImageId, int limit);
+    CompletableFuture<List<ImageData>> getImages(User user, int afterImageId, int limit, FetchPlan plan);
+    CompletableFuture<List<GalleryRow>> getGalleryRows(User user, int afterImageId, int limit);
+    CompletableFuture<List<ImageData>> getImagesInBoundingBox(User user, double south, double west, double north, double east, int limit);
+    CompletableFuture<ImageData> saveImage(User user, ImageData imagedata);
+    CompletableFuture<List<ImageData>> saveImages(User user, Collection<ImageData> images);
+    CompletableFuture<Integer> importImages(User user, Iterable<ImageData> images);
+    CompletableFuture<Void> deleteImage(ImageData imagedata);
+    CompletableFuture<Integer> removeImages(User user, Collection<ImageData> images);
+    CompletableFuture<Integer> removeImagesUnder(User user, String pathPrefix);
+    CompletableFuture<Integer> purgeDeletedImages(int chunkSize);
+    CompletableFuture<List<ImageData>> getImagesByTag(User user, String tag);
+    CompletableFuture<Integer> writeSnapshot(User user, Path path);
+
+    // Tags
+    CompletableFuture<Tag> getTag(String name);
+    CompletableFuture<Map<String, Long>> getTagCounts(User user);
+    CompletableFuture<List<Integer>> getImageIdsByTag(User user, String tag, int afterImageId, int limit);
+
+    // Facets
+    CompletableFuture<Facets> getFacets(User user);
+
+    // Album
+    CompletableFuture<Album> createAlbum(User user);
+    CompletableFuture<Album> getAlbum(int albumid);
+    CompletableFuture<Album> getAlbum(int albumid, FetchPlan plan);
+    CompletableFuture<List<Album>> getAlbums(User user);
+    CompletableFuture<Void> addImages(Album album, ImageData image);
+    CompletableFuture<Void> addImages(Album album, List<ImageData> images);
+    CompletableFuture<List<AlbumImage>> getAlbumImages(Album album, int afterPosition, int limit);
+    CompletableFuture<Boolean> moveAlbumImage(Album album, int fromPosition, int toPosition);
+    CompletableFuture<Album> saveAlbum(Album album);
+    CompletableFuture<Void> deleteAlbum(Album album);
+    CompletableFuture<Void> setAlbumTitle(Album album, String title);
+}
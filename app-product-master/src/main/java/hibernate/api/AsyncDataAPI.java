@@ -0,0 +1,638 @@
+package hibernate.api;
+
+import hibernate.dao.FetchPlan;
+import hibernate.model.Album;
+import hibernate.model.AlbumImage;
+import hibernate.model.GalleryRow;
+import hibernate.model.ImageData;
+import hibernate.model.Tag;
+import hibernate.model.User;
+import javafx.application.Platform;
+import org.apache.log4j.Logger;
+import org.hibernate.Hibernate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * AsyncDataAPI Class, runs the operations of a {@link DataAPI} on a persistence thread, so that a slow database
+ * does not freeze the JavaFX thread.
+ *
+ * All operations run one at a time, in the order they were submitted, on a single thread named "persistence-N".
+ * Objects retrieved through this class are therefore managed by that thread's EntityManager, and an edit
+ * submitted after a save always sees the saved rows. Lazy associations of those objects should not be
+ * initialized from other threads, so the images returned by {@link #getImages(User)} and
+ * {@link #getImages(User, int, int)} have their tags loaded before they are handed out.
+ *
+ * The returned futures complete on the persistence thread. Use {@link #getUiExecutor()} to continue on the
+ * JavaFX thread, for example {@code api.getTagCounts(user).thenAcceptAsync(this::show, api.getUiExecutor())}.
+ * Never wait for a future on the persistence thread itself.
+ *
+ * At most {@code queueCapacity} operations can wait at a time. Operations submitted while the queue is full
+ * fail at once with a RejectedExecutionException, instead of piling up behind a slow database. Each operation
+ * fails with a TimeoutException if it has not completed within its timeout. The operation itself is not
+ * cancelled, so edits submitted after it still run in order.
+ *
+ * @author Karl Labrador
+ */
+public class AsyncDataAPI implements AsyncAPI, AutoCloseable {
+    private final static int DEFAULT_QUEUE_CAPACITY = 256;
+    private final static Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+    private final static Duration IMPORT_TIMEOUT = Duration.ofHours(2);
+    private final static AtomicInteger threadCount = new AtomicInteger();
+    private final static Logger logger = Logger.getLogger(AsyncDataAPI.class);
+    private final DataAPI api;
+    private final ThreadPoolExecutor executor;
+    private final Duration timeout;
+    private final Executor uiExecutor;
+
+    /**
+     * Constructor for AsyncDataAPI with the default queue capacity and timeout, handing results to the JavaFX thread
+     * @param api the DataAPI to run the operations on
+     */
+    public AsyncDataAPI(DataAPI api) {
+        this(api, DEFAULT_QUEUE_CAPACITY, DEFAULT_TIMEOUT, Platform::runLater);
+    }
+
+    /**
+     * Constructor for AsyncDataAPI
+     * @param api the DataAPI to run the operations on
+     * @param queueCapacity how many operations can wait for the persistence thread before new ones are rejected
+     * @param timeout how long each operation may take, including the time spent waiting in the queue
+     * @param uiExecutor the executor that runs work on the UI thread
+     */
+    public AsyncDataAPI(DataAPI api, int queueCapacity, Duration timeout, Executor uiExecutor) {
+        this.api = api;
+        this.timeout = timeout;
+        this.uiExecutor = uiExecutor;
+
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(() -> {
+                        try {
+                            runnable.run();
+                        } finally {
+                            api.releaseEntityManager();
+                        }
+                    }, "persistence-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        logger.info("Initialized AsyncDataAPI");
+    }
+
+    /**
+     * Gets the executor that runs work on the UI thread, by default {@link Platform#runLater}
+     * @return the UI executor
+     */
+    public Executor getUiExecutor() {
+        return uiExecutor;
+    }
+
+    /**
+     * Runs an operation against the DataAPI on the persistence thread, with the default timeout
+     * @param operation the operation to run
+     * @param <R> the type of the result
+     * @return a future that completes with the result of the operation
+     */
+    public <R> CompletableFuture<R> submit(Function<DataAPI, R> operation) {
+        return submit(operation, timeout);
+    }
+
+    /**
+     * Runs an operation against the DataAPI on the persistence thread
+     * @param operation the operation to run
+     * @param timeout how long the operation may take, including the time spent waiting in the queue
+     * @param <R> the type of the result
+     * @return a future that completes with the result of the operation, or fails if the queue is full,
+     * the operation throws or the timeout runs out
+     */
+    public <R> CompletableFuture<R> submit(Function<DataAPI, R> operation, Duration timeout) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(operation.apply(api));
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            logger.warn("Persistence queue is full, rejected operation");
+            future.completeExceptionally(ex);
+
+            return future;
+        }
+
+        return future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops accepting operations and waits for the submitted ones to finish
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                logger.warn("Persistence thread did not finish within " + timeout);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Users
+
+    /**
+     * See {@link DataAPI#login()}
+     * @return a future with the logged in User
+     */
+    @Override
+    public CompletableFuture<User> login() {
+        return submit(DataAPI::login);
+    }
+
+    /**
+     * See {@link DataAPI#getUser(int)}
+     * @param userid the ID of the User
+     * @return a future with the User
+     */
+    @Override
+    public CompletableFuture<User> getUser(int userid) {
+        return submit(api -> api.getUser(userid));
+    }
+
+    /**
+     * See {@link DataAPI#getUser(String, String)}
+     * @param username the username
+     * @param uuid the UUID of the device
+     * @return a future with the User
+     */
+    @Override
+    public CompletableFuture<User> getUser(String username, String uuid) {
+        return submit(api -> api.getUser(username, uuid));
+    }
+
+    /**
+     * See {@link DataAPI#getAllUsers()}
+     * @return a future with all users
+     */
+    @Override
+    public CompletableFuture<List<User>> getAllUsers() {
+        return submit(DataAPI::getAllUsers);
+    }
+
+    /**
+     * See {@link DataAPI#createUser(User)}
+     * @param user the User object to save
+     * @return a future with the saved User
+     */
+    @Override
+    public CompletableFuture<User> createUser(User user) {
+        return submit(api -> api.createUser(user));
+    }
+
+    /**
+     * See {@link DataAPI#createUser(String, String)}
+     * @param username the username
+     * @param uuid the UUID of the device
+     * @return a future with the created User
+     */
+    @Override
+    public CompletableFuture<User> createUser(String username, String uuid) {
+        return submit(api -> api.createUser(username, uuid));
+    }
+
+    /**
+     * See {@link DataAPI#saveUser(User)}
+     * @param user the User object to save
+     * @return a future with the saved User
+     */
+    @Override
+    public CompletableFuture<User> saveUser(User user) {
+        return submit(api -> api.saveUser(user));
+    }
+
+    /**
+     * See {@link DataAPI#commit(ChangeSet)}. The change set and its objects should not be edited until the future
+     * completes, as they are updated on the persistence thread once the edits have been committed.
+     * @param changeSet the recorded edits
+     * @return a future with true if the edits were committed
+     */
+    @Override
+    public CompletableFuture<Boolean> commit(ChangeSet changeSet) {
+        return submit(api -> api.commit(changeSet));
+    }
+
+    /**
+     * See {@link DataAPI#deleteUser(User)}
+     * @param user the User object to delete
+     * @return a future that completes when the user is deleted
+     */
+    @Override
+    public CompletableFuture<Void> deleteUser(User user) {
+        return submit(api -> {
+            api.deleteUser(user);
+            return null;
+        });
+    }
+
+    // Images
+
+    /**
+     * See {@link DataAPI#getImage(int)}
+     * @param imageid the ID of the image
+     * @return a future with the ImageData
+     */
+    @Override
+    public CompletableFuture<ImageData> getImage(int imageid) {
+        return submit(api -> api.getImage(imageid));
+    }
+
+    /**
+     * See {@link DataAPI#getImage(int, FetchPlan)}
+     * @param imageid the ID of the image
+     * @param plan the fetch plan for the screen showing the image
+     * @return a future with the ImageData
+     */
+    @Override
+    public CompletableFuture<ImageData> getImage(int imageid, FetchPlan plan) {
+        return submit(api -> api.getImage(imageid, plan));
+    }
+
+    /**
+     * See {@link DataAPI#getImages(User)}. The list and the images' tags are loaded on the persistence thread,
+     * so they can be read from any thread.
+     * @param user a User object retrieved from the database
+     * @return a future with the user's images
+     */
+    @Override
+    public CompletableFuture<List<ImageData>> getImages(User user) {
+        return submit(api -> {
+            List<ImageData> images = api.getImages(user);
+            return images != null ? withTags(new ArrayList<>(images)) : null;
+        });
+    }
+
+    /**
+     * See {@link DataAPI#getImages(User, int, int)}. The images' tags are loaded on the persistence thread.
+     * @param user a User object retrieved from the database
+     * @param afterImageId the last image ID of the previous page, or 0 for the first page
+     * @param limit the maximum number of images
+     * @return a future with the page of images
+     */
+    @Override
+    public CompletableFuture<List<ImageData>> getImages(User user, int afterImageId, int limit) {
+        return submit(api -> api.getImagesWithTags(user, afterImageId, limit));
+    }
+
+    /**
+     * See {@link DataAPI#getImages(User, int, int, FetchPlan)}
+     * @param user a User object retrieved from the database
+     * @param afterImageId the last image ID of the previous page, or 0 for the first page
+     * @param limit the maximum number of images
+     * @param plan the fetch plan for the screen showing the images
+     * @return a future with the page of images
+     */
+    @Override
+    public CompletableFuture<List<ImageData>> getImages(User user, int afterImageId, int limit, FetchPlan plan) {
+        return submit(api -> api.getImages(user, afterImageId, limit, plan));
+    }
+
+    /**
+     * See {@link DataAPI#getGalleryRows(User, int, int)}
+     * @param user a User object retrieved from the database
+     * @param afterImageId the last image ID of the previous page, or 0 for the first page
+     * @param limit the maximum number of rows
+     * @return a future with the page of rows
+     */
+    @Override
+    public CompletableFuture<List<GalleryRow>> getGalleryRows(User user, int afterImageId, int limit) {
+        return submit(api -> api.getGalleryRows(user, afterImageId, limit));
+    }
+
+    /**
+     * See {@link DataAPI#getImagesInBoundingBox(User, double, double, double, double, int)}
+     * @param user a User object retrieved from the database
+     * @param south southern latitude of the box
+     * @param west western longitude of the box
+     * @param north northern latitude of the box
+     * @param east eastern longitude of the box
+     * @param limit the maximum number of images
+     * @return a future with the detached images inside the box
+     */
+    @Override
+    public CompletableFuture<List<ImageData>> getImagesInBoundingBox(User user, double south, double west, double north, double east, int limit) {
+        return submit(api -> api.getImagesInBoundingBox(user, south, west, north, east, limit));
+    }
+
+    /**
+     * See {@link DataAPI#saveImage(User, ImageData)}
+     * @param user a User object retrieved from the database
+     * @param imagedata the ImageData object to save
+     * @return a future with the saved ImageData
+     */
+    @Override
+    public CompletableFuture<ImageData> saveImage(User user, ImageData imagedata) {
+        return submit(api -> api.saveImage(user, imagedata));
+    }
+
+    /**
+     * See {@link DataAPI#saveImages(User, Collection)}
+     * @param user a User object retrieved from the database
+     * @param images the ImageData objects to save
+     * @return a future with the saved ImageData objects
+     */
+    @Override
+    public CompletableFuture<List<ImageData>> saveImages(User user, Collection<ImageData> images) {
+        return submit(api -> api.saveImages(user, images));
+    }
+
+    /**
+     * See {@link DataAPI#importImages(User, Iterable)}. Allowed to run much longer than other operations.
+     * @param user a User object retrieved from the database
+     * @param images the new ImageData objects, read once on the persistence thread
+     * @return a future with the number of images imported
+     */
+    @Override
+    public CompletableFuture<Integer> importImages(User user, Iterable<ImageData> images) {
+        return submit(api -> api.importImages(user, images), IMPORT_TIMEOUT);
+    }
+
+    /**
+     * See {@link DataAPI#deleteImage(ImageData)}
+     * @param imagedata the ImageData object to delete
+     * @return a future that completes when the image is deleted
+     */
+    @Override
+    public CompletableFuture<Void> deleteImage(ImageData imagedata) {
+        return submit(api -> {
+            api.deleteImage(imagedata);
+            return null;
+        });
+    }
+
+    /**
+     * See {@link DataAPI#removeImages(User, Collection)}
+     * @param user a User object retrieved from the database
+     * @param images the ImageData objects to remove
+     * @return a future with the number of images removed
+     */
+    @Override
+    public CompletableFuture<Integer> removeImages(User user, Collection<ImageData> images) {
+        return submit(api -> api.removeImages(user, images));
+    }
+
+    /**
+     * See {@link DataAPI#removeImagesUnder(User, String)}
+     * @param user a User object retrieved from the database
+     * @param pathPrefix the start of the paths, matched literally
+     * @return a future with the number of images removed
+     */
+    @Override
+    public CompletableFuture<Integer> removeImagesUnder(User user, String pathPrefix) {
+        return submit(api -> api.removeImagesUnder(user, pathPrefix));
+    }
+
+    /**
+     * See {@link DataAPI#purgeDeletedImages(int)}
+     * @param chunkSize maximum number of images to delete
+     * @return a future with the number of images deleted
+     */
+    @Override
+    public CompletableFuture<Integer> purgeDeletedImages(int chunkSize) {
+        return submit(api -> api.purgeDeletedImages(chunkSize));
+    }
+
+    /**
+     * See {@link DataAPI#getImagesByTag(User, String)}
+     * @param user a User object retrieved from the database
+     * @param tag the tag name
+     * @return a future with the images that have the tag
+     */
+    @Override
+    public CompletableFuture<List<ImageData>> getImagesByTag(User user, String tag) {
+        return submit(api -> api.getImagesByTag(user, tag));
+    }
+
+    /**
+     * See {@link DataAPI#writeSnapshot(User, Path)}. Allowed to run as long as an import, as it reads the whole library.
+     * @param user a User object retrieved from the database
+     * @param path the snapshot's file
+     * @return a future with the number of images written
+     */
+    @Override
+    public CompletableFuture<Integer> writeSnapshot(User user, Path path) {
+        return submit(api -> api.writeSnapshot(user, path), IMPORT_TIMEOUT);
+    }
+
+    // Tags
+
+    /**
+     * See {@link DataAPI#getTag(String)}
+     * @param name the tag name
+     * @return a future with the Tag
+     */
+    @Override
+    public CompletableFuture<Tag> getTag(String name) {
+        return submit(api -> api.getTag(name));
+    }
+
+    /**
+     * See {@link DataAPI#getTagCounts(User)}
+     * @param user a User object retrieved from the database
+     * @return a future with the number of images per tag name
+     */
+    @Override
+    public CompletableFuture<Map<String, Long>> getTagCounts(User user) {
+        return submit(api -> api.getTagCounts(user));
+    }
+
+    /**
+     * See {@link DataAPI#getImageIdsByTag(User, String, int, int)}
+     * @param user a User object retrieved from the database
+     * @param tag the tag name
+     * @param afterImageId the last image ID of the previous page, or 0 for the first page
+     * @param limit the maximum number of IDs
+     * @return a future with the page of image IDs
+     */
+    @Override
+    public CompletableFuture<List<Integer>> getImageIdsByTag(User user, String tag, int afterImageId, int limit) {
+        return submit(api -> api.getImageIdsByTag(user, tag, afterImageId, limit));
+    }
+
+    // Facets
+
+    /**
+     * See {@link DataAPI#getFacets(User)}
+     * @param user a User object retrieved from the database
+     * @return a future with the Facets
+     */
+    @Override
+    public CompletableFuture<Facets> getFacets(User user) {
+        return submit(api -> api.getFacets(user));
+    }
+
+    // Album
+
+    /**
+     * See {@link DataAPI#createAlbum(User)}
+     * @param user a User object retrieved from the database
+     * @return a future with the created Album
+     */
+    @Override
+    public CompletableFuture<Album> createAlbum(User user) {
+        return submit(api -> api.createAlbum(user));
+    }
+
+    /**
+     * See {@link DataAPI#getAlbum(int)}
+     * @param albumid the ID of the album
+     * @return a future with the Album
+     */
+    @Override
+    public CompletableFuture<Album> getAlbum(int albumid) {
+        return submit(api -> api.getAlbum(albumid));
+    }
+
+    /**
+     * See {@link DataAPI#getAlbum(int, FetchPlan)}
+     * @param albumid the ID of the album
+     * @param plan the fetch plan for the screen showing the album
+     * @return a future with the Album
+     */
+    @Override
+    public CompletableFuture<Album> getAlbum(int albumid, FetchPlan plan) {
+        return submit(api -> api.getAlbum(albumid, plan));
+    }
+
+    /**
+     * See {@link DataAPI#getAlbums(User)}
+     * @param user a User object retrieved from the database
+     * @return a future with the user's albums
+     */
+    @Override
+    public CompletableFuture<List<Album>> getAlbums(User user) {
+        return submit(api -> api.getAlbums(user));
+    }
+
+    /**
+     * See {@link DataAPI#addImages(Album, ImageData)}
+     * @param album the Album object
+     * @param image the ImageData object to add
+     * @return a future that completes when the image is added
+     */
+    @Override
+    public CompletableFuture<Void> addImages(Album album, ImageData image) {
+        return submit(api -> {
+            api.addImages(album, image);
+            return null;
+        });
+    }
+
+    /**
+     * See {@link DataAPI#addImages(Album, List)}
+     * @param album the Album object
+     * @param images the ImageData objects to add
+     * @return a future that completes when the images are added
+     */
+    @Override
+    public CompletableFuture<Void> addImages(Album album, List<ImageData> images) {
+        return submit(api -> {
+            api.addImages(album, images);
+            return null;
+        });
+    }
+
+    /**
+     * See {@link DataAPI#getAlbumImages(Album, int, int)}
+     * @param album the Album object
+     * @param afterPosition the position of the last image on the previous page, or 0 for the first page
+     * @param limit maximum number of images to return
+     * @return a future with the page of AlbumImage objects
+     */
+    @Override
+    public CompletableFuture<List<AlbumImage>> getAlbumImages(Album album, int afterPosition, int limit) {
+        return submit(api -> api.getAlbumImages(album, afterPosition, limit));
+    }
+
+    /**
+     * See {@link DataAPI#moveAlbumImage(Album, int, int)}
+     * @param album the Album object
+     * @param fromPosition the current position of the image to move
+     * @param toPosition the position to move the image to
+     * @return a future with true if the image was moved
+     */
+    @Override
+    public CompletableFuture<Boolean> moveAlbumImage(Album album, int fromPosition, int toPosition) {
+        return submit(api -> api.moveAlbumImage(album, fromPosition, toPosition));
+    }
+
+    /**
+     * See {@link DataAPI#saveAlbum(Album)}
+     * @param album the Album object to save
+     * @return a future with the saved Album
+     */
+    @Override
+    public CompletableFuture<Album> saveAlbum(Album album) {
+        return submit(api -> api.saveAlbum(album));
+    }
+
+    /**
+     * See {@link DataAPI#deleteAlbum(Album)}
+     * @param album the Album object to delete
+     * @return a future that completes when the album is deleted
+     */
+    @Override
+    public CompletableFuture<Void> deleteAlbum(Album album) {
+        return submit(api -> {
+            api.deleteAlbum(album);
+            return null;
+        });
+    }
+
+    /**
+     * See {@link DataAPI#setAlbumTitle(Album, String)}. The title is only written to the database by
+     * {@link #saveAlbum(Album)}.
+     * @param album the Album object
+     * @param title the new title
+     * @return a future that completes when the title is set on the album
+     */
+    @Override
+    public CompletableFuture<Void> setAlbumTitle(Album album, String title) {
+        return submit(api -> {
+            api.setAlbumTitle(album, title);
+            return null;
+        });
+    }
+
+    /**
+     * Loads the tags of images on the persistence thread, for 50 images per statement, so that reading them from the
+     * JavaFX thread does not load them there
+     * @param images images managed by the persistence thread's EntityManager
+     * @return the same images
+     */
+    private static List<ImageData> withTags(List<ImageData> images) {
+        images.forEach(image -> Hibernate.initialize(image.getTags()));
+        return images;
+    }
+}
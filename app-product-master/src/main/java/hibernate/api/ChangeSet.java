@@ -0,0 +1,163 @@
+package hibernate.api;
+
+import hibernate.model.Album;
+import hibernate.model.ImageData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ChangeSet class that records edits to a user's library, so they can be written with {@link DataAPI#commit}.
+ *
+ * Only the images, tags and album memberships recorded in the change set are written, instead of saving the
+ * whole User with {@link DataAPI#saveUser}. The edits are applied to the objects once the change set has been
+ * committed, not when they are recorded. A change set whose commit failed keeps its edits and leaves the objects
+ * as they were, so it can be committed again. A change set that has been committed is cleared, and can be reused.
+ *
+ * Images are tracked by identity, since unsaved ImageData objects all share the ID 0. A change set is not thread safe.
+ *
+ * @author Karl Labrador
+ */
+public class ChangeSet {
+    private final Set<ImageData> addedImages = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<ImageData> removedImages = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<TagChange> tagChanges = new ArrayList<>();
+    private final List<AlbumChange> albumChanges = new ArrayList<>();
+
+    /**
+     * Records a new image. It is added to the User set on the image when the change set is committed.
+     * @param image an ImageData object with its user set
+     * @return this ChangeSet
+     */
+    public ChangeSet addImage(ImageData image) {
+        if (!removedImages.remove(image)) {
+            addedImages.add(image);
+        }
+
+        return this;
+    }
+
+    /**
+     * Records an image to be removed from its user and deleted
+     * @param image an ImageData object
+     * @return this ChangeSet
+     */
+    public ChangeSet removeImage(ImageData image) {
+        if (!addedImages.remove(image)) {
+            removedImages.add(image);
+        }
+
+        return this;
+    }
+
+    /**
+     * Records a tag to be added to an image. Images that already have the tag are left as they are.
+     * @param image an ImageData object
+     * @param tag the tag
+     * @return this ChangeSet
+     */
+    public ChangeSet addTag(ImageData image, String tag) {
+        tagChanges.add(new TagChange(image, tag, true));
+        return this;
+    }
+
+    /**
+     * Records a tag to be removed from an image
+     * @param image an ImageData object
+     * @param tag the tag
+     * @return this ChangeSet
+     */
+    public ChangeSet removeTag(ImageData image, String tag) {
+        tagChanges.add(new TagChange(image, tag, false));
+        return this;
+    }
+
+    /**
+     * Records an image to be added to an album
+     * @param album the album
+     * @param image an ImageData object
+     * @return this ChangeSet
+     */
+    public ChangeSet addToAlbum(Album album, ImageData image) {
+        albumChanges.add(new AlbumChange(album, image, true));
+        return this;
+    }
+
+    /**
+     * Records an image to be removed from an album
+     * @param album the album
+     * @param image an ImageData object
+     * @return this ChangeSet
+     */
+    public ChangeSet removeFromAlbum(Album album, ImageData image) {
+        albumChanges.add(new AlbumChange(album, image, false));
+        return this;
+    }
+
+    /**
+     * Checks if anything has been recorded
+     * @return true if there is nothing to commit
+     */
+    public boolean isEmpty() {
+        return addedImages.isEmpty() && removedImages.isEmpty() && tagChanges.isEmpty() && albumChanges.isEmpty();
+    }
+
+    /**
+     * Forgets everything that has been recorded
+     */
+    public void clear() {
+        addedImages.clear();
+        removedImages.clear();
+        tagChanges.clear();
+        albumChanges.clear();
+    }
+
+    Set<ImageData> getAddedImages() {
+        return addedImages;
+    }
+
+    Set<ImageData> getRemovedImages() {
+        return removedImages;
+    }
+
+    List<TagChange> getTagChanges() {
+        return tagChanges;
+    }
+
+    List<AlbumChange> getAlbumChanges() {
+        return albumChanges;
+    }
+
+    /**
+     * A tag added to or removed from an image
+     */
+    static class TagChange {
+        final ImageData image;
+        final String tag;
+        final boolean added;
+
+        TagChange(ImageData image, String tag, boolean added) {
+            this.image = image;
+            this.tag = tag;
+            this.added = added;
+        }
+    }
+
+    /**
+     * An image added to or removed from an album
+     */
+    static class AlbumChange {
+        final Album album;
+        final ImageData image;
+        final boolean added;
+
+        AlbumChange(Album album, ImageData image, boolean added) {
+            this.album = album;
+            this.image = image;
+            this.added = added;
+        }
+    }
+}
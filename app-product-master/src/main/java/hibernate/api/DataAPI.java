@@ -1,50 +1,310 @@
 package hibernate.api;
 
 import hibernate.dao.AlbumDAO;
+import hibernate.dao.ChangeLogDAO;
+import hibernate.dao.EntityManagerProvider;
+import hibernate.dao.FetchPlan;
 import hibernate.dao.ImageDAO;
+import hibernate.dao.ImageImporter;
+import hibernate.dao.RoutingConnectionProvider;
+import hibernate.dao.TagDAO;
+import hibernate.dao.UnitOfWork;
 import hibernate.dao.UserDAO;
 import hibernate.model.Album;
+import hibernate.model.AlbumImage;
+import hibernate.model.GalleryRow;
 import hibernate.model.ImageData;
+import hibernate.model.Tag;
 import hibernate.model.User;
+import hibernate.sync.ChangeLogIntegrator;
 import org.apache.log4j.Logger;
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
 import utility.Device;
 
+import javax.persistence.CacheStoreMode;
 import javax.persistence.EntityManager;
-import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.EntityTransaction;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * DataAPI Class, an API layer for data access objects
  *
+ * All DataAPI instances for the same persistence unit share one EntityManagerFactory. Every thread gets
+ * its own EntityManager, so objects retrieved on a thread stay managed on that thread, and worker threads
+ * can persist without touching the JavaFX thread's persistence context. Work that needs its own transaction
+ * scope can use {@link #openUnitOfWork()} or {@link #inTransaction(Function)}.
+ *
+ * The application reads and writes the embedded {@link #LOCAL_PERSISTENCE_UNIT}, which {@link hibernate.sync.Replicator}
+ * keeps in sync with the remote {@link #PERSISTENCE_UNIT}.
+ *
+ * If the persistence unit has a read replica, see {@link RoutingConnectionProvider}, read-only calls such as
+ * {@link #getImages(User, int, int)} and {@link #getFacets(User)} read from the replica, and every other call writes
+ * to the primary database. For a while after a DataAPI instance has written, set by
+ * {@value RoutingConnectionProvider#READ_YOUR_WRITES} in milliseconds, its reads go to the primary database as well,
+ * so a session always sees its own changes even if the replica lags behind. Reads made while a transaction is
+ * active on the calling thread, and lazy loading of collections, always use the primary database. Entities read from
+ * the replica are returned detached, with only what the read loaded.
+ *
  * @author Karl Labrador
  * @author Lars-Håvard Holter Bråten
  * @author Arvid Kirkbakk
  * @author Mats Sollid Eide
  */
 public class DataAPI implements API {
-    private static EntityManagerFactory entityManagerFactory;
+    public final static String PERSISTENCE_UNIT = "app-product";
+    public final static String LOCAL_PERSISTENCE_UNIT = "app-product-local";
+    private final static int BATCH_SIZE = 50; // Keep in line with hibernate.jdbc.batch_size in persistence.xml
+    private final static int IMPORT_COMMIT_INTERVAL = 1000;
+    private final static int DELETE_CHUNK_SIZE = 1000; // Keeps IN lists well below database parameter limits
+    private final static long READ_YOUR_WRITES_MILLIS = 5000;
+    private final static String CACHE_STORE_MODE = "javax.persistence.cache.storeMode";
     private final static Logger logger = Logger.getLogger(DataAPI.class);
-    private EntityManager entityManager;
-    private UserDAO userDAO;
-    private ImageDAO imageDAO;
-    private AlbumDAO albumDAO;
+    private final EntityManagerProvider entityManagerProvider;
+    private final ThreadLocal<EntityManager> detachedEntityManager = new ThreadLocal<>();
+    private final UserDAO userDAO;
+    private final ImageDAO imageDAO;
+    private final AlbumDAO albumDAO;
+    private final TagDAO tagDAO;
+    private final ChangeLogDAO changeLogDAO;
+    private final boolean changeLogEnabled;
+    private final String changeLogOrigin;
+    private final boolean replicaEnabled;
+    private final long readYourWritesNanos;
+    private volatile long lastWriteNanos;
 
     /**
      * Constructor for DataAPI. Initializes the API by creating new instances of the relevant DAOs.
      */
     public DataAPI() {
-        entityManagerFactory = Persistence.createEntityManagerFactory("app-product");
-        entityManager = entityManagerFactory.createEntityManager();
+        this(PERSISTENCE_UNIT, Collections.emptyMap());
+    }
+
+    /**
+     * Constructor for DataAPI against a given persistence unit, with some of its properties overridden.
+     * @param persistenceUnitName name of the persistence unit in persistence.xml
+     * @param properties properties that override the ones in persistence.xml
+     */
+    public DataAPI(String persistenceUnitName, Map<String, ?> properties) {
+        entityManagerProvider = new EntityManagerProvider(persistenceUnitName, properties);
+
+        userDAO = new UserDAO(this::getEntityManager);
+        imageDAO = new ImageDAO(this::getEntityManager);
+        albumDAO = new AlbumDAO(this::getEntityManager);
+        tagDAO = new TagDAO(this::getEntityManager);
+        changeLogDAO = new ChangeLogDAO(this::getEntityManager);
+
+        Map<String, Object> factoryProperties = entityManagerProvider.getEntityManagerFactory().getProperties();
+        changeLogEnabled = Boolean.parseBoolean(String.valueOf(factoryProperties.get(ChangeLogIntegrator.ENABLED)));
+        changeLogOrigin = (String) factoryProperties.get(ChangeLogIntegrator.ORIGIN);
+
+        ConnectionProvider connectionProvider = entityManagerProvider.getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class).getServiceRegistry().getService(ConnectionProvider.class);
+        replicaEnabled = connectionProvider instanceof RoutingConnectionProvider
+                && ((RoutingConnectionProvider) connectionProvider).hasReplica();
 
-        userDAO = new UserDAO(entityManager);
-        imageDAO = new ImageDAO(entityManager);
-        albumDAO = new AlbumDAO(entityManager);
+        Object readYourWrites = factoryProperties.get(RoutingConnectionProvider.READ_YOUR_WRITES);
+        readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(readYourWrites != null
+                ? Long.parseLong(readYourWrites.toString()) : READ_YOUR_WRITES_MILLIS);
+        lastWriteNanos = System.nanoTime() - readYourWritesNanos;
 
         logger.info("Initialized DataAPI");
     }
 
+    // Unit of work
+
+    /**
+     * Opens a unit of work with its own EntityManager and an active transaction.
+     * The caller must commit and close it, see {@link UnitOfWork}.
+     * @return a new unit of work
+     */
+    public UnitOfWork openUnitOfWork() {
+        return entityManagerProvider.openUnitOfWork();
+    }
+
+    /**
+     * Runs the given work in its own transaction and commits it. The transaction is rolled back if the work throws.
+     * Safe to call from any thread.
+     * @param work the work to perform
+     * @param <R> the type of the result
+     * @return the result of the work
+     */
+    public <R> R inTransaction(Function<UnitOfWork, R> work) {
+        try (UnitOfWork unitOfWork = openUnitOfWork()) {
+            R result = work.apply(unitOfWork);
+            unitOfWork.commit();
+            logger.info("Committed unit of work");
+
+            return result;
+        }
+    }
+
+    /**
+     * Closes the EntityManager bound to the calling thread. Objects retrieved on the thread become detached.
+     * Worker threads that have used the DataAPI should call this before they finish.
+     */
+    public void releaseEntityManager() {
+        entityManagerProvider.releaseEntityManager();
+    }
+
+    // Read replica
+
+    /**
+     * Checks if reads should go to the replica: there is one, and this DataAPI has not written recently
+     * @return true if reads should go to the replica
+     */
+    private boolean readsFromReplica() {
+        return replicaEnabled && System.nanoTime() - lastWriteNanos >= readYourWritesNanos;
+    }
+
+    /**
+     * Records that this DataAPI has written to the primary database, so its reads stay there for a while
+     */
+    private void wrote() {
+        lastWriteNanos = System.nanoTime();
+    }
+
+    /**
+     * Gets the EntityManager the DAOs use on the calling thread: the detached read's while one runs, otherwise
+     * the thread's own
+     * @return JPA entityManager
+     */
+    private EntityManager getEntityManager() {
+        EntityManager entityManager = detachedEntityManager.get();
+        return entityManager != null ? entityManager : entityManagerProvider.getEntityManager();
+    }
+
+    /**
+     * Runs a read on the calling thread's EntityManager, or against the replica if {@link #readsFromReplica()} allows it.
+     *
+     * A replica read runs in a read-only EntityManager of its own, see {@link #readDetached(Supplier)}, so a stale
+     * copy of an entity never enters the thread's persistence context, where it could be flushed over newer rows in
+     * the primary database, and lazy associations that the read did not load cannot be loaded from what it returns.
+     * @param query the read to perform
+     * @param <R> the type of the result
+     * @return the result of the read
+     */
+    private <R> R read(Supplier<R> query) {
+        // A read inside a detached read uses its EntityManager
+        if (!readsFromReplica() || detachedEntityManager.get() != null) {
+            return query.get();
+        }
+
+        // An active transaction already holds a connection to the primary database
+        if (entityManagerProvider.getEntityManager().getTransaction().isActive()) {
+            return query.get();
+        }
+
+        return readDetached(query);
+    }
+
+    /**
+     * Runs a read in a read-only EntityManager of its own, against the replica if {@link #readsFromReplica()} allows
+     * it, and closes the EntityManager afterwards. The read gets a short transaction, so it holds a connection only
+     * while it runs, and the entities it returns are detached, leaving nothing behind in the thread's persistence
+     * context. What it reads is not put in the second-level cache, which is shared with reads and writes against the
+     * primary database.
+     * @param query the read to perform
+     * @param <R> the type of the result
+     * @return the result of the read
+     */
+    private <R> R readDetached(Supplier<R> query) {
+        if (detachedEntityManager.get() != null) {
+            return query.get();
+        }
+
+        Supplier<R> detachedQuery = () -> {
+            EntityManager entityManager = entityManagerProvider.getEntityManagerFactory()
+                    .createEntityManager(Map.of(CACHE_STORE_MODE, CacheStoreMode.BYPASS));
+            Session session = entityManager.unwrap(Session.class);
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            detachedEntityManager.set(entityManager);
+
+            try {
+                entityManager.getTransaction().begin();
+                R result = query.get();
+                entityManager.getTransaction().commit();
+
+                return result;
+            } finally {
+                detachedEntityManager.remove();
+
+                if (entityManager.getTransaction().isActive()) {
+                    entityManager.getTransaction().rollback();
+                }
+                entityManager.close();
+            }
+        };
+
+        return readsFromReplica() ? RoutingConnectionProvider.onReplica(detachedQuery) : detachedQuery.get();
+    }
+
+    /**
+     * Runs a read in its own unit of work, against the replica if {@link #readsFromReplica()} allows it.
+     * Like {@link #readDetached(Supplier)}, a replica read is read-only and does not put what it reads in the second-level cache.
+     * @param work the read to perform
+     * @param <R> the type of the result
+     * @return the result of the read
+     */
+    private <R> R readInTransaction(Function<UnitOfWork, R> work) {
+        if (!readsFromReplica()) {
+            return inTransaction(work);
+        }
+
+        return RoutingConnectionProvider.onReplica(() -> inTransaction(unitOfWork -> {
+            EntityManager entityManager = unitOfWork.getEntityManager();
+            entityManager.setProperty(CACHE_STORE_MODE, CacheStoreMode.BYPASS);
+            entityManager.unwrap(Session.class).setDefaultReadOnly(true);
+
+            return work.apply(unitOfWork);
+        }));
+    }
+
+    // Statistics
+
+    /**
+     * Gets the Hibernate statistics for the persistence unit, including second-level and query cache hits and misses
+     * @return the Statistics object
+     */
+    public Statistics getStatistics() {
+        return entityManagerProvider.getStatistics();
+    }
+
+    /**
+     * Logs a summary of the second-level and query cache hits and misses
+     */
+    public void logCacheStatistics() {
+        Statistics statistics = getStatistics();
+
+        logger.info(String.format("Second-level cache: %d hits, %d misses, %d puts. Query cache: %d hits, %d misses, %d puts",
+                statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount(), statistics.getSecondLevelCachePutCount(),
+                statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount(), statistics.getQueryCachePutCount()));
+    }
+
     // Login
 
     /**
@@ -55,8 +315,8 @@ public class DataAPI implements API {
         String username = Device.getUsername();
         String uuid = Device.getUUID();
 
-        // Check if user exists
-        User user = getUser(username, uuid);
+        // Check if user exists. Read from the primary database, so a lagging replica cannot cause a second user
+        User user = userDAO.getUser(username, uuid);
         if (user != null) {
             return user;
         }
@@ -73,7 +333,7 @@ public class DataAPI implements API {
      * @return a User object retrieved from the database
      */
     public User getUser(int userid) {
-        Optional<User> optionalUser = userDAO.find(userid);
+        Optional<User> optionalUser = read(() -> userDAO.find(userid));
         logger.info("Retrieved user with userid");
         return optionalUser.orElse(null);
     }
@@ -86,7 +346,7 @@ public class DataAPI implements API {
      */
     public User getUser(String username, String uuid) {
         logger.info("Retrieved user with username and UUID");
-        return userDAO.getUser(username, uuid);
+        return read(() -> userDAO.getUser(username, uuid));
     }
 
     /**
@@ -100,7 +360,10 @@ public class DataAPI implements API {
         }
 
         logger.info("Created User with a User object");
-        return userDAO.save(user).orElse(null);
+        Optional<User> optionalUser = userDAO.save(user);
+        wrote();
+
+        return optionalUser.orElse(null);
     }
 
     /**
@@ -120,6 +383,7 @@ public class DataAPI implements API {
         user.setUuid(uuid);
 
         Optional<User> optionalUser = userDAO.save(user);
+        wrote();
         logger.info("Created User with username " + user.getUsername() + " and UUID " + user.getUuid());
 
         return optionalUser.orElse(null);
@@ -138,7 +402,7 @@ public class DataAPI implements API {
      * @return a List object consisting of User objects
      */
     public List<User> getAllUsers() {
-        return userDAO.findAll();
+        return read(userDAO::findAll);
     }
 
     /**
@@ -154,10 +418,183 @@ public class DataAPI implements API {
      */
     public User saveUser(User user) {
         Optional<User> optionalUser = userDAO.save(user);
+        wrote();
         logger.info("Saved User State");
         return optionalUser.orElse(null);
     }
 
+    /**
+     * Writes the edits recorded in a ChangeSet in a single transaction. Only the recorded images, tags and album
+     * memberships are written, so the cost follows the size of the edit rather than the size of the library.
+     *
+     * The edits are applied to managed copies in a unit of work of their own, so the objects in the change set are
+     * left as they are until the transaction has committed. If it fails, the unit of work is thrown away with
+     * everything it had loaded, nothing has changed, and the same change set can be committed again.
+     * If it succeeds, the change set is cleared and its objects are brought up to date: objects managed on the
+     * calling thread are refreshed from the database, and detached objects are given the edits in memory.
+     *
+     * @param changeSet the recorded edits
+     * @return true if the edits were committed, false if the transaction was rolled back
+     */
+    public boolean commit(ChangeSet changeSet) {
+        if (changeSet.isEmpty()) {
+            return true;
+        }
+
+        Map<ImageData, ImageData> addedImages = new IdentityHashMap<>();
+        wrote();
+
+        try (UnitOfWork work = entityManagerProvider.openUnitOfWork()) {
+            EntityManager entityManager = work.getEntityManager();
+            TagDAO workTagDAO = work.getTagDAO();
+
+            for (ImageData image : changeSet.getAddedImages()) {
+                ImageData copy = new ImageData();
+                copy.setUser(entityManager.getReference(User.class, image.getUser().getUserID()));
+                copy.setPath(image.getPath());
+                copy.setMetadata(image.getMetadata());
+                image.getTags().forEach(tag -> copy.addTag(workTagDAO.findOrCreate(tag.getName())));
+
+                entityManager.persist(copy);
+                addedImages.put(image, copy);
+            }
+
+            for (ChangeSet.TagChange change : changeSet.getTagChanges()) {
+                ImageData image = findManaged(entityManager, change.image, addedImages);
+
+                if (change.added) {
+                    image.addTag(workTagDAO.findOrCreate(change.tag));
+                } else {
+                    image.removeTag(change.tag);
+                }
+            }
+
+            for (ChangeSet.AlbumChange change : changeSet.getAlbumChanges()) {
+                Album album = entityManager.find(Album.class, change.album.getAlbumID());
+                if (album == null) {
+                    throw new EntityNotFoundException("Album " + change.album.getAlbumID() + " does not exist");
+                }
+
+                ImageData image = findManaged(entityManager, change.image, addedImages);
+                if (change.added) {
+                    // A saved image may already be in the album's unloaded entries, which addImage cannot see
+                    if (addedImages.containsKey(change.image) || work.getAlbumDAO().findEntry(album, image).isEmpty()) {
+                        album.addImage(image);
+                    }
+                } else {
+                    album.removeImage(image);
+                }
+            }
+
+            for (ImageData image : changeSet.getRemovedImages()) {
+                ImageData managed = entityManager.find(ImageData.class, image.getImageID());
+                if (managed != null) {
+                    entityManager.remove(managed);
+                }
+            }
+
+            work.commit();
+        } catch (RuntimeException ex) {
+            logger.error("Exception caught while committing change set, nothing was changed", ex);
+            return false;
+        }
+
+        updateCommitted(changeSet, addedImages);
+        logger.info("Committed change set");
+        changeSet.clear();
+
+        return true;
+    }
+
+    /**
+     * Finds the managed copy of an image in the change set being committed
+     * @param entityManager the EntityManager of the commit
+     * @param image the image as recorded in the change set
+     * @param addedImages the copies of the images added by the change set
+     * @return the managed copy
+     * @throws EntityNotFoundException if the image is not in the database
+     */
+    private static ImageData findManaged(EntityManager entityManager, ImageData image, Map<ImageData, ImageData> addedImages) {
+        ImageData managed = addedImages.get(image);
+        if (managed == null) {
+            managed = entityManager.find(ImageData.class, image.getImageID());
+        }
+        if (managed == null) {
+            throw new EntityNotFoundException("Image " + image.getImageID() + " does not exist");
+        }
+
+        return managed;
+    }
+
+    /**
+     * Brings the objects of a committed change set up to date. Objects managed on the calling thread are refreshed,
+     * so their persistence context does not write the edits a second time. Images whose tags were loaded get them
+     * loaded again, so the refresh does not leave them to be loaded by whichever thread reads them next.
+     * Detached objects are given the edits, where the collections they change have been loaded.
+     * @param changeSet the committed change set
+     * @param addedImages the committed copies of the images added by the change set
+     */
+    private void updateCommitted(ChangeSet changeSet, Map<ImageData, ImageData> addedImages) {
+        EntityManager entityManager = entityManagerProvider.getEntityManager();
+        Set<Object> refresh = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        addedImages.forEach((image, copy) -> {
+            image.setImageID(copy.getImageID());
+
+            User user = image.getUser();
+            if (entityManager.contains(user)) {
+                refresh.add(user);
+            } else if (Hibernate.isInitialized(user.getImages())) {
+                user.addImage(image);
+            }
+        });
+
+        for (ChangeSet.TagChange change : changeSet.getTagChanges()) {
+            if (entityManager.contains(change.image)) {
+                refresh.add(change.image);
+            } else if (Hibernate.isInitialized(change.image.getTags())) {
+                if (change.added) {
+                    change.image.addTag(new Tag(change.tag));
+                } else {
+                    change.image.removeTag(change.tag);
+                }
+            }
+        }
+
+        for (ChangeSet.AlbumChange change : changeSet.getAlbumChanges()) {
+            if (entityManager.contains(change.album)) {
+                refresh.add(change.album);
+            } else if (Hibernate.isInitialized(change.album.getEntries())) {
+                if (change.added) {
+                    change.album.addImage(change.image);
+                } else {
+                    change.album.removeImage(change.image);
+                }
+            }
+        }
+
+        for (ImageData image : changeSet.getRemovedImages()) {
+            User user = image.getUser();
+            if (entityManager.contains(image)) {
+                entityManager.detach(image);
+            }
+            if (user != null && entityManager.contains(user)) {
+                refresh.add(user);
+            } else if (user != null && Hibernate.isInitialized(user.getImages())) {
+                user.getImages().remove(image);
+            }
+        }
+
+        for (Object entity : refresh) {
+            boolean tagsLoaded = entity instanceof ImageData && Hibernate.isInitialized(((ImageData) entity).getTags());
+            entityManager.refresh(entity);
+
+            if (tagsLoaded) {
+                Hibernate.initialize(((ImageData) entity).getTags());
+            }
+        }
+    }
+
     /**
      * Deletes a User object from the database
      * @param user the User object to be deleted
@@ -165,6 +602,7 @@ public class DataAPI implements API {
     public void deleteUser(User user) {
         logger.info("Deleted user with username " + user.getUsername());
         userDAO.delete(user);
+        wrote();
     }
 
     // Images
@@ -174,10 +612,21 @@ public class DataAPI implements API {
      * @return An ImageData object retrieved from the database
      */
     public ImageData getImage(int imageid) {
-        Optional<ImageData> optionalImage = imageDAO.find(imageid);
+        Optional<ImageData> optionalImage = read(() -> imageDAO.find(imageid));
         return optionalImage.orElse(null);
     }
 
+    /**
+     * Retrieves an ImageData object based on the image's ImageID, loading what a screen needs along with it.
+     * Use {@link FetchPlan#DETAIL} for the image's properties, which loads its tags and owner in the same statement.
+     * @param imageid the image's ImageID
+     * @param plan the fetch plan for the screen showing the image
+     * @return An ImageData object retrieved from the database, or null if it does not exist
+     */
+    public ImageData getImage(int imageid, FetchPlan plan) {
+        return read(() -> imageDAO.find(imageid, plan)).orElse(null);
+    }
+
     /**
      * Retrieves ImageData objects from the database based on who the images belong to.
      * It is not necessary to use this method in order to get the user's images.
@@ -191,6 +640,163 @@ public class DataAPI implements API {
         return ((user != null) ? user.getImages() : null);
     }
 
+    /**
+     * Retrieves a page of a user's images, newest first, without loading the rest of the library.
+     * To get the next page, pass the ID of the last image in the current page as afterImageId.
+     *
+     * @param user a User object retrieved from the database
+     * @param afterImageId the ID of the last image on the previous page, or 0 for the first page
+     * @param limit maximum number of images to return
+     * @return A List object that consists of at most limit ImageData objects
+     */
+    public List<ImageData> getImages(User user, int afterImageId, int limit) {
+        return read(() -> imageDAO.findByUser(user, afterImageId, limit));
+    }
+
+    /**
+     * Retrieves a page of a user's images with their tags, see {@link #getImages(User, int, int)}. The tags are loaded
+     * by the same read, 50 images per statement, so they can be read even if the images came detached from the replica.
+     *
+     * @param user a User object retrieved from the database
+     * @param afterImageId the ID of the last image on the previous page, or 0 for the first page
+     * @param limit maximum number of images to return
+     * @return A List object that consists of at most limit ImageData objects, with their tags loaded
+     */
+    List<ImageData> getImagesWithTags(User user, int afterImageId, int limit) {
+        return read(() -> {
+            List<ImageData> images = imageDAO.findByUser(user, afterImageId, limit);
+            images.forEach(image -> Hibernate.initialize(image.getTags()));
+
+            return images;
+        });
+    }
+
+    /**
+     * Retrieves a page of a user's images, newest first, loading what a screen needs along with them.
+     * See {@link #getImages(User, int, int)}. Plans that fetch tags are loaded in batches rather than joined,
+     * so the page is still limited by the database.
+     *
+     * @param user a User object retrieved from the database
+     * @param afterImageId the ID of the last image on the previous page, or 0 for the first page
+     * @param limit maximum number of images to return
+     * @param plan the fetch plan for the screen showing the images, such as {@link FetchPlan#GALLERY} or {@link FetchPlan#MAP}
+     * @return A List object that consists of at most limit ImageData objects
+     */
+    public List<ImageData> getImages(User user, int afterImageId, int limit, FetchPlan plan) {
+        return read(() -> imageDAO.findByUser(user, afterImageId, limit, plan));
+    }
+
+    /**
+     * Retrieves a user's images inside a latitude/longitude box, such as the part of the map that is visible,
+     * newest first. Only the images inside the box are read, so panning the map costs the same for any library size.
+     * See {@link ImageDAO#findInBoundingBox}. The images are read in an EntityManager of their own and returned
+     * detached, with their tags not loaded, so the markers of every pan are not kept by the thread's persistence context.
+     *
+     * @param user a User object retrieved from the database
+     * @param south southern latitude of the box
+     * @param west western longitude of the box
+     * @param north northern latitude of the box
+     * @param east eastern longitude of the box
+     * @param limit maximum number of images to return
+     * @return A List object that consists of at most limit ImageData objects with coordinates
+     */
+    public List<ImageData> getImagesInBoundingBox(User user, double south, double west, double north, double east, int limit) {
+        return readDetached(() -> imageDAO.findInBoundingBox(user, south, west, north, east, limit));
+    }
+
+    /**
+     * Retrieves a page of the columns the gallery shows for a user's images, newest first. Reads only those columns
+     * into small immutable objects, without loading entities, tags or metadata objects.
+     * To get the next page, pass the ID of the last row in the current page as afterImageId.
+     *
+     * @param user a User object retrieved from the database
+     * @param afterImageId the ID of the last image on the previous page, or 0 for the first page
+     * @param limit maximum number of rows to return
+     * @return A List object that consists of at most limit GalleryRow objects
+     */
+    public List<GalleryRow> getGalleryRows(User user, int afterImageId, int limit) {
+        return read(() -> imageDAO.findGalleryRows(user, afterImageId, limit));
+    }
+
+    /**
+     * Runs an action on the gallery columns of every image a user has, streamed from the database in its own
+     * unit of work. No entity is loaded, so heap use stays flat without clearing the persistence context.
+     *
+     * @param user a User object retrieved from the database
+     * @param action the action to run for each row
+     */
+    public void forEachGalleryRow(User user, Consumer<GalleryRow> action) {
+        readInTransaction(work -> {
+            try (Stream<GalleryRow> rows = work.getImageDAO().streamGalleryRows(user, BATCH_SIZE)) {
+                rows.forEach(action);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Retrieves a user's images that have a given tag, newest first
+     * @param user a User object retrieved from the database
+     * @param tag the tag's name
+     * @return A List object that consists of ImageData objects
+     */
+    public List<ImageData> getImagesByTag(User user, String tag) {
+        return read(() -> imageDAO.findByTag(user, tag));
+    }
+
+    /**
+     * Runs an action on every image a user has, streaming them from the database in its own unit of work.
+     * The persistence context is cleared every batch, so heap use stays flat regardless of library size.
+     * The images passed to the action are read-only and detached once the batch they belong to is cleared.
+     *
+     * @param user a User object retrieved from the database
+     * @param action the action to run for each image
+     */
+    public void forEachImage(User user, Consumer<ImageData> action) {
+        readInTransaction(work -> {
+            EntityManager entityManager = work.getEntityManager();
+            int count = 0;
+
+            try (Stream<ImageData> images = work.getImageDAO().streamByUser(user, BATCH_SIZE)) {
+                Iterator<ImageData> iterator = images.iterator();
+
+                while (iterator.hasNext()) {
+                    action.accept(iterator.next());
+
+                    if (++count % BATCH_SIZE == 0) {
+                        entityManager.clear();
+                    }
+                }
+            }
+
+            logger.info("Streamed " + count + " images");
+            return count;
+        });
+    }
+
+    /**
+     * Writes a {@link LibrarySnapshot} of a user's library, streaming the images like {@link #forEachImage}.
+     * The application opens the snapshot at start-up to show the library before the database has answered.
+     *
+     * @param user a User object retrieved from the database
+     * @param path the snapshot's file, which is replaced
+     * @return the number of images written
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public int writeSnapshot(User user, Path path) {
+        LibrarySnapshot.Writer writer = LibrarySnapshot.writer(user.getUsername(), user.getUuid());
+        forEachImage(user, writer::add);
+
+        try {
+            writer.writeTo(path);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write library snapshot to " + path, ex);
+        }
+
+        return writer.size();
+    }
+
     /**
      * Saves an ImageData object directly to the database.
      * @param user a User object retrieved from the database
@@ -204,10 +810,67 @@ public class DataAPI implements API {
 
         imagedata.getUser().addImage(imagedata);
         Optional<ImageData> optionalImage = imageDAO.save(imagedata);
+        wrote();
 
         return optionalImage.orElse(null);
     }
 
+    /**
+     * Saves many ImageData objects at once, for example when importing a folder.
+     * The images are inserted in JDBC batches within a single transaction, instead of one transaction per image.
+     *
+     * If the user is managed on the calling thread, the images are added to the user and stay managed along with it.
+     * Otherwise they are detached batch by batch as they are written, keeping memory use flat during large imports,
+     * and the user's image list is left untouched.
+     *
+     * @param user a User object retrieved from the database
+     * @param images the ImageData objects to save
+     * @return the saved ImageData objects, or an empty List if the save failed
+     */
+    public List<ImageData> saveImages(User user, Collection<ImageData> images) {
+        boolean userIsManaged = entityManagerProvider.getEntityManager().contains(user);
+
+        images.forEach(image -> {
+            if (userIsManaged) {
+                user.addImage(image);
+            } else {
+                image.setUser(user);
+            }
+        });
+
+        List<ImageData> savedImages = imageDAO.saveAll(images, BATCH_SIZE, !userIsManaged);
+        wrote();
+        logger.info("Saved " + savedImages.size() + " images in bulk");
+
+        return savedImages;
+    }
+
+    /**
+     * Imports a large number of new images, such as a whole archive on first use, through {@link ImageImporter}.
+     * The images are inserted in JDBC batches and committed every {@value #IMPORT_COMMIT_INTERVAL} images without
+     * entering any persistence context, so memory use stays flat if the images are supplied lazily.
+     *
+     * The imported images are not managed afterwards. If the user is managed on the calling thread, it is refreshed
+     * from the database, so its image list is loaded again, including the imported images, the next time it is used.
+     *
+     * @param user a User object retrieved from the database
+     * @param images the new ImageData objects, read once
+     * @return the number of images imported
+     */
+    public int importImages(User user, Iterable<ImageData> images) {
+        SessionFactory sessionFactory = entityManagerProvider.getEntityManagerFactory().unwrap(SessionFactory.class);
+        int imported = new ImageImporter(sessionFactory, IMPORT_COMMIT_INTERVAL, changeLogEnabled, changeLogOrigin)
+                .importImages(user, images);
+        wrote();
+
+        EntityManager entityManager = entityManagerProvider.getEntityManager();
+        if (entityManager.contains(user)) {
+            entityManager.refresh(user);
+        }
+
+        return imported;
+    }
+
     /**
      * Alias method for saveImage
      * @param imagedata an ImageData object
@@ -225,6 +888,169 @@ public class DataAPI implements API {
         imagedata.getUser().deleteImage(imagedata);
     }
 
+    /**
+     * Removes many of a user's images at once, for example a whole folder. The images are marked as deleted with one
+     * UPDATE per chunk, which hides them from every query straight away, and are deleted for good later by
+     * {@link #purgeDeletedImages(int)}. Unlike {@link #commit(ChangeSet)}, no image is loaded or deleted row by row.
+     *
+     * Loaded instances are marked as deleted and made read-only, so they are never written again. They stay in
+     * already loaded collections, such as {@link User#getImages()}, until those are loaded again.
+     *
+     * @param user a User object retrieved from the database
+     * @param images the ImageData objects to remove
+     * @return the number of images removed
+     */
+    public int removeImages(User user, Collection<ImageData> images) {
+        List<Integer> imageIds = new ArrayList<>(images.size());
+        images.forEach(image -> imageIds.add(image.getImageID()));
+
+        int removed = markDeleted(user, imageIds);
+        images.forEach(this::markLoadedDeleted);
+
+        return removed;
+    }
+
+    /**
+     * Removes all of a user's images whose path starts with a prefix, such as the path of a folder.
+     * See {@link #removeImages(User, Collection)}.
+     * @param user a User object retrieved from the database
+     * @param pathPrefix the start of the paths, matched literally
+     * @return the number of images removed
+     */
+    public int removeImagesUnder(User user, String pathPrefix) {
+        int removed = markDeleted(user, imageDAO.findIdsByPathPrefix(user, pathPrefix));
+
+        if (Hibernate.isInitialized(user.getImages())) {
+            user.getImages().stream()
+                    .filter(image -> image.getPath() != null && image.getPath().startsWith(pathPrefix))
+                    .forEach(this::markLoadedDeleted);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Marks images as deleted in chunks, recording the removals in the change log if it is enabled
+     * @param user the User that owns the images
+     * @param imageIds the IDs of the images
+     * @return the number of images marked, or 0 if the transaction was rolled back
+     */
+    private int markDeleted(User user, List<Integer> imageIds) {
+        EntityManager entityManager = entityManagerProvider.getEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+        boolean ownsTransaction = !transaction.isActive();
+        wrote();
+
+        try {
+            if (ownsTransaction) {
+                transaction.begin();
+            }
+
+            int removed = 0;
+
+            for (int from = 0; from < imageIds.size(); from += DELETE_CHUNK_SIZE) {
+                List<Integer> chunk = imageIds.subList(from, Math.min(from + DELETE_CHUNK_SIZE, imageIds.size()));
+
+                // Bulk statements bypass ChangeLogListener, so the removals are recorded here
+                if (changeLogEnabled) {
+                    changeLogDAO.recordDeletes(user, chunk, changeLogOrigin);
+                }
+
+                removed += imageDAO.markDeleted(user, chunk);
+            }
+
+            if (ownsTransaction) {
+                transaction.commit();
+            }
+
+            logger.info("Removed " + removed + " images");
+            return removed;
+        } catch (Exception ex) {
+            if (ownsTransaction && transaction.isActive()) {
+                transaction.rollback();
+            }
+
+            logger.error("Exception caught while removing images", ex);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Marks a loaded image as deleted. Managed images are made read-only first, so the change is not written back.
+     * @param image the ImageData object
+     */
+    private void markLoadedDeleted(ImageData image) {
+        Session session = entityManagerProvider.getEntityManager().unwrap(Session.class);
+
+        if (session.contains(image)) {
+            session.setReadOnly(image, true);
+        }
+
+        image.setDeleted(true);
+    }
+
+    /**
+     * Deletes the images that have been removed for good, with their tag and album links, one chunk per transaction.
+     * Safe to call from any thread. See {@link Purger} for purging in the background.
+     * @param chunkSize maximum number of images to delete
+     * @return the number of images deleted, 0 once none are left
+     */
+    public int purgeDeletedImages(int chunkSize) {
+        return inTransaction(work -> work.getImageDAO().purge(work.getImageDAO().findDeletedIds(chunkSize)));
+    }
+
+    // Tags
+
+    /**
+     * Counts the user's images per tag, computed by the database rather than by walking the library
+     * @param user a User object retrieved from the database
+     * @return a Map from tag name to number of images, ordered by tag name
+     */
+    public Map<String, Long> getTagCounts(User user) {
+        return read(() -> tagDAO.countByUser(user));
+    }
+
+    /**
+     * Retrieves a page of the IDs of the user's images with a given tag, newest first.
+     * To get the next page, pass the last ID in the current page as afterImageId.
+     * @param user a User object retrieved from the database
+     * @param tag the tag's name
+     * @param afterImageId the last ID of the previous page, or 0 for the first page
+     * @param limit maximum number of IDs to return
+     * @return a List of image IDs
+     */
+    public List<Integer> getImageIdsByTag(User user, String tag, int afterImageId, int limit) {
+        return read(() -> imageDAO.findIdsByTag(user, tag, afterImageId, limit));
+    }
+
+    // Facets
+
+    /**
+     * Counts the user's images per tag, per camera make and model, per capture month and per one-degree map cell.
+     * Every grouping is computed by the database, and all of them are read in one transaction.
+     * @param user a User object retrieved from the database
+     * @return the Facets
+     */
+    public Facets getFacets(User user) {
+        return readInTransaction(work -> new Facets(
+                work.getTagDAO().countByUser(user),
+                work.getImageDAO().countByCamera(user),
+                work.getImageDAO().countByMonth(user),
+                work.getImageDAO().countByGeoCell(user)));
+    }
+
+    /**
+     * Gets the Tag with the given name, creating it if it does not exist yet
+     * @param name the tag's name
+     * @return the Tag object
+     */
+    public Tag getTag(String name) {
+        Tag tag = inTransaction(work -> work.getTagDAO().findOrCreate(name));
+        wrote();
+
+        return tag;
+    }
 
     // Albums
 
@@ -239,6 +1065,7 @@ public class DataAPI implements API {
         album.setUser(user);
 
         Optional<Album> optionalAlbum = albumDAO.save(album);
+        wrote();
         logger.info("Created an album");
 
         return optionalAlbum.orElse(null);
@@ -250,10 +1077,21 @@ public class DataAPI implements API {
      * @return The corresponding album, or null if no match is found
      */
     public Album getAlbum(int albumid) {
-        Optional<Album> optionalAlbum = albumDAO.find(albumid);
+        Optional<Album> optionalAlbum = read(() -> albumDAO.find(albumid));
         return optionalAlbum.orElse(null);
     }
 
+    /**
+     * Gets the album with the given ID, loading what a screen needs along with it.
+     * {@link FetchPlan#ALBUM} loads the album, its entries and their images, in order, in one statement.
+     * @param albumid The ID of the album to be retrieved
+     * @param plan the fetch plan for the screen showing the album
+     * @return The corresponding album, or null if no match is found
+     */
+    public Album getAlbum(int albumid, FetchPlan plan) {
+        return read(() -> albumDAO.find(albumid, plan)).orElse(null);
+    }
+
     /**
      * Gets all the albums linked to a user
      * The change is not written to the database until saveAlbum() is called
@@ -265,27 +1103,119 @@ public class DataAPI implements API {
     }
 
     /**
-     * Adds a single image to an album
+     * Adds a single image to an album, unless it is already in the album
      * The change is not written to the database until saveAlbum() is called
      *
      * @param album The album the image will be added to
      * @param image An ImageData object
      */
     public void addImages(Album album, ImageData image) {
-        album.addImage(image);
-        logger.info("Added image to album");
+        addImages(album, List.of(image));
     }
 
     /**
-     * Adds a list of images to an album
+     * Adds a list of images to an album, skipping the images that are already in it, so that saving the album does not
+     * fail on the album's unique (album, image) pairs. If the album's images have not been loaded, the database is
+     * asked which of the images are in it, rather than loading the whole album.
      * The change is not written to the database until saveAlbum() is called
      *
      * @param album The album the image will be added to
      * @param images A List of ImageData objects
      */
     public void addImages(Album album, List<ImageData> images) {
-        album.addImages(images);
-        logger.info("Added " + images.size() + " images to album.");
+        // Read from the primary database, as a lagging replica could miss an image that was just added
+        Set<Integer> saved = Hibernate.isInitialized(album.getEntries()) || album.getAlbumID() == 0
+                ? Collections.emptySet() : albumDAO.findImageIds(album, images);
+
+        List<ImageData> newImages = new ArrayList<>(images.size());
+        images.forEach(image -> {
+            if (!saved.contains(image.getImageID())) {
+                newImages.add(image);
+            }
+        });
+
+        int added = album.addImages(newImages);
+        logger.info("Added " + added + " of " + images.size() + " images to album.");
+    }
+
+    /**
+     * Retrieves a page of an album's images, in order, without loading the rest of the album.
+     * To get the next page, pass the position of the last entry in the current page as afterPosition.
+     *
+     * @param album The album to read
+     * @param afterPosition the position of the last image on the previous page, or 0 for the first page
+     * @param limit maximum number of images to return
+     * @return A List of at most limit AlbumImage objects, with their images loaded
+     */
+    public List<AlbumImage> getAlbumImages(Album album, int afterPosition, int limit) {
+        return read(() -> albumDAO.findEntries(album, afterPosition, limit));
+    }
+
+    /**
+     * Moves an image within an album. Only the images between the old and the new position are read and updated,
+     * each taking the place of its neighbour, so the rest of the album is left untouched.
+     *
+     * @param album The album to reorder
+     * @param fromPosition the current position of the image to move
+     * @param toPosition the position to move the image to
+     * @return true if the image was moved, false if there is no image at fromPosition or the transaction was rolled back
+     */
+    public boolean moveAlbumImage(Album album, int fromPosition, int toPosition) {
+        if (fromPosition == toPosition) {
+            return true;
+        }
+
+        EntityManager entityManager = entityManagerProvider.getEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+        boolean ownsTransaction = !transaction.isActive();
+        wrote();
+
+        try {
+            if (ownsTransaction) {
+                transaction.begin();
+            }
+
+            List<AlbumImage> range = albumDAO.findEntriesBetween(album,
+                    Math.min(fromPosition, toPosition), Math.max(fromPosition, toPosition));
+            boolean movingDown = fromPosition < toPosition;
+            int movedIndex = movingDown ? 0 : range.size() - 1;
+
+            if (range.isEmpty() || range.get(movedIndex).getPosition() != fromPosition) {
+                if (ownsTransaction) {
+                    transaction.rollback();
+                }
+
+                return false;
+            }
+
+            // Rotate the images over the positions in the range, which keeps any gaps where they are
+            List<Integer> positions = new ArrayList<>(range.size());
+            range.forEach(entry -> positions.add(entry.getPosition()));
+            Collections.rotate(range, movingDown ? -1 : 1);
+
+            for (int i = 0; i < range.size(); i++) {
+                range.get(i).setPosition(positions.get(i));
+            }
+
+            if (ownsTransaction) {
+                transaction.commit();
+            }
+
+            if (Hibernate.isInitialized(album.getEntries())) {
+                album.getEntries().sort(Comparator.comparingInt(AlbumImage::getPosition));
+            }
+
+            logger.info("Moved album image across " + range.size() + " positions");
+            return true;
+        } catch (Exception ex) {
+            if (ownsTransaction && transaction.isActive()) {
+                transaction.rollback();
+            }
+
+            logger.error("Exception caught while moving album image", ex);
+        }
+
+        return false;
     }
 
     /**
@@ -318,6 +1248,7 @@ public class DataAPI implements API {
      */
     public Album saveAlbum(Album album) {
         Optional<Album> optionalAlbum = albumDAO.save(album);
+        wrote();
         logger.info("Saved album to database.");
 
         return optionalAlbum.orElse(null);
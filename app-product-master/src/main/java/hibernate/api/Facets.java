@@ -0,0 +1,76 @@
+package hibernate.api;
+
+import hibernate.model.GeoCell;
+
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Facets class - the counts of a user's images grouped by tag, camera, capture month and map cell.
+ * All groupings are computed by the database in one transaction, see {@link DataAPI#getFacets}.
+ * The maps are ordered and cannot be modified.
+ *
+ * @author Karl Labrador
+ */
+public class Facets {
+    private final Map<String, Long> tags;
+    private final Map<String, Map<String, Long>> cameras;
+    private final Map<YearMonth, Long> months;
+    private final Map<GeoCell, Long> geoCells;
+
+    /**
+     * Constructor for Facets
+     * @param tags number of images per tag name
+     * @param cameras number of images per make and model
+     * @param months number of images per capture month
+     * @param geoCells number of images per one-degree map cell
+     */
+    public Facets(Map<String, Long> tags, Map<String, Map<String, Long>> cameras, Map<YearMonth, Long> months, Map<GeoCell, Long> geoCells) {
+        this.tags = Collections.unmodifiableMap(tags);
+        this.cameras = Collections.unmodifiableMap(cameras);
+        this.months = Collections.unmodifiableMap(months);
+        this.geoCells = Collections.unmodifiableMap(geoCells);
+    }
+
+    /**
+     * Get method for the tag counts
+     * @return a Map from tag name to number of images, ordered by tag name
+     */
+    public Map<String, Long> getTags() {
+        return tags;
+    }
+
+    /**
+     * Get method for the camera counts
+     * @return a Map from make to a Map from model to number of images, ordered by make and model
+     */
+    public Map<String, Map<String, Long>> getCameras() {
+        return cameras;
+    }
+
+    /**
+     * Get method for the capture month counts
+     * @return a Map from month to number of images, ordered by month
+     */
+    public Map<YearMonth, Long> getMonths() {
+        return months;
+    }
+
+    /**
+     * Get method for the map cell counts
+     * @return a Map from cell to number of images, ordered by latitude and longitude
+     */
+    public Map<GeoCell, Long> getGeoCells() {
+        return geoCells;
+    }
+
+    /**
+     * Method that returns a String object with the variable values
+     * @return String with variable values
+     */
+    @Override
+    public String toString() {
+        return String.format("[facets] tags=%s, cameras=%s, months=%s, geoCells=%s", tags, cameras, months, geoCells);
+    }
+}
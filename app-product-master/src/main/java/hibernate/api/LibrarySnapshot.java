@@ -0,0 +1,502 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.Metadata;
+import hibernate.model.Tag;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * LibrarySnapshot class - a compact, read-only copy of a user's library in a file, which the application can show
+ * before the database is ready.
+ *
+ * The file is columnar: after a header with the format version, the owner and the number of images, every field
+ * is stored as one column with a value per image, and tag names are stored once in a dictionary. The file is
+ * read into memory in one go when it is opened and closed at once, so a new snapshot can replace it while the old
+ * one is in use, and values are only decoded when they are used.
+ *
+ * Snapshots are written with {@link Writer} through {@link DataAPI#writeSnapshot}, and opened with
+ * {@link #open(Path)}. A snapshot of another format version, or a damaged one, is not opened.
+ *
+ * @author Karl Labrador
+ */
+public class LibrarySnapshot {
+    public final static int VERSION = 1;
+    private final static int MAGIC = 0x4C494253; // "LIBS"
+    private final static long NO_DATE = Long.MIN_VALUE;
+    private final static Logger logger = Logger.getLogger(LibrarySnapshot.class);
+    private final ByteBuffer buffer;
+    private final long written;
+    private final String username;
+    private final String uuid;
+    private final int size;
+    private final String[] tagNames;
+    private final int hasMetadataColumn;
+    private final int imageIdColumn;
+    private final int widthColumn;
+    private final int heightColumn;
+    private final int capturedColumn;
+    private final int latitudeColumn;
+    private final int longitudeColumn;
+    private final StringColumn pathColumn;
+    private final StringColumn makeColumn;
+    private final StringColumn modelColumn;
+    private final int tagOffsetColumn;
+    private final int tagIndexColumn;
+
+    /**
+     * Reads the header and finds the columns of a snapshot
+     * @param buffer the snapshot's contents
+     */
+    private LibrarySnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a library snapshot");
+        }
+
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Library snapshot version " + version + " is not supported");
+        }
+
+        written = buffer.getLong();
+        username = readString(buffer);
+        uuid = readString(buffer);
+        size = buffer.getInt();
+
+        tagNames = new String[buffer.getInt()];
+        for (int i = 0; i < tagNames.length; i++) {
+            tagNames[i] = readString(buffer);
+        }
+
+        hasMetadataColumn = skip(size);
+        imageIdColumn = skip(size * Integer.BYTES);
+        widthColumn = skip(size * Integer.BYTES);
+        heightColumn = skip(size * Integer.BYTES);
+        capturedColumn = skip(size * Long.BYTES);
+        latitudeColumn = skip(size * Double.BYTES);
+        longitudeColumn = skip(size * Double.BYTES);
+        pathColumn = new StringColumn();
+        makeColumn = new StringColumn();
+        modelColumn = new StringColumn();
+        tagOffsetColumn = skip((size + 1) * Integer.BYTES);
+        tagIndexColumn = skip(buffer.getInt(tagOffsetColumn + size * Integer.BYTES) * Integer.BYTES);
+    }
+
+    /**
+     * Opens a snapshot by reading its file into memory
+     * @param path the snapshot's file
+     * @return the snapshot, or an empty Optional if the file does not exist, is of another version or is damaged
+     */
+    public static Optional<LibrarySnapshot> open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Library snapshot of " + length + " bytes is too large");
+            }
+
+            // A heap buffer rather than a mapping, which would keep the file locked on Windows until it is collected
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read until the buffer is full or the file ends
+            }
+            buffer.flip();
+
+            LibrarySnapshot snapshot = new LibrarySnapshot(buffer);
+            logger.info("Opened library snapshot with " + snapshot.size() + " images");
+
+            return Optional.of(snapshot);
+        } catch (NoSuchFileException ex) {
+            logger.info("No library snapshot at " + path);
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("Could not open library snapshot at " + path + ": " + ex.getMessage());
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Creates a Writer for a new snapshot
+     * @param username the username of the library's owner
+     * @param uuid the UUID of the library's owner
+     * @return an empty Writer
+     */
+    public static Writer writer(String username, String uuid) {
+        return new Writer(username, uuid);
+    }
+
+    /**
+     * Get method for the time the snapshot was written
+     * @return the time the snapshot was written
+     */
+    public Date getWritten() {
+        return new Date(written);
+    }
+
+    /**
+     * Get method for username
+     * @return the username of the library's owner
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Get method for uuid
+     * @return the UUID of the library's owner
+     */
+    public String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * Checks if the snapshot is of a given user's library
+     * @param username the user's username
+     * @param uuid the user's UUID
+     * @return true if the user owns the library
+     */
+    public boolean isOwnedBy(String username, String uuid) {
+        return this.username.equals(username) && this.uuid.equals(uuid);
+    }
+
+    /**
+     * Gets the number of images in the snapshot
+     * @return the number of images
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the ID of an image
+     * @param index the image's index in the snapshot
+     * @return the image's ID
+     */
+    public int getImageID(int index) {
+        return buffer.getInt(imageIdColumn + index * Integer.BYTES);
+    }
+
+    /**
+     * Gets the path of an image
+     * @param index the image's index in the snapshot
+     * @return the image's path
+     */
+    public String getPath(int index) {
+        return pathColumn.get(index);
+    }
+
+    /**
+     * Gets the tag names of an image
+     * @param index the image's index in the snapshot
+     * @return a sorted List of tag names
+     */
+    public List<String> getTagNames(int index) {
+        int from = buffer.getInt(tagOffsetColumn + index * Integer.BYTES);
+        int to = buffer.getInt(tagOffsetColumn + (index + 1) * Integer.BYTES);
+        List<String> names = new ArrayList<>(to - from);
+
+        for (int i = from; i < to; i++) {
+            names.add(tagNames[buffer.getInt(tagIndexColumn + i * Integer.BYTES)]);
+        }
+
+        return names;
+    }
+
+    /**
+     * Gets the metadata of an image
+     * @param index the image's index in the snapshot
+     * @return a new Metadata object, or null if the image has no metadata
+     */
+    public Metadata getMetadata(int index) {
+        if (buffer.get(hasMetadataColumn + index) == 0) {
+            return null;
+        }
+
+        Metadata metadata = new Metadata();
+        metadata.setWidth(buffer.getInt(widthColumn + index * Integer.BYTES));
+        metadata.setHeight(buffer.getInt(heightColumn + index * Integer.BYTES));
+        metadata.setLatitude(buffer.getDouble(latitudeColumn + index * Double.BYTES));
+        metadata.setLongitude(buffer.getDouble(longitudeColumn + index * Double.BYTES));
+        metadata.setMake(makeColumn.get(index));
+        metadata.setModel(modelColumn.get(index));
+
+        long captured = buffer.getLong(capturedColumn + index * Long.BYTES);
+        metadata.setCaptured(captured != NO_DATE ? new Date(captured) : null);
+
+        return metadata;
+    }
+
+    /**
+     * Creates an ImageData object for an image. It is not managed by any EntityManager and has no user,
+     * so it is only meant to be shown until the image has been loaded from the database.
+     * @param index the image's index in the snapshot
+     * @return a new ImageData object
+     */
+    public ImageData toImageData(int index) {
+        ImageData image = new ImageData();
+        image.setImageID(getImageID(index));
+        image.setPath(getPath(index));
+        image.setMetadata(getMetadata(index));
+
+        Set<Tag> tags = new HashSet<>();
+        getTagNames(index).forEach(name -> tags.add(new Tag(name)));
+        image.setTags(tags);
+
+        return image;
+    }
+
+    /**
+     * Moves the buffer past a column
+     * @param length the column's length in bytes
+     * @return the column's position
+     */
+    private int skip(int length) {
+        int position = buffer.position();
+        buffer.position(position + length);
+
+        return position;
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string at the buffer's position
+     * @param buffer the buffer
+     * @return the string
+     */
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A column of strings: the offset of every string in a block of UTF-8 bytes, followed by the block.
+     * Null is stored as an empty string.
+     */
+    private class StringColumn {
+        private final int offsets;
+        private final int bytes;
+
+        /**
+         * Finds the column at the buffer's position and moves the buffer past it
+         */
+        StringColumn() {
+            offsets = skip((size + 1) * Integer.BYTES);
+            bytes = skip(buffer.getInt(offsets + size * Integer.BYTES));
+        }
+
+        /**
+         * Gets a string
+         * @param index the image's index in the snapshot
+         * @return the string, or null if it is empty
+         */
+        String get(int index) {
+            int from = buffer.getInt(offsets + index * Integer.BYTES);
+            int to = buffer.getInt(offsets + (index + 1) * Integer.BYTES);
+
+            if (from == to) {
+                return null;
+            }
+
+            byte[] value = new byte[to - from];
+            buffer.duplicate().position(bytes + from).get(value);
+
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Writer class - collects the images of a library column by column and writes them as a snapshot.
+     * Images are read once when they are added, so they can be streamed, and only their columns are kept.
+     */
+    public static class Writer {
+        private final String username;
+        private final String uuid;
+        private final Map<String, Integer> tagIndexes = new HashMap<>();
+        private final Column hasMetadata = new Column();
+        private final Column imageIds = new Column();
+        private final Column widths = new Column();
+        private final Column heights = new Column();
+        private final Column captured = new Column();
+        private final Column latitudes = new Column();
+        private final Column longitudes = new Column();
+        private final Column[] paths = {new Column(), new Column()};
+        private final Column[] makes = {new Column(), new Column()};
+        private final Column[] models = {new Column(), new Column()};
+        private final Column tagOffsets = new Column();
+        private final Column tagIndexColumn = new Column();
+        private int size;
+        private int tagCount;
+
+        /**
+         * Constructor for Writer
+         * @param username the username of the library's owner
+         * @param uuid the UUID of the library's owner
+         */
+        private Writer(String username, String uuid) {
+            this.username = username;
+            this.uuid = uuid;
+
+            try {
+                for (Column[] column : List.of(paths, makes, models)) {
+                    column[0].data.writeInt(0);
+                }
+
+                tagOffsets.data.writeInt(0);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        /**
+         * Adds an image, reading its tags
+         * @param image the ImageData object
+         * @return this Writer
+         */
+        public Writer add(ImageData image) {
+            Metadata metadata = image.getMetadata();
+
+            try {
+                hasMetadata.data.writeBoolean(metadata != null);
+                imageIds.data.writeInt(image.getImageID());
+                widths.data.writeInt(metadata != null ? metadata.getWidth() : 0);
+                heights.data.writeInt(metadata != null ? metadata.getHeight() : 0);
+                captured.data.writeLong(metadata != null && metadata.getCaptured() != null ? metadata.getCaptured().getTime() : NO_DATE);
+                latitudes.data.writeDouble(metadata != null ? metadata.getLatitude() : 0);
+                longitudes.data.writeDouble(metadata != null ? metadata.getLongitude() : 0);
+                addString(paths, image.getPath());
+                addString(makes, metadata != null ? metadata.getMake() : null);
+                addString(models, metadata != null ? metadata.getModel() : null);
+
+                for (String name : image.getTagNames()) {
+                    Integer index = tagIndexes.computeIfAbsent(name, key -> tagIndexes.size());
+                    tagIndexColumn.data.writeInt(index);
+                    tagCount++;
+                }
+
+                tagOffsets.data.writeInt(tagCount);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+
+            size++;
+            return this;
+        }
+
+        /**
+         * Gets the number of images added
+         * @return the number of images
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Writes the snapshot. The file is replaced at once, so a reader never sees a half-written snapshot.
+         * @param path the snapshot's file
+         * @throws IOException if the file cannot be written
+         */
+        public void writeTo(Path path) throws IOException {
+            Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temporary))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                writeString(out, username);
+                writeString(out, uuid);
+                out.writeInt(size);
+
+                String[] names = new String[tagIndexes.size()];
+                tagIndexes.forEach((name, index) -> names[index] = name);
+                out.writeInt(names.length);
+                for (String name : names) {
+                    writeString(out, name);
+                }
+
+                for (Column column : List.of(hasMetadata, imageIds, widths, heights, captured, latitudes, longitudes,
+                        paths[0], paths[1], makes[0], makes[1], models[0], models[1], tagOffsets, tagIndexColumn)) {
+                    column.writeTo(out);
+                }
+            } catch (IOException ex) {
+                Files.deleteIfExists(temporary);
+                throw ex;
+            }
+
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            logger.info("Wrote library snapshot with " + size + " images");
+        }
+
+        /**
+         * Adds a string to a string column
+         * @param column the offsets and bytes of the column
+         * @param value the string, or null
+         * @throws IOException never, as the column is in memory
+         */
+        private static void addString(Column[] column, String value) throws IOException {
+            if (value != null) {
+                column[1].data.write(value.getBytes(StandardCharsets.UTF_8));
+            }
+
+            column[0].data.writeInt(column[1].bytes.size());
+        }
+
+        /**
+         * Writes a length-prefixed UTF-8 string
+         * @param out the stream
+         * @param value the string
+         * @throws IOException if the stream cannot be written
+         */
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * A column being written, kept in memory until the snapshot is written
+     */
+    private static class Column {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream data = new DataOutputStream(bytes);
+
+        /**
+         * Writes the column's bytes
+         * @param out the stream
+         * @throws IOException if the stream cannot be written
+         */
+        void writeTo(OutputStream out) throws IOException {
+            bytes.writeTo(out);
+        }
+    }
+}
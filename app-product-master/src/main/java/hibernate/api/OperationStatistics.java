@@ -0,0 +1,181 @@
+package hibernate.api;
+
+import hibernate.dao.StatementCounter;
+import org.apache.log4j.Logger;
+import org.hibernate.stat.Statistics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * OperationStatistics class - records the SQL statements, rows and time of every {@link API} operation.
+ *
+ * Wrap a DataAPI with {@link #record(DataAPI)} and use the returned API in its place. Every call through it is
+ * measured and added to the totals of its method:
+ * <ul>
+ *     <li>statements are counted by {@link StatementCounter} on the calling thread, so they are exact,</li>
+ *     <li>rows are the entities loaded, read from the factory-wide Hibernate Statistics, so they are only exact
+ *     while no other thread uses the same persistence unit, and</li>
+ *     <li>time is wall-clock time spent in the call.</li>
+ * </ul>
+ * Calls a DataAPI method makes to its own methods are counted as part of the outer call.
+ *
+ * @author Karl Labrador
+ */
+public class OperationStatistics implements InvocationHandler {
+    private final static Logger logger = Logger.getLogger(OperationStatistics.class);
+    private final DataAPI target;
+    private final API api;
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for OperationStatistics
+     * @param target the DataAPI whose operations are recorded
+     */
+    private OperationStatistics(DataAPI target) {
+        this.target = target;
+        this.api = (API) Proxy.newProxyInstance(API.class.getClassLoader(), new Class<?>[] {API.class}, this);
+    }
+
+    /**
+     * Starts recording the operations of a DataAPI
+     * @param target the DataAPI whose operations are recorded
+     * @return the OperationStatistics, whose {@link #getAPI()} must be used in place of the DataAPI
+     */
+    public static OperationStatistics record(DataAPI target) {
+        return new OperationStatistics(target);
+    }
+
+    /**
+     * Gets the API that records every call before passing it on to the DataAPI
+     * @return the recording API
+     */
+    public API getAPI() {
+        return api;
+    }
+
+    /**
+     * Gets the totals per operation
+     * @return an unmodifiable Map from method name to its totals, ordered by name
+     */
+    public Map<String, Operation> getOperations() {
+        return Collections.unmodifiableMap(new TreeMap<>(operations));
+    }
+
+    /**
+     * Logs the totals of every operation that has been called
+     */
+    public void log() {
+        getOperations().forEach((name, operation) -> logger.info(name + ": " + operation));
+    }
+
+    /**
+     * Measures a call and passes it on to the DataAPI
+     * @param proxy the recording API
+     * @param method the method called
+     * @param args the arguments
+     * @return the result of the call
+     * @throws Throwable whatever the DataAPI method throws
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this, args);
+        }
+
+        Statistics statistics = target.getStatistics();
+        long statements = StatementCounter.getCount();
+        long rows = statistics.getEntityLoadCount();
+        long start = System.nanoTime();
+
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        } finally {
+            operations.computeIfAbsent(method.getName(), name -> new Operation())
+                    .add(StatementCounter.getCount() - statements, statistics.getEntityLoadCount() - rows, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The totals of one operation over all of its calls
+     */
+    public static class Operation {
+        private long calls;
+        private long statements;
+        private long maxStatements;
+        private long rows;
+        private long nanos;
+
+        /**
+         * Adds a call to the totals
+         * @param statements statements prepared during the call
+         * @param rows entities loaded during the call
+         * @param nanos time spent in the call
+         */
+        synchronized void add(long statements, long rows, long nanos) {
+            this.calls++;
+            this.statements += statements;
+            this.maxStatements = Math.max(this.maxStatements, statements);
+            this.rows += rows;
+            this.nanos += nanos;
+        }
+
+        /**
+         * Get method for calls
+         * @return the number of calls
+         */
+        public synchronized long getCalls() {
+            return calls;
+        }
+
+        /**
+         * Get method for statements
+         * @return the statements prepared by all calls
+         */
+        public synchronized long getStatements() {
+            return statements;
+        }
+
+        /**
+         * Get method for maxStatements
+         * @return the most statements prepared by one call
+         */
+        public synchronized long getMaxStatements() {
+            return maxStatements;
+        }
+
+        /**
+         * Get method for rows
+         * @return the entities loaded by all calls
+         */
+        public synchronized long getRows() {
+            return rows;
+        }
+
+        /**
+         * Get method for the time spent
+         * @return the time spent in all calls, in milliseconds
+         */
+        public synchronized long getMillis() {
+            return nanos / 1_000_000;
+        }
+
+        /**
+         * Method that returns a String object with the variable values
+         * @return String with variable values
+         */
+        @Override
+        public synchronized String toString() {
+            return String.format("%d calls, %d statements (max %d per call), %d rows, %d ms",
+                    calls, statements, maxStatements, rows, nanos / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package hibernate.api;
+
+import org.apache.log4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Purger class - deletes removed images for good in the background.
+ *
+ * {@link DataAPI#removeImages} only marks images as deleted, so removing a whole folder takes one UPDATE per chunk.
+ * The purger later deletes the marked images with their tag and album links, one chunk per transaction, so the
+ * removal never holds long locks and the UI never waits for it.
+ *
+ * @author Karl Labrador
+ */
+public class Purger implements AutoCloseable {
+    private final static int CHUNK_SIZE = 1000;
+    private final static Logger logger = Logger.getLogger(Purger.class);
+    private final DataAPI dataAPI;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor for Purger
+     * @param dataAPI the DataAPI for the database to purge
+     */
+    public Purger(DataAPI dataAPI) {
+        this.dataAPI = dataAPI;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    dataAPI.releaseEntityManager();
+                }
+            }, "purger");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Starts purging in the background
+     * @param interval the time between the end of one run and the start of the next
+     */
+    public void start(Duration interval) {
+        scheduler.scheduleWithFixedDelay(this::runOnce, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Started purging every " + interval);
+    }
+
+    /**
+     * Deletes chunks of removed images until none are left. Failures are logged and retried by the next run.
+     * @return the number of images deleted
+     */
+    public synchronized int runOnce() {
+        int purged = 0;
+
+        try {
+            int chunk;
+
+            do {
+                chunk = dataAPI.purgeDeletedImages(CHUNK_SIZE);
+                purged += chunk;
+            } while (chunk == CHUNK_SIZE);
+
+            if (purged > 0) {
+                logger.info("Purged " + purged + " removed images");
+            }
+        } catch (Exception ex) {
+            logger.warn("Purging failed, retrying at the next run", ex);
+        }
+
+        return purged;
+    }
+
+    /**
+     * Stops purging. A run in progress is allowed to finish.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+    }
+}
@@ -0,0 +1,112 @@
+package hibernate.api;
+
+import hibernate.model.User;
+import org.apache.log4j.Logger;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SnapshotWriter class - writes the {@link LibrarySnapshot} of a library in the background, some time after it
+ * has changed.
+ *
+ * A snapshot streams the whole library, so it is written on a thread of its own rather than on the persistence
+ * thread, where it would hold up every other operation. Requests made while a write is waiting are merged into it,
+ * so a burst of changes, such as tagging images one by one, writes one snapshot. A request made while a snapshot is
+ * being written schedules another, so the last change is always included. Closing the writer writes a snapshot
+ * that is still waiting at once, so the last change is not lost when the application exits.
+ *
+ * @author Karl Labrador
+ */
+public class SnapshotWriter implements AutoCloseable {
+    private final static Logger logger = Logger.getLogger(SnapshotWriter.class);
+    private final static Duration CLOSE_TIMEOUT = Duration.ofSeconds(30);
+    private final DataAPI dataAPI;
+    private final Path path;
+    private final Duration delay;
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler;
+    private volatile User user;
+
+    /**
+     * Constructor for SnapshotWriter
+     * @param dataAPI the DataAPI to read the library from
+     * @param path the snapshot's file, which is replaced by every write
+     * @param delay the time to wait after a request before writing, during which more requests are merged
+     */
+    public SnapshotWriter(DataAPI dataAPI, Path path, Duration delay) {
+        this.dataAPI = dataAPI;
+        this.path = path;
+        this.delay = delay;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    dataAPI.releaseEntityManager();
+                }
+            }, "snapshot-writer");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Requests a new snapshot of a user's library, written once the delay has passed unless one is already waiting
+     * @param user a User object retrieved from the database
+     */
+    public void request(User user) {
+        this.user = user;
+        if (!pending.getAndSet(true)) {
+            scheduler.schedule(() -> write(user), delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the snapshot. Failures are logged, and the next request tries again.
+     * @param user a User object retrieved from the database
+     */
+    private void write(User user) {
+        // Cleared first, so a change made while the library is read schedules another snapshot
+        pending.set(false);
+
+        try {
+            dataAPI.writeSnapshot(user, path);
+        } catch (Exception ex) {
+            logger.warn("Could not write library snapshot", ex);
+        }
+    }
+
+    /**
+     * Stops writing snapshots in the background. A write in progress is allowed to finish, and a write that is still
+     * waiting for its delay is done at once on the calling thread.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+
+        try {
+            if (!scheduler.awaitTermination(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                logger.warn("Library snapshot was not written within " + CLOSE_TIMEOUT);
+                return;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (pending.get()) {
+            try {
+                write(user);
+            } finally {
+                dataAPI.releaseEntityManager();
+            }
+        }
+    }
+}
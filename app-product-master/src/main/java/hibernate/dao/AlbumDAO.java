@@ -1,7 +1,16 @@
 package hibernate.dao;
 
 import hibernate.model.Album;
+import hibernate.model.AlbumImage;
+import hibernate.model.ImageData;
+
 import javax.persistence.EntityManager;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * AlbumDAO class - data access object for Album objects. Extends abstract class GenericDAO.
@@ -14,4 +23,81 @@ public class AlbumDAO extends GenericDAO<Album, Integer>{
         super(entityManager);
         setEntityClass(Album.class);
     }
+
+    public AlbumDAO(Supplier<EntityManager> entityManagerSupplier){
+        super(entityManagerSupplier);
+        setEntityClass(Album.class);
+    }
+
+    /**
+     * Finds a page of an album's images, in order, with the images fetched in the same query
+     * @param album the album
+     * @param afterPosition the position of the last image on the previous page, or 0 for the first page
+     * @param limit maximum number of images to return
+     * @return a List of AlbumImage objects, ordered by position
+     */
+    public List<AlbumImage> findEntries(Album album, int afterPosition, int limit) {
+        return getEntityManager().createNamedQuery("AlbumImage.findByAlbumAfter", AlbumImage.class)
+                .setParameter("album", album)
+                .setParameter("afterPosition", afterPosition)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Finds an album's images between two positions, both included
+     * @param album the album
+     * @param from the lowest position
+     * @param to the highest position
+     * @return a List of AlbumImage objects, ordered by position
+     */
+    public List<AlbumImage> findEntriesBetween(Album album, int from, int to) {
+        return getEntityManager().createNamedQuery("AlbumImage.findByAlbumBetween", AlbumImage.class)
+                .setParameter("album", album)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultList();
+    }
+
+    /**
+     * Finds an image's place in an album
+     * @param album the album
+     * @param image the image
+     * @return an Optional with the AlbumImage, or empty if the image is not in the album
+     */
+    public Optional<AlbumImage> findEntry(Album album, ImageData image) {
+        return getEntityManager().createNamedQuery("AlbumImage.findByAlbumAndImage", AlbumImage.class)
+                .setParameter("album", album)
+                .setParameter("image", image)
+                .getResultStream()
+                .findFirst();
+    }
+
+    /**
+     * Finds which of the given images are already in an album, without loading the album's other images
+     * @param album the album
+     * @param images the images to look for
+     * @return a Set with the IDs of the images that are in the album
+     */
+    public Set<Integer> findImageIds(Album album, Collection<ImageData> images) {
+        if (images.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        return new HashSet<>(getEntityManager().createNamedQuery("AlbumImage.findImageIdsByAlbumAndImages", Integer.class)
+                .setParameter("album", album)
+                .setParameter("images", images)
+                .getResultList());
+    }
+
+    /**
+     * Counts the images in an album without loading them
+     * @param album the album
+     * @return the number of images
+     */
+    public long countImages(Album album) {
+        return getEntityManager().createNamedQuery("AlbumImage.countByAlbum", Long.class)
+                .setParameter("album", album)
+                .getSingleResult();
+    }
 }
@@ -0,0 +1,112 @@
+package hibernate.dao;
+
+import hibernate.model.ChangeLogEntry;
+import hibernate.model.User;
+import org.hibernate.query.NativeQuery;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * ChangeLogDAO class - data access object for ChangeLogEntry objects. Extends abstract class GenericDAO.
+ *
+ * @author Karl Labrador
+ */
+public class ChangeLogDAO extends GenericDAO<ChangeLogEntry, Long> {
+    // Records one entry per image, for writes that bypass ChangeLogListener. Also used by ImageImporter.
+    static final String RECORD_IMAGES_SQL = "INSERT INTO change_log (username, uuid, path, operation, origin, changed) "
+            + "SELECT u.username, u.uuid, i.path, :operation, :origin, CURRENT_TIMESTAMP "
+            + "FROM images i JOIN users u ON u.userid = i.userid "
+            + "WHERE i.userid = :userid AND i.imageid IN (:imageids)";
+
+    public ChangeLogDAO(EntityManager entityManager) {
+        super(entityManager);
+        setEntityClass(ChangeLogEntry.class);
+    }
+
+    public ChangeLogDAO(Supplier<EntityManager> entityManagerSupplier) {
+        super(entityManagerSupplier);
+        setEntityClass(ChangeLogEntry.class);
+    }
+
+    /**
+     * Finds the oldest entries in the change log
+     * @param limit maximum number of entries to return
+     * @return a List of entries, oldest first
+     */
+    public List<ChangeLogEntry> findOldest(int limit) {
+        return getEntityManager().createNamedQuery("ChangeLogEntry.findAll", ChangeLogEntry.class)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Finds the entries for a user's images that were written after a given entry by other devices
+     * @param username the username of the images' owner
+     * @param uuid the UUID of the images' owner
+     * @param origin the device whose own entries are left out
+     * @param afterChangeId the ID of the last entry already read, or 0 to start from the beginning
+     * @param limit maximum number of entries to return
+     * @return a List of entries, oldest first
+     */
+    public List<ChangeLogEntry> findForUserAfter(String username, String uuid, String origin, long afterChangeId, int limit) {
+        return getEntityManager().createNamedQuery("ChangeLogEntry.findForUserAfter", ChangeLogEntry.class)
+                .setParameter("username", username)
+                .setParameter("uuid", uuid)
+                .setParameter("origin", origin)
+                .setParameter("afterChangeId", afterChangeId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Gets the ID of the newest entry in the change log
+     * @return the ID, or 0 if the change log is empty
+     */
+    public long getLastChangeId() {
+        Long lastChangeId = getEntityManager().createNamedQuery("ChangeLogEntry.lastChangeId", Long.class)
+                .getSingleResult();
+
+        return lastChangeId != null ? lastChangeId : 0L;
+    }
+
+    /**
+     * Records the deletion of a user's images with a single INSERT ... SELECT, for removals that bypass
+     * {@link hibernate.sync.ChangeLogListener}. Must be called within a transaction, before the images are purged.
+     * @param user the User that owns the images
+     * @param imageIds the IDs of the images
+     * @param origin the device to record as the origin, or null
+     * @return the number of entries written
+     */
+    public int recordDeletes(User user, Collection<Integer> imageIds, String origin) {
+        if (imageIds.isEmpty()) {
+            return 0;
+        }
+
+        return getEntityManager().createNativeQuery(RECORD_IMAGES_SQL)
+                .setParameter("operation", ChangeLogEntry.Operation.DELETE.name())
+                .setParameter("origin", origin)
+                .setParameter("userid", user.getUserID())
+                .setParameter("imageids", imageIds)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(ChangeLogEntry.class)
+                .executeUpdate();
+    }
+
+    /**
+     * Deletes the given entries. Must be called within a transaction.
+     * @param changeIds the IDs of the entries
+     * @return the number of deleted entries
+     */
+    public int deleteAll(Collection<Long> changeIds) {
+        if (changeIds.isEmpty()) {
+            return 0;
+        }
+
+        return getEntityManager().createNamedQuery("ChangeLogEntry.deleteByIds")
+                .setParameter("changeids", changeIds)
+                .executeUpdate();
+    }
+}
@@ -0,0 +1,119 @@
+package hibernate.dao;
+
+import org.apache.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * EntityManagerProvider class - hands out EntityManagers from one shared EntityManagerFactory.
+ *
+ * An EntityManagerFactory is expensive and thread safe, so it is created once per persistence unit and
+ * reused by every provider for that unit. EntityManagers are cheap but not thread safe, so each thread
+ * gets its own through {@link #getEntityManager()}, and short-lived transaction scopes can be opened with
+ * {@link #openUnitOfWork()}.
+ *
+ * @author Karl Labrador
+ */
+public class EntityManagerProvider {
+    private final static Logger logger = Logger.getLogger(EntityManagerProvider.class);
+    private final static Map<String, EntityManagerFactory> entityManagerFactories = new ConcurrentHashMap<>();
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final ThreadLocal<EntityManager> threadEntityManager = new ThreadLocal<>();
+
+    /**
+     * Creates a provider for a persistence unit declared in persistence.xml
+     * @param persistenceUnitName name of the persistence unit
+     */
+    public EntityManagerProvider(String persistenceUnitName) {
+        this(persistenceUnitName, Collections.emptyMap());
+    }
+
+    /**
+     * Creates a provider for a persistence unit, overriding some of its properties.
+     * Providers with the same unit name and overrides share one EntityManagerFactory.
+     * @param persistenceUnitName name of the persistence unit
+     * @param properties properties that override the ones in persistence.xml
+     */
+    public EntityManagerProvider(String persistenceUnitName, Map<String, ?> properties) {
+        String key = persistenceUnitName + new TreeMap<>(properties);
+
+        entityManagerFactory = entityManagerFactories.computeIfAbsent(key, k -> {
+            logger.info("Creating EntityManagerFactory for persistence unit " + persistenceUnitName);
+            return Persistence.createEntityManagerFactory(persistenceUnitName, properties);
+        });
+    }
+
+    /**
+     * Gets the shared EntityManagerFactory
+     * @return the EntityManagerFactory
+     */
+    public EntityManagerFactory getEntityManagerFactory() {
+        return entityManagerFactory;
+    }
+
+    /**
+     * Gets the Hibernate statistics of the shared factory, such as second-level and query cache hits and misses.
+     * Statistics are only collected when hibernate.generate_statistics is enabled.
+     * @return the Statistics object
+     */
+    public Statistics getStatistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * Gets the EntityManager bound to the calling thread, creating one if the thread has none.
+     * Entities loaded through it stay managed until the thread releases it.
+     * @return the calling thread's EntityManager
+     */
+    public EntityManager getEntityManager() {
+        EntityManager entityManager = threadEntityManager.get();
+
+        if (entityManager == null || !entityManager.isOpen()) {
+            entityManager = entityManagerFactory.createEntityManager();
+            threadEntityManager.set(entityManager);
+        }
+
+        return entityManager;
+    }
+
+    /**
+     * Closes the EntityManager bound to the calling thread. Worker threads should call this when they are done.
+     */
+    public void releaseEntityManager() {
+        EntityManager entityManager = threadEntityManager.get();
+        threadEntityManager.remove();
+
+        if (entityManager != null && entityManager.isOpen()) {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Opens a new unit of work with its own EntityManager and an active transaction
+     * @return the unit of work
+     */
+    public UnitOfWork openUnitOfWork() {
+        return new UnitOfWork(entityManagerFactory);
+    }
+
+    /**
+     * Closes every EntityManagerFactory that has been created. Should only be called on application exit.
+     */
+    public static void closeAll() {
+        entityManagerFactories.values().forEach(entityManagerFactory -> {
+            if (entityManagerFactory.isOpen()) {
+                entityManagerFactory.close();
+            }
+        });
+        entityManagerFactories.clear();
+    }
+}
@@ -0,0 +1,101 @@
+package hibernate.dao;
+
+import hibernate.model.Album;
+import hibernate.model.ImageData;
+
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.Map;
+
+/**
+ * FetchPlan enum - what a screen needs loaded along with the entities it shows.
+ *
+ * Each plan names a {@link javax.persistence.NamedEntityGraph} on the entity it applies to, and is passed to
+ * the database as a fetch graph. Associations in the graph are fetched in the same statement, and everything
+ * else is left lazy, so a screen loads what it renders in a bounded number of statements.
+ *
+ * An entity loaded by id is read from the second-level cache when it is there, which ignores the graph and
+ * leaves its associations to be loaded one by one, so plans bypass the cache when loading by id.
+ *
+ * Plans that fetch a collection are only used where one entity is loaded, as a paged query cannot limit
+ * rows in the database once a collection is joined.
+ *
+ * @author Karl Labrador
+ */
+public enum FetchPlan {
+    /** Thumbnails in the gallery: path and metadata only */
+    GALLERY(ImageData.class, "ImageData.gallery"),
+    /** The properties of one image: its metadata, tags and owner */
+    DETAIL(ImageData.class, "ImageData.detail"),
+    /** Markers on the map: path and coordinates only */
+    MAP(ImageData.class, "ImageData.map"),
+    /** An album with its images in order, without their tags */
+    ALBUM(Album.class, "Album.view");
+
+    private final static String FETCH_GRAPH_HINT = "javax.persistence.fetchgraph";
+    private final static String RETRIEVE_MODE_HINT = "javax.persistence.cache.retrieveMode";
+    private final Class<?> entityClass;
+    private final String graphName;
+
+    FetchPlan(Class<?> entityClass, String graphName) {
+        this.entityClass = entityClass;
+        this.graphName = graphName;
+    }
+
+    /**
+     * Get method for entityClass
+     * @return the entity the plan applies to
+     */
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * Get method for graphName
+     * @return the name of the entity graph
+     */
+    public String getGraphName() {
+        return graphName;
+    }
+
+    /**
+     * Gets the hints to pass to {@link EntityManager#find(Class, Object, Map)}
+     * @param entityManager the EntityManager that will load the entity
+     * @param entityClass the entity being loaded
+     * @return a Map with the fetch graph hint, and a hint to read the entity from the database rather than the cache
+     * @throws IllegalArgumentException if the plan is for another entity
+     */
+    Map<String, Object> toHints(EntityManager entityManager, Class<?> entityClass) {
+        checkEntity(entityClass);
+
+        return Map.of(FETCH_GRAPH_HINT, entityManager.getEntityGraph(graphName),
+                RETRIEVE_MODE_HINT, CacheRetrieveMode.BYPASS);
+    }
+
+    /**
+     * Applies the plan to a query
+     * @param entityManager the EntityManager that created the query
+     * @param query the query
+     * @param entityClass the entity being loaded
+     * @param <T> the entity type
+     * @return the query
+     * @throws IllegalArgumentException if the plan is for another entity
+     */
+    <T> TypedQuery<T> applyTo(EntityManager entityManager, TypedQuery<T> query, Class<T> entityClass) {
+        checkEntity(entityClass);
+
+        return query.setHint(FETCH_GRAPH_HINT, entityManager.getEntityGraph(graphName));
+    }
+
+    /**
+     * Checks that the plan is for the given entity
+     * @param entityClass the entity being loaded
+     */
+    private void checkEntity(Class<?> entityClass) {
+        if (this.entityClass != entityClass) {
+            throw new IllegalArgumentException(name() + " is a fetch plan for " + this.entityClass.getSimpleName()
+                    + ", not " + entityClass.getSimpleName());
+        }
+    }
+}
@@ -1,15 +1,21 @@
 package hibernate.dao;
 
 import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
+import javax.persistence.EntityTransaction;
 import javax.persistence.Query;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * Abstract DAO class that covers basic methods that apply to all DAOs
  *
+ * A DAO does not own an EntityManager. It asks its supplier for one on every call, which lets the
+ * same DAO be used from several threads when the supplier hands out a per-thread EntityManager.
+ * If a transaction is already active on the EntityManager (see {@link UnitOfWork}), the DAO joins it
+ * instead of committing on its own.
+ *
  * @author Karl Labrador
  * @author Lars-Håvard Holter Bråten
  *
@@ -17,8 +23,7 @@ import java.util.Optional;
  * @param <ID> Data type of the primary identifier
  */
 public abstract class GenericDAO<T, ID extends Serializable> implements DAO<T, ID> {
-    @PersistenceContext
-    protected EntityManager entityManager;
+    private final Supplier<EntityManager> entityManagerSupplier;
 
     private Class<T> entityClass;
 
@@ -27,7 +32,23 @@ public abstract class GenericDAO<T, ID extends Serializable> implements DAO<T, I
      * @param entityManager JPA entityManager
      */
     public GenericDAO(EntityManager entityManager) {
-        this.entityManager = entityManager;
+        this(() -> entityManager);
+    }
+
+    /**
+     * Constructor for DAOs that resolve their EntityManager on every call
+     * @param entityManagerSupplier supplier of the EntityManager to use for the current call
+     */
+    public GenericDAO(Supplier<EntityManager> entityManagerSupplier) {
+        this.entityManagerSupplier = entityManagerSupplier;
+    }
+
+    /**
+     * Gets the EntityManager for the current call
+     * @return JPA entityManager
+     */
+    protected EntityManager getEntityManager() {
+        return entityManagerSupplier.get();
     }
 
     /**
@@ -45,7 +66,7 @@ public abstract class GenericDAO<T, ID extends Serializable> implements DAO<T, I
      */
     public Optional<T> find(ID id) {
         try {
-            return Optional.ofNullable(entityManager.find(entityClass, id));
+            return Optional.ofNullable(getEntityManager().find(entityClass, id));
         } catch (Exception ex) {
             ex.printStackTrace();
         }
@@ -53,13 +74,25 @@ public abstract class GenericDAO<T, ID extends Serializable> implements DAO<T, I
         return Optional.empty();
     }
 
+    /**
+     * Finds data by ID, loading what the given fetch plan names in the same statement
+     * @param id The ID of the entity
+     * @param plan the fetch plan, which must be for this DAO's entity
+     * @return Optional object
+     */
+    public Optional<T> find(ID id, FetchPlan plan) {
+        EntityManager entityManager = getEntityManager();
+
+        return Optional.ofNullable(entityManager.find(entityClass, id, plan.toHints(entityManager, entityClass)));
+    }
+
     /**
      * Finds all data
      * @return a List object that contains User objects if there are results
      */
     @SuppressWarnings("unchecked")
     public List<T> findAll() {
-        Query nq = entityManager.createNamedQuery(entityClass.getSimpleName() + ".findAll");
+        Query nq = getEntityManager().createNamedQuery(entityClass.getSimpleName() + ".findAll");
         return nq.getResultList();
     }
 
@@ -69,13 +102,24 @@ public abstract class GenericDAO<T, ID extends Serializable> implements DAO<T, I
      * @return The entity/persistence object in its current state
      */
     public Optional<T> save(T entity) {
+        EntityManager entityManager = getEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+        boolean ownsTransaction = !transaction.isActive();
+
         try {
-            entityManager.getTransaction().begin();
+            if (ownsTransaction) {
+                transaction.begin();
+            }
+
             entityManager.persist(entity);
-            entityManager.getTransaction().commit();
+
+            if (ownsTransaction) {
+                transaction.commit();
+            }
 
             return Optional.ofNullable(entity);
         } catch (Exception ex) {
+            rollback(transaction, ownsTransaction);
             ex.printStackTrace();
         }
 
@@ -87,12 +131,35 @@ public abstract class GenericDAO<T, ID extends Serializable> implements DAO<T, I
      * @param entity The entity/persistence object
      */
     public void delete(T entity) {
+        EntityManager entityManager = getEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+        boolean ownsTransaction = !transaction.isActive();
+
         try {
-            entityManager.getTransaction().begin();
+            if (ownsTransaction) {
+                transaction.begin();
+            }
+
             entityManager.remove(entity);
-            entityManager.getTransaction().commit();
+
+            if (ownsTransaction) {
+                transaction.commit();
+            }
         } catch (Exception ex) {
+            rollback(transaction, ownsTransaction);
             ex.printStackTrace();
         }
     }
+
+    /**
+     * Rolls back a transaction this DAO started, so the EntityManager can be used again.
+     * Transactions owned by a {@link UnitOfWork} are left to the unit of work.
+     * @param transaction the transaction to roll back
+     * @param ownsTransaction true if the DAO began the transaction
+     */
+    protected void rollback(EntityTransaction transaction, boolean ownsTransaction) {
+        if (ownsTransaction && transaction.isActive()) {
+            transaction.rollback();
+        }
+    }
 }
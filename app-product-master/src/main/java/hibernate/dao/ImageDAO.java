@@ -1,8 +1,25 @@
 package hibernate.dao;
 
+import hibernate.model.AlbumImage;
+import hibernate.model.GalleryRow;
+import hibernate.model.GeoCell;
 import hibernate.model.ImageData;
+import hibernate.model.User;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.query.NativeQuery;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.TypedQuery;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * ImageDAO class - data access object for ImageData objects. Extends abstract class GenericDAO.
@@ -15,4 +32,376 @@ public class ImageDAO extends GenericDAO<ImageData, Integer> {
         super(entityManager);
         setEntityClass(ImageData.class);
     }
+
+    public ImageDAO(Supplier<EntityManager> entityManagerSupplier) {
+        super(entityManagerSupplier);
+        setEntityClass(ImageData.class);
+    }
+
+    /**
+     * Persists a collection of images in a single transaction. Hibernate sends the inserts as JDBC batches
+     * of hibernate.jdbc.batch_size statements.
+     *
+     * When detachFlushed is true, the persistence context is flushed every batchSize images and the flushed
+     * images are detached, so memory stays flat no matter how many images are saved. Otherwise the images stay
+     * managed and everything is flushed once on commit.
+     *
+     * @param images the ImageData objects to persist
+     * @param batchSize number of images per flush, should match hibernate.jdbc.batch_size
+     * @param detachFlushed true to detach images once they have been flushed
+     * @return the persisted images, or an empty List if the transaction failed
+     */
+    public List<ImageData> saveAll(Collection<ImageData> images, int batchSize, boolean detachFlushed) {
+        EntityManager entityManager = getEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+        boolean ownsTransaction = !transaction.isActive();
+        List<ImageData> saved = new ArrayList<>(images.size());
+        List<ImageData> chunk = new ArrayList<>(batchSize);
+
+        try {
+            if (ownsTransaction) {
+                transaction.begin();
+            }
+
+            for (ImageData image : images) {
+                entityManager.persist(image);
+                saved.add(image);
+                chunk.add(image);
+
+                if (detachFlushed && chunk.size() == batchSize) {
+                    entityManager.flush();
+                    chunk.forEach(entityManager::detach);
+                    chunk.clear();
+                }
+            }
+
+            if (ownsTransaction) {
+                transaction.commit();
+            }
+
+            return saved;
+        } catch (Exception ex) {
+            rollback(transaction, ownsTransaction);
+            ex.printStackTrace();
+        }
+
+        return new ArrayList<>();
+    }
+
+    /**
+     * Finds a page of a user's images, newest first. Uses keyset pagination: pass the ID of the last image of
+     * the previous page instead of an offset, so every page is an index range scan no matter how deep it is.
+     * Loads the images for {@link FetchPlan#GALLERY}.
+     * @param user the User that owns the images
+     * @param afterImageId the ID of the last image on the previous page, or 0 for the first page
+     * @param limit maximum number of images to return
+     * @return a List with at most limit ImageData objects, ordered by ID descending
+     */
+    public List<ImageData> findByUser(User user, int afterImageId, int limit) {
+        return findByUser(user, afterImageId, limit, FetchPlan.GALLERY);
+    }
+
+    /**
+     * Finds a page of a user's images, newest first, loading what the given fetch plan names
+     * @param user the User that owns the images
+     * @param afterImageId the ID of the last image on the previous page, or 0 for the first page
+     * @param limit maximum number of images to return
+     * @param plan the fetch plan for the screen showing the images
+     * @return a List of ImageData objects
+     */
+    public List<ImageData> findByUser(User user, int afterImageId, int limit, FetchPlan plan) {
+        TypedQuery<ImageData> tq;
+
+        if (afterImageId > 0) {
+            tq = getEntityManager().createNamedQuery("ImageData.findByUserAfter", ImageData.class);
+            tq.setParameter("afterImageId", afterImageId);
+        } else {
+            tq = getEntityManager().createNamedQuery("ImageData.findByUser", ImageData.class);
+        }
+
+        tq.setParameter("user", user);
+        tq.setMaxResults(limit);
+
+        return plan.applyTo(getEntityManager(), tq, ImageData.class).getResultList();
+    }
+
+    /**
+     * Finds a user's images taken inside a latitude/longitude box, such as the visible part of the map, newest first.
+     * The box is matched by the database through idx_images_userid_lat_lon, so images outside it are never loaded.
+     * Images without coordinates, stored as 0, 0, are left out. A box whose west edge is east of its east edge
+     * crosses the antimeridian.
+     * @param user the User that owns the images
+     * @param south southern latitude of the box
+     * @param west western longitude of the box
+     * @param north northern latitude of the box
+     * @param east eastern longitude of the box
+     * @param limit maximum number of images to return
+     * @return a List of ImageData objects, loaded with {@link FetchPlan#MAP}
+     */
+    public List<ImageData> findInBoundingBox(User user, double south, double west, double north, double east, int limit) {
+        if (south > north) {
+            throw new IllegalArgumentException("South edge " + south + " is north of north edge " + north);
+        }
+
+        TypedQuery<ImageData> tq = getEntityManager().createNamedQuery(west <= east
+                ? "ImageData.findInBoundingBox" : "ImageData.findInBoundingBoxAcrossAntimeridian", ImageData.class);
+        tq.setParameter("user", user);
+        tq.setParameter("south", south);
+        tq.setParameter("north", north);
+        tq.setParameter("west", west);
+        tq.setParameter("east", east);
+        tq.setMaxResults(limit);
+
+        return FetchPlan.MAP.applyTo(getEntityManager(), tq, ImageData.class).getResultList();
+    }
+
+    /**
+     * Finds a page of a user's images as GalleryRow projections, newest first, using keyset pagination like
+     * {@link #findByUser(User, int, int)}. No entity is loaded, so nothing enters the persistence context.
+     * @param user the User that owns the images
+     * @param afterImageId the ID of the last image on the previous page, or 0 for the first page
+     * @param limit maximum number of rows to return
+     * @return a List of GalleryRow objects
+     */
+    public List<GalleryRow> findGalleryRows(User user, int afterImageId, int limit) {
+        TypedQuery<GalleryRow> tq;
+
+        if (afterImageId > 0) {
+            tq = getEntityManager().createNamedQuery("ImageData.findGalleryRowsByUserAfter", GalleryRow.class);
+            tq.setParameter("afterImageId", afterImageId);
+        } else {
+            tq = getEntityManager().createNamedQuery("ImageData.findGalleryRowsByUser", GalleryRow.class);
+        }
+
+        tq.setParameter("user", user);
+        tq.setMaxResults(limit);
+
+        return tq.getResultList();
+    }
+
+    /**
+     * Streams all of a user's images as GalleryRow projections, newest first. Rows that have been consumed can be
+     * garbage collected, as the persistence context holds no reference to them. The stream must be closed.
+     * @param user the User that owns the images
+     * @param fetchSize number of rows to fetch per round-trip. See {@link #streamByUser(User, int)}.
+     * @return a Stream of GalleryRow objects
+     */
+    public Stream<GalleryRow> streamGalleryRows(User user, int fetchSize) {
+        return getEntityManager().createNamedQuery("ImageData.findGalleryRowsByUser", GalleryRow.class)
+                .setParameter("user", user)
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .getResultStream();
+    }
+
+    /**
+     * Finds a user's images that have a given tag, newest first.
+     * Resolved through the unique tag name and the tagid index on image_tags, rather than scanning tag rows.
+     * @param user the User that owns the images
+     * @param name the tag's name
+     * @return a List of ImageData objects
+     */
+    public List<ImageData> findByTag(User user, String name) {
+        return getEntityManager().createNamedQuery("ImageData.findByTag", ImageData.class)
+                .setParameter("user", user)
+                .setParameter("name", name)
+                .getResultList();
+    }
+
+    /**
+     * Finds a page of the IDs of a user's images that have a given tag, newest first.
+     * Only the IDs are read, so no ImageData objects are loaded.
+     * @param user the User that owns the images
+     * @param name the tag's name
+     * @param afterImageId the last ID of the previous page, or 0 for the first page
+     * @param limit maximum number of IDs to return
+     * @return a List of image IDs, ordered descending
+     */
+    public List<Integer> findIdsByTag(User user, String name, int afterImageId, int limit) {
+        TypedQuery<Integer> tq;
+
+        if (afterImageId > 0) {
+            tq = getEntityManager().createNamedQuery("ImageData.findIdsByTagAfter", Integer.class);
+            tq.setParameter("afterImageId", afterImageId);
+        } else {
+            tq = getEntityManager().createNamedQuery("ImageData.findIdsByTag", Integer.class);
+        }
+
+        tq.setParameter("user", user);
+        tq.setParameter("name", name);
+        tq.setMaxResults(limit);
+
+        return tq.getResultList();
+    }
+
+    /**
+     * Finds the IDs of a user's images whose path starts with a prefix, such as a folder
+     * @param user the User that owns the images
+     * @param pathPrefix the start of the paths, matched literally
+     * @return a List of image IDs
+     */
+    public List<Integer> findIdsByPathPrefix(User user, String pathPrefix) {
+        String escaped = pathPrefix.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+
+        return getEntityManager().createNamedQuery("ImageData.findIdsByPathPrefix", Integer.class)
+                .setParameter("user", user)
+                .setParameter("prefix", escaped + "%")
+                .getResultList();
+    }
+
+    /**
+     * Marks a user's images as deleted with a single UPDATE. Must be called within a transaction.
+     * The images are hidden from queries at once, and removed for good by {@link #purge}.
+     * @param user the User that owns the images
+     * @param imageIds the IDs of the images
+     * @return the number of images marked
+     */
+    public int markDeleted(User user, Collection<Integer> imageIds) {
+        if (imageIds.isEmpty()) {
+            return 0;
+        }
+
+        return getEntityManager().createNamedQuery("ImageData.markDeleted")
+                .setParameter("user", user)
+                .setParameter("imageids", imageIds)
+                .executeUpdate();
+    }
+
+    /**
+     * Finds the IDs of images that are marked as deleted. Native SQL, as the mapped queries hide them.
+     * @param limit maximum number of IDs to return
+     * @return a List of image IDs
+     */
+    public List<Integer> findDeletedIds(int limit) {
+        List<?> rows = getEntityManager().createNativeQuery("SELECT imageid FROM images WHERE deleted = TRUE")
+                .setMaxResults(limit)
+                .getResultList();
+
+        List<Integer> imageIds = new ArrayList<>(rows.size());
+        rows.forEach(row -> imageIds.add(((Number) row).intValue()));
+
+        return imageIds;
+    }
+
+    /**
+     * Deletes images for good, together with their album links and tag links, with one DELETE per table.
+     * Must be called within a transaction. Native SQL, as the join tables are not entities and the mapped
+     * queries hide deleted images. Only the cache regions of images and album entries are invalidated.
+     * @param imageIds the IDs of the images
+     * @return the number of images deleted
+     */
+    public int purge(Collection<Integer> imageIds) {
+        if (imageIds.isEmpty()) {
+            return 0;
+        }
+
+        executeNativeUpdate("DELETE FROM album_images WHERE imageid IN (:imageids)", imageIds, AlbumImage.class);
+        executeNativeUpdate("DELETE FROM image_tags WHERE imageid IN (:imageids)", imageIds, ImageData.class);
+
+        return executeNativeUpdate("DELETE FROM images WHERE imageid IN (:imageids)", imageIds, ImageData.class);
+    }
+
+    /**
+     * Runs a native update for a set of image IDs
+     * @param sql the statement, with an :imageids parameter
+     * @param imageIds the IDs of the images
+     * @param affectedEntity the entity whose cache regions become stale
+     * @return the number of rows changed
+     */
+    private int executeNativeUpdate(String sql, Collection<Integer> imageIds, Class<?> affectedEntity) {
+        return getEntityManager().createNativeQuery(sql)
+                .setParameter("imageids", imageIds)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(affectedEntity)
+                .executeUpdate();
+    }
+
+    /**
+     * Counts a user's images per camera. The grouping is done by the database.
+     * @param user the User that owns the images
+     * @return a Map from make to a Map from model to number of images, ordered by make and model.
+     * Images without a make, or with an empty one, are left out, and a missing model is counted under an empty string.
+     */
+    public Map<String, Map<String, Long>> countByCamera(User user) {
+        List<Object[]> rows = getEntityManager().createNamedQuery("ImageData.countByCamera", Object[].class)
+                .setParameter("user", user)
+                .getResultList();
+
+        Map<String, Map<String, Long>> counts = new LinkedHashMap<>();
+        rows.forEach(row -> counts.computeIfAbsent((String) row[0], make -> new LinkedHashMap<>())
+                .put(row[1] != null ? (String) row[1] : "", (Long) row[2]));
+
+        return counts;
+    }
+
+    /**
+     * Counts a user's images per month they were captured in. The grouping is done by the database.
+     * @param user the User that owns the images
+     * @return a Map from month to number of images, ordered by month. Images without a capture date are left out.
+     */
+    public Map<YearMonth, Long> countByMonth(User user) {
+        List<Object[]> rows = getEntityManager().createNamedQuery("ImageData.countByMonth", Object[].class)
+                .setParameter("user", user)
+                .getResultList();
+
+        Map<YearMonth, Long> counts = new LinkedHashMap<>();
+        rows.forEach(row -> counts.put(YearMonth.of(((Number) row[0]).intValue(), ((Number) row[1]).intValue()), (Long) row[2]));
+
+        return counts;
+    }
+
+    /**
+     * Counts a user's images per one-degree cell on the map. The grouping is done by the database.
+     * @param user the User that owns the images
+     * @return a Map from cell to number of images, ordered by latitude and longitude.
+     * Images without coordinates are left out.
+     */
+    public Map<GeoCell, Long> countByGeoCell(User user) {
+        List<Object[]> rows = getEntityManager().createNamedQuery("ImageData.countByGeoCell", Object[].class)
+                .setParameter("user", user)
+                .getResultList();
+
+        Map<GeoCell, Long> counts = new LinkedHashMap<>();
+        rows.forEach(row -> counts.put(new GeoCell(((Number) row[0]).intValue(), ((Number) row[1]).intValue()), (Long) row[2]));
+
+        return counts;
+    }
+
+    /**
+     * Finds an image by its owner's username and UUID and its path, which identify the image in every database
+     * @param username the username of the image's owner
+     * @param uuid the UUID of the image's owner
+     * @param path the path of the image
+     * @return Optional object
+     */
+    public Optional<ImageData> findByPath(String username, String uuid, String path) {
+        TypedQuery<ImageData> query = getEntityManager().createNamedQuery("ImageData.findByUserAndPath", ImageData.class);
+
+        // Callers compare the tags, which are fetched along with the image
+        return FetchPlan.DETAIL.applyTo(getEntityManager(), query, ImageData.class)
+                .setParameter("username", username)
+                .setParameter("uuid", uuid)
+                .setParameter("path", path)
+                .getResultStream()
+                .findFirst();
+    }
+
+    /**
+     * Streams all of a user's images, newest first, backed by a forward-only Hibernate ScrollableResults.
+     * Rows are read from the database as the stream is consumed, and the images are loaded read-only.
+     *
+     * The stream must be closed, preferably with try-with-resources. Streamed images still enter the persistence
+     * context, so long streams should run in a {@link UnitOfWork} that is cleared as it goes.
+     * On MySQL, a fetchSize of Integer.MIN_VALUE makes the driver stream rows instead of buffering the result.
+     *
+     * @param user the User that owns the images
+     * @param fetchSize number of rows the JDBC driver fetches per round-trip
+     * @return a Stream of ImageData objects
+     */
+    public Stream<ImageData> streamByUser(User user, int fetchSize) {
+        return getEntityManager().createNamedQuery("ImageData.findByUser", ImageData.class)
+                .setParameter("user", user)
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.READ_ONLY, true)
+                .getResultStream();
+    }
 }
@@ -0,0 +1,163 @@
+package hibernate.dao;
+
+import hibernate.model.ChangeLogEntry;
+import hibernate.model.ImageData;
+import hibernate.model.User;
+import org.apache.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ImageImporter class - inserts a large number of new images through a Hibernate StatelessSession.
+ *
+ * A StatelessSession has no persistence context, so imported images are not tracked, snapshotted or kept
+ * reachable by Hibernate. Inserts are sent in JDBC batches and committed every commitInterval images, so memory
+ * use stays flat however large the import is, as long as the images are supplied lazily, for example from a stream.
+ *
+ * A StatelessSession does not cascade, write collections or fire event listeners. The importer therefore writes
+ * the image_tags links itself, creating missing tags as it goes in transactions of their own, and records the
+ * imported images in the change log when asked to. It bypasses the second-level cache, and evicts the query cache once the import is done.
+ *
+ * @author Karl Labrador
+ */
+public class ImageImporter {
+    private final static Logger logger = Logger.getLogger(ImageImporter.class);
+    private final SessionFactory sessionFactory;
+    private final int commitInterval;
+    private final boolean recordChanges;
+    private final String origin;
+
+    /**
+     * Constructor for ImageImporter
+     * @param sessionFactory the SessionFactory of the persistence unit to import into
+     * @param commitInterval number of images to insert per transaction
+     * @param recordChanges true to record the imported images in the change log
+     * @param origin the device to record as the origin of the changes, or null
+     */
+    public ImageImporter(SessionFactory sessionFactory, int commitInterval, boolean recordChanges, String origin) {
+        this.sessionFactory = sessionFactory;
+        this.commitInterval = commitInterval;
+        this.recordChanges = recordChanges;
+        this.origin = origin;
+    }
+
+    /**
+     * Inserts new images for a user, commitInterval images per transaction. The images get their IDs, but are not
+     * managed afterwards, and the user's image list is left untouched.
+     *
+     * If a transaction fails, it is rolled back and the import stops. The images committed before it are kept.
+     *
+     * @param user the User that will own the images. Must already be saved.
+     * @param images the new ImageData objects, read once
+     * @return the number of images imported
+     */
+    public int importImages(User user, Iterable<ImageData> images) {
+        int imported = 0;
+        Map<String, Integer> tagIds = new HashMap<>();
+
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            List<Integer> imageIds = new ArrayList<>(commitInterval);
+            List<int[]> links = new ArrayList<>();
+            Transaction transaction = session.beginTransaction();
+
+            try {
+                for (ImageData image : images) {
+                    image.setUser(user);
+                    int imageId = (Integer) session.insert(image);
+                    imageIds.add(imageId);
+
+                    for (String name : image.getTagNames()) {
+                        links.add(new int[] {imageId, tagIds.computeIfAbsent(name, tagName -> findOrInsertTag(session, tagName))});
+                    }
+
+                    if (imageIds.size() == commitInterval) {
+                        writeChunk(session, user, imageIds, links);
+                        transaction.commit();
+                        imported += imageIds.size();
+                        imageIds.clear();
+                        links.clear();
+
+                        transaction = session.beginTransaction();
+                    }
+                }
+
+                writeChunk(session, user, imageIds, links);
+                transaction.commit();
+                imported += imageIds.size();
+            } catch (Exception ex) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+
+                logger.error("Exception caught while importing images, " + imported + " were imported", ex);
+            }
+        }
+
+        sessionFactory.getCache().evictDefaultQueryRegion();
+        logger.info("Imported " + imported + " images");
+
+        return imported;
+    }
+
+    /**
+     * Sends the pending image inserts, then the chunk's tag links and change log entries
+     * @param session the StatelessSession
+     * @param user the User that owns the images
+     * @param imageIds the IDs of the chunk's images
+     * @param links the chunk's image and tag ID pairs
+     */
+    private void writeChunk(StatelessSession session, User user, List<Integer> imageIds, List<int[]> links) {
+        if (imageIds.isEmpty()) {
+            return;
+        }
+
+        // The links refer to the images, so the batched image inserts must reach the database first
+        ((SharedSessionContractImplementor) session).getJdbcCoordinator().executeBatch();
+
+        if (!links.isEmpty()) {
+            session.doWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO image_tags (imageid, tagid) VALUES (?, ?)")) {
+                    for (int[] link : links) {
+                        statement.setInt(1, link[0]);
+                        statement.setInt(2, link[1]);
+                        statement.addBatch();
+                    }
+
+                    statement.executeBatch();
+                }
+            });
+        }
+
+        if (recordChanges) {
+            session.createNativeQuery(ChangeLogDAO.RECORD_IMAGES_SQL)
+                    .setParameter("operation", ChangeLogEntry.Operation.UPSERT.name())
+                    .setParameter("origin", origin)
+                    .setParameter("userid", user.getUserID())
+                    .setParameterList("imageids", imageIds)
+                    .executeUpdate();
+        }
+    }
+
+    /**
+     * Finds the ID of the tag with the given name, or inserts a new tag. A new tag is committed in a transaction of
+     * its own, see {@link TagDAO#insertOrFind}, so an import and another transaction creating the same tag at once
+     * do not fail on the unique tag name.
+     * @param session the StatelessSession
+     * @param name the tag's name
+     * @return the tag's ID
+     */
+    private int findOrInsertTag(StatelessSession session, String name) {
+        return session.createNamedQuery("Tag.findIdByName", Integer.class)
+                .setParameter("name", name)
+                .uniqueResultOptional()
+                .orElseGet(() -> TagDAO.insertOrFind(sessionFactory, name).getTagID());
+    }
+}
@@ -0,0 +1,167 @@
+package hibernate.dao;
+
+import org.apache.log4j.Logger;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.hikaricp.internal.HikariCPConnectionProvider;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * RoutingConnectionProvider class - hands out connections from a primary and a read replica Hikari pool.
+ *
+ * Registered in persistence.xml as hibernate.connection.provider_class. The primary pool uses the unit's normal
+ * JDBC settings, and the replica pool the same settings with {@link #REPLICA_URL}, {@link #REPLICA_USER} and
+ * {@link #REPLICA_PASSWORD} in their place. Both pools get the hibernate.hikari settings. Without a replica URL,
+ * every connection comes from the primary pool.
+ *
+ * Connections come from the primary pool, except while the calling thread runs {@link #onReplica(Supplier)}.
+ * Hibernate acquires a connection when a transaction begins and releases it when the transaction ends, so the
+ * pool is chosen per transaction. See {@link hibernate.api.DataAPI} for which operations read from the replica.
+ *
+ * @author Karl Labrador
+ */
+public class RoutingConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+    public final static String REPLICA_URL = "app-product.replica.url";
+    public final static String REPLICA_USER = "app-product.replica.user";
+    public final static String REPLICA_PASSWORD = "app-product.replica.password";
+    public final static String READ_YOUR_WRITES = "app-product.replica.read_your_writes";
+    private final static Logger logger = Logger.getLogger(RoutingConnectionProvider.class);
+    private final static ThreadLocal<Boolean> readFromReplica = ThreadLocal.withInitial(() -> false);
+    private final HikariCPConnectionProvider primary = new HikariCPConnectionProvider();
+    private HikariCPConnectionProvider replica;
+
+    /**
+     * Runs work with connections from the replica pool on the calling thread
+     * @param work the work to perform
+     * @param <R> the type of the result
+     * @return the result of the work
+     */
+    public static <R> R onReplica(Supplier<R> work) {
+        boolean previous = readFromReplica.get();
+        readFromReplica.set(true);
+
+        try {
+            return work.get();
+        } finally {
+            readFromReplica.set(previous);
+        }
+    }
+
+    /**
+     * Creates the pools
+     * @param configurationValues the persistence unit's settings
+     */
+    @Override
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public void configure(Map configurationValues) {
+        primary.configure(configurationValues);
+
+        Object replicaUrl = configurationValues.get(REPLICA_URL);
+        if (replicaUrl == null || replicaUrl.toString().isEmpty()) {
+            logger.info("No read replica configured, all connections use the primary database");
+            return;
+        }
+
+        Map replicaValues = new HashMap(configurationValues);
+        replicaValues.put(AvailableSettings.URL, replicaUrl);
+        replicaValues.put(AvailableSettings.JPA_JDBC_URL, replicaUrl);
+        copySetting(configurationValues, replicaValues, REPLICA_USER, AvailableSettings.USER, AvailableSettings.JPA_JDBC_USER);
+        copySetting(configurationValues, replicaValues, REPLICA_PASSWORD, AvailableSettings.PASS, AvailableSettings.JPA_JDBC_PASSWORD);
+
+        replica = new HikariCPConnectionProvider();
+        replica.configure(replicaValues);
+        logger.info("Reading from replica " + replicaUrl);
+    }
+
+    /**
+     * Overrides the replica pool's settings with a replica setting, if it is given
+     * @param source the persistence unit's settings
+     * @param target the replica pool's settings
+     * @param replicaKey the replica setting
+     * @param keys the settings it overrides
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static void copySetting(Map source, Map target, String replicaKey, String... keys) {
+        Object value = source.get(replicaKey);
+
+        if (value != null) {
+            for (String key : keys) {
+                target.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Checks if a read replica has been configured
+     * @return true if there is a replica pool
+     */
+    public boolean hasReplica() {
+        return replica != null;
+    }
+
+    /**
+     * Gets a connection from the replica pool if the calling thread is in {@link #onReplica(Supplier)}
+     * and a replica is configured, otherwise from the primary pool
+     * @return a connection
+     * @throws SQLException if the pool cannot hand out a connection
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        return replica != null && readFromReplica.get() ? replica.getConnection() : primary.getConnection();
+    }
+
+    /**
+     * Returns a connection to the pool it came from
+     * @param connection the connection
+     * @throws SQLException if the connection cannot be closed
+     */
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        // Closing a Hikari connection returns it to its own pool
+        connection.close();
+    }
+
+    /**
+     * Connections are held until the end of the transaction, so the pool is chosen once per transaction
+     * @return false
+     */
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType) || RoutingConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+
+        throw new IllegalArgumentException("Cannot unwrap to " + unwrapType);
+    }
+
+    /**
+     * Closes both pools
+     */
+    @Override
+    public void stop() {
+        primary.stop();
+
+        if (replica != null) {
+            replica.stop();
+        }
+    }
+}
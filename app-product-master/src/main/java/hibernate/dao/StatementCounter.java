@@ -0,0 +1,37 @@
+package hibernate.dao;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * StatementCounter class - counts the SQL statements Hibernate prepares on each thread.
+ *
+ * Registered in persistence.xml as hibernate.session_factory.statement_inspector. Hibernate passes every statement
+ * through it before preparing it, and it only counts, leaving the SQL unchanged. A JDBC batch is counted once,
+ * however many rows it writes. The count is kept per thread, so an operation's statements can be measured
+ * while other threads use the database, see {@link hibernate.api.OperationStatistics}.
+ *
+ * @author Karl Labrador
+ */
+public class StatementCounter implements StatementInspector {
+    private final static ThreadLocal<long[]> count = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * Counts a statement
+     * @param sql the statement about to be prepared
+     * @return the same statement
+     */
+    @Override
+    public String inspect(String sql) {
+        count.get()[0]++;
+        return sql;
+    }
+
+    /**
+     * Gets the number of statements prepared on the calling thread since it started. Subtract two readings
+     * to count the statements in between.
+     * @return the number of statements
+     */
+    public static long getCount() {
+        return count.get()[0];
+    }
+}
@@ -0,0 +1,142 @@
+package hibernate.dao;
+
+import hibernate.model.Tag;
+import hibernate.model.User;
+import org.apache.log4j.Logger;
+import org.hibernate.LockOptions;
+import org.hibernate.Session;
+import org.hibernate.exception.ConstraintViolationException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * TagDAO class - data access object for Tag objects. Extends abstract class GenericDAO.
+ *
+ * @author Karl Labrador
+ */
+public class TagDAO extends GenericDAO<Tag, Integer> {
+    private final static Logger logger = Logger.getLogger(TagDAO.class);
+
+    public TagDAO(EntityManager entityManager) {
+        super(entityManager);
+        setEntityClass(Tag.class);
+    }
+
+    public TagDAO(Supplier<EntityManager> entityManagerSupplier) {
+        super(entityManagerSupplier);
+        setEntityClass(Tag.class);
+    }
+
+    /**
+     * Finds a tag by its name. The lookup goes through the natural ID, so it is served from the
+     * second-level cache when possible.
+     * @param name the tag's name
+     * @return Optional object
+     */
+    public Optional<Tag> findByName(String name) {
+        return getEntityManager().unwrap(Session.class)
+                .bySimpleNaturalId(Tag.class)
+                .loadOptional(name);
+    }
+
+    /**
+     * Counts how many of a user's images have each tag. The grouping is done by the database.
+     * @param user the User that owns the images
+     * @return a Map from tag name to number of images, ordered by tag name. Unused tags are left out.
+     */
+    public Map<String, Long> countByUser(User user) {
+        List<Object[]> rows = getEntityManager().createNamedQuery("Tag.countByUser", Object[].class)
+                .setParameter("user", user)
+                .getResultList();
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        rows.forEach(row -> counts.put((String) row[0], (Long) row[1]));
+
+        return counts;
+    }
+
+    /**
+     * Finds the tag with the given name, or creates a new one if no image has used the name before.
+     *
+     * A new tag is inserted and committed in a transaction of its own, see {@link #insertOrFind}, so two transactions
+     * that create the same tag at once both end up with the one row instead of failing on the unique tag name.
+     * The tag stays, unused, if the calling transaction is rolled back later.
+     * @param name the tag's name
+     * @return the Tag object, managed by the current EntityManager
+     */
+    public Tag findOrCreate(String name) {
+        return findByName(name).orElseGet(() -> {
+            Tag tag = insertOrFind(getEntityManager().getEntityManagerFactory(), name);
+
+            // The current transaction may not see a row committed after it started, so the tag is attached as it is
+            getEntityManager().unwrap(Session.class).buildLockRequest(LockOptions.NONE).lock(tag);
+
+            return tag;
+        });
+    }
+
+    /**
+     * Inserts a tag in a transaction of its own and commits it. If another transaction has inserted a tag with the
+     * same name in the meantime, the insert fails on the unique tag name, and that tag is read instead.
+     * @param entityManagerFactory the factory of the persistence unit to insert into
+     * @param name the tag's name
+     * @return the detached Tag object
+     */
+    public static Tag insertOrFind(EntityManagerFactory entityManagerFactory, String name) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+
+        try {
+            transaction.begin();
+            Tag tag = new Tag(name);
+            entityManager.persist(tag);
+            transaction.commit();
+
+            return tag;
+        } catch (PersistenceException ex) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+
+            if (!isConstraintViolation(ex)) {
+                throw ex;
+            }
+
+            logger.info("Tag was created by another transaction, reading it instead");
+        } finally {
+            entityManager.close();
+        }
+
+        entityManager = entityManagerFactory.createEntityManager();
+
+        try {
+            return new TagDAO(entityManager).findByName(name)
+                    .orElseThrow(() -> new PersistenceException("Tag could neither be created nor found"));
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Checks if an exception was caused by a constraint violation, such as a duplicate key
+     * @param ex the exception thrown by the persistence provider
+     * @return true if a constraint was violated
+     */
+    private static boolean isConstraintViolation(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,140 @@
+package hibernate.dao;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+/**
+ * UnitOfWork class - an explicit transaction scope with its own EntityManager.
+ *
+ * The transaction is started when the unit of work is opened. DAOs retrieved from the unit of work share
+ * its persistence context, so everything done through them is committed or rolled back together.
+ * A unit of work is not thread safe and should be used and closed by the thread that opened it,
+ * preferably with try-with-resources:
+ *
+ * <pre>
+ * try (UnitOfWork work = provider.openUnitOfWork()) {
+ *     work.getImageDAO().save(image);
+ *     work.commit();
+ * }
+ * </pre>
+ *
+ * Closing a unit of work that has not been committed rolls it back.
+ *
+ * @author Karl Labrador
+ */
+public class UnitOfWork implements AutoCloseable {
+    private final EntityManager entityManager;
+    private UserDAO userDAO;
+    private ImageDAO imageDAO;
+    private AlbumDAO albumDAO;
+    private TagDAO tagDAO;
+    private ChangeLogDAO changeLogDAO;
+
+    /**
+     * Opens a unit of work on a new EntityManager and begins its transaction
+     * @param entityManagerFactory the shared factory to create the EntityManager from
+     */
+    public UnitOfWork(EntityManagerFactory entityManagerFactory) {
+        entityManager = entityManagerFactory.createEntityManager();
+        entityManager.getTransaction().begin();
+    }
+
+    /**
+     * Gets the EntityManager that backs this unit of work
+     * @return JPA entityManager
+     */
+    public EntityManager getEntityManager() {
+        return entityManager;
+    }
+
+    /**
+     * Gets a UserDAO bound to this unit of work
+     * @return UserDAO
+     */
+    public UserDAO getUserDAO() {
+        if (userDAO == null) {
+            userDAO = new UserDAO(entityManager);
+        }
+
+        return userDAO;
+    }
+
+    /**
+     * Gets an ImageDAO bound to this unit of work
+     * @return ImageDAO
+     */
+    public ImageDAO getImageDAO() {
+        if (imageDAO == null) {
+            imageDAO = new ImageDAO(entityManager);
+        }
+
+        return imageDAO;
+    }
+
+    /**
+     * Gets an AlbumDAO bound to this unit of work
+     * @return AlbumDAO
+     */
+    public AlbumDAO getAlbumDAO() {
+        if (albumDAO == null) {
+            albumDAO = new AlbumDAO(entityManager);
+        }
+
+        return albumDAO;
+    }
+
+    /**
+     * Gets a TagDAO bound to this unit of work
+     * @return TagDAO
+     */
+    public TagDAO getTagDAO() {
+        if (tagDAO == null) {
+            tagDAO = new TagDAO(entityManager);
+        }
+
+        return tagDAO;
+    }
+
+    /**
+     * Gets a ChangeLogDAO bound to this unit of work
+     * @return ChangeLogDAO
+     */
+    public ChangeLogDAO getChangeLogDAO() {
+        if (changeLogDAO == null) {
+            changeLogDAO = new ChangeLogDAO(entityManager);
+        }
+
+        return changeLogDAO;
+    }
+
+    /**
+     * Flushes and commits the changes made in this unit of work
+     */
+    public void commit() {
+        entityManager.getTransaction().commit();
+    }
+
+    /**
+     * Discards the changes made in this unit of work
+     */
+    public void rollback() {
+        EntityTransaction transaction = entityManager.getTransaction();
+
+        if (transaction.isActive()) {
+            transaction.rollback();
+        }
+    }
+
+    /**
+     * Rolls back anything that was not committed and closes the EntityManager
+     */
+    @Override
+    public void close() {
+        try {
+            rollback();
+        } finally {
+            entityManager.close();
+        }
+    }
+}
@@ -4,6 +4,8 @@ import hibernate.model.User;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
+import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * UserDAO class - data access object for User objects. Extends abstract class GenericDAO.
@@ -17,14 +19,19 @@ public class UserDAO extends GenericDAO<User, Integer> {
         setEntityClass(User.class);
     }
 
+    public UserDAO(Supplier<EntityManager> entityManagerSupplier) {
+        super(entityManagerSupplier);
+        setEntityClass(User.class);
+    }
+
     /**
-     * Finds a user by their username and uuid
+     * Finds a user by their username and uuid. The lookup goes through the query cache when it is enabled.
      * @param username The user's username
      * @param uuid The user's UUID
      * @return the User object if there is a result, null if none
      */
     public User getUser(String username, String uuid) {
-        TypedQuery<User> tq = entityManager.createQuery("SELECT u FROM User u WHERE u.username = :username AND u.uuid = :uuid", User.class);
+        TypedQuery<User> tq = getEntityManager().createNamedQuery("User.findByUsernameAndUuid", User.class);
         tq.setParameter("username", username);
         tq.setParameter("uuid", uuid);
         //tq.unwrap(org.hibernate.query.Query.class).setTimeout(100);
@@ -32,8 +39,10 @@ public class UserDAO extends GenericDAO<User, Integer> {
         User user = null;
 
         try {
-            if (tq.getResultList().size() == 1) {
-                user = tq.getSingleResult();
+            List<User> users = tq.getResultList();
+
+            if (users.size() == 1) {
+                user = users.get(0);
             }
         } catch (Exception ex) {
             ex.printStackTrace();
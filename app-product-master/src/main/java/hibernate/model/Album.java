@@ -1,13 +1,22 @@
 package hibernate.model;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.collection.internal.AbstractPersistentCollection;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Class representing an album.
- * Each album consists of a list of ImageIDs and a title.
+ * Each album consists of an ordered list of images and a title. See {@link AlbumImage}.
  *
  * Each album has a single user. Each user can have multiple albums.
  * An album must always have a user and cannot exist on its own.
@@ -16,10 +25,22 @@ import java.util.List;
  * @author Mats Sollid Eide
  */
 @Entity
-@Table(name = "albums")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(
+        name = "albums",
+        indexes = {@Index(name = "idx_albums_userid", columnList = "userid")}
+)
+// Fetch plan for the album view, see hibernate.dao.FetchPlan
+@NamedEntityGraph(
+        name = "Album.view",
+        attributeNodes = @NamedAttributeNode(value = "entries", subgraph = "entries"),
+        subgraphs = @NamedSubgraph(name = "entries", attributeNodes = @NamedAttributeNode("image"))
+)
 @NamedQueries({
         @NamedQuery(name="Album.count", query="SELECT COUNT(a) FROM Album a"),
-        @NamedQuery(name="Album.findAll", query="SELECT a FROM Album a")
+        @NamedQuery(name="Album.findAll", query="SELECT a FROM Album a",
+                hints = @QueryHint(name = QueryHints.CACHEABLE, value = "true"))
 })
 
 public class Album implements Serializable {
@@ -35,8 +56,14 @@ public class Album implements Serializable {
     @Column(name = "title")
     private String title;
 
-    @OneToMany(fetch = FetchType.LAZY) //Unsure about FetchType/additional arguments
-    private List<ImageData> images = new ArrayList<>();
+    // Inverse, so adding an image to an unloaded album queues a single insert instead of loading the list.
+    // The rows are written on their own, rather than Hibernate rewriting a join table whenever the list changes.
+    @OneToMany(mappedBy = "album", fetch = FetchType.LAZY, cascade = {CascadeType.PERSIST, CascadeType.MERGE}, orphanRemoval = true)
+    @OrderBy("position")
+    private List<AlbumImage> entries = new ArrayList<>();
+
+    @Column(name = "lastposition", nullable = false)
+    private int lastPosition;
 
 
     /**
@@ -80,41 +107,97 @@ public class Album implements Serializable {
     }
 
     /**
-     * Gets all the images in the album
-     * @return A List with ImageData objects
+     * Gets all the images in the album, in order. Loads the whole album, see
+     * {@link hibernate.api.DataAPI#getAlbumImages} for reading it a page at a time.
+     * @return An unmodifiable List with ImageData objects
      */
     public List<ImageData> getImages(){
-        return images;
+        return entries.stream()
+                .map(AlbumImage::getImage)
+                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
+    }
+
+    /**
+     * Gets the album's links to its images, ordered by position
+     * @return A List with AlbumImage objects
+     */
+    public List<AlbumImage> getEntries(){
+        return entries;
+    }
+
+    /**
+     * Gets the highest position that has been handed out in the album
+     * @return The last position, or 0 if no image has been added
+     */
+    public int getLastPosition(){
+        return lastPosition;
     }
 
     /**
-     * Adds an image to the album
+     * Adds an image to the end of the album, unless it is already in the album.
+     * Does not load the album's other images. If they have not been loaded, the image is only checked against the
+     * images added since the album was loaded; {@link hibernate.api.DataAPI#addImages} checks the database as well.
      * @param image An ImageData object
+     * @return true if the image was added, false if it was already in the album
      */
-    public void addImage(ImageData image){
-        images.add(image);
+    public boolean addImage(ImageData image){
+        if (contains(image)) {
+            return false;
+        }
+
+        entries.add(new AlbumImage(this, image, ++lastPosition));
+        return true;
     }
 
     /**
-     * Adds a List of images to the album
+     * Adds a List of images to the end of the album, skipping the images that are already in it
      * @param images A List containing ImageData
+     * @return the number of images added
+     */
+    public int addImages(List<ImageData> images){
+        int added = 0;
+
+        for (ImageData image : images) {
+            if (addImage(image)) {
+                added++;
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * Checks if an image is in the loaded entries of the album, or among the entries added but not yet loaded
+     * @param image An ImageData object
+     * @return true if the album has an entry for the image
      */
-    public void addImages(List<ImageData> images){
-        this.images.addAll(images);
+    private boolean contains(ImageData image){
+        // Iterating an unloaded list would load it, so only the additions queued on it are checked
+        Iterator<?> known = Hibernate.isInitialized(entries)
+                ? entries.iterator()
+                : ((AbstractPersistentCollection) entries).queuedAdditionIterator();
+
+        while (known.hasNext()) {
+            if (((AlbumImage) known.next()).getImage().equals(image)) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     /**
-     * Removes an image from the album
+     * Removes an image from the album. Later images keep their positions.
      * @param image The ImageData object to be removed
      */
     public void removeImage(ImageData image){
-        images.remove(image);
+        entries.removeIf(entry -> entry.getImage().equals(image));
     }
 
     /**
      * Clears all the ImageData objects from the album
      */
     public void clear(){
-        images.clear();
+        entries.clear();
     }
 }
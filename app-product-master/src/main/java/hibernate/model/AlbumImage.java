@@ -0,0 +1,123 @@
+package hibernate.model;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.annotations.Parameter;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Class representing an image's place in an album.
+ * Each row links one album to one image at a position, so adding an image to an album inserts a single row,
+ * and moving an image only updates the rows between its old and new position.
+ *
+ * Positions start at 1 and are ordered, but not necessarily contiguous, as removing an image leaves a gap.
+ * The rows are deleted by the database together with their album or image.
+ *
+ * @author Karl Labrador
+ */
+@Entity
+@Table(
+        name = "album_images",
+        uniqueConstraints = @UniqueConstraint(name = "uk_album_images_albumid_imageid", columnNames = {"albumid", "imageid"}),
+        indexes = {
+                @Index(name = "idx_album_images_albumid_position", columnList = "albumid, position"),
+                @Index(name = "idx_album_images_imageid", columnList = "imageid")
+        }
+)
+@NamedQueries({
+        @NamedQuery(name = "AlbumImage.findByAlbumAfter", query = "SELECT e FROM AlbumImage e JOIN FETCH e.image WHERE e.album = :album AND e.position > :afterPosition ORDER BY e.position"),
+        @NamedQuery(name = "AlbumImage.findByAlbumBetween", query = "SELECT e FROM AlbumImage e WHERE e.album = :album AND e.position BETWEEN :from AND :to ORDER BY e.position"),
+        @NamedQuery(name = "AlbumImage.findByAlbumAndImage", query = "SELECT e FROM AlbumImage e WHERE e.album = :album AND e.image = :image"),
+        @NamedQuery(name = "AlbumImage.findImageIdsByAlbumAndImages", query = "SELECT e.image.imageid FROM AlbumImage e WHERE e.album = :album AND e.image IN :images"),
+        @NamedQuery(name = "AlbumImage.countByAlbum", query = "SELECT COUNT(e) FROM AlbumImage e WHERE e.album = :album")
+})
+public class AlbumImage implements Serializable {
+    // Pooled sequence ids, like ImageData, so appending many images is written in JDBC batches
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "album_image_sequence")
+    @GenericGenerator(
+            name = "album_image_sequence",
+            strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+            parameters = {
+                    @Parameter(name = "sequence_name", value = "album_image_sequence"),
+                    @Parameter(name = "increment_size", value = "50"),
+                    @Parameter(name = "optimizer", value = "pooled")
+            }
+    )
+    @Column(name = "albumimageid", updatable = false)
+    private int albumimageid;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "albumid", nullable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Album album;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "imageid", nullable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private ImageData image;
+
+    @Column(name = "position", nullable = false)
+    private int position;
+
+    /**
+     * Empty constructor required by JPA
+     */
+    protected AlbumImage() {
+    }
+
+    /**
+     * Creates an unsaved link between an album and an image
+     * @param album the album
+     * @param image the image
+     * @param position the image's position in the album
+     */
+    public AlbumImage(Album album, ImageData image, int position) {
+        this.album = album;
+        this.image = image;
+        this.position = position;
+    }
+
+    /**
+     * Get method for albumimageid
+     * @return the link's ID
+     */
+    public int getAlbumImageID() {
+        return albumimageid;
+    }
+
+    /**
+     * Get method for album
+     * @return the album
+     */
+    public Album getAlbum() {
+        return album;
+    }
+
+    /**
+     * Get method for image
+     * @return the image
+     */
+    public ImageData getImage() {
+        return image;
+    }
+
+    /**
+     * Get method for position
+     * @return the image's position in the album
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Set method for position. Use {@link hibernate.api.DataAPI#moveAlbumImage} to reorder an album.
+     * @param position the image's position in the album
+     */
+    public void setPosition(int position) {
+        this.position = position;
+    }
+}
@@ -0,0 +1,150 @@
+package hibernate.model;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Class representing an entry in the change log.
+ * An entry is written in the same transaction as every insert, update or delete of an image, and names the image
+ * by its owner's username and UUID and its path, since IDs differ between the local and the remote database.
+ *
+ * Entries are written by {@link hibernate.sync.ChangeLogListener} and read by {@link hibernate.sync.Replicator}.
+ *
+ * @author Karl Labrador
+ */
+@Entity
+@Table(
+        name = "change_log",
+        indexes = {@Index(name = "idx_change_log_user_changeid", columnList = "username, uuid, changeid")}
+)
+@NamedQueries({
+        @NamedQuery(name = "ChangeLogEntry.findAll", query = "SELECT e FROM ChangeLogEntry e ORDER BY e.changeid"),
+        @NamedQuery(name = "ChangeLogEntry.findForUserAfter", query = "SELECT e FROM ChangeLogEntry e WHERE e.username = :username AND e.uuid = :uuid AND e.changeid > :afterChangeId AND (e.origin IS NULL OR e.origin <> :origin) ORDER BY e.changeid"),
+        @NamedQuery(name = "ChangeLogEntry.lastChangeId", query = "SELECT MAX(e.changeid) FROM ChangeLogEntry e"),
+        @NamedQuery(name = "ChangeLogEntry.deleteByIds", query = "DELETE FROM ChangeLogEntry e WHERE e.changeid IN :changeids")
+})
+public class ChangeLogEntry implements Serializable {
+    /**
+     * What happened to the image
+     */
+    public enum Operation {
+        UPSERT,
+        DELETE
+    }
+
+    // IDs are handed out when the entry is inserted, not when it is committed, so a newer ID can become visible first.
+    // The replicator's pull therefore reads a trailing window of IDs again, see Replicator.PULL_WINDOW
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "changeid", updatable = false)
+    private long changeid;
+
+    @Column(name = "username", nullable = false, updatable = false)
+    private String username;
+
+    @Column(name = "uuid", nullable = false, updatable = false)
+    private String uuid;
+
+    @Column(name = "path", nullable = false, updatable = false)
+    private String path;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "operation", nullable = false, updatable = false, length = 16)
+    private Operation operation;
+
+    @Column(name = "origin", updatable = false)
+    private String origin;
+
+    @Column(name = "changed", nullable = false, updatable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date changed;
+
+    /**
+     * Empty constructor required by JPA
+     */
+    public ChangeLogEntry() {
+    }
+
+    /**
+     * Creates an unsaved entry
+     * @param username the username of the image's owner
+     * @param uuid the UUID of the image's owner
+     * @param path the path of the image
+     * @param operation what happened to the image
+     * @param origin the device that made the change, or null if unknown
+     */
+    public ChangeLogEntry(String username, String uuid, String path, Operation operation, String origin) {
+        this.username = username;
+        this.uuid = uuid;
+        this.path = path;
+        this.operation = operation;
+        this.origin = origin;
+        this.changed = new Date();
+    }
+
+    /**
+     * Get method for changeid
+     * @return the entry's ID, increasing with each change
+     */
+    public long getChangeID() {
+        return changeid;
+    }
+
+    /**
+     * Get method for username
+     * @return the username of the image's owner
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Get method for uuid
+     * @return the UUID of the image's owner
+     */
+    public String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * Get method for path
+     * @return the path of the image
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Get method for operation
+     * @return what happened to the image
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Get method for origin
+     * @return the device that made the change, or null if unknown
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Get method for changed
+     * @return when the change was made
+     */
+    public Date getChanged() {
+        return changed;
+    }
+
+    /**
+     * Method that returns a String object with the variable values
+     * @return String with variable values
+     */
+    @Override
+    public String toString() {
+        return String.format("[changelog] changeid=%d, username=%s, uuid=%s, path=%s, operation=%s, origin=%s", changeid, username, uuid, path, operation, origin);
+    }
+}
@@ -0,0 +1,109 @@
+package hibernate.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Class representing the columns of an image that the gallery shows, read straight from the images table.
+ * Unlike ImageData, a GalleryRow is not an entity: it is not tracked by the persistence context, has no dirty-checking
+ * snapshot, and does not load the image's tags or user. Use it for listings, and load the ImageData by its ID to edit it.
+ *
+ * Metadata columns that have never been read are null.
+ *
+ * @author Karl Labrador
+ */
+public final class GalleryRow implements Serializable {
+    private final int imageID;
+    private final String path;
+    private final Integer width;
+    private final Integer height;
+    private final Date captured;
+    private final Double latitude;
+    private final Double longitude;
+
+    /**
+     * Creates a row. Called by the constructor expressions in the ImageData.findGalleryRows... named queries.
+     * @param imageID the image's ID
+     * @param path the image's path
+     * @param width width in pixels, or null
+     * @param height height in pixels, or null
+     * @param captured capture date, or null
+     * @param latitude latitude, or null
+     * @param longitude longitude, or null
+     */
+    public GalleryRow(int imageID, String path, Integer width, Integer height, Date captured, Double latitude, Double longitude) {
+        this.imageID = imageID;
+        this.path = path;
+        this.width = width;
+        this.height = height;
+        this.captured = captured != null ? new Date(captured.getTime()) : null;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * Get method for imageID
+     * @return the image's ID
+     */
+    public int getImageID() {
+        return imageID;
+    }
+
+    /**
+     * Get method for path
+     * @return the image's path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Get method for width
+     * @return width in pixels, or null
+     */
+    public Integer getWidth() {
+        return width;
+    }
+
+    /**
+     * Get method for height
+     * @return height in pixels, or null
+     */
+    public Integer getHeight() {
+        return height;
+    }
+
+    /**
+     * Get method for captured
+     * @return a copy of the capture date, or null
+     */
+    public Date getCaptured() {
+        return captured != null ? new Date(captured.getTime()) : null;
+    }
+
+    /**
+     * Get method for latitude
+     * @return latitude, or null
+     */
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Get method for longitude
+     * @return longitude, or null
+     */
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Method that returns a String object with the variable values
+     * @return String with variable values
+     */
+    @Override
+    public String toString() {
+        return String.format("[galleryrow] imageid=%d, path=%s, width=%s, height=%s, captured=%s, latitude=%s, longitude=%s",
+                imageID, path, width, height, captured, latitude, longitude);
+    }
+}
@@ -0,0 +1,89 @@
+package hibernate.model;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Class representing a coarse cell on the map, one degree of latitude by one degree of longitude.
+ * A cell is named by the whole degrees of its south-west corner, so the cell (63, 10) holds the coordinates
+ * from 63.0 up to but not including 64.0 latitude, and from 10.0 up to 11.0 longitude.
+ *
+ * @author Karl Labrador
+ */
+public class GeoCell implements Serializable {
+    private final int latitude;
+    private final int longitude;
+
+    /**
+     * Creates a cell from the whole degrees of its south-west corner
+     * @param latitude the southern edge of the cell
+     * @param longitude the western edge of the cell
+     */
+    public GeoCell(int latitude, int longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * Finds the cell that holds a coordinate
+     * @param latitude latitude
+     * @param longitude longitude
+     * @return the cell
+     */
+    public static GeoCell of(double latitude, double longitude) {
+        return new GeoCell((int) Math.floor(latitude), (int) Math.floor(longitude));
+    }
+
+    /**
+     * Get method for latitude
+     * @return the southern edge of the cell
+     */
+    public int getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Get method for longitude
+     * @return the western edge of the cell
+     */
+    public int getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Equals method that overrides the default equals method
+     * @param o An Object that is hopefully a GeoCell object
+     * @return true if the cells have the same corner, false if not
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof GeoCell)) {
+            return false;
+        }
+
+        GeoCell cell = (GeoCell) o;
+        return latitude == cell.latitude && longitude == cell.longitude;
+    }
+
+    /**
+     * hashCode method based on the cell's corner, consistent with equals
+     * @return hash code
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(latitude, longitude);
+    }
+
+    /**
+     * Method that returns a String object with the variable values
+     * @return String with variable values
+     */
+    @Override
+    public String toString() {
+        return String.format("[geocell] latitude=%d, longitude=%d", latitude, longitude);
+    }
+}
@@ -1,21 +1,80 @@
 package hibernate.model;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.annotations.Where;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Entity
-@Table(name = "images")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Where(clause = "deleted = false") // Removed images are hidden from every query and collection until they are purged
+@Table(
+        name = "images",
+        indexes = {
+                @Index(name = "idx_images_userid_imageid", columnList = "userid, imageid"),
+                @Index(name = "idx_images_userid_captured", columnList = "userid, captured"),
+                @Index(name = "idx_images_lat_lon", columnList = "latitude, longitude"),
+                @Index(name = "idx_images_userid_lat_lon", columnList = "userid, latitude, longitude"),
+                @Index(name = "idx_images_deleted", columnList = "deleted")
+        }
+)
+// Fetch plans, see hibernate.dao.FetchPlan. The gallery and the map only show columns of the images table.
+@NamedEntityGraphs({
+        @NamedEntityGraph(name = "ImageData.gallery"),
+        @NamedEntityGraph(name = "ImageData.map"),
+        @NamedEntityGraph(name = "ImageData.detail", attributeNodes = {
+                @NamedAttributeNode("tags"),
+                @NamedAttributeNode("user")
+        })
+})
 @NamedQueries({
         @NamedQuery(name = "ImageData.count", query = "SELECT COUNT(i) FROM ImageData i"),
-        @NamedQuery(name = "ImageData.findAll", query = "SELECT i FROM ImageData i")
+        @NamedQuery(name = "ImageData.findAll", query = "SELECT i FROM ImageData i",
+                hints = @QueryHint(name = QueryHints.CACHEABLE, value = "true")),
+        @NamedQuery(name = "ImageData.findByUser", query = "SELECT i FROM ImageData i WHERE i.user = :user ORDER BY i.imageid DESC"),
+        @NamedQuery(name = "ImageData.findByUserAfter", query = "SELECT i FROM ImageData i WHERE i.user = :user AND i.imageid < :afterImageId ORDER BY i.imageid DESC"),
+        @NamedQuery(name = "ImageData.findGalleryRowsByUser", query = "SELECT NEW hibernate.model.GalleryRow(i.imageid, i.path, i.metadata.width, i.metadata.height, i.metadata.captured, i.metadata.latitude, i.metadata.longitude) FROM ImageData i WHERE i.user = :user ORDER BY i.imageid DESC"),
+        @NamedQuery(name = "ImageData.findGalleryRowsByUserAfter", query = "SELECT NEW hibernate.model.GalleryRow(i.imageid, i.path, i.metadata.width, i.metadata.height, i.metadata.captured, i.metadata.latitude, i.metadata.longitude) FROM ImageData i WHERE i.user = :user AND i.imageid < :afterImageId ORDER BY i.imageid DESC"),
+        @NamedQuery(name = "ImageData.findInBoundingBox", query = "SELECT i FROM ImageData i WHERE i.user = :user AND i.metadata.latitude BETWEEN :south AND :north AND i.metadata.longitude BETWEEN :west AND :east AND NOT (i.metadata.latitude = 0 AND i.metadata.longitude = 0) ORDER BY i.imageid DESC"),
+        @NamedQuery(name = "ImageData.findInBoundingBoxAcrossAntimeridian", query = "SELECT i FROM ImageData i WHERE i.user = :user AND i.metadata.latitude BETWEEN :south AND :north AND (i.metadata.longitude >= :west OR i.metadata.longitude <= :east) AND NOT (i.metadata.latitude = 0 AND i.metadata.longitude = 0) ORDER BY i.imageid DESC"),
+        @NamedQuery(name = "ImageData.findByTag", query = "SELECT i FROM ImageData i JOIN i.tags t WHERE i.user = :user AND t.name = :name ORDER BY i.imageid DESC"),
+        @NamedQuery(name = "ImageData.findIdsByTag", query = "SELECT i.imageid FROM ImageData i JOIN i.tags t WHERE i.user = :user AND t.name = :name ORDER BY i.imageid DESC"),
+        @NamedQuery(name = "ImageData.findIdsByTagAfter", query = "SELECT i.imageid FROM ImageData i JOIN i.tags t WHERE i.user = :user AND t.name = :name AND i.imageid < :afterImageId ORDER BY i.imageid DESC"),
+        @NamedQuery(name = "ImageData.findByUserAndPath", query = "SELECT i FROM ImageData i WHERE i.user.username = :username AND i.user.uuid = :uuid AND i.path = :path"),
+        @NamedQuery(name = "ImageData.findIdsByPathPrefix", query = "SELECT i.imageid FROM ImageData i WHERE i.user = :user AND i.path LIKE :prefix ESCAPE '!'"),
+        @NamedQuery(name = "ImageData.markDeleted", query = "UPDATE ImageData i SET i.deleted = true WHERE i.user = :user AND i.imageid IN :imageids"),
+        @NamedQuery(name = "ImageData.countByCamera", query = "SELECT i.metadata.make, i.metadata.model, COUNT(i) FROM ImageData i WHERE i.user = :user AND i.metadata.make IS NOT NULL AND i.metadata.make <> '' GROUP BY i.metadata.make, i.metadata.model ORDER BY i.metadata.make, i.metadata.model"),
+        @NamedQuery(name = "ImageData.countByMonth", query = "SELECT YEAR(i.metadata.captured), MONTH(i.metadata.captured), COUNT(i) FROM ImageData i WHERE i.user = :user AND i.metadata.captured IS NOT NULL GROUP BY YEAR(i.metadata.captured), MONTH(i.metadata.captured) ORDER BY YEAR(i.metadata.captured), MONTH(i.metadata.captured)"),
+        @NamedQuery(name = "ImageData.countByGeoCell", query = "SELECT FLOOR(i.metadata.latitude), FLOOR(i.metadata.longitude), COUNT(i) FROM ImageData i WHERE i.user = :user AND NOT (i.metadata.latitude = 0 AND i.metadata.longitude = 0) GROUP BY FLOOR(i.metadata.latitude), FLOOR(i.metadata.longitude) ORDER BY FLOOR(i.metadata.latitude), FLOOR(i.metadata.longitude)")
 })
 public class ImageData implements Serializable {
+    // Pooled sequence ids are handed out without a round-trip per insert, which lets Hibernate batch the inserts.
+    // Dialects without sequences, such as MySQL, get a table named image_sequence instead.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    @Column(name = "imageid", insertable = false, updatable = false)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "image_sequence")
+    @GenericGenerator(
+            name = "image_sequence",
+            strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+            parameters = {
+                    @Parameter(name = "sequence_name", value = "image_sequence"),
+                    @Parameter(name = "increment_size", value = "50"),
+                    @Parameter(name = "optimizer", value = "pooled")
+            }
+    )
+    @Column(name = "imageid", updatable = false)
     private int imageid;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -25,13 +84,18 @@ public class ImageData implements Serializable {
     @Column(name = "path", insertable = true, updatable = true)
     private String path;
 
-    @ElementCollection(fetch = FetchType.EAGER)
-    @CollectionTable(
-            name = "tags",
-            joinColumns=@JoinColumn(name = "imageid", referencedColumnName = "imageid")
+    // A Set of shared Tag rows, so adding or removing a tag writes a single image_tags row.
+    // Lazy, and loaded for 50 images at a time when first used, unless a fetch plan fetches them up front.
+    @ManyToMany(fetch = FetchType.LAZY)
+    @BatchSize(size = 50)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+    @JoinTable(
+            name = "image_tags",
+            joinColumns = @JoinColumn(name = "imageid"),
+            inverseJoinColumns = @JoinColumn(name = "tagid"),
+            indexes = @Index(name = "idx_image_tags_tagid", columnList = "tagid")
     )
-    @Column(name="tag")
-    private List<String> tags = new ArrayList<String>();
+    private Set<Tag> tags = new HashSet<>();
 
     @Basic(optional = false)
     @Column(name = "created", columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP", insertable = false, updatable = false)
@@ -41,6 +105,9 @@ public class ImageData implements Serializable {
     @Embedded
     private Metadata metadata;
 
+    @Column(name = "deleted", nullable = false)
+    private boolean deleted;
+
     /**
      * Get method for imageid
      * @return the imageID as an integer
@@ -107,20 +174,57 @@ public class ImageData implements Serializable {
 
     /**
      * Get method for image tags
-     * @return a List that consists of strings
+     * @return a Set that consists of Tag objects
      */
-    public List<String> getTags() {
+    public Set<Tag> getTags() {
         return tags;
     }
 
     /**
      * Set method for image tags
-     * @param tags A List object that consists of strings
+     * @param tags A Set object that consists of Tag objects
      */
-    public void setTags(List<String> tags) {
+    public void setTags(Set<Tag> tags) {
         this.tags = tags;
     }
 
+    /**
+     * Get method for the names of the image's tags
+     * @return a sorted List that consists of strings
+     */
+    public List<String> getTagNames() {
+        List<String> names = new ArrayList<>(tags.size());
+        tags.forEach(tag -> names.add(tag.getName()));
+        Collections.sort(names);
+
+        return names;
+    }
+
+    /**
+     * Checks if the image has a tag with the given name
+     * @param name the tag's name
+     * @return true if the image has the tag
+     */
+    public boolean hasTag(String name) {
+        return tags.contains(new Tag(name));
+    }
+
+    /**
+     * Adds a tag to the image. Adding a tag the image already has does nothing.
+     * @param tag a Tag object, preferably retrieved with {@link hibernate.dao.TagDAO#findOrCreate}
+     */
+    public void addTag(Tag tag) {
+        tags.add(tag);
+    }
+
+    /**
+     * Removes the tag with the given name from the image
+     * @param name the tag's name
+     */
+    public void removeTag(String name) {
+        tags.remove(new Tag(name));
+    }
+
     /**
      * Get method for metadata
      * @return a Metadata object
@@ -137,6 +241,22 @@ public class ImageData implements Serializable {
         this.metadata = metadata;
     }
 
+    /**
+     * Get method for deleted
+     * @return true if the image has been removed and is waiting to be purged
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Set method for deleted. Use {@link hibernate.api.DataAPI#removeImages} to remove images.
+     * @param deleted true if the image has been removed
+     */
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
     /**
      * Equals method that overrides the default equals method
      * @param o An Object that is hopefully an ImageData object
@@ -162,6 +282,6 @@ public class ImageData implements Serializable {
      * @return String
      */
     public String toString() {
-        return String.format("[imagedata] imageid=%d, userid=%d, path=%s, tags=%s%n, metadata=%s", getImageID(), getUser().getUserID(), getPath(), getTags(), getMetadata());
+        return String.format("[imagedata] imageid=%d, userid=%d, path=%s, tags=%s%n, metadata=%s", getImageID(), getUser().getUserID(), getPath(), getTagNames(), getMetadata());
     }
 }
@@ -1,19 +1,22 @@
 package hibernate.model;
 
-import com.drew.imaging.FileType;
-import com.drew.imaging.FileTypeDetector;
 import com.drew.imaging.ImageMetadataReader;
 import com.drew.imaging.ImageProcessingException;
 import com.drew.lang.GeoLocation;
 import com.drew.metadata.exif.ExifDirectoryBase;
 import com.drew.metadata.exif.GpsDirectory;
+import com.drew.metadata.file.FileTypeDirectory;
 import com.drew.metadata.jpeg.JpegDirectory;
 import com.drew.metadata.png.PngDirectory;
 import javax.persistence.*;
 import java.io.*;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
 import org.apache.log4j.Logger;
+import utility.ImageHeaderReader;
+import utility.MetadataCache;
 
 /**
  * Metadata Class to retrieve specific metadata from an image file.
@@ -26,6 +29,7 @@ import org.apache.log4j.Logger;
 @Embeddable
 public class Metadata {
     private static Logger logger = Logger.getLogger(Metadata.class);
+    private static volatile MetadataCache cache;
 
     @Column(name = "latitude", nullable = true)
     private double latitude;
@@ -50,107 +54,154 @@ public class Metadata {
     private Date captured;
 
     /**
-     * Reads metadata from the specified absolute filepath and generates a Metadata object with available data
+     * Sets the cache that {@link #read(File, UnaryOperator)} consults before reading a file, and fills when it has read one
+     * @param cache the cache, or null to always read the file
+     */
+    public static void setCache(MetadataCache cache) {
+        Metadata.cache = cache;
+    }
+
+    /**
+     * Reads metadata from the specified absolute filepath and generates a Metadata object with available data.
+     * See {@link #read(File, UnaryOperator)}.
      * @param filepath Absolute path to an image file
      * @return A Metadata object if it successfully reads metadata, null if it catches an exception
      */
     public static Metadata generate(String filepath) {
-        File file = new File(filepath);
-
         try {
-            com.drew.metadata.Metadata metadata = ImageMetadataReader.readMetadata(file);
-
-            GpsDirectory gps = metadata.getFirstDirectoryOfType(GpsDirectory.class);
-            ExifDirectoryBase exifdb = metadata.getFirstDirectoryOfType(ExifDirectoryBase.class);
-
-            // Variables with default values
-            double tmp_latitude = 0.0;
-            double tmp_longitude = 0.0;
-            int tmp_height = 0;
-            int tmp_width = 0;
-            String tmp_make = "";
-            String tmp_model = "";
-            Date tmp_captured = null;
-
-            // Geolocation
-            try {
-                GeoLocation geolocation = gps.getGeoLocation();
-
-                if (geolocation != null) {
-                    tmp_latitude = geolocation.getLatitude();
-                    tmp_longitude = geolocation.getLongitude();
-
-                    logger.info("Geolocation called and returned latitude=" + (geolocation.getLatitude() + ", longitude=" + geolocation.getLongitude()));
-                }
-            } catch (NullPointerException ex) {
-                logger.warn("Exception caught: " + Arrays.toString(ex.getStackTrace()));
+            return read(new File(filepath), UnaryOperator.identity());
+        } catch (ImageProcessingException | IOException ex) {
+            logger.warn("Exception caught: " + Arrays.toString(ex.getStackTrace()));
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads metadata from an image file and generates a Metadata object with available data.
+     * The file is read once, through a single buffered stream, and the file type is taken from the parsed directories.
+     * For JPEG and PNG files only the header is read, by {@link ImageHeaderReader}; other files, and headers it
+     * cannot read, are parsed in full by metadata-extractor.
+     * If a {@link MetadataCache} is set and the file has not changed since it was last read, it is not read again.
+     * @param file an image file
+     * @param guard wraps the stream the file is read from, for example to limit how long or how much it is read
+     * @return A Metadata object
+     * @throws ImageProcessingException if the file is not an image that metadata-extractor can read
+     * @throws IOException if the file cannot be read, or the guarded stream stops the reading
+     */
+    public static Metadata read(File file, UnaryOperator<InputStream> guard) throws ImageProcessingException, IOException {
+        MetadataCache cache = Metadata.cache;
+
+        if (cache != null) {
+            Optional<Metadata> cached = cache.get(file);
+            if (cached.isPresent()) {
+                return cached.get();
             }
+        }
 
-            // Height & Width
-            FileInputStream fis = new FileInputStream(file);
-            FilterInputStream filter = new BufferedInputStream(fis);
+        try (InputStream stream = new BufferedInputStream(guard.apply(new FileInputStream(file)))) {
+            stream.mark(ImageHeaderReader.LIMIT);
+            Optional<com.drew.metadata.Metadata> header = ImageHeaderReader.read(stream);
+            if (header.isEmpty()) {
+                stream.reset();
+            }
 
-            FileType filetype = FileTypeDetector.detectFileType(filter);
-            logger.info("Filetype detected: " + filetype);
-            
-            if (filetype == FileType.Jpeg) {
-                JpegDirectory jpegdir = metadata.getFirstDirectoryOfType(JpegDirectory.class);
+            Metadata res = generate(header.isPresent() ? header.get() : ImageMetadataReader.readMetadata(stream, file.length()));
 
-                if (jpegdir.getInteger(JpegDirectory.TAG_IMAGE_HEIGHT) != null) {
-                    tmp_height = jpegdir.getInteger(JpegDirectory.TAG_IMAGE_HEIGHT);
-                }
+            if (cache != null) {
+                cache.put(file, res);
+            }
 
-                if (jpegdir.getInteger(JpegDirectory.TAG_IMAGE_WIDTH) != null) {
-                    tmp_width = jpegdir.getInteger(JpegDirectory.TAG_IMAGE_WIDTH);
-                }
+            return res;
+        }
+    }
+
+    /**
+     * Generates a Metadata object from metadata already parsed by metadata-extractor
+     * @param metadata parsed metadata of an image file
+     * @return A Metadata object with available data
+     */
+    static Metadata generate(com.drew.metadata.Metadata metadata) {
+        GpsDirectory gps = metadata.getFirstDirectoryOfType(GpsDirectory.class);
+        ExifDirectoryBase exifdb = metadata.getFirstDirectoryOfType(ExifDirectoryBase.class);
+
+        // Variables with default values
+        double tmp_latitude = 0.0;
+        double tmp_longitude = 0.0;
+        int tmp_height = 0;
+        int tmp_width = 0;
+        String tmp_make = "";
+        String tmp_model = "";
+        Date tmp_captured = null;
+
+        // Geolocation
+        if (gps != null) {
+            GeoLocation geolocation = gps.getGeoLocation();
+
+            if (geolocation != null) {
+                tmp_latitude = geolocation.getLatitude();
+                tmp_longitude = geolocation.getLongitude();
+
+                logger.info("Geolocation called and returned latitude=" + (geolocation.getLatitude() + ", longitude=" + geolocation.getLongitude()));
             }
-            else if (filetype == FileType.Png) {
-                PngDirectory pngdir = metadata.getFirstDirectoryOfType(PngDirectory.class);
+        }
+
+        // Height & Width, from the directory of the detected file type
+        FileTypeDirectory filetype = metadata.getFirstDirectoryOfType(FileTypeDirectory.class);
+        if (filetype != null) {
+            logger.info("Filetype detected: " + filetype.getString(FileTypeDirectory.TAG_DETECTED_FILE_TYPE_NAME));
+        }
+
+        JpegDirectory jpegdir = metadata.getFirstDirectoryOfType(JpegDirectory.class);
+        PngDirectory pngdir = metadata.getFirstDirectoryOfType(PngDirectory.class);
 
-                if (pngdir.getInteger(PngDirectory.TAG_IMAGE_HEIGHT) != null) {
-                    tmp_height = pngdir.getInteger(PngDirectory.TAG_IMAGE_HEIGHT);
-                }
+        if (jpegdir != null) {
+            if (jpegdir.getInteger(JpegDirectory.TAG_IMAGE_HEIGHT) != null) {
+                tmp_height = jpegdir.getInteger(JpegDirectory.TAG_IMAGE_HEIGHT);
+            }
 
-                if (pngdir.getInteger(PngDirectory.TAG_IMAGE_WIDTH) != null) {
-                    tmp_width = pngdir.getInteger(PngDirectory.TAG_IMAGE_WIDTH);
-                }
+            if (jpegdir.getInteger(JpegDirectory.TAG_IMAGE_WIDTH) != null) {
+                tmp_width = jpegdir.getInteger(JpegDirectory.TAG_IMAGE_WIDTH);
+            }
+        }
+        else if (pngdir != null) {
+            if (pngdir.getInteger(PngDirectory.TAG_IMAGE_HEIGHT) != null) {
+                tmp_height = pngdir.getInteger(PngDirectory.TAG_IMAGE_HEIGHT);
             }
 
-            // Make, Model & Capture Date
-            try {
-                if (exifdb.getString(ExifDirectoryBase.TAG_MAKE) != null) {
-                    tmp_make = exifdb.getString(ExifDirectoryBase.TAG_MAKE);
-                }
-
-                if (exifdb.getString(ExifDirectoryBase.TAG_MODEL) != null) {
-                    tmp_model = exifdb.getString(ExifDirectoryBase.TAG_MODEL);
-                }
-
-                // Date
-                if (exifdb.getDate(ExifDirectoryBase.TAG_DATETIME) != null) {
-                    tmp_captured = exifdb.getDate(ExifDirectoryBase.TAG_DATETIME);
-                }
-            } catch (NullPointerException ex) {
-                logger.warn("Exception caught: " + Arrays.toString(ex.getStackTrace()));
+            if (pngdir.getInteger(PngDirectory.TAG_IMAGE_WIDTH) != null) {
+                tmp_width = pngdir.getInteger(PngDirectory.TAG_IMAGE_WIDTH);
             }
+        }
 
-            Metadata res = new Metadata();
-            res.setLatitude(tmp_latitude);
-            res.setLongitude(tmp_longitude);
-            res.setHeight(tmp_height);
-            res.setWidth(tmp_width);
-            res.setMake(tmp_make);
-            res.setModel(tmp_model);
-            res.setCaptured(tmp_captured);
+        // Make, Model & Capture Date
+        if (exifdb != null) {
+            if (exifdb.getString(ExifDirectoryBase.TAG_MAKE) != null) {
+                tmp_make = exifdb.getString(ExifDirectoryBase.TAG_MAKE);
+            }
 
-            logger.info("Metadata generation result: " + res.toString());
+            if (exifdb.getString(ExifDirectoryBase.TAG_MODEL) != null) {
+                tmp_model = exifdb.getString(ExifDirectoryBase.TAG_MODEL);
+            }
 
-            return res;
-        } catch (ImageProcessingException | IOException ex) {
-            logger.warn("Exception caught: " + Arrays.toString(ex.getStackTrace()));
+            // Date
+            if (exifdb.getDate(ExifDirectoryBase.TAG_DATETIME) != null) {
+                tmp_captured = exifdb.getDate(ExifDirectoryBase.TAG_DATETIME);
+            }
         }
 
-        return null;
+        Metadata res = new Metadata();
+        res.setLatitude(tmp_latitude);
+        res.setLongitude(tmp_longitude);
+        res.setHeight(tmp_height);
+        res.setWidth(tmp_width);
+        res.setMake(tmp_make);
+        res.setModel(tmp_model);
+        res.setCaptured(tmp_captured);
+
+        logger.info("Metadata generation result: " + res.toString());
+
+        return res;
     }
 
     /**
@@ -0,0 +1,59 @@
+package hibernate.model;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Class representing how far the local database has been synchronized with a remote one.
+ * Stores the ID of the last remote change log entry that has been applied locally.
+ *
+ * @author Karl Labrador
+ */
+@Entity
+@Table(name = "replication_state")
+public class ReplicationState implements Serializable {
+    @Id
+    @Column(name = "remote", updatable = false)
+    private String remote;
+
+    @Column(name = "lastchangeid", nullable = false)
+    private long lastChangeId;
+
+    /**
+     * Empty constructor required by JPA
+     */
+    public ReplicationState() {
+    }
+
+    /**
+     * Creates the state for a remote that has not been pulled from yet
+     * @param remote name of the remote persistence unit
+     */
+    public ReplicationState(String remote) {
+        this.remote = remote;
+    }
+
+    /**
+     * Get method for remote
+     * @return name of the remote persistence unit
+     */
+    public String getRemote() {
+        return remote;
+    }
+
+    /**
+     * Get method for lastChangeId
+     * @return the ID of the last remote change log entry applied locally
+     */
+    public long getLastChangeId() {
+        return lastChangeId;
+    }
+
+    /**
+     * Set method for lastChangeId
+     * @param lastChangeId the ID of the last remote change log entry applied locally
+     */
+    public void setLastChangeId(long lastChangeId) {
+        this.lastChangeId = lastChangeId;
+    }
+}
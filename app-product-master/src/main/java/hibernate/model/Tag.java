@@ -0,0 +1,120 @@
+package hibernate.model;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.QueryHints;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Class representing a tag.
+ * Each tag name is stored once, and images refer to it through the image_tags table.
+ * Tags are equal if their names are equal, so a tag can be compared before it has been saved.
+ *
+ * Use {@link hibernate.dao.TagDAO#findOrCreate} to get the Tag for a name instead of creating duplicates.
+ *
+ * @author Karl Labrador
+ */
+@Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NaturalIdCache
+@Table(name = "tag")
+@NamedQueries({
+        @NamedQuery(name = "Tag.count", query = "SELECT COUNT(t) FROM Tag t"),
+        @NamedQuery(name = "Tag.findAll", query = "SELECT t FROM Tag t",
+                hints = @QueryHint(name = QueryHints.CACHEABLE, value = "true")),
+        @NamedQuery(name = "Tag.findIdByName", query = "SELECT t.tagid FROM Tag t WHERE t.name = :name"),
+        @NamedQuery(name = "Tag.countByUser", query = "SELECT t.name, COUNT(i) FROM ImageData i JOIN i.tags t WHERE i.user = :user GROUP BY t.name ORDER BY t.name")
+})
+public class Tag implements Serializable {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tag_sequence")
+    @GenericGenerator(
+            name = "tag_sequence",
+            strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+            parameters = {
+                    @Parameter(name = "sequence_name", value = "tag_sequence"),
+                    @Parameter(name = "increment_size", value = "50"),
+                    @Parameter(name = "optimizer", value = "pooled")
+            }
+    )
+    @Column(name = "tagid", updatable = false)
+    private int tagid;
+
+    @NaturalId
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    /**
+     * Empty constructor required by JPA
+     */
+    public Tag() {
+    }
+
+    /**
+     * Creates an unsaved tag
+     * @param name the tag's name
+     */
+    public Tag(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get method for tagid
+     * @return the tag's ID
+     */
+    public int getTagID() {
+        return tagid;
+    }
+
+    /**
+     * Get method for name
+     * @return the tag's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Equals method that overrides the default equals method
+     * @param o An Object that is hopefully a Tag object
+     * @return true if the tags have the same name, false if not
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof Tag)) {
+            return false;
+        }
+
+        Tag tag = (Tag) o;
+
+        return name != null && name.equals(tag.getName());
+    }
+
+    /**
+     * hashCode method based on the tag's name, consistent with equals
+     * @return hash code
+     */
+    @Override
+    public int hashCode() {
+        return (name != null) ? name.hashCode() : 0;
+    }
+
+    /**
+     * toString method
+     * @return the tag's name
+     */
+    public String toString() {
+        return name;
+    }
+}
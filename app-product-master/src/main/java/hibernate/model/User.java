@@ -1,10 +1,13 @@
 package hibernate.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.QueryHints;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -18,13 +21,18 @@ import java.util.List;
  * @author Karl Labrador
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(
         name = "users",
-        uniqueConstraints = {@UniqueConstraint(columnNames = {"username", "uuid"})}
+        uniqueConstraints = {@UniqueConstraint(name = "uk_users_username_uuid", columnNames = {"username", "uuid"})}
 )
 @NamedQueries({
         @NamedQuery(name="User.count", query="SELECT COUNT(u) FROM User u"),
-        @NamedQuery(name="User.findAll", query="SELECT u FROM User u")
+        @NamedQuery(name="User.findAll", query="SELECT u FROM User u",
+                hints = @QueryHint(name = QueryHints.CACHEABLE, value = "true")),
+        @NamedQuery(name="User.findByUsernameAndUuid", query="SELECT u FROM User u WHERE u.username = :username AND u.uuid = :uuid",
+                hints = @QueryHint(name = QueryHints.CACHEABLE, value = "true"))
 })
 public class User implements Serializable {
     @Id
@@ -43,7 +51,10 @@ public class User implements Serializable {
     @Temporal(TemporalType.TIMESTAMP)
     private Date created;
 
-    @OneToMany(mappedBy = "user", fetch = FetchType.EAGER, cascade = CascadeType.ALL, orphanRemoval = true)
+    // Lazy, so logging in does not load the whole library. See ImageDAO for paged and streamed access.
+    // Refresh is not cascaded, so refreshing the user reloads the list once instead of every loaded image.
+    @OneToMany(mappedBy = "user", fetch = FetchType.LAZY, orphanRemoval = true,
+            cascade = {CascadeType.PERSIST, CascadeType.MERGE, CascadeType.REMOVE, CascadeType.DETACH})
     @OrderBy("imageid DESC")
     private List<ImageData> images = new ArrayList<>();
 
@@ -121,38 +132,15 @@ public class User implements Serializable {
      * with this method. Remember to use the saveUser method to push changes to
      * the database. See {@link hibernate.api.DataAPI#saveUser}.
      *
+     * The images are loaded the first time the List is read. For large libraries, prefer
+     * {@link hibernate.api.DataAPI#getImages(User, int, int)}.
+     *
      * @return A List object that consists of ImageData objects
      */
     public List<ImageData> getImages() {
         return images;
     }
 
-    /**
-     * Get method to retrieve all the images grouped by tags.
-     * @return Returns a HashMap where the tag is the key, and value is a List.
-     */
-    public HashMap<String, List<ImageData>> getImagesByTags() {
-        HashMap<String, List<ImageData>> hashMap = new HashMap<String, List<ImageData>>();
-
-        images.forEach(image -> {
-            List<String> tags = image.getTags();
-
-            tags.forEach(tag -> {
-               if (!hashMap.containsKey(tag)) {
-                   List<ImageData> list = new ArrayList<ImageData>();
-                   list.add(image);
-
-                   hashMap.put(tag, list);
-               }
-               else {
-                   hashMap.get(tag).add(image);
-               }
-            });
-        });
-
-        return hashMap;
-    }
-
     /**
      * Set method for images
      * @param images a List object that contains ImageData objects
@@ -0,0 +1,59 @@
+package hibernate.sync;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.config.spi.StandardConverters;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * ChangeLogIntegrator class - registers a {@link ChangeLogListener} for persistence units that enable the change log.
+ * Hibernate finds the integrator through META-INF/services, so it is only switched on by the properties:
+ *
+ * <pre>
+ * &lt;property name="app-product.change_log" value="true" /&gt;
+ * &lt;property name="app-product.change_log.origin" value="device id" /&gt;
+ * </pre>
+ *
+ * @author Karl Labrador
+ */
+public class ChangeLogIntegrator implements Integrator {
+    public final static String ENABLED = "app-product.change_log";
+    public final static String ORIGIN = "app-product.change_log.origin";
+
+    /**
+     * Appends the change log listener to the insert, update, delete and collection events if the change log is enabled
+     * @param metadata the mapping metadata
+     * @param sessionFactory the session factory being built
+     * @param serviceRegistry the session factory's services
+     */
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        ConfigurationService configuration = serviceRegistry.getService(ConfigurationService.class);
+
+        if (!configuration.getSetting(ENABLED, StandardConverters.BOOLEAN, false)) {
+            return;
+        }
+
+        ChangeLogListener listener = new ChangeLogListener(configuration.getSetting(ORIGIN, StandardConverters.STRING));
+        EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+    }
+
+    /**
+     * Nothing to clean up, the listener holds no resources
+     * @param sessionFactory the session factory being closed
+     * @param serviceRegistry the session factory's services
+     */
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
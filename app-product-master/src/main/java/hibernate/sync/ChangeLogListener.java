@@ -0,0 +1,180 @@
+package hibernate.sync;
+
+import hibernate.model.ChangeLogEntry;
+import hibernate.model.ImageData;
+import hibernate.model.User;
+import org.hibernate.Session;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * ChangeLogListener class - writes a {@link ChangeLogEntry} for every image that is inserted, updated or deleted,
+ * or whose tags change.
+ *
+ * The entries are collected while the session flushes, one per image, and written just before the transaction
+ * commits, on the same connection. They are therefore committed or rolled back together with the change itself.
+ * Bulk JPQL updates and deletes bypass the listener.
+ *
+ * @author Karl Labrador
+ */
+public class ChangeLogListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener,
+        PostCollectionRecreateEventListener, PostCollectionUpdateEventListener {
+    private final static ThreadLocal<Boolean> suspended = ThreadLocal.withInitial(() -> false);
+    private final Map<SessionImplementor, Map<String, ChangeLogEntry>> pending = new ConcurrentHashMap<>();
+    private final String origin;
+
+    /**
+     * Constructor for ChangeLogListener
+     * @param origin the device to record as the origin of the changes, or null
+     */
+    public ChangeLogListener(String origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * Runs work on the calling thread without recording its changes, for applying changes that came from elsewhere.
+     * The work must commit its own transactions.
+     * @param work the work to perform
+     * @param <R> the type of the result
+     * @return the result of the work
+     */
+    public static <R> R withoutRecording(Supplier<R> work) {
+        boolean wasSuspended = suspended.get();
+        suspended.set(true);
+
+        try {
+            return work.get();
+        } finally {
+            suspended.set(wasSuspended);
+        }
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof ImageData) {
+            ImageData image = (ImageData) event.getEntity();
+            record(event.getSession(), image.getUser(), image.getPath(), ChangeLogEntry.Operation.UPSERT);
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof ImageData) {
+            ImageData image = (ImageData) event.getEntity();
+            record(event.getSession(), image.getUser(), image.getPath(), ChangeLogEntry.Operation.UPSERT);
+        }
+    }
+
+    /**
+     * Records a deleted image. The owner and path are taken from the state the image was loaded with,
+     * as {@link User#deleteImage} has already cleared the owner.
+     * @param event the delete event
+     */
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof ImageData) {
+            EntityPersister persister = event.getPersister();
+            Object[] state = event.getDeletedState();
+            User user = (User) state[persister.getEntityMetamodel().getPropertyIndex("user")];
+            String path = (String) state[persister.getEntityMetamodel().getPropertyIndex("path")];
+
+            record(event.getSession(), user, path, ChangeLogEntry.Operation.DELETE);
+        }
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        recordOwner(event.getSession(), event.getAffectedOwnerOrNull());
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        recordOwner(event.getSession(), event.getAffectedOwnerOrNull());
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    /**
+     * Records the owner of a changed collection, if it is an image
+     * @param session the session that flushed the collection
+     * @param owner the entity that owns the collection
+     */
+    private void recordOwner(SessionImplementor session, Object owner) {
+        if (owner instanceof ImageData) {
+            ImageData image = (ImageData) owner;
+            record(session, image.getUser(), image.getPath(), ChangeLogEntry.Operation.UPSERT);
+        }
+    }
+
+    /**
+     * Adds an entry to the ones to be written when the session's transaction commits.
+     * A later change to the same image in the same transaction replaces the earlier entry.
+     * @param session the session that made the change
+     * @param user the owner of the image
+     * @param path the path of the image
+     * @param operation what happened to the image
+     */
+    private void record(SessionImplementor session, User user, String path, ChangeLogEntry.Operation operation) {
+        if (suspended.get() || user == null || path == null) {
+            return;
+        }
+
+        Map<String, ChangeLogEntry> entries = pending.computeIfAbsent(session, transactionSession -> {
+            transactionSession.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) this::write);
+            transactionSession.getActionQueue().registerProcess(
+                    (AfterTransactionCompletionProcess) (success, completedSession) -> pending.remove(completedSession));
+
+            return new LinkedHashMap<>();
+        });
+
+        String key = user.getUsername() + '\n' + user.getUuid() + '\n' + path;
+        entries.remove(key);
+        entries.put(key, new ChangeLogEntry(user.getUsername(), user.getUuid(), path, operation, origin));
+    }
+
+    /**
+     * Writes the collected entries through a temporary session that shares the transaction's connection
+     * @param session the session whose transaction is about to commit
+     */
+    private void write(SessionImplementor session) {
+        Map<String, ChangeLogEntry> entries = pending.remove(session);
+
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+
+        Session changeLogSession = session.sessionWithOptions()
+                .connection()
+                .autoClose(false)
+                .connectionHandlingMode(PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION)
+                .openSession();
+
+        try {
+            entries.values().forEach(changeLogSession::persist);
+            changeLogSession.flush();
+        } finally {
+            changeLogSession.close();
+        }
+    }
+}
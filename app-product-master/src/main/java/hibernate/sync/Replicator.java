@@ -0,0 +1,412 @@
+package hibernate.sync;
+
+import hibernate.api.DataAPI;
+import hibernate.dao.UnitOfWork;
+import hibernate.model.ChangeLogEntry;
+import hibernate.model.ImageData;
+import hibernate.model.Metadata;
+import hibernate.model.ReplicationState;
+import hibernate.model.Tag;
+import hibernate.model.User;
+import org.apache.log4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Replicator class - keeps a user's images in the local embedded database in sync with the remote database.
+ *
+ * The UI only reads and writes the local database. Every change to an image is recorded in the local change log
+ * (see {@link ChangeLogListener}), and the replicator periodically:
+ * <ol>
+ *     <li>pushes the images named by the local change log to the remote database, then empties it, and</li>
+ *     <li>pulls the images named by the remote change log entries that other devices wrote since the last pull.</li>
+ * </ol>
+ * The first pull copies all of the user's remote images instead. Images are matched by their owner's username
+ * and UUID and their path, and each side is brought to the other side's current state, so applying an entry twice
+ * is harmless. Pulled changes are written to the local database without being recorded, so they are not pushed back.
+ *
+ * Change log IDs are handed out when an entry is inserted, so a transaction that commits late can make an entry
+ * visible below IDs that have already been pulled. Each pull therefore reads the last {@link #PULL_WINDOW} IDs
+ * before its cursor again, and skips the entries this replicator has already applied. An entry that is committed
+ * after more than PULL_WINDOW newer entries is missed until its image changes again.
+ *
+ * A listener set with {@link #setPullListener} is told when a run has pulled changes into the local database, so
+ * that what is shown from it can be read again.
+ *
+ * If the remote database cannot be reached, the run is logged and retried at the next interval, and the local
+ * change log keeps growing until it can be pushed. Albums are not replicated.
+ *
+ * @author Karl Labrador
+ */
+public class Replicator implements AutoCloseable {
+    private final static int BATCH_SIZE = 500;
+    private final static int PULL_WINDOW = 1000;
+    private final static Logger logger = Logger.getLogger(Replicator.class);
+    private final DataAPI local;
+    private final Supplier<DataAPI> remoteSupplier;
+    private final String remoteName;
+    private final String username;
+    private final String uuid;
+    private final String origin;
+    private final ScheduledExecutorService scheduler;
+    private final NavigableSet<Long> pulledChangeIds = new TreeSet<>();
+    private volatile IntConsumer pullListener = pulled -> {};
+    private DataAPI remote;
+
+    /**
+     * Constructor for Replicator
+     * @param local the DataAPI for the local database, with the change log enabled
+     * @param remoteName name of the remote, used to store how far it has been pulled from
+     * @param remoteSupplier creates the DataAPI for the remote database. Called again after a failure until it succeeds.
+     * @param username the username of the user whose images are replicated
+     * @param uuid the UUID of the user whose images are replicated
+     * @param origin the ID of this device, as configured for the remote's change log
+     */
+    public Replicator(DataAPI local, String remoteName, Supplier<DataAPI> remoteSupplier, String username, String uuid, String origin) {
+        this.local = local;
+        this.remoteName = remoteName;
+        this.remoteSupplier = remoteSupplier;
+        this.username = username;
+        this.uuid = uuid;
+        this.origin = origin;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    local.releaseEntityManager();
+                }
+            }, "replicator");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the properties to open the remote persistence unit with. The remote records its own change log, marked
+     * with this device as origin, and does not use the second-level cache, as only the replicator reads from it.
+     * @param origin the ID of this device
+     * @return a Map of properties that override the ones in persistence.xml
+     */
+    public static Map<String, Object> remoteProperties(String origin) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ChangeLogIntegrator.ENABLED, "true");
+        properties.put(ChangeLogIntegrator.ORIGIN, origin);
+        properties.put("hibernate.cache.use_second_level_cache", "false");
+        properties.put("hibernate.cache.use_query_cache", "false");
+
+        return properties;
+    }
+
+    /**
+     * Sets what is called after a run that pulled changes into the local database
+     * @param pullListener called on the replicator's thread with the number of changes pulled
+     */
+    public void setPullListener(IntConsumer pullListener) {
+        this.pullListener = pullListener;
+    }
+
+    /**
+     * Starts replicating in the background
+     * @param interval the time between the end of one run and the start of the next
+     */
+    public void start(Duration interval) {
+        scheduler.scheduleWithFixedDelay(this::runOnce, 0L, interval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Started replicating every " + interval);
+    }
+
+    /**
+     * Pushes the local changes and pulls the remote ones once. Failures are logged, and the changes that were not
+     * replicated are retried by the next run.
+     * @return true if both the push and the pull succeeded
+     */
+    public synchronized boolean runOnce() {
+        try {
+            if (remote == null) {
+                remote = remoteSupplier.get();
+            }
+
+            int pushed = push();
+            int pulled = pull();
+            logger.info("Replicated " + pushed + " local and " + pulled + " remote changes");
+            if (pulled > 0) {
+                pullListener.accept(pulled);
+            }
+
+            return true;
+        } catch (Exception ex) {
+            logger.warn("Replication failed, retrying at the next run", ex);
+        }
+
+        return false;
+    }
+
+    /**
+     * Stops replicating. A run in progress is allowed to finish.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Copies the images named by the local change log to the remote database, then deletes those entries
+     * @return the number of entries pushed
+     */
+    private int push() {
+        int pushed = 0;
+
+        while (true) {
+            try (UnitOfWork localWork = local.openUnitOfWork()) {
+                List<ChangeLogEntry> entries = localWork.getChangeLogDAO().findOldest(BATCH_SIZE);
+
+                if (entries.isEmpty()) {
+                    return pushed;
+                }
+
+                try (UnitOfWork remoteWork = remote.openUnitOfWork()) {
+                    for (ChangeLogEntry entry : latestPerImage(entries)) {
+                        copy(localWork.getImageDAO().findByPath(entry.getUsername(), entry.getUuid(), entry.getPath()),
+                                remoteWork, entry.getUsername(), entry.getUuid(), entry.getPath());
+                    }
+
+                    remoteWork.commit();
+                }
+
+                List<Long> changeIds = new ArrayList<>();
+                entries.forEach(entry -> changeIds.add(entry.getChangeID()));
+                localWork.getChangeLogDAO().deleteAll(changeIds);
+                localWork.commit();
+
+                pushed += entries.size();
+
+                if (entries.size() < BATCH_SIZE) {
+                    return pushed;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the images named by the remote change log entries of other devices to the local database,
+     * or all of the user's remote images the first time
+     * @return the number of entries or images pulled
+     */
+    private int pull() {
+        return ChangeLogListener.withoutRecording(() -> {
+            ReplicationState state;
+
+            try (UnitOfWork localWork = local.openUnitOfWork()) {
+                state = localWork.getEntityManager().find(ReplicationState.class, remoteName);
+            }
+
+            return state == null ? pullAll() : pullAfter(state.getLastChangeId());
+        });
+    }
+
+    /**
+     * Copies all of the user's remote images to the local database and remembers the newest remote change log entry
+     * @return the number of images pulled
+     */
+    private int pullAll() {
+        int pulled = 0;
+
+        try (UnitOfWork localWork = local.openUnitOfWork(); UnitOfWork remoteWork = remote.openUnitOfWork()) {
+            // Read before the images, so changes made while copying are pulled again by the next run
+            long lastChangeId = remoteWork.getChangeLogDAO().getLastChangeId();
+            User remoteUser = remoteWork.getUserDAO().getUser(username, uuid);
+
+            if (remoteUser != null) {
+                try (Stream<ImageData> images = remoteWork.getImageDAO().streamByUser(remoteUser, BATCH_SIZE)) {
+                    for (ImageData image : (Iterable<ImageData>) images::iterator) {
+                        copy(Optional.of(image), localWork, username, uuid, image.getPath());
+                        pulled++;
+                    }
+                }
+            }
+
+            saveState(localWork, lastChangeId);
+            localWork.commit();
+        }
+
+        return pulled;
+    }
+
+    /**
+     * Copies the images named by the remote change log entries written by other devices after a given entry.
+     * Entries in the {@link #PULL_WINDOW} IDs up to the given entry are read again, and copied if they have not been
+     * applied yet, as they may have been committed after the last pull.
+     * @param lastChangeId the ID of the newest remote entry that has been pulled
+     * @return the number of entries pulled
+     */
+    private int pullAfter(long lastChangeId) {
+        int pulled = 0;
+        long afterChangeId = Math.max(0L, lastChangeId - PULL_WINDOW);
+        pulledChangeIds.headSet(afterChangeId, true).clear();
+
+        while (true) {
+            try (UnitOfWork localWork = local.openUnitOfWork(); UnitOfWork remoteWork = remote.openUnitOfWork()) {
+                List<ChangeLogEntry> entries = remoteWork.getChangeLogDAO()
+                        .findForUserAfter(username, uuid, origin, afterChangeId, BATCH_SIZE);
+
+                if (entries.isEmpty()) {
+                    return pulled;
+                }
+
+                List<ChangeLogEntry> newEntries = new ArrayList<>();
+                for (ChangeLogEntry entry : entries) {
+                    if (!pulledChangeIds.contains(entry.getChangeID())) {
+                        newEntries.add(entry);
+                    }
+                }
+
+                for (ChangeLogEntry entry : latestPerImage(newEntries)) {
+                    copy(remoteWork.getImageDAO().findByPath(entry.getUsername(), entry.getUuid(), entry.getPath()),
+                            localWork, entry.getUsername(), entry.getUuid(), entry.getPath());
+                }
+
+                afterChangeId = entries.get(entries.size() - 1).getChangeID();
+                lastChangeId = Math.max(lastChangeId, afterChangeId);
+                saveState(localWork, lastChangeId);
+                localWork.commit();
+
+                newEntries.forEach(entry -> pulledChangeIds.add(entry.getChangeID()));
+                pulled += newEntries.size();
+
+                if (entries.size() < BATCH_SIZE) {
+                    return pulled;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the ID of the newest remote change log entry that has been pulled
+     * @param localWork the local unit of work
+     * @param lastChangeId the ID of the entry
+     */
+    private void saveState(UnitOfWork localWork, long lastChangeId) {
+        ReplicationState state = localWork.getEntityManager().find(ReplicationState.class, remoteName);
+
+        if (state == null) {
+            state = new ReplicationState(remoteName);
+            localWork.getEntityManager().persist(state);
+        }
+
+        state.setLastChangeId(lastChangeId);
+    }
+
+    /**
+     * Keeps the newest entry for each image, in the order the images were last changed
+     * @param entries change log entries, oldest first
+     * @return the newest entry per image
+     */
+    private static Iterable<ChangeLogEntry> latestPerImage(List<ChangeLogEntry> entries) {
+        Map<String, ChangeLogEntry> latest = new LinkedHashMap<>();
+
+        for (ChangeLogEntry entry : entries) {
+            String key = entry.getUsername() + '\n' + entry.getUuid() + '\n' + entry.getPath();
+            latest.remove(key);
+            latest.put(key, entry);
+        }
+
+        return latest.values();
+    }
+
+    /**
+     * Brings an image in the target database to its current state in the source database.
+     * The image is deleted from the target if it no longer exists in the source.
+     * @param sourceImage the image in the source database, or empty if it no longer exists there
+     * @param target the unit of work to write to
+     * @param username the username of the image's owner
+     * @param uuid the UUID of the image's owner
+     * @param path the path of the image
+     */
+    private static void copy(Optional<ImageData> sourceImage, UnitOfWork target, String username, String uuid, String path) {
+        Optional<ImageData> targetImage = target.getImageDAO().findByPath(username, uuid, path);
+
+        if (sourceImage.isEmpty()) {
+            targetImage.ifPresent(image -> target.getEntityManager().remove(image));
+            return;
+        }
+
+        ImageData image = targetImage.orElseGet(() -> {
+            ImageData newImage = new ImageData();
+            newImage.setUser(findOrCreateUser(target, username, uuid));
+            newImage.setPath(path);
+            target.getEntityManager().persist(newImage);
+
+            return newImage;
+        });
+
+        image.setMetadata(copyOf(sourceImage.get().getMetadata()));
+
+        Set<Tag> tags = new HashSet<>();
+        sourceImage.get().getTagNames().forEach(name -> tags.add(target.getTagDAO().findOrCreate(name)));
+
+        if (!tags.equals(image.getTags())) {
+            image.getTags().clear();
+            image.getTags().addAll(tags);
+        }
+    }
+
+    /**
+     * Finds the user in a database, or persists a new one if the user has never been replicated there
+     * @param work the unit of work for the database
+     * @param username the user's username
+     * @param uuid the user's UUID
+     * @return the managed User object
+     */
+    private static User findOrCreateUser(UnitOfWork work, String username, String uuid) {
+        User user = work.getUserDAO().getUser(username, uuid);
+
+        if (user == null) {
+            user = new User();
+            user.setUsername(username);
+            user.setUuid(uuid);
+            work.getEntityManager().persist(user);
+        }
+
+        return user;
+    }
+
+    /**
+     * Copies metadata, so the source and target images do not share an embedded object
+     * @param metadata the metadata to copy, or null
+     * @return the copy, or null
+     */
+    private static Metadata copyOf(Metadata metadata) {
+        if (metadata == null) {
+            return null;
+        }
+
+        Metadata copy = new Metadata();
+        copy.setLatitude(metadata.getLatitude());
+        copy.setLongitude(metadata.getLongitude());
+        copy.setHeight(metadata.getHeight());
+        copy.setWidth(metadata.getWidth());
+        copy.setMake(metadata.getMake());
+        copy.setModel(metadata.getModel());
+        copy.setCaptured(metadata.getCaptured());
+
+        return copy;
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Subpackage of hibernate package. Contains the change log and the replicator that keep the local
+ * embedded database and the remote database in sync.
+ */
+package hibernate.sync;
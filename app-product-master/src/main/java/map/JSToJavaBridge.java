@@ -41,4 +41,14 @@ public class JSToJavaBridge {
     public void clickedMarker(String imgPath){
         Map.displayClickedImage(imgPath);
     }
+
+    /**
+     * Method run by the JavaScript when the user moves, resizes or zooms the map
+     * @param south The southern latitude of the visible map
+     * @param west The western longitude of the visible map
+     * @param north The northern latitude of the visible map
+     * @param east The eastern longitude of the visible map*/
+    public void boundsChanged(double south, double west, double north, double east){
+        Map.loadMarkers(south, west, north, east);
+    }
 }
@@ -1,6 +1,7 @@
 package map;
 
 import hibernate.model.ImageData;
+import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ChangeListener;
@@ -10,6 +11,7 @@ import javafx.scene.web.WebView;
 import netscape.javascript.JSObject;
 import org.apache.log4j.Logger;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Class used to representing the map. It uses a webview node to access a HTML file that runs OSM with leaflet.
@@ -25,6 +27,26 @@ public class Map {
     private final static Logger logger = Logger.getLogger(Map.class);
     private final static JSToJavaBridge jSToJavaBridge = new JSToJavaBridge();
     private final static ObjectProperty<ImageData> FULL_IMAGE_REQUEST = new SimpleObjectProperty<>();
+    private static MarkerLoader markerLoader = null;
+    private static int markerRequest = 0;
+
+
+    /**
+     * Loads the images inside the visible part of the map, such as {@code ImageManager.getImagesInBoundingBox}.
+     * A box whose west edge is east of its east edge crosses the antimeridian. */
+    @FunctionalInterface
+    public interface MarkerLoader {
+        CompletableFuture<List<ImageData>> load(double south, double west, double north, double east);
+    }
+
+
+    /**
+     * Method used to set where the markers for the visible part of the map are loaded from.
+     * Once set, moving the map replaces the markers with the images inside the visible part of it.
+     * @param loader The loader, or {@code null} to only show markers given to {@code addMarkers}. */
+    public static void setMarkerLoader(MarkerLoader loader) {
+        markerLoader = loader;
+    }
 
 
     /**
@@ -77,6 +99,7 @@ public class Map {
         logger.info("Adding markers");
         imageDataList = MarkerList.removeNoneGPSImg(imageData);
         List<Marker> markers = MarkerList.transformToMarkerList(imageDataList);
+        MarkerList.clearJSMarkers();
         MarkerList.filterJSMarkers(markers);
         List<String[]>  dataArr = MarkerList.getSingleImgMarkerArray();
         List<String[]> dataMultiList = MarkerList.getMultipleImgMarkerList();
@@ -87,6 +110,39 @@ public class Map {
 
 
 
+    /**Method used to reload the markers of the visible part of the map, for example after images have been added or removed.
+     * Does nothing if no {@code MarkerLoader} has been set.*/
+    public static void refreshMarkers() {
+        if (markerLoader != null) {
+            webEngine.executeScript("reportBounds()");
+        }
+    }
+
+
+    /**Method ran by the {@code JSToJavaBridge} when the visible part of the map changes.
+     * Loads the images inside it and replaces the markers with them, unless the map has moved again in the meantime.
+     * @param south The southern latitude of the visible map
+     * @param west The western longitude of the visible map
+     * @param north The northern latitude of the visible map
+     * @param east The eastern longitude of the visible map
+     * @see JSToJavaBridge*/
+    public static void loadMarkers(double south, double west, double north, double east) {
+        if (markerLoader == null) {
+            return;
+        }
+
+        int request = ++markerRequest;
+        markerLoader.load(south, west, north, east).whenComplete((images, ex) -> Platform.runLater(() -> {
+            if (ex != null) {
+                logger.error("Could not load markers: " + ex.getMessage());
+            } else if (request == markerRequest) {
+                addMarkers(images);
+            }
+        }));
+    }
+
+
+
     /**Method ran by the {@code JSToJavaBridge} when the user clicks an image.
      * @param imgPath The path to the clicked image on the users computer.
      * @see JSToJavaBridge*/
@@ -33,6 +33,14 @@ public class MarkerList {
     }
 
 
+    /**
+     * Method to empty the lists with marker information, before the markers of a new set of images are filtered into them. */
+    public static void clearJSMarkers(){
+        multipleImgMarkerList.clear();
+        singleImgMarkerArray.clear();
+    }
+
+
     /**
      * Method to filter a list of {@code Marker}-objects
      * Filters them into two lists, that is accessed with {@code getMultipleImgMarkerList} and {@code getSingleImgMarkerArray}
@@ -0,0 +1,87 @@
+package utility;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+
+/**
+ * GuardedInputStream Class, stops a parser that reads a file for too long, or reads too much of it.
+ *
+ * Every read and skip first checks the deadline and the number of bytes read so far, and fails with an
+ * IOException once either has been passed. The reason is kept, so that the caller can tell a guarded stop apart
+ * from a file that could not be read.
+ *
+ * @author Karl Labrador
+ */
+class GuardedInputStream extends FilterInputStream {
+    private final long deadlineNanos;
+    private final Duration timeout;
+    private final long readLimit;
+    private long bytesRead = 0;
+    private volatile String failure;
+
+    /**
+     * Constructor for GuardedInputStream
+     * @param in the stream to guard
+     * @param timeout how long the stream may be read from now
+     * @param readLimit how many bytes may be read
+     */
+    GuardedInputStream(InputStream in, Duration timeout, long readLimit) {
+        super(in);
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+        this.timeout = timeout;
+        this.readLimit = readLimit;
+    }
+
+    /**
+     * Gets why the stream stopped the reading
+     * @return the reason, or null if it has not
+     */
+    String getFailure() {
+        return failure;
+    }
+
+    @Override
+    public int read() throws IOException {
+        check(1);
+        int b = super.read();
+        if (b >= 0) {
+            bytesRead++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        check(len);
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            bytesRead += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        check(0);
+        return super.skip(n);
+    }
+
+    /**
+     * Checks the deadline and the number of bytes read
+     * @param length number of bytes about to be read, or 0 for a skip
+     * @throws IOException if the deadline has passed, or the limit has been read and more is wanted
+     */
+    private void check(int length) throws IOException {
+        if (failure == null && System.nanoTime() > deadlineNanos) {
+            failure = "took longer than " + timeout.toMillis() + " ms";
+        } else if (failure == null && length > 0 && bytesRead >= readLimit) {
+            failure = "read more than " + readLimit + " bytes";
+        }
+        if (failure != null) {
+            throw new InterruptedIOException("Stopped reading: " + failure);
+        }
+    }
+}
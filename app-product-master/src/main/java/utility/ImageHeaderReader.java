@@ -0,0 +1,314 @@
+package utility;
+
+import com.drew.imaging.FileType;
+import com.drew.imaging.png.PngChunkType;
+import com.drew.lang.ByteArrayReader;
+import com.drew.metadata.exif.ExifReader;
+import com.drew.metadata.file.FileTypeDirectory;
+import com.drew.metadata.jpeg.JpegDirectory;
+import com.drew.metadata.png.PngDirectory;
+import org.apache.log4j.Logger;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * ImageHeaderReader Class, reads the metadata that {@link hibernate.model.Metadata} needs from the header of a JPEG
+ * or PNG file, without reading the image data that follows it.
+ *
+ * For a JPEG, the segments are read up to the start of scan (SOS): the Exif APP1 segment and the first start of
+ * frame (SOFn) segment are parsed, and the rest are skipped. For a PNG, the chunks are read up to the first IDAT:
+ * the IHDR and eXIf chunks are parsed, and the rest are skipped. At most {@value #LIMIT} bytes are read, so a
+ * caller that marks its stream with that limit can reset it and parse the file in full when the header cannot
+ * be read here.
+ *
+ * @author Karl Labrador
+ */
+public class ImageHeaderReader {
+    public static final int LIMIT = 512 * 1024;
+    private static final byte[] EXIF_PREAMBLE = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int SOS = 0xDA;
+    private static final int EOI = 0xD9;
+    private static final int APP1 = 0xE1;
+    private static final Logger logger = Logger.getLogger(ImageHeaderReader.class);
+    private final InputStream in;
+    private int remaining = LIMIT;
+
+    /**
+     * Constructor for ImageHeaderReader
+     * @param in the stream, at the start of the file
+     */
+    private ImageHeaderReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the header of a JPEG or PNG file
+     * @param in the stream, at the start of the file
+     * @return the metadata of the header, or an empty Optional if the file is of another type, its header is
+     *         unusual or longer than {@value #LIMIT} bytes, or it cannot be read
+     */
+    public static Optional<com.drew.metadata.Metadata> read(InputStream in) {
+        ImageHeaderReader reader = new ImageHeaderReader(in);
+
+        try {
+            int first = reader.readUnsignedByte();
+            int second = reader.readUnsignedByte();
+
+            if (first == 0xFF && second == 0xD8) {
+                return reader.readJpeg();
+            }
+            if (first == (PNG_SIGNATURE[0] & 0xFF) && second == PNG_SIGNATURE[1]) {
+                return reader.readPng();
+            }
+        } catch (IOException | RuntimeException ex) {
+            logger.info("Could not read image header, reading the whole file: " + ex.getMessage());
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Reads the segments of a JPEG file up to the start of scan
+     * @return the metadata, or an empty Optional if there is no start of frame or a segment is malformed
+     * @throws IOException if the stream cannot be read or the limit is reached
+     */
+    private Optional<com.drew.metadata.Metadata> readJpeg() throws IOException {
+        com.drew.metadata.Metadata metadata = new com.drew.metadata.Metadata();
+        boolean frame = false;
+        boolean exif = false;
+
+        while (true) {
+            if (readUnsignedByte() != 0xFF) {
+                return Optional.empty();
+            }
+
+            int marker;
+            do {
+                marker = readUnsignedByte();
+            } while (marker == 0xFF);
+
+            if (marker == SOS || marker == EOI) {
+                break;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                continue; // Markers without a length
+            }
+
+            int length = readUnsignedShort() - 2;
+            if (length < 0) {
+                return Optional.empty();
+            }
+
+            if (marker == APP1 && !exif) {
+                byte[] data = readFully(length);
+                if (startsWith(data, EXIF_PREAMBLE)) {
+                    new ExifReader().extract(new ByteArrayReader(data), metadata, EXIF_PREAMBLE.length);
+                    exif = true;
+                }
+            } else if (isStartOfFrame(marker) && !frame) {
+                byte[] data = readFully(length);
+                if (length < 5) {
+                    return Optional.empty();
+                }
+
+                JpegDirectory directory = new JpegDirectory();
+                directory.setInt(JpegDirectory.TAG_IMAGE_HEIGHT, ((data[1] & 0xFF) << 8) | (data[2] & 0xFF));
+                directory.setInt(JpegDirectory.TAG_IMAGE_WIDTH, ((data[3] & 0xFF) << 8) | (data[4] & 0xFF));
+                metadata.addDirectory(directory);
+                frame = true;
+            } else {
+                skip(length);
+            }
+        }
+
+        if (!frame) {
+            return Optional.empty();
+        }
+
+        metadata.addDirectory(new FileTypeDirectory(FileType.Jpeg));
+        return Optional.of(metadata);
+    }
+
+    /**
+     * Reads the chunks of a PNG file up to the first image data chunk
+     * @return the metadata, or an empty Optional if the signature is wrong, there is no IHDR or a chunk is malformed
+     * @throws IOException if the stream cannot be read or the limit is reached
+     */
+    private Optional<com.drew.metadata.Metadata> readPng() throws IOException {
+        byte[] signature = readFully(PNG_SIGNATURE.length - 2);
+        for (int i = 0; i < signature.length; i++) {
+            if (signature[i] != PNG_SIGNATURE[i + 2]) {
+                return Optional.empty();
+            }
+        }
+
+        com.drew.metadata.Metadata metadata = new com.drew.metadata.Metadata();
+        boolean header = false;
+
+        while (true) {
+            int length = readInt();
+            String type = new String(readFully(4), StandardCharsets.US_ASCII);
+
+            if (type.equals("IDAT") || type.equals("IEND")) {
+                break;
+            }
+            if (length < 0 || length > remaining) {
+                return Optional.empty();
+            }
+
+            if (type.equals("IHDR") && !header) {
+                byte[] data = readFully(length);
+                if (length < 8) {
+                    return Optional.empty();
+                }
+
+                PngDirectory directory = new PngDirectory(PngChunkType.IHDR);
+                directory.setInt(PngDirectory.TAG_IMAGE_WIDTH, readInt(data, 0));
+                directory.setInt(PngDirectory.TAG_IMAGE_HEIGHT, readInt(data, 4));
+                metadata.addDirectory(directory);
+                header = true;
+            } else if (type.equals("eXIf")) {
+                byte[] data = readFully(length);
+                int offset = startsWith(data, EXIF_PREAMBLE) ? EXIF_PREAMBLE.length : 0;
+                new ExifReader().extract(new ByteArrayReader(data), metadata, offset);
+            } else {
+                skip(length);
+            }
+
+            skip(4); // CRC
+        }
+
+        if (!header) {
+            return Optional.empty();
+        }
+
+        metadata.addDirectory(new FileTypeDirectory(FileType.Png));
+        return Optional.of(metadata);
+    }
+
+    /**
+     * Checks if a JPEG marker starts a frame, that is SOF0 to SOF15 except DHT, JPG and DAC
+     * @param marker the marker
+     * @return true if the marker starts a frame
+     */
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    /**
+     * Checks if an array starts with a prefix
+     * @param data the array
+     * @param prefix the prefix
+     * @return true if the array starts with the prefix
+     */
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a big-endian int from an array
+     * @param data the array
+     * @param offset the offset of the int
+     * @return the int
+     */
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Counts bytes against the limit
+     * @param count number of bytes about to be read
+     * @throws IOException if the limit would be passed
+     */
+    private void consume(int count) throws IOException {
+        if (count > remaining) {
+            throw new IOException("Header is longer than " + LIMIT + " bytes");
+        }
+        remaining -= count;
+    }
+
+    /**
+     * Reads a number of bytes
+     * @param count number of bytes
+     * @return the bytes
+     * @throws IOException if the stream ends first, cannot be read or the limit is reached
+     */
+    private byte[] readFully(int count) throws IOException {
+        consume(count);
+
+        byte[] data = new byte[count];
+        int read = 0;
+        while (read < count) {
+            int n = in.read(data, read, count - read);
+            if (n < 0) {
+                throw new EOFException("Header ends early");
+            }
+            read += n;
+        }
+        return data;
+    }
+
+    /**
+     * Skips a number of bytes
+     * @param count number of bytes
+     * @throws IOException if the stream ends first, cannot be read or the limit is reached
+     */
+    private void skip(int count) throws IOException {
+        consume(count);
+
+        int skipped = 0;
+        while (skipped < count) {
+            long n = in.skip(count - skipped);
+            if (n <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Header ends early");
+                }
+                n = 1;
+            }
+            skipped += n;
+        }
+    }
+
+    /**
+     * Reads an unsigned byte
+     * @return the byte
+     * @throws IOException if the stream ends, cannot be read or the limit is reached
+     */
+    private int readUnsignedByte() throws IOException {
+        return readFully(1)[0] & 0xFF;
+    }
+
+    /**
+     * Reads a big-endian unsigned short
+     * @return the short
+     * @throws IOException if the stream ends, cannot be read or the limit is reached
+     */
+    private int readUnsignedShort() throws IOException {
+        byte[] data = readFully(2);
+        return ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+    }
+
+    /**
+     * Reads a big-endian int
+     * @return the int
+     * @throws IOException if the stream ends, cannot be read or the limit is reached
+     */
+    private int readInt() throws IOException {
+        return readInt(readFully(4), 0);
+    }
+}
@@ -0,0 +1,416 @@
+package utility;
+
+import hibernate.model.Metadata;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * MetadataCache Class, remembers the {@link Metadata} read from image files on disk, so that a file that has not
+ * changed since it was last read is not parsed again. Set it with {@link Metadata#setCache} to have
+ * {@link Metadata#generate} consult it.
+ *
+ * An entry is keyed by the file's absolute path, and only used while the file's size and last modified time are
+ * the same as when it was read. The cache file is an append-only log: each entry read is appended as a record, and
+ * the last record of a path wins. Once the log holds more than twice as many records as there are entries, it is
+ * compacted by writing the entries to a new file and moving it in place of the log. At most {@code maxEntries}
+ * entries are kept; the least recently used ones are dropped first.
+ *
+ * The file is read the first time the cache is used rather than when it is created, so creating it on the JavaFX
+ * thread costs nothing. New records are buffered and written {@value #FLUSH_BATCH} at a time, and when the cache is
+ * flushed or closed, so records put since the last flush are lost if the program stops; those files are read again.
+ *
+ * The cache never fails an import: if the file cannot be read it starts empty, and if it cannot be written the
+ * entries are only kept in memory.
+ *
+ * @author Karl Labrador
+ */
+public class MetadataCache implements AutoCloseable {
+    private final static int MAGIC = 0x4D455441; // "META"
+    private final static int VERSION = 1;
+    private final static int DEFAULT_MAX_ENTRIES = 100_000;
+    private final static int COMPACT_SLACK = 1000;
+    private final static int FLUSH_BATCH = 256;
+    private final static long NO_DATE = Long.MIN_VALUE;
+    private final static Logger logger = Logger.getLogger(MetadataCache.class);
+    private final Path path;
+    private final LinkedHashMap<String, Entry> entries;
+    private DataOutputStream log;
+    private boolean loaded = false;
+    private int records = 0;
+    private int unflushed = 0;
+
+    /**
+     * Constructor for MetadataCache with the default maximum number of entries. The file is read on first use.
+     * @param path the cache's file, created if it does not exist
+     */
+    public MetadataCache(Path path) {
+        this(path, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor for MetadataCache. The file is read on first use.
+     * @param path the cache's file, created if it does not exist
+     * @param maxEntries how many files are remembered at most
+     */
+    public MetadataCache(Path path, int maxEntries) {
+        this.path = path;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Gets the metadata of a file, if it was read while the file had the same size and last modified time
+     * @param file the image file
+     * @return a new Metadata object, or an empty Optional if the file is not in the cache or has changed
+     */
+    public synchronized Optional<Metadata> get(File file) {
+        open();
+        Entry entry = entries.get(file.getAbsolutePath());
+
+        if (entry == null || entry.size != file.length() || entry.modified != file.lastModified()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(entry.toMetadata());
+    }
+
+    /**
+     * Remembers the metadata of a file, along with its current size and last modified time
+     * @param file the image file
+     * @param metadata the metadata read from the file
+     */
+    public synchronized void put(File file, Metadata metadata) {
+        open();
+        Entry entry = new Entry(file.getAbsolutePath(), file.length(), file.lastModified(), metadata);
+        entries.put(entry.path, entry);
+
+        if (log != null) {
+            try {
+                entry.writeTo(log);
+                records++;
+
+                if (++unflushed >= FLUSH_BATCH) {
+                    log.flush();
+                    unflushed = 0;
+                }
+            } catch (IOException ex) {
+                logger.warn("Could not append to metadata cache at " + path + ": " + ex.getMessage());
+                closeLog();
+            }
+        }
+
+        if (records > 2 * entries.size() + COMPACT_SLACK) {
+            compact();
+        }
+    }
+
+    /**
+     * Gets the number of files in the cache
+     * @return number of entries
+     */
+    public synchronized int size() {
+        open();
+        return entries.size();
+    }
+
+    /**
+     * Writes the records that are buffered to the file, such as at the end of an import
+     */
+    public synchronized void flush() {
+        if (log == null) {
+            return;
+        }
+
+        try {
+            log.flush();
+            unflushed = 0;
+        } catch (IOException ex) {
+            logger.warn("Could not write to metadata cache at " + path + ": " + ex.getMessage());
+            closeLog();
+        }
+    }
+
+    /**
+     * Rewrites the log with one record per entry, least recently used first, dropping superseded and evicted records
+     */
+    public synchronized void compact() {
+        open();
+        closeLog();
+
+        try {
+            Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                for (Entry entry : entries.values()) {
+                    entry.writeTo(out);
+                }
+            } catch (IOException ex) {
+                Files.deleteIfExists(temporary);
+                throw ex;
+            }
+
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            records = entries.size();
+            logger.info("Compacted metadata cache to " + records + " entries");
+        } catch (IOException ex) {
+            logger.warn("Could not compact metadata cache at " + path + ": " + ex.getMessage());
+            return;
+        }
+
+        openLog();
+    }
+
+    /**
+     * Closes the log. Entries put after this are only kept in memory.
+     */
+    @Override
+    public synchronized void close() {
+        closeLog();
+    }
+
+    /**
+     * Reads the file and opens the log the first time the cache is used. A log that cannot be read to its end is
+     * compacted to the entries that could be read.
+     */
+    private void open() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (load()) {
+            openLog();
+        } else {
+            compact();
+        }
+
+        logger.info("Opened metadata cache with " + entries.size() + " entries");
+    }
+
+    /**
+     * Reads the records of the log into memory
+     * @return true if the log was read to its end, false if it is missing, of another version or damaged
+     */
+    private boolean load() {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Metadata cache at " + path + " is of another version");
+                return false;
+            }
+
+            while (in.available() > 0) {
+                Entry entry = Entry.readFrom(in);
+                entries.put(entry.path, entry);
+                records++;
+            }
+
+            return true;
+        } catch (NoSuchFileException ex) {
+            logger.info("No metadata cache at " + path);
+        } catch (IOException ex) {
+            logger.warn("Metadata cache at " + path + " is damaged, keeping " + entries.size() + " entries: " + ex.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Opens the log for appending
+     */
+    private void openLog() {
+        try {
+            log = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        } catch (IOException ex) {
+            logger.warn("Could not open metadata cache at " + path + ": " + ex.getMessage());
+            log = null;
+        }
+    }
+
+    /**
+     * Closes the log, if it is open
+     */
+    private void closeLog() {
+        if (log == null) {
+            return;
+        }
+
+        try {
+            log.close();
+        } catch (IOException ex) {
+            logger.warn("Could not close metadata cache at " + path + ": " + ex.getMessage());
+        }
+        log = null;
+        unflushed = 0;
+    }
+
+    /**
+     * Entry Class, the metadata of one file, with the size and last modified time the file had when it was read.
+     */
+    private static class Entry {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final double latitude;
+        private final double longitude;
+        private final int height;
+        private final int width;
+        private final String make;
+        private final String model;
+        private final long captured;
+
+        /**
+         * Constructor for Entry
+         * @param path absolute path of the file
+         * @param size size of the file
+         * @param modified last modified time of the file
+         * @param metadata the metadata read from the file
+         */
+        private Entry(String path, long size, long modified, Metadata metadata) {
+            this(path, size, modified, metadata.getLatitude(), metadata.getLongitude(), metadata.getHeight(),
+                    metadata.getWidth(), metadata.getMake(), metadata.getModel(),
+                    metadata.getCaptured() == null ? NO_DATE : metadata.getCaptured().getTime());
+        }
+
+        /**
+         * Constructor for Entry
+         * @param path absolute path of the file
+         * @param size size of the file
+         * @param modified last modified time of the file
+         * @param latitude latitude
+         * @param longitude longitude
+         * @param height height
+         * @param width width
+         * @param make device make
+         * @param model device model
+         * @param captured capture time in milliseconds, or {@link #NO_DATE}
+         */
+        private Entry(String path, long size, long modified, double latitude, double longitude, int height, int width,
+                      String make, String model, long captured) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.height = height;
+            this.width = width;
+            this.make = make;
+            this.model = model;
+            this.captured = captured;
+        }
+
+        /**
+         * Creates a new Metadata object from the entry
+         * @return a Metadata object
+         */
+        private Metadata toMetadata() {
+            Metadata metadata = new Metadata();
+            metadata.setLatitude(latitude);
+            metadata.setLongitude(longitude);
+            metadata.setHeight(height);
+            metadata.setWidth(width);
+            metadata.setMake(make);
+            metadata.setModel(model);
+            metadata.setCaptured(captured == NO_DATE ? null : new Date(captured));
+
+            return metadata;
+        }
+
+        /**
+         * Writes the entry as a record
+         * @param out the stream
+         * @throws IOException if the stream cannot be written
+         */
+        private void writeTo(DataOutputStream out) throws IOException {
+            writeString(out, path);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeDouble(latitude);
+            out.writeDouble(longitude);
+            out.writeInt(height);
+            out.writeInt(width);
+            writeString(out, make);
+            writeString(out, model);
+            out.writeLong(captured);
+        }
+
+        /**
+         * Reads an entry from a record
+         * @param in the stream
+         * @return the entry
+         * @throws IOException if the record is cut short
+         */
+        private static Entry readFrom(DataInputStream in) throws IOException {
+            return new Entry(readString(in), in.readLong(), in.readLong(), in.readDouble(), in.readDouble(),
+                    in.readInt(), in.readInt(), readString(in), readString(in), in.readLong());
+        }
+
+        /**
+         * Writes a length-prefixed UTF-8 string, null as length -1
+         * @param out the stream
+         * @param value the string, or null
+         * @throws IOException if the stream cannot be written
+         */
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        /**
+         * Reads a length-prefixed UTF-8 string
+         * @param in the stream
+         * @return the string, or null
+         * @throws IOException if the string is cut short or its length is invalid
+         */
+        private static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length == -1) {
+                return null;
+            }
+            if (length < 0 || length > in.available()) {
+                throw new IOException("Invalid string length " + length);
+            }
+
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
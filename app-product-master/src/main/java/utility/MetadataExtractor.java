@@ -0,0 +1,468 @@
+package utility;
+
+import com.drew.imaging.ImageProcessingException;
+import hibernate.model.Metadata;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * MetadataExtractor Class, reads the {@link Metadata} of many image files at once on a pool of worker threads,
+ * so that importing a folder neither runs on the JavaFX thread nor reads one file at a time.
+ *
+ * The pool has one thread per core, but never more than {@value #DISK_THREADS}, as more readers than that only
+ * make a disk seek back and forth between the files. The threads are named "metadata-N".
+ * Each call to {@link #extract} returns an {@link Extraction} that reports its progress and can be cancelled.
+ * The extracted metadata is handed back as a whole, so that it can be merged into the library by a single thread.
+ *
+ * A corrupt file must not stall an import, so each file is read within limits. It has a deadline, after which
+ * the extraction moves on without it, and its stream fails on the next read. It also has a limit on the bytes
+ * read, which bounds what metadata-extractor buffers for it. By default the limits of all the threads add up to a
+ * quarter of the heap, and never more than {@value #MAX_READ_LIMIT} bytes per file. A file that passes either
+ * limit, runs out of memory or makes the parser throw is left out of the result and put in the
+ * {@link MetadataQuarantine}. Later extractions skip it until it changes or is released.
+ *
+ * A parser that spins without reading cannot be stopped, so when a file passes its deadline its thread is
+ * interrupted and the pool gets a thread in its place until the stuck one finishes. The files waiting behind it
+ * keep being read, however many threads get stuck.
+ *
+ * @author Karl Labrador
+ */
+public class MetadataExtractor implements AutoCloseable {
+    private final static int DISK_THREADS = 4;
+    private final static Duration DEFAULT_DEADLINE = Duration.ofSeconds(30);
+    private final static long MAX_READ_LIMIT = 256L * 1024 * 1024;
+    private final static long MIN_READ_LIMIT = 1024L * 1024;
+    private final static int HEAP_SHARE = 4; // The threads' read limits add up to a quarter of the heap
+    private final static AtomicInteger threadCount = new AtomicInteger();
+    private final static Logger logger = Logger.getLogger(MetadataExtractor.class);
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService watchdog;
+    private final Duration deadline;
+    private final long readLimit;
+    private final MetadataQuarantine quarantine;
+    private final MetadataReader reader;
+    private final Set<Extraction> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor for MetadataExtractor with one thread per core, at most {@value #DISK_THREADS},
+     * the default limits and a quarantine that is only kept in memory
+     */
+    public MetadataExtractor() {
+        this(new MetadataQuarantine());
+    }
+
+    /**
+     * Constructor for MetadataExtractor with one thread per core, at most {@value #DISK_THREADS}, and the default limits
+     * @param quarantine where files that pass the limits are recorded
+     */
+    public MetadataExtractor(MetadataQuarantine quarantine) {
+        this(Math.min(Runtime.getRuntime().availableProcessors(), DISK_THREADS), quarantine);
+    }
+
+    /**
+     * Constructor for MetadataExtractor with the default limits and a quarantine that is only kept in memory
+     * @param threads how many files are read at a time
+     */
+    public MetadataExtractor(int threads) {
+        this(threads, new MetadataQuarantine());
+    }
+
+    /**
+     * Constructor for MetadataExtractor with the default limits
+     * @param threads how many files are read at a time
+     * @param quarantine where files that pass the limits are recorded
+     */
+    private MetadataExtractor(int threads, MetadataQuarantine quarantine) {
+        this(threads, DEFAULT_DEADLINE, defaultReadLimit(threads), quarantine);
+    }
+
+    /**
+     * Constructor for MetadataExtractor
+     * @param threads how many files are read at a time
+     * @param deadline how long each file may be read, from when a thread starts on it
+     * @param readLimit how many bytes may be read from each file
+     * @param quarantine where files that pass the limits are recorded
+     */
+    public MetadataExtractor(int threads, Duration deadline, long readLimit, MetadataQuarantine quarantine) {
+        this(threads, deadline, readLimit, quarantine, Metadata::read);
+    }
+
+    /**
+     * Constructor for MetadataExtractor that reads files with a given reader, such as one that gets stuck in tests
+     * @param threads how many files are read at a time
+     * @param deadline how long each file may be read, from when a thread starts on it
+     * @param readLimit how many bytes may be read from each file
+     * @param quarantine where files that pass the limits are recorded
+     * @param reader reads the metadata of a file
+     */
+    MetadataExtractor(int threads, Duration deadline, long readLimit, MetadataQuarantine quarantine, MetadataReader reader) {
+        this.deadline = deadline;
+        this.readLimit = readLimit;
+        this.quarantine = quarantine;
+        this.reader = reader;
+
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "metadata-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                });
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metadata-watchdog-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        logger.info("Initialized MetadataExtractor with " + threads + " threads, reading at most " + readLimit + " bytes per file");
+    }
+
+    /**
+     * Gets the default limit on the bytes read from each file, so that the threads together buffer at most a
+     * quarter of the heap
+     * @param threads how many files are read at a time
+     * @return the limit in bytes, from {@value #MIN_READ_LIMIT} to {@value #MAX_READ_LIMIT}
+     */
+    static long defaultReadLimit(int threads) {
+        long share = Runtime.getRuntime().maxMemory() / HEAP_SHARE / Math.max(threads, 1);
+
+        return Math.max(MIN_READ_LIMIT, Math.min(MAX_READ_LIMIT, share));
+    }
+
+    /**
+     * Gets the quarantine that files which pass the limits are recorded in
+     * @return the quarantine
+     */
+    public MetadataQuarantine getQuarantine() {
+        return quarantine;
+    }
+
+    /**
+     * Starts reading the metadata of image files
+     * @param files the image files
+     * @param progress called on a worker thread with the number of files read so far and the number of files,
+     *                 each time a file has been read, skipped or given up on
+     * @return the extraction
+     */
+    public Extraction extract(Collection<File> files, BiConsumer<Integer, Integer> progress) {
+        Extraction extraction = new Extraction(files, progress);
+
+        running.add(extraction);
+        extraction.result.whenComplete((result, ex) -> running.remove(extraction));
+        extraction.files.forEach(file -> executor.execute(() -> read(extraction, file)));
+
+        return extraction;
+    }
+
+    /**
+     * Reads the metadata of one file within the limits, unless the extraction has completed or been cancelled
+     * @param extraction the extraction the file belongs to
+     * @param file the image file
+     */
+    private void read(Extraction extraction, File file) {
+        if (extraction.result.isDone()) {
+            return;
+        }
+        if (quarantine.contains(file)) {
+            extraction.fail(file, "quarantined earlier: " + quarantine.getReason(file));
+            return;
+        }
+
+        Attempt attempt = new Attempt(Thread.currentThread());
+        ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+            quarantine(extraction, file, "took longer than " + deadline.toMillis() + " ms");
+
+            if (attempt.giveUp()) {
+                logger.warn("Reading " + file + " is stuck, starting another thread in its place");
+                resize(1);
+            }
+        }, deadline.toMillis(), TimeUnit.MILLISECONDS);
+        List<GuardedInputStream> guards = new ArrayList<>(1);
+
+        try {
+            Metadata metadata = reader.read(file, in -> {
+                GuardedInputStream guard = new GuardedInputStream(in, deadline, readLimit);
+                guards.add(guard);
+                return guard;
+            });
+
+            String failure = guards.isEmpty() ? null : guards.get(0).getFailure();
+            if (failure != null) {
+                quarantine(extraction, file, failure);
+            } else {
+                extraction.complete(file, metadata);
+            }
+        } catch (ImageProcessingException | IOException ex) {
+            String failure = guards.isEmpty() ? null : guards.get(0).getFailure();
+            if (failure != null) {
+                quarantine(extraction, file, failure);
+            } else {
+                logger.warn("Could not read metadata of " + file + ": " + ex.getMessage());
+                extraction.complete(file, null);
+            }
+        } catch (RuntimeException | OutOfMemoryError ex) {
+            quarantine(extraction, file, ex.getClass().getSimpleName() + ": " + ex.getMessage());
+        } finally {
+            timeout.cancel(false);
+
+            if (attempt.finish()) {
+                // Clears the interrupt of the watchdog, so the thread's next file is not interrupted
+                Thread.interrupted();
+                resize(-1);
+            }
+        }
+    }
+
+    /**
+     * Adds threads to the pool, or removes them. Removed threads finish the file they are reading first.
+     * @param delta the number of threads to add, or to remove if negative
+     */
+    private synchronized void resize(int delta) {
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        if (delta > 0) {
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
+            executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+        } else {
+            executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
+        }
+    }
+
+    /**
+     * Gets how many threads the pool has, including those in place of stuck ones
+     * @return the number of threads
+     */
+    int getThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Gives up on a file, and quarantines it unless the extraction has already moved on from it.
+     * The file is quarantined before it is counted, so it is in the quarantine once the extraction completes.
+     * @param extraction the extraction the file belongs to
+     * @param file the image file
+     * @param reason why its metadata could not be read
+     */
+    private void quarantine(Extraction extraction, File file, String reason) {
+        extraction.fail(file, reason, () -> quarantine.add(file, reason));
+    }
+
+    /**
+     * Stops the worker threads. Extractions that have not completed are cancelled.
+     */
+    @Override
+    public void close() {
+        running.forEach(Extraction::cancel);
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+        logger.info("Closed MetadataExtractor");
+    }
+
+    /**
+     * MetadataReader Interface, reads the metadata of a file through a guarded stream, see {@link Metadata#read}
+     */
+    @FunctionalInterface
+    interface MetadataReader {
+        Metadata read(File file, UnaryOperator<InputStream> guard) throws ImageProcessingException, IOException;
+    }
+
+    /**
+     * Attempt Class, a thread reading one file, which the watchdog can give up on while it is still reading.
+     */
+    private static class Attempt {
+        private final Thread thread;
+        private boolean finished = false;
+        private boolean stuck = false;
+
+        /**
+         * Constructor for Attempt
+         * @param thread the thread reading the file
+         */
+        private Attempt(Thread thread) {
+            this.thread = thread;
+        }
+
+        /**
+         * Gives up on the file if it is still being read, and interrupts the thread
+         * @return true if the thread is stuck on the file, false if it has finished
+         */
+        private synchronized boolean giveUp() {
+            if (finished) {
+                return false;
+            }
+
+            stuck = true;
+            thread.interrupt();
+            return true;
+        }
+
+        /**
+         * Records that the thread has finished the file
+         * @return true if the watchdog gave up on it first
+         */
+        private synchronized boolean finish() {
+            finished = true;
+            return stuck;
+        }
+    }
+
+    /**
+     * Extraction Class, the metadata of a set of image files that is being read.
+     */
+    public static class Extraction {
+        private final List<File> files;
+        private final Map<File, Metadata> metadata;
+        private final Map<File, String> failures = new ConcurrentHashMap<>();
+        private final Set<File> finished = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final BiConsumer<Integer, Integer> progress;
+        private final CompletableFuture<Map<File, Metadata>> result = new CompletableFuture<>();
+
+        /**
+         * Constructor for Extraction
+         * @param files the image files
+         * @param progress called each time a file has been read
+         */
+        private Extraction(Collection<File> files, BiConsumer<Integer, Integer> progress) {
+            this.files = new ArrayList<>(new LinkedHashSet<>(files));
+            this.metadata = Collections.synchronizedMap(new LinkedHashMap<>());
+            this.progress = progress;
+
+            this.files.forEach(file -> metadata.put(file, null));
+            if (this.files.isEmpty()) {
+                result.complete(Collections.emptyMap());
+            }
+        }
+
+        /**
+         * Records the metadata of a file, unless the extraction has already moved on from it
+         * @param file the image file
+         * @param value its metadata, or null if it is not an image that can be read
+         */
+        private void complete(File file, Metadata value) {
+            if (finished.add(file)) {
+                metadata.put(file, value);
+                count();
+            }
+        }
+
+        /**
+         * Leaves a file out of the result, unless the extraction has already moved on from it
+         * @param file the image file
+         * @param reason why its metadata could not be read
+         * @return true if the file was left out, false if it had already been recorded
+         */
+        private boolean fail(File file, String reason) {
+            return fail(file, reason, () -> {});
+        }
+
+        /**
+         * Leaves a file out of the result, unless the extraction has already moved on from it
+         * @param file the image file
+         * @param reason why its metadata could not be read
+         * @param recorded run once the file has been left out, before it is counted as done
+         * @return true if the file was left out, false if it had already been recorded
+         */
+        private boolean fail(File file, String reason, Runnable recorded) {
+            if (!finished.add(file)) {
+                return false;
+            }
+
+            failures.put(file, reason);
+            metadata.remove(file);
+            recorded.run();
+            count();
+            return true;
+        }
+
+        /**
+         * Counts a file as done, and completes the extraction after the last one
+         */
+        private void count() {
+            int done = completed.incrementAndGet();
+            progress.accept(done, files.size());
+            if (done == files.size()) {
+                result.complete(metadata);
+            }
+        }
+
+        /**
+         * Gets the metadata of every file that was not left out, in the order the files were given, once all of them
+         * have been read. Files that are not images that can be read are mapped to null.
+         * The future fails with a CancellationException if the extraction is cancelled.
+         * @return the metadata by file
+         */
+        public CompletableFuture<Map<File, Metadata>> getResult() {
+            return result;
+        }
+
+        /**
+         * Gets the files that were left out of the result, because they passed the limits or were quarantined earlier
+         * @return why each file was left out
+         */
+        public Map<File, String> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * Gets how many of the files have been read
+         * @return number of files read
+         */
+        public int getCompleted() {
+            return completed.get();
+        }
+
+        /**
+         * Gets how many files are read in total
+         * @return number of files
+         */
+        public int getTotal() {
+            return files.size();
+        }
+
+        /**
+         * Gets the share of the files that have been read
+         * @return a number from 0 to 1
+         */
+        public double getProgress() {
+            return files.isEmpty() ? 1.0 : (double) completed.get() / files.size();
+        }
+
+        /**
+         * Cancels the extraction. Files that are being read are finished, the rest are skipped.
+         * @return true if the extraction was cancelled, false if it had already completed
+         */
+        public boolean cancel() {
+            return result.completeExceptionally(new CancellationException("Metadata extraction was cancelled"));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package utility;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * MetadataQuarantine Class, records the image files whose metadata could not be read within the limits of the
+ * {@link MetadataExtractor}, so that later imports skip them instead of getting stuck on them again.
+ *
+ * A file stays quarantined while its size and last modified time are unchanged; a file that has been changed is
+ * read again. Files can be released with {@link #release} to retry them. When created with a path, the quarantine
+ * is kept in that file and rewritten on every change.
+ *
+ * @author Karl Labrador
+ */
+public class MetadataQuarantine {
+    private final static int MAGIC = 0x51524E54; // "QRNT"
+    private final static int VERSION = 1;
+    private final static Logger logger = Logger.getLogger(MetadataQuarantine.class);
+    private final Path path;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Constructor for MetadataQuarantine that is only kept in memory
+     */
+    public MetadataQuarantine() {
+        this.path = null;
+    }
+
+    /**
+     * Constructor for MetadataQuarantine that is kept in a file
+     * @param path the quarantine's file, created when a file is first quarantined
+     */
+    public MetadataQuarantine(Path path) {
+        this.path = path;
+        load();
+    }
+
+    /**
+     * Checks if a file is quarantined, and has not changed since
+     * @param file the image file
+     * @return true if the file should be skipped
+     */
+    public synchronized boolean contains(File file) {
+        Entry entry = entries.get(file.getAbsolutePath());
+
+        return entry != null && entry.size == file.length() && entry.modified == file.lastModified();
+    }
+
+    /**
+     * Gets why a file was quarantined
+     * @param file the image file
+     * @return the reason, or null if the file is not quarantined
+     */
+    public synchronized String getReason(File file) {
+        Entry entry = entries.get(file.getAbsolutePath());
+
+        return entry == null ? null : entry.reason;
+    }
+
+    /**
+     * Quarantines a file
+     * @param file the image file
+     * @param reason why its metadata could not be read
+     */
+    public synchronized void add(File file, String reason) {
+        entries.put(file.getAbsolutePath(), new Entry(file.getAbsolutePath(), file.length(), file.lastModified(),
+                System.currentTimeMillis(), reason));
+        logger.warn("Quarantined " + file + ": " + reason);
+        save();
+    }
+
+    /**
+     * Releases files from the quarantine, so that they are read again
+     * @param files the image files
+     */
+    public synchronized void release(Collection<File> files) {
+        files.forEach(file -> entries.remove(file.getAbsolutePath()));
+        save();
+    }
+
+    /**
+     * Gets the quarantined files, with the time they were quarantined
+     * @return the time each file was quarantined
+     */
+    public synchronized Map<File, Date> getFiles() {
+        Map<File, Date> files = new LinkedHashMap<>();
+        entries.values().forEach(entry -> files.put(new File(entry.path), new Date(entry.quarantined)));
+
+        return files;
+    }
+
+    /**
+     * Gets the number of quarantined files
+     * @return number of files
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Reads the quarantined files from the quarantine's file, if there is one
+     */
+    private void load() {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Metadata quarantine at " + path + " is of another version");
+                return;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readUTF());
+                entries.put(entry.path, entry);
+            }
+        } catch (NoSuchFileException ex) {
+            logger.info("No metadata quarantine at " + path);
+        } catch (IOException ex) {
+            logger.warn("Could not read metadata quarantine at " + path + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes the quarantined files to the quarantine's file, if there is one
+     */
+    private void save() {
+        if (path == null) {
+            return;
+        }
+
+        try {
+            Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    out.writeUTF(entry.path);
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.modified);
+                    out.writeLong(entry.quarantined);
+                    out.writeUTF(entry.reason);
+                }
+            } catch (IOException ex) {
+                Files.deleteIfExists(temporary);
+                throw ex;
+            }
+
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            logger.warn("Could not write metadata quarantine at " + path + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Entry Class, a quarantined file, with the size and last modified time it had when it was quarantined.
+     */
+    private static class Entry {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final long quarantined;
+        private final String reason;
+
+        /**
+         * Constructor for Entry
+         * @param path absolute path of the file
+         * @param size size of the file
+         * @param modified last modified time of the file
+         * @param quarantined time the file was quarantined
+         * @param reason why its metadata could not be read
+         */
+        private Entry(String path, long size, long modified, long quarantined, String reason) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.quarantined = quarantined;
+            this.reason = reason;
+        }
+    }
+}
@@ -135,13 +135,27 @@ function addPopupContent(imgData) {
 
 
 
-/**Method that get the bounds of the map for the user. Method is only used for logging purposes. */
+/**Method that reports the bounds of the map to the jSToJavaBridge-object whenever the user moves, resizes or zooms the map. */
 function getBounds() {
-    map.on('resize moveend zoomend', function () {
-        let mapBound = map.getBounds();
-        let bounds = mapBound.getNorth()+", "+mapBound.getEast()+", "+mapBound.getSouth()+", "+mapBound.getWest();
-        window.jSToJavaBridge.loggerDebug("Moved/resized/zoomed map, with map bounds: " + bounds);
-    });
+    map.on('resize moveend zoomend', reportBounds);
+}
+
+/**
+ * Method that sends the visible bounds of the map to the jSToJavaBridge-object, so only the markers inside them are loaded.
+ * Longitudes are wrapped to -180..180, and a view that shows the whole world is sent as -180..180. */
+function reportBounds() {
+    let mapBound = map.getBounds();
+    let south = Math.max(mapBound.getSouth(), -90);
+    let north = Math.min(mapBound.getNorth(), 90);
+    let west = -180;
+    let east = 180;
+    if (mapBound.getEast() - mapBound.getWest() < 360) {
+        west = L.latLng(0, mapBound.getWest()).wrap().lng;
+        east = L.latLng(0, mapBound.getEast()).wrap().lng;
+    }
+    let bounds = north+", "+east+", "+south+", "+west;
+    window.jSToJavaBridge.loggerDebug("Moved/resized/zoomed map, with map bounds: " + bounds);
+    window.jSToJavaBridge.boundsChanged(south, west, north, east);
 }
 
 /**
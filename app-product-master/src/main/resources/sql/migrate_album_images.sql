@@ -0,0 +1,24 @@
+-- Moves album membership from the old albums_images join table to the ordered album_images table (MySQL).
+-- Run once, after the album_images and album_image_sequence tables have been created.
+-- The old table kept no order, so each album's images are numbered by image ID.
+ALTER TABLE albums ADD COLUMN lastposition integer NOT NULL DEFAULT 0;
+
+SET @albumimageid := 0;
+SET @albumid := NULL;
+SET @position := 0;
+
+-- Positions restart at 1 for each album; the ELSE branch remembers the album it has moved on to.
+INSERT INTO album_images (albumimageid, albumid, imageid, position)
+    SELECT (@albumimageid := @albumimageid + 1),
+           ordered.Album_albumid,
+           ordered.images_imageid,
+           (@position := IF(@albumid = ordered.Album_albumid, @position + 1, 1 + LEAST(0, @albumid := ordered.Album_albumid)))
+    FROM (SELECT Album_albumid, images_imageid FROM albums_images ORDER BY Album_albumid, images_imageid) AS ordered;
+
+UPDATE albums SET lastposition = (SELECT COALESCE(MAX(position), 0) FROM album_images WHERE album_images.albumid = albums.albumid);
+
+-- Hibernate hands out IDs 50 at a time with the pooled optimizer, which reads next_val as the end of its next block
+-- of IDs, so next_val must be MAX(albumimageid) + 50 for the first block to start above the migrated rows
+UPDATE album_image_sequence SET next_val = (SELECT COALESCE(MAX(albumimageid), 0) + 50 FROM album_images);
+
+DROP TABLE albums_images;
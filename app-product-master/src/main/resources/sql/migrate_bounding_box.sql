@@ -0,0 +1,3 @@
+-- Adds the index that answers a user's images inside a latitude/longitude box, as the map asks for when it is panned (MySQL).
+-- Run once on an existing database.
+CREATE INDEX idx_images_userid_lat_lon ON images (userid, latitude, longitude);
@@ -0,0 +1,15 @@
+-- Adds the change log that devices replicate each other's image changes through, see hibernate.sync.Replicator (MySQL).
+-- Run once on an existing database, before a client with app-product.change_log enabled writes to it.
+-- Images saved before the change log existed are copied by each device's first pull, which reads all of the user's images.
+CREATE TABLE change_log (
+    changeid bigint NOT NULL AUTO_INCREMENT,
+    changed datetime(6) NOT NULL,
+    operation varchar(16) NOT NULL,
+    origin varchar(255),
+    path varchar(255) NOT NULL,
+    username varchar(255) NOT NULL,
+    uuid varchar(255) NOT NULL,
+    PRIMARY KEY (changeid)
+) ENGINE=InnoDB;
+
+CREATE INDEX idx_change_log_user_changeid ON change_log (username, uuid, changeid);
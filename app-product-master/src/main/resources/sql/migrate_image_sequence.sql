@@ -0,0 +1,18 @@
+-- Moves image IDs from the auto_increment column of the images table to the image_sequence table (MySQL).
+-- Run once on an existing database, while no client is writing to it.
+-- Hibernate hands out image IDs 50 at a time with the pooled optimizer, which reads next_val as the end of its next
+-- block of IDs, so next_val must be MAX(imageid) + 50 for the first block to start above the existing images.
+
+-- Other tables refer to imageid, which MySQL only lets the column be changed past with the checks turned off
+SET FOREIGN_KEY_CHECKS = 0;
+
+ALTER TABLE images MODIFY imageid integer NOT NULL;
+
+SET FOREIGN_KEY_CHECKS = 1;
+
+CREATE TABLE image_sequence (
+    next_val bigint
+) ENGINE=InnoDB;
+
+INSERT INTO image_sequence (next_val)
+    SELECT COALESCE(MAX(imageid), 0) + 50 FROM images;
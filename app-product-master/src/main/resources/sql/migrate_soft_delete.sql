@@ -0,0 +1,5 @@
+-- Adds the deleted flag that hides removed images until they are purged (MySQL).
+-- Run once on an existing database. Existing images are kept visible.
+ALTER TABLE images ADD COLUMN deleted bit NOT NULL DEFAULT 0;
+
+CREATE INDEX idx_images_deleted ON images (deleted);
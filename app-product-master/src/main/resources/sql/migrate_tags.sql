@@ -0,0 +1,18 @@
+-- Moves the tags stored in the old tags(imageid, tag) element collection table to the tag and image_tags tables (MySQL).
+-- Run once, after the tag, tag_sequence and image_tags tables have been created.
+
+-- Numbers the distinct tag names 1, 2, 3... in name order
+INSERT INTO tag (tagid, name)
+    SELECT (SELECT COUNT(DISTINCT older.tag) FROM tags older WHERE older.tag <= names.tag), names.tag
+    FROM (SELECT DISTINCT tag FROM tags WHERE tag IS NOT NULL) AS names;
+
+INSERT INTO image_tags (imageid, tagid)
+    SELECT DISTINCT tags.imageid, tag.tagid
+    FROM tags
+    JOIN tag ON tag.name = tags.tag;
+
+-- Hibernate hands out tag IDs 50 at a time with the pooled optimizer, which reads next_val as the end of its next
+-- block of IDs, so next_val must be MAX(tagid) + 50 for the first block to start above the migrated tags
+UPDATE tag_sequence SET next_val = (SELECT COALESCE(MAX(tagid), 0) + 50 FROM tag);
+
+DROP TABLE tags;
@@ -0,0 +1,163 @@
+-- Production schema (MySQL 5 InnoDB), maintained by hand.
+-- Update it along with the entities. mvn jpa2ddl:generate writes the DDL Hibernate expects to target/schema_db.sql,
+-- which can be compared with this file, but column defaults, index names and the notes here are kept by hand.
+--
+-- Access paths and the index serving each of them:
+--   login (username, uuid)                 uk_users_username_uuid
+--   images by user, keyset paged           idx_images_userid_imageid
+--   images by user and capture date        idx_images_userid_captured
+--   images in a latitude/longitude box     idx_images_lat_lon
+--   a user's images in a box, map panning  idx_images_userid_lat_lon
+--   tags of an image                       primary key of image_tags (imageid, tagid)
+--   images with a tag                      idx_image_tags_tagid
+--   tag by name                            unique key on tag (name)
+--   albums by user                         idx_albums_userid
+--   images of an album, paged by position  idx_album_images_albumid_position
+--   albums of an image, when it is deleted idx_album_images_imageid
+--   removed images waiting to be purged    idx_images_deleted
+--   a user's newer change log entries      idx_change_log_user_changeid
+--
+-- image_sequence, tag_sequence and album_image_sequence must start above MAX(imageid), MAX(tagid) and MAX(albumimageid)
+-- when an existing database is migrated.
+
+    create table album_image_sequence (
+       next_val bigint
+    ) engine=InnoDB;
+
+    insert into album_image_sequence values ( 1 );
+
+    create table album_images (
+       albumimageid integer not null,
+        position integer not null,
+        albumid integer not null,
+        imageid integer not null,
+        primary key (albumimageid)
+    ) engine=InnoDB;
+
+    create table albums (
+       albumid integer not null auto_increment,
+        lastposition integer not null,
+        title varchar(255),
+        userid integer not null,
+        primary key (albumid)
+    ) engine=InnoDB;
+
+    create table change_log (
+       changeid bigint not null auto_increment,
+        changed datetime(6) not null,
+        operation varchar(16) not null,
+        origin varchar(255),
+        path varchar(255) not null,
+        username varchar(255) not null,
+        uuid varchar(255) not null,
+        primary key (changeid)
+    ) engine=InnoDB;
+
+    create table image_sequence (
+       next_val bigint
+    ) engine=InnoDB;
+
+    insert into image_sequence values ( 1 );
+
+    create table image_tags (
+       imageid integer not null,
+        tagid integer not null,
+        primary key (imageid, tagid)
+    ) engine=InnoDB;
+
+    create table images (
+       imageid integer not null,
+        created TIMESTAMP DEFAULT CURRENT_TIMESTAMP not null,
+        deleted bit not null,
+        captured datetime(6),
+        height integer,
+        latitude double precision,
+        longitude double precision,
+        make varchar(255),
+        model varchar(255),
+        width integer,
+        path varchar(255),
+        userid integer not null,
+        primary key (imageid)
+    ) engine=InnoDB;
+
+    create table tag (
+       tagid integer not null,
+        name varchar(255) not null,
+        primary key (tagid)
+    ) engine=InnoDB;
+
+    create table tag_sequence (
+       next_val bigint
+    ) engine=InnoDB;
+
+    insert into tag_sequence values ( 1 );
+
+    create table users (
+       userid integer not null auto_increment,
+        created TIMESTAMP DEFAULT CURRENT_TIMESTAMP not null,
+        username varchar(255) not null,
+        uuid varchar(255) not null,
+        primary key (userid)
+    ) engine=InnoDB;
+
+    create index idx_albums_userid on albums (userid);
+
+    create index idx_change_log_user_changeid on change_log (username, uuid, changeid);
+
+    create index idx_album_images_albumid_position on album_images (albumid, position);
+
+    create index idx_album_images_imageid on album_images (imageid);
+
+    alter table album_images 
+       add constraint uk_album_images_albumid_imageid unique (albumid, imageid);
+
+    create index idx_image_tags_tagid on image_tags (tagid);
+
+    create index idx_images_userid_imageid on images (userid, imageid);
+
+    create index idx_images_userid_captured on images (userid, captured);
+
+    create index idx_images_lat_lon on images (latitude, longitude);
+
+    create index idx_images_userid_lat_lon on images (userid, latitude, longitude);
+
+    create index idx_images_deleted on images (deleted);
+
+    alter table tag 
+       add constraint UK_tag_name unique (name);
+
+    alter table users 
+       add constraint uk_users_username_uuid unique (username, uuid);
+
+    alter table albums 
+       add constraint FK_albums_userid 
+       foreign key (userid) 
+       references users (userid);
+
+    alter table album_images 
+       add constraint FK_album_images_albumid 
+       foreign key (albumid) 
+       references albums (albumid) 
+       on delete cascade;
+
+    alter table album_images 
+       add constraint FK_album_images_imageid 
+       foreign key (imageid) 
+       references images (imageid) 
+       on delete cascade;
+
+    alter table image_tags 
+       add constraint FK_image_tags_tagid 
+       foreign key (tagid) 
+       references tag (tagid);
+
+    alter table image_tags 
+       add constraint FK_image_tags_imageid 
+       foreign key (imageid) 
+       references images (imageid);
+
+    alter table images 
+       add constraint FK_images_userid 
+       foreign key (userid) 
+       references users (userid);
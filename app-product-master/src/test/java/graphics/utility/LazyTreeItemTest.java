@@ -0,0 +1,103 @@
+package graphics.utility;
+
+import javafx.scene.control.TreeItem;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * LazyTreeItemTest class tests that a {@link LazyTreeItem} starts loading its children on the first request only,
+ * as the tag tree relies on to look up the images under a tag when the tag is expanded rather than when the tree is
+ * built, and that the children are added through the UI executor once they have been loaded.
+ *
+ * @author Karl Labrador
+ */
+class LazyTreeItemTest {
+    private static final Executor UI_EXECUTOR = Runnable::run;
+
+    /**
+     * Tests that creating the item and asking if it is a leaf loads nothing, that the first request starts one load
+     * and returns at once, and that the children show up when the load completes.
+     * Should fail if the loader is called before the children are requested or more than once, or the request
+     * waits for the load.
+     */
+    @Test
+    void testChildrenAreLoadedOnFirstRequest() {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<List<TreeItem<String>>> children = new CompletableFuture<>();
+        LazyTreeItem<String> item = new LazyTreeItem<>("tag", false, () -> {
+            loads.incrementAndGet();
+            return children;
+        }, UI_EXECUTOR);
+
+        assertFalse(item.isLeaf());
+        assertEquals(0, loads.get());
+
+        assertTrue(item.getChildren().isEmpty());
+        assertEquals(1, loads.get());
+
+        children.complete(List.of(new TreeItem<>("a.jpg"), new TreeItem<>("b.jpg")));
+        assertEquals(List.of("a.jpg", "b.jpg"), values(item));
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * Tests that the children are added through the UI executor rather than on the thread that loaded them.
+     * Should fail if the children are added before the UI executor runs.
+     */
+    @Test
+    void testChildrenAreAddedOnUiExecutor() {
+        List<Runnable> uiQueue = new ArrayList<>();
+        LazyTreeItem<String> item = new LazyTreeItem<>("tag", false,
+                () -> CompletableFuture.completedFuture(List.of(new TreeItem<>("a.jpg"))), uiQueue::add);
+
+        assertTrue(item.getChildren().isEmpty());
+        assertEquals(1, uiQueue.size());
+
+        uiQueue.get(0).run();
+        assertEquals(List.of("a.jpg"), values(item));
+    }
+
+    /**
+     * Tests that a failed load leaves the item without children instead of throwing from the tree.
+     * Should fail if the failure reaches the caller.
+     */
+    @Test
+    void testFailedLoadLeavesNoChildren() {
+        LazyTreeItem<String> item = new LazyTreeItem<>("tag", false,
+                () -> CompletableFuture.failedFuture(new IllegalStateException("Database unavailable")), UI_EXECUTOR);
+
+        assertTrue(item.getChildren().isEmpty());
+    }
+
+    /**
+     * Tests that an item created as a leaf is a leaf without loading its children.
+     * Should fail if the item is not a leaf, or its loader is called.
+     */
+    @Test
+    void testLeafDoesNotLoad() {
+        AtomicInteger loads = new AtomicInteger();
+        LazyTreeItem<String> item = new LazyTreeItem<>("unused", true, () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(List.of());
+        }, UI_EXECUTOR);
+
+        assertTrue(item.isLeaf());
+        assertEquals(0, loads.get());
+    }
+
+    /**
+     * Gets the values of an item's children
+     * @param item the item
+     * @return the values, in order
+     */
+    private static List<String> values(TreeItem<String> item) {
+        return item.getChildren().stream().map(TreeItem::getValue).collect(Collectors.toList());
+    }
+}
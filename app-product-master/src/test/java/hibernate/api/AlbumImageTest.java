@@ -0,0 +1,122 @@
+package hibernate.api;
+
+import hibernate.model.Album;
+import hibernate.model.AlbumImage;
+import hibernate.model.ImageData;
+import hibernate.model.User;
+
+import org.hibernate.Hibernate;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AlbumImageTest class tests that album membership is written one row per image, can be read a page at a time,
+ * that moving an image only updates the images it passes, and that an image is added to an album only once.
+ *
+ * @author Karl Labrador
+ */
+class AlbumImageTest extends SeparateDatabaseTest {
+    private User user;
+
+    /**
+     * Sets up a user
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("AlbumUser", "AlbumUUID");
+    }
+
+    /**
+     * Tests that appending images to an album that already has images inserts one row per new image,
+     * and that the album can be read back a page at a time in order.
+     * Should fail if existing rows are rewritten or a page is missing or out of order.
+     */
+    @Test
+    void testAppendInsertsOneRowPerImageAndPages() {
+        Album album = api.createAlbum(user);
+        api.addImages(album, saveImages(user, "first", 3));
+        api.saveAlbum(album);
+
+        api.addImages(album, saveImages(user, "second", 2));
+        Statistics statistics = api.getStatistics();
+        statistics.clear();
+        api.saveAlbum(album);
+
+        assertEquals(2, statistics.getEntityStatistics(AlbumImage.class.getName()).getInsertCount());
+        assertEquals(0, statistics.getEntityStatistics(AlbumImage.class.getName()).getDeleteCount());
+
+        List<AlbumImage> firstPage = api.getAlbumImages(album, 0, 3);
+        List<AlbumImage> secondPage = api.getAlbumImages(album, firstPage.get(2).getPosition(), 3);
+
+        assertEquals(List.of(1, 2, 3), positions(firstPage));
+        assertEquals(List.of(4, 5), positions(secondPage));
+        assertTrue(secondPage.get(0).getImage().getPath().contains("second"));
+    }
+
+    /**
+     * Tests that moving an image updates only the images between its old and new position
+     * Should fail if the order is wrong or an image outside the range is updated.
+     */
+    @Test
+    void testMoveTouchesOnlyTheAffectedRange() {
+        Album album = api.createAlbum(user);
+        List<ImageData> images = saveImages(user, "move", 5);
+        api.addImages(album, images);
+        api.saveAlbum(album);
+
+        Statistics statistics = api.getStatistics();
+        statistics.clear();
+
+        assertTrue(api.moveAlbumImage(album, 2, 4));
+        assertEquals(3, statistics.getEntityStatistics(AlbumImage.class.getName()).getUpdateCount());
+
+        List<ImageData> ordered = new ArrayList<>();
+        api.getAlbumImages(album, 0, 10).forEach(entry -> ordered.add(entry.getImage()));
+
+        assertEquals(List.of(images.get(0), images.get(2), images.get(3), images.get(1), images.get(4)), ordered);
+        assertFalse(api.moveAlbumImage(album, 42, 1));
+    }
+
+    /**
+     * Tests that adding images that are already in an album skips them, both before the album is saved and after it
+     * has been loaded again without its images, so saving does not fail on the unique (album, image) pairs.
+     * Should fail if a duplicate row is written, the album cannot be saved, or the album's images are loaded.
+     */
+    @Test
+    void testAddingImageTwiceKeepsOneEntry() {
+        Album album = api.createAlbum(user);
+        List<ImageData> images = saveImages(user, "twice", 3);
+        String entryCount = "SELECT COUNT(*) FROM album_images WHERE albumid = " + album.getAlbumID();
+
+        api.addImages(album, images.subList(0, 2));
+        api.addImages(album, images.get(0));
+        assertNotNull(api.saveAlbum(album));
+        assertEquals(2, countRows(entryCount));
+
+        api.releaseEntityManager();
+        Album loaded = api.getAlbum(album.getAlbumID());
+        api.addImages(loaded, images);
+        api.addImages(loaded, images.get(2));
+
+        assertFalse(Hibernate.isInitialized(loaded.getEntries()));
+        assertNotNull(api.saveAlbum(loaded));
+        assertEquals(3, countRows(entryCount));
+        assertEquals(List.of(1, 2, 3), positions(api.getAlbumImages(loaded, 0, 10)));
+    }
+
+    /**
+     * Gets the positions of album entries
+     * @param entries the entries
+     * @return their positions, in order
+     */
+    private static List<Integer> positions(List<AlbumImage> entries) {
+        List<Integer> positions = new ArrayList<>();
+        entries.forEach(entry -> positions.add(entry.getPosition()));
+
+        return positions;
+    }
+}
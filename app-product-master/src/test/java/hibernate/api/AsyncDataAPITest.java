@@ -0,0 +1,131 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.User;
+
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * AsyncDataAPITest class tests that the AsyncDataAPI runs operations in order on its persistence thread,
+ * that it rejects operations when its queue is full and fails operations that take too long, and that the images it
+ * hands out can be read without loading anything on the calling thread.
+ *
+ * @author Karl Labrador
+ */
+class AsyncDataAPITest extends SeparateDatabaseTest {
+    /**
+     * Tests that a user created through the AsyncDataAPI can be read back by a later operation,
+     * and that the operations run on the persistence thread.
+     * Should fail if the user is not found or an operation ran on the calling thread.
+     */
+    @Test
+    void testOperationsRunInOrderOnPersistenceThread() {
+        try (AsyncDataAPI asyncAPI = new AsyncDataAPI(api, 16, Duration.ofSeconds(30), Runnable::run)) {
+            CompletableFuture<User> created = asyncAPI.createUser("AsyncUser", "AsyncUUID");
+            CompletableFuture<User> found = asyncAPI.getUser("AsyncUser", "AsyncUUID");
+            CompletableFuture<String> threadName = asyncAPI.submit(dataAPI -> Thread.currentThread().getName());
+
+            assertSame(created.join(), found.join());
+            assertTrue(threadName.join().startsWith("persistence-"));
+        }
+    }
+
+    /**
+     * Tests that the images handed out have their tags loaded, also after a commit has changed and refreshed them,
+     * so the JavaFX thread can show them without loading the tags itself.
+     * Should fail if an image's tags are left to be loaded lazily.
+     */
+    @Test
+    void testImagesHaveTagsLoaded() {
+        User user = api.createUser("AsyncTagUser", "AsyncTagUUID");
+        api.saveImages(user, List.of(createImage("tagged.jpg", "tree"), createImage("untagged.jpg")));
+
+        try (AsyncDataAPI asyncAPI = new AsyncDataAPI(api, 16, Duration.ofSeconds(30), Runnable::run)) {
+            User asyncUser = asyncAPI.getUser("AsyncTagUser", "AsyncTagUUID").join();
+            List<ImageData> images = asyncAPI.getImages(asyncUser).join();
+
+            assertEquals(2, images.size());
+            images.forEach(image -> assertTrue(Hibernate.isInitialized(image.getTags())));
+
+            ImageData untagged = images.stream().filter(image -> !image.hasTag("tree")).findFirst().orElseThrow();
+            assertTrue(asyncAPI.commit(new ChangeSet().addTag(untagged, "leaf")).join());
+            assertTrue(Hibernate.isInitialized(untagged.getTags()));
+            assertTrue(untagged.hasTag("leaf"));
+
+            asyncAPI.getImages(asyncUser, 0, 10).join()
+                    .forEach(image -> assertTrue(Hibernate.isInitialized(image.getTags())));
+        }
+    }
+
+    /**
+     * Tests that operations are rejected while the queue is full.
+     * Should fail if an operation is accepted beyond the queue capacity.
+     */
+    @Test
+    void testRejectsWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (AsyncDataAPI asyncAPI = new AsyncDataAPI(api, 1, Duration.ofSeconds(30), Runnable::run)) {
+            CompletableFuture<Void> running = asyncAPI.submit(dataAPI -> {
+                started.countDown();
+                awaitQuietly(release);
+                return null;
+            });
+            started.await();
+
+            CompletableFuture<Void> queued = asyncAPI.submit(dataAPI -> null);
+            CompletableFuture<Void> rejected = asyncAPI.submit(dataAPI -> null);
+
+            CompletionException ex = assertThrows(CompletionException.class, rejected::join);
+            assertTrue(ex.getCause() instanceof RejectedExecutionException);
+
+            release.countDown();
+            running.join();
+            queued.join();
+        }
+    }
+
+    /**
+     * Tests that an operation fails with a timeout when it takes longer than its timeout.
+     * Should fail if the future completes normally.
+     */
+    @Test
+    void testFailsAfterTimeout() {
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (AsyncDataAPI asyncAPI = new AsyncDataAPI(api, 16, Duration.ofSeconds(30), Runnable::run)) {
+            CompletableFuture<Void> slow = asyncAPI.submit(dataAPI -> {
+                awaitQuietly(release);
+                return null;
+            }, Duration.ofMillis(50));
+
+            CompletionException ex = assertThrows(CompletionException.class, slow::join);
+            assertTrue(ex.getCause() instanceof TimeoutException);
+
+            release.countDown();
+        }
+    }
+
+    /**
+     * Waits for a latch, ignoring interrupts
+     * @param latch the latch to wait for
+     */
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
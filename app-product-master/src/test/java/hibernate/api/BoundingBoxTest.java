@@ -0,0 +1,106 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.Metadata;
+import hibernate.model.User;
+
+import org.hibernate.LazyInitializationException;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * BoundingBoxTest class tests that {@link DataAPI#getImagesInBoundingBox} returns only the images inside a
+ * latitude/longitude box, newest first: across the antimeridian, without images that have no coordinates or belong
+ * to another user, and no more than the limit.
+ *
+ * @author Karl Labrador
+ */
+class BoundingBoxTest extends SeparateDatabaseTest {
+    private User user;
+    private ImageData trondheim;
+    private ImageData oslo;
+    private ImageData fiji;
+    private ImageData samoa;
+
+    /**
+     * Sets up a user that owns images around the world, one without coordinates,
+     * and another user with an image in the same place as one of them
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("BoxUser", "BoxUUID");
+        User otherUser = api.createUser("OtherBoxUser", "OtherBoxUUID");
+
+        trondheim = createImage("trondheim.jpg", 63.43, 10.39);
+        oslo = createImage("oslo.jpg", 59.91, 10.75);
+        fiji = createImage("fiji.jpg", -17.71, 178.07);
+        samoa = createImage("samoa.jpg", -13.76, -172.10);
+
+        api.saveImages(user, List.of(trondheim, oslo, fiji, samoa, createImage("nogps.jpg", 0, 0)));
+        api.saveImages(otherUser, List.of(createImage("other.jpg", 63.43, 10.39)));
+    }
+
+    /**
+     * Tests that only the user's images inside the box are returned, newest first.
+     * Should fail if an image outside the box, without coordinates or of another user is returned.
+     */
+    @Test
+    void testImagesInsideBox() {
+        List<ImageData> images = api.getImagesInBoundingBox(user, 58, 5, 65, 15, 10);
+
+        assertEquals(List.of(oslo.getImageID(), trondheim.getImageID()),
+                images.stream().map(ImageData::getImageID).collect(Collectors.toList()));
+    }
+
+    /**
+     * Tests that a box across the antimeridian returns the images on both sides of it.
+     * Should fail if either image is missing, or an image outside the box is returned.
+     */
+    @Test
+    void testBoxAcrossAntimeridian() {
+        Set<Integer> imageIds = api.getImagesInBoundingBox(user, -20, 175, -10, -170, 10).stream()
+                .map(ImageData::getImageID).collect(Collectors.toSet());
+
+        assertEquals(Set.of(fiji.getImageID(), samoa.getImageID()), imageIds);
+    }
+
+    /**
+     * Tests that the number of images returned is limited.
+     * Should fail if more images than the limit are returned.
+     */
+    @Test
+    void testLimit() {
+        assertEquals(1, api.getImagesInBoundingBox(user, -90, -180, 90, 180, 1).size());
+    }
+
+    /**
+     * Tests that the images are returned detached, so a pan leaves nothing in the persistence context, and that their
+     * tags are left unloaded.
+     * Should fail if the tags of an image in the box can still be loaded through a persistence context.
+     */
+    @Test
+    void testImagesAreDetached() {
+        ImageData image = api.getImagesInBoundingBox(user, 58, 5, 65, 15, 10).get(0);
+
+        assertThrows(LazyInitializationException.class, () -> image.getTags().size());
+    }
+
+    /**
+     * Creates an unsaved ImageData object with coordinates
+     * @param name file name of the image
+     * @param latitude latitude
+     * @param longitude longitude
+     * @return an ImageData object
+     */
+    private ImageData createImage(String name, double latitude, double longitude) {
+        Metadata metadata = new Metadata();
+        metadata.setLatitude(latitude);
+        metadata.setLongitude(longitude);
+
+        return createImage(name, metadata);
+    }
+}
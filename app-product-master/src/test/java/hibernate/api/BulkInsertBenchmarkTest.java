@@ -0,0 +1,96 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.Tag;
+import hibernate.model.User;
+
+import org.apache.log4j.Logger;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BulkInsertBenchmarkTest class compares saving images one by one with {@link DataAPI#saveImage(User, ImageData)}
+ * against the batched {@link DataAPI#saveImages}. The times are logged, while the assertions are made on the statements
+ * Hibernate prepared, as those do not depend on the machine: one at least per insert when saving one by one, and a few
+ * per JDBC batch of {@value #BATCH_SIZE} images when saving in bulk.
+ *
+ * @author Karl Labrador
+ */
+class BulkInsertBenchmarkTest extends SeparateDatabaseTest {
+    private static final int IMAGE_COUNT = 2000;
+    private static final int BATCH_SIZE = 50; // hibernate.jdbc.batch_size and the increment of image_sequence
+    private static final Logger logger = Logger.getLogger(BulkInsertBenchmarkTest.class);
+    private User benchmarkUser;
+
+    /**
+     * Sets up the benchmark with a user that owns the images.
+     */
+    @BeforeAll
+    void setup() {
+        benchmarkUser = api.createUser("BenchmarkUser", "BenchmarkUUID");
+    }
+
+    /**
+     * Saves the same number of images with both methods and logs the time and statements spent on each.
+     * Should fail if the bulk save is not batched, any image is left without an ID or the number of stored images
+     * is wrong.
+     */
+    @Test
+    void benchmarkSaveImagesAgainstSaveImage() {
+        Statistics statistics = api.getStatistics();
+
+        List<ImageData> singleImages = createImages("single");
+        statistics.clear();
+        long start = System.nanoTime();
+        singleImages.forEach(image -> api.saveImage(benchmarkUser, image));
+        long singleMillis = (System.nanoTime() - start) / 1_000_000;
+        long singleStatements = statistics.getPrepareStatementCount();
+        long singleInserts = statistics.getEntityInsertCount();
+
+        List<ImageData> bulkImages = createImages("bulk");
+        statistics.clear();
+        start = System.nanoTime();
+        api.saveImages(benchmarkUser, bulkImages);
+        long bulkMillis = (System.nanoTime() - start) / 1_000_000;
+        long bulkStatements = statistics.getPrepareStatementCount();
+        long bulkInserts = statistics.getEntityInsertCount();
+
+        logger.info(String.format("Saved %d images: saveImage %d ms and %d statements, saveImages %d ms and %d statements",
+                IMAGE_COUNT, singleMillis, singleStatements, bulkMillis, bulkStatements));
+
+        assertEquals(IMAGE_COUNT, singleInserts);
+        assertEquals(IMAGE_COUNT, bulkInserts);
+        // An image row and a tag link per image, each in its own transaction
+        assertTrue(singleStatements >= 2L * IMAGE_COUNT, "saveImage prepared " + singleStatements + " statements");
+        // Per batch at most an image insert, a tag link insert and a call to image_sequence, plus a few lookups
+        long bulkBudget = 3L * IMAGE_COUNT / BATCH_SIZE + 5;
+        assertTrue(bulkStatements <= bulkBudget, "saveImages prepared " + bulkStatements + " statements, its budget is " + bulkBudget);
+
+        assertTrue(bulkImages.stream().allMatch(image -> image.getImageID() != 0));
+        assertEquals(2L * IMAGE_COUNT, (long) api.inTransaction(work -> work.getEntityManager()
+                .createNamedQuery("ImageData.count", Long.class)
+                .getSingleResult()));
+    }
+
+    /**
+     * Creates unsaved ImageData objects with unique paths
+     * @param tag name of the tag to give every image, also used as prefix for the file names
+     * @return a List of ImageData objects
+     */
+    private List<ImageData> createImages(String tag) {
+        Tag stored = api.getTag(tag);
+        List<ImageData> images = new ArrayList<>(IMAGE_COUNT);
+
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            ImageData image = createImage(tag + i + ".jpg");
+            image.addTag(stored);
+            images.add(image);
+        }
+
+        return images;
+    }
+}
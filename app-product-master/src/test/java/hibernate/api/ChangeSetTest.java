@@ -0,0 +1,90 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.User;
+
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ChangeSetTest class tests that {@link DataAPI#commit(ChangeSet)} writes SQL in proportion to the size of the edit
+ * rather than the size of the library, and that a failed commit changes nothing and keeps its edits.
+ *
+ * @author Karl Labrador
+ */
+class ChangeSetTest extends SeparateDatabaseTest {
+    private static final int LIBRARY_SIZE = 200;
+    private User user;
+    private List<ImageData> images;
+
+    /**
+     * Sets up a user with a library that is much larger than the edits
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("ChangeSetUser", "ChangeSetUUID");
+        images = saveImages(user, "library", LIBRARY_SIZE);
+    }
+
+    /**
+     * Tests that tagging one image and tagging ten images prepare a number of statements that follows the number of
+     * images tagged, and that the tagged images show their new tag afterwards.
+     * Should fail if a commit reads or writes images it was not given, or the images are not updated.
+     */
+    @Test
+    void testCommitCostFollowsEditSize() {
+        assertTagCommitStatements("one", images.subList(0, 1));
+        assertTagCommitStatements("ten", images.subList(10, 20));
+
+        assertEquals(Map.of("one", 1L, "ten", 10L), api.getTagCounts(user));
+        assertEquals(List.of("ten"), images.get(15).getTagNames());
+    }
+
+    /**
+     * Commits a tag for some images and checks the statements it prepared
+     * @param tag the tag's name
+     * @param tagged the images to tag
+     */
+    private void assertTagCommitStatements(String tag, List<ImageData> tagged) {
+        ChangeSet changes = new ChangeSet();
+        tagged.forEach(image -> changes.addTag(image, tag));
+
+        Statistics statistics = api.getStatistics();
+        statistics.clear();
+        assertTrue(api.commit(changes));
+        long statements = statistics.getPrepareStatementCount();
+
+        // Per image a lookup, a refresh and a tag link; per commit the tag, its ID, the batched tag lists and so on
+        long budget = 3L * tagged.size() + 6;
+        assertTrue(statements <= budget, "Tagging " + tagged.size() + " images prepared " + statements
+                + " statements, its budget is " + budget);
+        assertTrue(changes.isEmpty());
+    }
+
+    /**
+     * Tests that a commit that fails half way leaves the objects and the database as they were, keeps its edits,
+     * and does not break the DataAPI for the next operation.
+     * Should fail if the tag is added anywhere, the change set is cleared, or the next operation fails.
+     */
+    @Test
+    void testFailedCommitChangesNothing() {
+        ImageData image = images.get(100);
+        ImageData missing = new ImageData();
+        missing.setImageID(Integer.MAX_VALUE);
+
+        ChangeSet changes = new ChangeSet()
+                .addTag(image, "failed")
+                .addTag(missing, "failed");
+
+        assertFalse(api.commit(changes));
+
+        assertFalse(changes.isEmpty());
+        assertFalse(image.hasTag("failed"));
+        assertFalse(api.getTagCounts(user).containsKey("failed"));
+        assertEquals(LIBRARY_SIZE, api.getImages(user, 0, LIBRARY_SIZE + 1).size());
+    }
+}
@@ -1,13 +1,16 @@
 package hibernate.api;
 
+import hibernate.dao.FetchPlan;
 import hibernate.model.Album;
 import hibernate.model.ImageData;
 import hibernate.model.User;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
 
 import static org.junit.jupiter.api.Assertions.*;
 import java.util.List;
+import java.util.Map;
 
 /**
  * DataAPITest class does usage tests for the DataAPI and tests most of the DAOs available.
@@ -17,6 +20,7 @@ import java.util.List;
  * @author Arvid Kirkbakk
  * @author Karl Labrador
  */
+@ExtendWith(StatementBudgetExtension.class)
 class DataAPITest {
     private static DataAPI api;
     private static User testUser;
@@ -182,4 +186,88 @@ class DataAPITest {
             fail("Exception caught when creating/getting album: " + e.toString() + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that a unit of work can persist an image from a worker thread, using its own EntityManager.
+     * The image should get an ID and be retrievable from the test thread afterwards.
+     */
+    @Test
+    void testUnitOfWorkOnWorkerThread() {
+        try {
+            ImageData workerImage = new ImageData();
+            workerImage.setPath("C:\\User\\testuser\\Desktop\\workerpath.png");
+            workerImage.setUser(testUser);
+
+            Thread worker = new Thread(() -> api.inTransaction(work -> work.getImageDAO().save(workerImage)));
+            worker.start();
+            worker.join();
+
+            assertNotEquals(0, workerImage.getImageID());
+            assertNotNull(api.getImage(workerImage.getImageID()));
+        } catch (Exception e) {
+            fail("Exception caught in unit of work on worker thread: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tests the statement budget of logging in. A new user takes a lookup, an insert and, as User ids are generated
+     * by identity columns, the query H2 answers with the new id. A known user only takes the lookup.
+     * Uses its own database, so the test user stays the only user here.
+     * Should fail if logging in prepares more statements.
+     */
+    @Test
+    void testLoginStatementBudget(StatementBudgetExtension.Budget budget) {
+        DataAPI loginApi = new DataAPI("app-product", Map.of("javax.persistence.jdbc.url", "jdbc:h2:mem:login"));
+
+        User user = budget.assertAtMost(3, "login of a new user", loginApi::login);
+        assertEquals(user, budget.assertAtMost(1, "login of a known user", loginApi::login));
+    }
+
+    /**
+     * Tests the statement budget of looking up and saving the test user
+     * Should fail if either operation prepares more than one statement.
+     */
+    @Test
+    void testUserStatementBudget(StatementBudgetExtension.Budget budget) {
+        budget.assertAtMost(1, "getUser", () -> api.getUser("TestUser", "TestUUID"));
+        budget.assertAtMost(1, "saveUser", () -> api.saveUser(testUser));
+    }
+
+    /**
+     * Tests that reading a page of tagged images with their tags does not query the tags image by image.
+     * Uses its own database with a user whose images each have tags, read back in a new persistence context.
+     * Should fail if the page takes more than one statement for the images and one for their tags.
+     */
+    @Test
+    void testGalleryPageWithTagsHasNoNPlusOne(StatementBudgetExtension.Budget budget) {
+        DataAPI galleryApi = new DataAPI("app-product", Map.of("javax.persistence.jdbc.url", "jdbc:h2:mem:gallery"));
+        User galleryUser = galleryApi.createUser("GalleryUser", "GalleryUUID");
+
+        for (int i = 0; i < 3; i++) {
+            ImageData image = new ImageData();
+            image.setPath("C:\\User\\galleryuser\\Desktop\\tagged" + i + ".png");
+            image.addTag(galleryApi.getTag("tag" + i));
+            image.addTag(galleryApi.getTag("shared"));
+            galleryApi.saveImage(galleryUser, image);
+        }
+
+        List<ImageData> page = budget.assertAtMost(2, "gallery page with tags", () -> galleryApi.inTransaction(work -> {
+            List<ImageData> images = work.getImageDAO().findByUser(galleryUser, 0, 20, FetchPlan.GALLERY);
+            images.forEach(ImageData::getTagNames);
+            return images;
+        }));
+
+        assertEquals(3, page.size());
+        page.forEach(image -> assertEquals(2, image.getTagNames().size()));
+    }
+
+    /**
+     * Tests the statement budget of the facets, one grouped query per facet
+     * Should fail if the facets take more than four statements.
+     */
+    @Test
+    @MaxStatements(4)
+    void testFacetsStatementBudget() {
+        assertNotNull(api.getFacets(testUser));
+    }
+}
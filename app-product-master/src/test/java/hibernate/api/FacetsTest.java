@@ -0,0 +1,91 @@
+package hibernate.api;
+
+import hibernate.model.GeoCell;
+import hibernate.model.Metadata;
+import hibernate.model.User;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FacetsTest class tests that {@link DataAPI#getFacets} groups a user's images by tag, camera, capture month
+ * and map cell, and leaves out images that have no value for a facet.
+ *
+ * @author Karl Labrador
+ */
+class FacetsTest extends SeparateDatabaseTest {
+    private User facetUser;
+
+    /**
+     * Sets up a user that owns three images with metadata
+     */
+    @BeforeAll
+    void setup() {
+        facetUser = api.createUser("FacetUser", "FacetUUID");
+
+        api.saveImages(facetUser, List.of(
+                createImage("a.jpg", createMetadata("Canon", "EOS 5D", LocalDate.of(2019, 7, 1), 63.43, 10.39), "summer"),
+                createImage("b.jpg", createMetadata("Canon", "EOS 5D", LocalDate.of(2019, 7, 20), 63.42, 10.40), "summer"),
+                createImage("c.jpg", createMetadata("Nikon", "D750", LocalDate.of(2020, 1, 5), 59.91, 10.75), "winter")));
+    }
+
+    /**
+     * Tests every grouping of the facets.
+     * Should fail if any count is wrong.
+     */
+    @Test
+    void testFacetsGroupImages() {
+        Facets facets = api.getFacets(facetUser);
+
+        assertEquals(Map.of("summer", 2L, "winter", 1L), facets.getTags());
+        assertEquals(Map.of("Canon", Map.of("EOS 5D", 2L), "Nikon", Map.of("D750", 1L)), facets.getCameras());
+        assertEquals(Map.of(YearMonth.of(2019, 7), 2L, YearMonth.of(2020, 1), 1L), facets.getMonths());
+        assertEquals(Map.of(new GeoCell(63, 10), 2L, new GeoCell(59, 10), 1L), facets.getGeoCells());
+    }
+
+    /**
+     * Tests that images without a camera make are left out of the camera facet, whether the make is missing or
+     * empty, as it is for images whose metadata has no Exif make.
+     * Should fail if an image without a make is counted.
+     */
+    @Test
+    void testImagesWithoutMakeAreNotCounted() {
+        User user = api.createUser("NoMakeUser", "NoMakeUUID");
+        Metadata noMake = createMetadata(null, null, LocalDate.of(2021, 3, 1), 0, 0);
+        Metadata emptyMake = createMetadata("", "", LocalDate.of(2021, 3, 2), 0, 0);
+
+        api.saveImages(user, List.of(
+                createImage("nomake.jpg", noMake),
+                createImage("emptymake.jpg", emptyMake),
+                createImage("canon.jpg", createMetadata("Canon", "", LocalDate.of(2021, 3, 3), 0, 0))));
+
+        assertEquals(Map.of("Canon", Map.of("", 1L)), api.getFacets(user).getCameras());
+    }
+
+    /**
+     * Creates a Metadata object
+     * @param make camera make
+     * @param model camera model
+     * @param captured capture date
+     * @param latitude latitude
+     * @param longitude longitude
+     * @return a Metadata object
+     */
+    private static Metadata createMetadata(String make, String model, LocalDate captured, double latitude, double longitude) {
+        Metadata metadata = new Metadata();
+        metadata.setMake(make);
+        metadata.setModel(model);
+        metadata.setCaptured(Date.from(captured.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+        metadata.setLatitude(latitude);
+        metadata.setLongitude(longitude);
+
+        return metadata;
+    }
+}
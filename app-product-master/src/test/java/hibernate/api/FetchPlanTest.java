@@ -0,0 +1,103 @@
+package hibernate.api;
+
+import hibernate.dao.FetchPlan;
+import hibernate.model.Album;
+import hibernate.model.ImageData;
+import hibernate.model.User;
+
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FetchPlanTest class tests that the detail, gallery and album fetch plans each load what their screen renders in a
+ * single SQL statement, and that a plan cannot be used for another entity.
+ *
+ * @author Karl Labrador
+ */
+class FetchPlanTest extends SeparateDatabaseTest {
+    private User user;
+    private List<ImageData> images;
+    private int albumId;
+
+    /**
+     * Sets up a user that owns three tagged images in an album
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("FetchPlanUser", "FetchPlanUUID");
+
+        images = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            images.add(createImage(i + ".jpg", "tag" + i, "shared"));
+        }
+        api.saveImages(user, images);
+
+        Album album = api.createAlbum(user);
+        api.addImages(album, images);
+        api.saveAlbum(album);
+        albumId = album.getAlbumID();
+    }
+
+    /**
+     * Starts every test with an empty persistence context and statistics
+     */
+    @BeforeEach
+    void clearPersistenceContext() {
+        api.releaseEntityManager();
+        api.getStatistics().clear();
+    }
+
+    /**
+     * Tests that the detail plan loads an image with its tags and owner
+     * Should fail if reading the tags or the owner needs another statement
+     */
+    @Test
+    void testDetailLoadsTagsAndUserInOneStatement() {
+        ImageData image = api.getImage(images.get(0).getImageID(), FetchPlan.DETAIL);
+
+        assertEquals(List.of("shared", "tag0"), image.getTagNames());
+        assertEquals("FetchPlanUser", image.getUser().getUsername());
+        assertEquals(1, api.getStatistics().getPrepareStatementCount());
+    }
+
+    /**
+     * Tests that the gallery plan loads a page of images without their tags
+     * Should fail if the page takes more than one statement
+     */
+    @Test
+    void testGalleryLoadsPageInOneStatement() {
+        List<ImageData> page = api.getImages(user, 0, 10, FetchPlan.GALLERY);
+
+        page.forEach(ImageData::getPath);
+        assertEquals(3, page.size());
+        assertEquals(1, api.getStatistics().getPrepareStatementCount());
+    }
+
+    /**
+     * Tests that the album plan loads an album with its images in order
+     * Should fail if the images are out of order or need more statements
+     */
+    @Test
+    void testAlbumLoadsImagesInOneStatement() {
+        Album album = api.getAlbum(albumId, FetchPlan.ALBUM);
+
+        List<String> paths = new ArrayList<>();
+        album.getImages().forEach(image -> paths.add(image.getPath()));
+
+        assertEquals(List.of(images.get(0).getPath(), images.get(1).getPath(), images.get(2).getPath()), paths);
+        assertEquals(1, api.getStatistics().getPrepareStatementCount());
+    }
+
+    /**
+     * Tests that a plan cannot be used for the wrong entity
+     * Should fail if no exception is thrown
+     */
+    @Test
+    void testPlanForOtherEntityIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> api.getAlbum(albumId, FetchPlan.GALLERY));
+    }
+}
@@ -0,0 +1,91 @@
+package hibernate.api;
+
+import hibernate.model.GalleryRow;
+import hibernate.model.ImageData;
+import hibernate.model.Metadata;
+import hibernate.model.User;
+
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * GalleryRowTest class tests that the gallery listing reads GalleryRow projections a page at a time, newest first,
+ * without loading ImageData entities, and that streaming the rows visits every image once.
+ *
+ * @author Karl Labrador
+ */
+class GalleryRowTest extends SeparateDatabaseTest {
+    private User user;
+    private List<ImageData> images;
+
+    /**
+     * Sets up a user that owns three images, one of them without metadata
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("GalleryUser", "GalleryUUID");
+
+        images = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Metadata metadata = null;
+
+            if (i > 0) {
+                metadata = new Metadata();
+                metadata.setWidth(640 * i);
+                metadata.setHeight(480 * i);
+                metadata.setLatitude(63.4);
+                metadata.setLongitude(10.4);
+                metadata.setCaptured(new Date(1_500_000_000_000L));
+            }
+
+            images.add(createImage(i + ".jpg", metadata));
+        }
+
+        api.saveImages(user, images);
+    }
+
+    /**
+     * Tests that the rows are paged newest first and carry the gallery columns, without loading any entity.
+     * Should fail if a row is wrong or missing, or an ImageData entity is loaded.
+     */
+    @Test
+    void testGalleryRowsArePagedWithoutLoadingEntities() {
+        Statistics statistics = api.getStatistics();
+        statistics.clear();
+
+        List<GalleryRow> firstPage = api.getGalleryRows(user, 0, 2);
+        List<GalleryRow> secondPage = api.getGalleryRows(user, firstPage.get(1).getImageID(), 2);
+
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(2, firstPage.size());
+        assertEquals(1, secondPage.size());
+
+        GalleryRow newest = firstPage.get(0);
+        assertEquals(images.get(2).getImageID(), newest.getImageID());
+        assertEquals(images.get(2).getPath(), newest.getPath());
+        assertEquals(1280, newest.getWidth());
+        assertEquals(960, newest.getHeight());
+        assertEquals(63.4, newest.getLatitude());
+        assertEquals(1_500_000_000_000L, newest.getCaptured().getTime());
+
+        assertEquals(images.get(0).getImageID(), secondPage.get(0).getImageID());
+        assertNull(secondPage.get(0).getWidth());
+    }
+
+    /**
+     * Tests that streaming visits every row once
+     * Should fail if the number of rows differs from the number of images
+     */
+    @Test
+    void testForEachGalleryRowVisitsEveryImage() {
+        List<GalleryRow> rows = new ArrayList<>();
+        api.forEachGalleryRow(user, rows::add);
+
+        assertEquals(images.size(), rows.size());
+    }
+}
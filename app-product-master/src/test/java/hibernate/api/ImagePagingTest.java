@@ -0,0 +1,111 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.User;
+
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.resource.jdbc.ResourceRegistry;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * ImagePagingTest class tests the keyset paging of a user's images, where each page starts after the ID of the last
+ * image of the previous page, and that streaming a user's images releases the database cursor when the stream is
+ * closed, also when it was not read to the end.
+ *
+ * @author Karl Labrador
+ */
+class ImagePagingTest extends SeparateDatabaseTest {
+    private static final int IMAGE_COUNT = 5;
+    private User user;
+    private List<Integer> imageIds;
+
+    /**
+     * Sets up a user with a few images, and another user whose images must not show up in the pages
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("PagingUser", "PagingUUID");
+        User otherUser = api.createUser("OtherPagingUser", "OtherPagingUUID");
+
+        saveImages(otherUser, "other", 3);
+        imageIds = saveImages(user, "paged", IMAGE_COUNT).stream()
+                .map(ImageData::getImageID)
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Tests that paging through the images visits each of the user's images once, newest first, with a short last
+     * page followed by an empty one.
+     * Should fail if a page is out of order, overlaps the previous page, or holds another user's image.
+     */
+    @Test
+    void testPagesFollowEachOther() {
+        List<List<Integer>> pages = readPages(2);
+
+        assertEquals(List.of(imageIds.subList(0, 2), imageIds.subList(2, 4), imageIds.subList(4, 5), List.of()), pages);
+    }
+
+    /**
+     * Tests that a page that ends exactly on the last image is followed by an empty page, and that a page after the
+     * oldest image is empty.
+     * Should fail if the page after the last image returns anything.
+     */
+    @Test
+    void testFullLastPageIsFollowedByEmptyPage() {
+        assertEquals(List.of(imageIds, List.of()), readPages(IMAGE_COUNT));
+        assertTrue(api.getImages(user, imageIds.get(IMAGE_COUNT - 1), 10).isEmpty());
+    }
+
+    /**
+     * Tests that a stream of the user's images that is closed before it has been read to the end releases its
+     * result set and statement, and that a stream read to the end visits every image.
+     * Should fail if the cursor is still registered with the session after the stream is closed.
+     */
+    @Test
+    void testStreamReleasesCursorWhenClosed() {
+        api.inTransaction(work -> {
+            ResourceRegistry registry = work.getEntityManager().unwrap(SessionImplementor.class)
+                    .getJdbcCoordinator().getLogicalConnection().getResourceRegistry();
+
+            try (Stream<ImageData> images = work.getImageDAO().streamByUser(user, 2)) {
+                assertEquals(imageIds.get(0), images.iterator().next().getImageID());
+                assertTrue(registry.hasRegisteredResources());
+            }
+            assertFalse(registry.hasRegisteredResources());
+
+            return null;
+        });
+
+        List<Integer> streamed = new ArrayList<>();
+        api.forEachImage(user, image -> streamed.add(image.getImageID()));
+        assertEquals(imageIds, streamed);
+    }
+
+    /**
+     * Reads the user's images a page at a time, until a page is empty
+     * @param limit number of images per page
+     * @return the IDs of each page, including the empty one
+     */
+    private List<List<Integer>> readPages(int limit) {
+        List<List<Integer>> pages = new ArrayList<>();
+        int afterImageId = 0;
+
+        do {
+            List<Integer> page = api.getImages(user, afterImageId, limit).stream()
+                    .map(ImageData::getImageID)
+                    .collect(Collectors.toList());
+            pages.add(page);
+            afterImageId = page.isEmpty() ? -1 : page.get(page.size() - 1);
+        } while (afterImageId > 0);
+
+        return pages;
+    }
+}
@@ -0,0 +1,63 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.Tag;
+import hibernate.model.User;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * ImportImagesTest class tests that {@link DataAPI#importImages} writes images and their tags over several commits,
+ * and that the user sees the imported images afterwards. The images are created as they are read, with unsaved tags
+ * that the import has to resolve to the stored ones.
+ *
+ * @author Karl Labrador
+ */
+class ImportImagesTest extends SeparateDatabaseTest {
+    private static final int IMAGE_COUNT = 2500;
+    private User user;
+
+    /**
+     * Sets up a user
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("ImportUser", "ImportUUID");
+    }
+
+    /**
+     * Imports images that are created one at a time as they are read, so none of them are held by the test.
+     * Should fail if an image or tag link is missing, or the user's image list is not refreshed.
+     */
+    @Test
+    void testImportWritesImagesAndTagsAndRefreshesUser() {
+        assertEquals(0, api.getImages(user).size());
+
+        Iterable<ImageData> images = () -> new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < IMAGE_COUNT;
+            }
+
+            @Override
+            public ImageData next() {
+                ImageData image = createImage(next + ".jpg");
+                image.addTag(new Tag(next % 2 == 0 ? "even" : "odd"));
+                next++;
+
+                return image;
+            }
+        };
+
+        assertEquals(IMAGE_COUNT, api.importImages(user, images));
+
+        assertEquals(Map.of("even", (long) IMAGE_COUNT / 2, "odd", (long) IMAGE_COUNT / 2), api.getTagCounts(user));
+        assertEquals(IMAGE_COUNT, api.getImages(user).size());
+    }
+}
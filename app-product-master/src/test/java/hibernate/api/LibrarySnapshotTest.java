@@ -0,0 +1,148 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.Metadata;
+import hibernate.model.User;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LibrarySnapshotTest class tests that a library written with {@link DataAPI#writeSnapshot} is read back from
+ * its snapshot unchanged, including images without metadata or tags, that files which are missing, of
+ * another format or cut short are not opened as snapshots, and that a {@link SnapshotWriter} writes a waiting
+ * snapshot when it is closed.
+ *
+ * @author Karl Labrador
+ */
+class LibrarySnapshotTest extends SeparateDatabaseTest {
+    private User user;
+    private List<ImageData> images;
+
+    /**
+     * Sets up a user that owns a tagged image with metadata and an image without
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("SnapshotUser", "SnapshotUUID");
+
+        Metadata metadata = new Metadata();
+        metadata.setWidth(4000);
+        metadata.setHeight(3000);
+        metadata.setLatitude(63.43);
+        metadata.setLongitude(10.39);
+        metadata.setMake("Canon");
+        metadata.setModel("EOS 5D");
+        metadata.setCaptured(new Date(1_500_000_000_000L));
+
+        ImageData tagged = createImage("sommer på hytta.jpg", metadata, "summer", "cabin");
+        ImageData plain = createImage("plain.jpg");
+
+        images = api.saveImages(user, List.of(tagged, plain));
+    }
+
+    /**
+     * Tests that every column of every image is read back as it was written.
+     * Should fail if the snapshot cannot be opened, or any value differs.
+     * @param directory a temporary directory for the snapshot
+     */
+    @Test
+    void testSnapshotRoundTrip(@TempDir Path directory) {
+        Path path = directory.resolve("library.snapshot");
+
+        assertEquals(2, api.writeSnapshot(user, path));
+        LibrarySnapshot snapshot = LibrarySnapshot.open(path).orElseThrow();
+
+        assertTrue(snapshot.isOwnedBy("SnapshotUser", "SnapshotUUID"));
+        assertEquals(2, snapshot.size());
+
+        Map<Integer, ImageData> read = new HashMap<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            read.put(snapshot.getImageID(i), snapshot.toImageData(i));
+        }
+
+        ImageData tagged = read.get(images.get(0).getImageID());
+        assertEquals(images.get(0).getPath(), tagged.getPath());
+        assertEquals(List.of("cabin", "summer"), tagged.getTagNames());
+        assertEquals(4000, tagged.getMetadata().getWidth());
+        assertEquals(3000, tagged.getMetadata().getHeight());
+        assertEquals(63.43, tagged.getMetadata().getLatitude());
+        assertEquals(10.39, tagged.getMetadata().getLongitude());
+        assertEquals("Canon", tagged.getMetadata().getMake());
+        assertEquals("EOS 5D", tagged.getMetadata().getModel());
+        assertEquals(1_500_000_000_000L, tagged.getMetadata().getCaptured().getTime());
+
+        ImageData plain = read.get(images.get(1).getImageID());
+        assertEquals(images.get(1).getPath(), plain.getPath());
+        assertNull(plain.getMetadata());
+        assertTrue(plain.getTagNames().isEmpty());
+    }
+
+    /**
+     * Tests that a snapshot that is open can be replaced by a new one, and that it keeps the images it was opened with.
+     * Should fail if writing the new snapshot fails, or the open snapshot changes.
+     * @param directory a temporary directory for the snapshot
+     */
+    @Test
+    void testOpenSnapshotCanBeReplaced(@TempDir Path directory) {
+        User replacingUser = api.createUser("ReplacingUser", "ReplacingUUID");
+        api.saveImages(replacingUser, List.of(createImage("first.jpg")));
+
+        Path path = directory.resolve("library.snapshot");
+        api.writeSnapshot(replacingUser, path);
+        LibrarySnapshot snapshot = LibrarySnapshot.open(path).orElseThrow();
+
+        api.saveImages(replacingUser, List.of(createImage("later.jpg")));
+        assertEquals(2, api.writeSnapshot(replacingUser, path));
+
+        assertEquals(1, snapshot.size());
+        assertEquals(2, LibrarySnapshot.open(path).orElseThrow().size());
+    }
+
+    /**
+     * Tests that closing a writer writes the snapshot it was asked for without waiting for the delay.
+     * Should fail if the snapshot is dropped, or is only written once the delay has passed.
+     * @param directory a temporary directory for the snapshot
+     */
+    @Test
+    void testCloseWritesWaitingSnapshot(@TempDir Path directory) {
+        Path path = directory.resolve("library.snapshot");
+        SnapshotWriter writer = new SnapshotWriter(api, path, Duration.ofHours(1));
+
+        writer.request(user);
+        writer.close();
+
+        assertEquals(2, LibrarySnapshot.open(path).orElseThrow().size());
+    }
+
+    /**
+     * Tests that a missing, foreign or damaged file is not opened as a snapshot.
+     * Should fail if any of them is opened.
+     * @param directory a temporary directory for the test files
+     * @throws IOException if the test files cannot be written
+     */
+    @Test
+    void testInvalidSnapshotIsNotOpened(@TempDir Path directory) throws IOException {
+        assertTrue(LibrarySnapshot.open(directory.resolve("missing.snapshot")).isEmpty());
+
+        Path foreign = Files.write(directory.resolve("foreign.snapshot"), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertTrue(LibrarySnapshot.open(foreign).isEmpty());
+
+        Path path = directory.resolve("library.snapshot");
+        api.writeSnapshot(user, path);
+        byte[] bytes = Files.readAllBytes(path);
+        Path truncated = Files.write(directory.resolve("truncated.snapshot"), Arrays.copyOf(bytes, bytes.length - 5));
+        assertTrue(LibrarySnapshot.open(truncated).isEmpty());
+    }
+}
@@ -0,0 +1,25 @@
+package hibernate.api;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Fails a test that makes Hibernate prepare more SQL statements than allowed, counted over the whole test method.
+ * See {@link StatementBudgetExtension}.
+ *
+ * @author Karl Labrador
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@ExtendWith(StatementBudgetExtension.class)
+public @interface MaxStatements {
+    /**
+     * Gets the budget
+     * @return the most statements the test may prepare
+     */
+    int value();
+}
@@ -0,0 +1,71 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.User;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * OperationStatisticsTest class tests that {@link OperationStatistics} adds up the calls, statements and rows of each
+ * API operation under the operation's own method name.
+ *
+ * @author Karl Labrador
+ */
+class OperationStatisticsTest extends SeparateDatabaseTest {
+    private User user;
+
+    /**
+     * Sets up a user with two tagged images
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("StatisticsUser", "StatisticsUUID");
+        api.saveImages(user, List.of(createImage("first.jpg", "sea"), createImage("second.jpg", "sea", "sun")));
+    }
+
+    /**
+     * Tests that two user lookups and one image lookup are recorded as two operations, with one statement per user
+     * lookup and the loaded images counted as rows.
+     * Should fail if a call is missing, counted under the wrong method, or its statements are not counted.
+     */
+    @Test
+    void testCountsPerOperation() {
+        OperationStatistics statistics = OperationStatistics.record(api);
+        API recording = statistics.getAPI();
+
+        assertEquals(user, recording.getUser("StatisticsUser", "StatisticsUUID"));
+        assertEquals(user, recording.getUser("StatisticsUser", "StatisticsUUID"));
+        api.releaseEntityManager();
+        List<ImageData> images = recording.getImages(user, 0, 20);
+
+        Map<String, OperationStatistics.Operation> operations = statistics.getOperations();
+        assertEquals(Set.of("getUser", "getImages"), operations.keySet());
+
+        OperationStatistics.Operation getUser = operations.get("getUser");
+        assertEquals(2, getUser.getCalls());
+        assertEquals(2, getUser.getStatements());
+        assertEquals(1, getUser.getMaxStatements());
+
+        OperationStatistics.Operation getImages = operations.get("getImages");
+        assertEquals(1, getImages.getCalls());
+        assertTrue(getImages.getStatements() >= 1);
+        assertTrue(getImages.getRows() >= images.size());
+    }
+
+    /**
+     * Tests that a call that fails is still recorded, and that the caller gets the API's own exception.
+     * Should fail if the exception is wrapped, or the call is not counted.
+     */
+    @Test
+    void testFailedCallIsRecorded() {
+        OperationStatistics statistics = OperationStatistics.record(api);
+
+        assertThrows(IllegalArgumentException.class, () -> statistics.getAPI().createUser("", ""));
+        assertEquals(1, statistics.getOperations().get("createUser").getCalls());
+    }
+}
@@ -0,0 +1,111 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.Metadata;
+import hibernate.model.User;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * QueryPlanTest class runs EXPLAIN on the main queries of the application and checks that H2 answers them
+ * through an index instead of scanning a whole table: logging in, paging a user's images, looking images up by tag
+ * and reading the images in a map box.
+ *
+ * @author Karl Labrador
+ */
+class QueryPlanTest extends SeparateDatabaseTest {
+    private static final String TABLE_SCAN = "tableScan";
+    private User planUser;
+
+    /**
+     * Sets up a user that owns a few tagged images with coordinates.
+     */
+    @BeforeAll
+    void setup() {
+        planUser = api.createUser("PlanUser", "PlanUUID");
+
+        List<ImageData> images = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Metadata metadata = new Metadata();
+            metadata.setLatitude(63.0 + i * 0.1);
+            metadata.setLongitude(10.0 + i * 0.1);
+
+            images.add(createImage(i + ".jpg", metadata, i % 2 == 0 ? "even" : "odd"));
+        }
+        api.saveImages(planUser, images);
+    }
+
+    /**
+     * Tests that logging in looks the user up through the (username, uuid) unique key.
+     * Should fail if the users table is scanned.
+     */
+    @Test
+    void testLoginUsesIndex() {
+        String plan = explain("SELECT * FROM users WHERE username = 'PlanUser' AND uuid = 'PlanUUID'");
+        assertFalse(plan.contains(TABLE_SCAN), plan);
+    }
+
+    /**
+     * Tests that a page of a user's images is read through an index on userid.
+     * Should fail if the images table is scanned.
+     */
+    @Test
+    void testImagesByUserUsesIndex() {
+        String plan = explain("SELECT * FROM images WHERE userid = " + planUser.getUserID()
+                + " AND imageid < 1000 ORDER BY imageid DESC LIMIT 50");
+        assertFalse(plan.contains(TABLE_SCAN), plan);
+    }
+
+    /**
+     * Tests that looking up a user's images by tag name uses an index on every table of the join.
+     * Should fail if any of images, image_tags or tag is scanned.
+     */
+    @Test
+    void testTagLookupUsesIndex() {
+        String plan = explain("SELECT i.imageid FROM images i"
+                + " JOIN image_tags it ON it.imageid = i.imageid"
+                + " JOIN tag t ON t.tagid = it.tagid"
+                + " WHERE i.userid = " + planUser.getUserID() + " AND t.name = 'even'");
+        assertFalse(plan.contains(TABLE_SCAN), plan);
+    }
+
+    /**
+     * Tests that a latitude/longitude box is answered through the coordinate index.
+     * Should fail if the images table is scanned or another index is used.
+     */
+    @Test
+    void testGeoBoxUsesIndex() {
+        String plan = explain("SELECT imageid FROM images"
+                + " WHERE latitude BETWEEN 63.2 AND 63.8 AND longitude BETWEEN 10.2 AND 10.8");
+        assertFalse(plan.contains(TABLE_SCAN), plan);
+        assertTrue(plan.toUpperCase().contains("IDX_IMAGES_LAT_LON"), plan);
+    }
+
+    /**
+     * Tests that a user's images in a latitude/longitude box, as the map asks for when it is panned,
+     * are read through an index.
+     * Should fail if the images table is scanned.
+     */
+    @Test
+    void testUserGeoBoxUsesIndex() {
+        String plan = explain("SELECT imageid FROM images WHERE userid = " + planUser.getUserID()
+                + " AND latitude BETWEEN 63.2 AND 63.8 AND longitude BETWEEN 10.2 AND 10.8 ORDER BY imageid DESC LIMIT 50");
+        assertFalse(plan.contains(TABLE_SCAN), plan);
+    }
+
+    /**
+     * Runs EXPLAIN for a native query
+     * @param sql the query to explain
+     * @return the plan as reported by H2
+     */
+    private String explain(String sql) {
+        return api.inTransaction(work -> work.getEntityManager()
+                .createNativeQuery("EXPLAIN " + sql)
+                .getSingleResult()
+                .toString());
+    }
+}
@@ -0,0 +1,106 @@
+package hibernate.api;
+
+import hibernate.dao.RoutingConnectionProvider;
+import hibernate.model.User;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.Map;
+
+/**
+ * ReadReplicaTest class tests that {@link DataAPI} reads from the replica and writes to the primary database,
+ * and that a DataAPI reads its own writes from the primary database. Uses two in-memory H2 databases that are
+ * never synchronised, so where a row is found shows which database was read.
+ *
+ * @author Karl Labrador
+ */
+class ReadReplicaTest {
+    private final static String PRIMARY_URL = "jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1";
+    private final static String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+    private static DataAPI replica;
+
+    /**
+     * Sets up the replica's schema with a DataAPI connected to it directly
+     */
+    @BeforeAll
+    public static void setup() {
+        replica = new DataAPI("app-product", Map.of("javax.persistence.jdbc.url", REPLICA_URL));
+    }
+
+    /**
+     * Creates a DataAPI that writes to the primary database and reads from the replica
+     * @param readYourWritesMillis how long reads stay on the primary database after a write
+     * @return a DataAPI object
+     */
+    private static DataAPI createRoutedAPI(long readYourWritesMillis) {
+        return new DataAPI("app-product", Map.of(
+                "javax.persistence.jdbc.url", PRIMARY_URL,
+                "hibernate.connection.provider_class", RoutingConnectionProvider.class.getName(),
+                RoutingConnectionProvider.REPLICA_URL, REPLICA_URL,
+                RoutingConnectionProvider.READ_YOUR_WRITES, String.valueOf(readYourWritesMillis)));
+    }
+
+    /**
+     * Tests that a DataAPI that has not written reads from the replica.
+     * Should fail if the user that only exists in the replica is not found.
+     */
+    @Test
+    void testReadsGoToReplica() {
+        replica.createUser("ReplicaUser", "ReplicaUUID");
+        DataAPI api = createRoutedAPI(60_000);
+
+        assertNotNull(api.getUser("ReplicaUser", "ReplicaUUID"));
+    }
+
+    /**
+     * Tests that writes go to the primary database and that the DataAPI that wrote reads them back from there.
+     * Should fail if the new user is written to the replica, or is not found by the DataAPI that created it.
+     */
+    @Test
+    void testReadYourWrites() {
+        DataAPI writer = createRoutedAPI(60_000);
+        DataAPI reader = createRoutedAPI(60_000);
+        replica.createUser("ReplicaOnlyUser", "ReplicaOnlyUUID");
+
+        writer.createUser("PrimaryUser", "PrimaryUUID");
+
+        assertNotNull(writer.getUser("PrimaryUser", "PrimaryUUID"));
+        assertNull(writer.getUser("ReplicaOnlyUser", "ReplicaOnlyUUID"));
+        assertNull(reader.getUser("PrimaryUser", "PrimaryUUID"));
+        assertNull(replica.getUser("PrimaryUser", "PrimaryUUID"));
+    }
+
+    /**
+     * Tests that reads go back to the replica once the read-your-writes window has passed.
+     * Should fail if the DataAPI keeps reading from the primary database.
+     */
+    @Test
+    void testReadsReturnToReplica() {
+        replica.createUser("LaterUser", "LaterUUID");
+        DataAPI api = createRoutedAPI(0);
+
+        api.createUser("WrittenUser", "WrittenUUID");
+
+        assertNotNull(api.getUser("LaterUser", "LaterUUID"));
+        assertNull(api.getUser("WrittenUser", "WrittenUUID"));
+    }
+
+    /**
+     * Tests that a user read from the replica is detached, so changing it does not write the replica's copy to the
+     * primary database when the DataAPI next writes.
+     * Should fail if the next write updates a user in the primary database, or fails on a row only the replica has.
+     */
+    @Test
+    void testReplicaReadsAreNotWrittenBack() {
+        replica.createUser("StaleUser", "StaleUUID");
+        DataAPI api = createRoutedAPI(0);
+
+        User staleUser = api.getUser("StaleUser", "StaleUUID");
+        staleUser.setUsername("ChangedUser");
+        api.createUser("NextUser", "NextUUID");
+
+        DataAPI primary = new DataAPI("app-product", Map.of("javax.persistence.jdbc.url", PRIMARY_URL));
+        assertTrue(primary.getAllUsers().stream().noneMatch(user -> user.getUsername().equals("ChangedUser")));
+    }
+}
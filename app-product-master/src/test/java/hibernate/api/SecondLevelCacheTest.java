@@ -0,0 +1,136 @@
+package hibernate.api;
+
+import hibernate.model.Album;
+import hibernate.model.ImageData;
+import hibernate.model.User;
+
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.Map;
+
+/**
+ * SecondLevelCacheTest class tests the second-level and query caches as they are set up for the application, which
+ * the test persistence unit leaves off. Repeated lookups in new persistence contexts should be served by the caches,
+ * and writes should update or invalidate what the caches hold.
+ *
+ * @author Karl Labrador
+ */
+class SecondLevelCacheTest extends SeparateDatabaseTest {
+    private User user;
+    private ImageData image;
+    private Album album;
+
+    /**
+     * Turns the caches on with the same settings as the application's persistence units
+     * @return the cache settings
+     */
+    @Override
+    protected Map<String, Object> getProperties() {
+        return Map.of(
+                "javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE",
+                "hibernate.cache.use_second_level_cache", "true",
+                "hibernate.cache.use_query_cache", "true",
+                "hibernate.cache.region.factory_class", "jcache",
+                "hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider",
+                "hibernate.javax.cache.uri", "ehcache.xml");
+    }
+
+    /**
+     * Sets up a user with an image and an album
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("CacheUser", "CacheUUID");
+        image = saveImages(user, "cached", 1).get(0);
+        album = api.createAlbum(user);
+    }
+
+    /**
+     * Empties the caches and the statistics, and starts each test with a new persistence context
+     */
+    @BeforeEach
+    void emptyCaches() {
+        api.releaseEntityManager();
+        api.inTransaction(work -> {
+            work.getEntityManager().getEntityManagerFactory().getCache().evictAll();
+            return null;
+        });
+        api.getStatistics().clear();
+    }
+
+    /**
+     * Tests that the first lookup of an image misses the cache and stores the image, and that a lookup in a new
+     * persistence context is served from the cache without a statement.
+     * Should fail if the second lookup goes to the database.
+     */
+    @Test
+    void testRepeatedImageLookupHitsCache() {
+        CacheRegionStatistics region = api.getStatistics().getDomainDataRegionStatistics(ImageData.class.getName());
+
+        assertEquals(image.getPath(), api.getImage(image.getImageID()).getPath());
+        assertEquals(0, region.getHitCount());
+        assertEquals(1, region.getMissCount());
+        assertEquals(1, region.getPutCount());
+
+        api.releaseEntityManager();
+        long statements = api.getStatistics().getPrepareStatementCount();
+
+        assertEquals(image.getPath(), api.getImage(image.getImageID()).getPath());
+        assertEquals(1, region.getHitCount());
+        assertEquals(1, region.getMissCount());
+        assertEquals(statements, api.getStatistics().getPrepareStatementCount());
+    }
+
+    /**
+     * Tests that a repeated album lookup hits the cache, and that a changed title is written to the cache along with
+     * the database, so the next lookup from the cache sees it.
+     * Should fail if a lookup misses the cache, or the cache hands out the old title.
+     */
+    @Test
+    void testAlbumLookupSeesWrites() {
+        CacheRegionStatistics region = api.getStatistics().getDomainDataRegionStatistics(Album.class.getName());
+
+        api.getAlbum(album.getAlbumID());
+        api.releaseEntityManager();
+        Album cached = api.getAlbum(album.getAlbumID());
+        assertEquals(1, region.getMissCount());
+        assertEquals(1, region.getHitCount());
+
+        api.setAlbumTitle(cached, "Cached title");
+        assertNotNull(api.saveAlbum(cached));
+        api.releaseEntityManager();
+
+        assertEquals("Cached title", api.getAlbum(album.getAlbumID()).getTitle());
+        assertEquals(1, region.getMissCount());
+        assertEquals(2, region.getHitCount());
+    }
+
+    /**
+     * Tests the query that {@link DataAPI#login()} looks the user up with: a repeated lookup is served from the query
+     * cache, and creating another user invalidates the cached result, so the next lookup runs the query again.
+     * Should fail if the repeated lookup runs the query, or a stale result is used after the users table changed.
+     */
+    @Test
+    void testUserLookupUsesQueryCache() {
+        Statistics statistics = api.getStatistics();
+
+        assertEquals(user.getUserID(), api.getUser("CacheUser", "CacheUUID").getUserID());
+        assertEquals(0, statistics.getQueryCacheHitCount());
+        assertEquals(1, statistics.getQueryCacheMissCount());
+
+        api.releaseEntityManager();
+        assertEquals(user.getUserID(), api.getUser("CacheUser", "CacheUUID").getUserID());
+        assertEquals(1, statistics.getQueryCacheHitCount());
+        assertEquals(1, statistics.getQueryCacheMissCount());
+
+        api.createUser("OtherCacheUser", "OtherCacheUUID");
+        api.releaseEntityManager();
+
+        assertEquals(user.getUserID(), api.getUser("CacheUser", "CacheUUID").getUserID());
+        assertEquals(1, statistics.getQueryCacheHitCount());
+        assertEquals(2, statistics.getQueryCacheMissCount());
+    }
+}
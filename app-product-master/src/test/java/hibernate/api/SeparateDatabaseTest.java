@@ -0,0 +1,113 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.Metadata;
+import hibernate.model.User;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SeparateDatabaseTest class - base class for tests that need a database of their own, so the users, images and
+ * statistics they create do not show up in the counts of {@link DataAPITest} or of each other.
+ *
+ * Each test class gets an in-memory H2 database named after the class, set up before its own {@code @BeforeAll}
+ * methods run. The second-level cache regions of the database are named after the class too, as every DataAPI in
+ * the JVM shares one cache manager, and two databases would otherwise serve each other's entities by id.
+ * Images created with {@link #createImage} are stored in a folder named after the class as well.
+ *
+ * @author Karl Labrador
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+abstract class SeparateDatabaseTest {
+    protected DataAPI api;
+
+    /**
+     * Opens the test class's database
+     */
+    @BeforeAll
+    void openDatabase() {
+        Map<String, Object> properties = new HashMap<>(getProperties());
+        properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:" + getClass().getSimpleName());
+        properties.put("hibernate.cache.region_prefix", getClass().getSimpleName());
+
+        api = new DataAPI("app-product", properties);
+    }
+
+    /**
+     * Gets the properties that the test class overrides in the test persistence unit, besides the database URL and
+     * the cache region prefix
+     * @return the overridden properties, none by default
+     */
+    protected Map<String, Object> getProperties() {
+        return Map.of();
+    }
+
+    /**
+     * Gets the folder that the images of the test class are stored in
+     * @return the folder, ending with a separator
+     */
+    protected String getFolder() {
+        return "C:\\User\\" + getClass().getSimpleName() + "\\Pictures\\";
+    }
+
+    /**
+     * Creates an unsaved ImageData object in the test class's folder
+     * @param name file name of the image, which may include sub folders
+     * @param tags names of the image's tags
+     * @return an ImageData object
+     */
+    protected ImageData createImage(String name, String... tags) {
+        return createImage(name, null, tags);
+    }
+
+    /**
+     * Creates an unsaved ImageData object with metadata in the test class's folder
+     * @param name file name of the image, which may include sub folders
+     * @param metadata the image's metadata, or null
+     * @param tags names of the image's tags
+     * @return an ImageData object
+     */
+    protected ImageData createImage(String name, Metadata metadata, String... tags) {
+        ImageData image = new ImageData();
+        image.setPath(getFolder() + name);
+        image.setMetadata(metadata);
+
+        for (String tag : tags) {
+            image.addTag(api.getTag(tag));
+        }
+
+        return image;
+    }
+
+    /**
+     * Saves untagged images without metadata for a user
+     * @param user the User that owns the images
+     * @param prefix start of the file names
+     * @param count number of images
+     * @return the saved ImageData objects, in the order they were created
+     */
+    protected List<ImageData> saveImages(User user, String prefix, int count) {
+        List<ImageData> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            images.add(createImage(prefix + i + ".jpg"));
+        }
+
+        return api.saveImages(user, images);
+    }
+
+    /**
+     * Counts rows with native SQL, which also sees rows that the mapped queries hide
+     * @param sql a COUNT query
+     * @return the count
+     */
+    protected long countRows(String sql) {
+        return api.inTransaction(work ->
+                ((Number) work.getEntityManager().createNativeQuery(sql).getSingleResult()).longValue());
+    }
+}
@@ -0,0 +1,78 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.User;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SoftDeleteTest class tests that removed images are hidden from queries and facets at once, that removing a folder
+ * only matches that folder, and that the purge deletes the rows of removed images together with their tag links.
+ *
+ * @author Karl Labrador
+ */
+class SoftDeleteTest extends SeparateDatabaseTest {
+    private User user;
+
+    /**
+     * Sets up a user
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("SoftDeleteUser", "SoftDeleteUUID");
+    }
+
+    /**
+     * Tests that removing a folder hides its images, but not images in a folder with a similar name,
+     * and that the purge deletes the rows and their tag links.
+     * Should fail if a removed image is still returned, a kept image is removed, or rows are left after the purge.
+     */
+    @Test
+    void testRemoveFolderHidesAndPurgesImages() {
+        api.purgeDeletedImages(100); // Images removed by other tests
+        long imageRows = countRows("SELECT COUNT(*) FROM images");
+        long tagRows = countRows("SELECT COUNT(*) FROM image_tags");
+
+        List<ImageData> images = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            images.add(createImage("trip\\" + i + ".jpg", "soft"));
+        }
+        ImageData kept = createImage("trip_2\\kept.jpg", "soft");
+        images.add(kept);
+        api.saveImages(user, images);
+
+        assertEquals(3, api.removeImagesUnder(user, getFolder() + "trip\\"));
+
+        List<ImageData> visible = api.getImages(user, 0, 100);
+        assertEquals(1, visible.size());
+        assertEquals(kept.getPath(), visible.get(0).getPath());
+        assertEquals(Map.of("soft", 1L), api.getFacets(user).getTags());
+        assertEquals(imageRows + 4, countRows("SELECT COUNT(*) FROM images"));
+
+        assertEquals(3, api.purgeDeletedImages(100));
+        assertEquals(0, api.purgeDeletedImages(100));
+        assertEquals(imageRows + 1, countRows("SELECT COUNT(*) FROM images"));
+        assertEquals(tagRows + 1, countRows("SELECT COUNT(*) FROM image_tags"));
+    }
+
+    /**
+     * Tests that removing loaded images marks them as deleted, so they are no longer found
+     * Should fail if a removed image can still be found by its path
+     */
+    @Test
+    void testRemoveImagesMarksLoadedInstances() {
+        ImageData image = createImage("single.jpg");
+        api.saveImages(user, List.of(image));
+
+        assertEquals(1, api.removeImages(user, List.of(image)));
+
+        assertTrue(image.isDeleted());
+        assertTrue(api.inTransaction(work ->
+                work.getImageDAO().findByPath(user.getUsername(), user.getUuid(), image.getPath())).isEmpty());
+    }
+}
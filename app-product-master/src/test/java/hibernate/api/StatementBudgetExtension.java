@@ -0,0 +1,105 @@
+package hibernate.api;
+
+import hibernate.dao.StatementCounter;
+
+import org.junit.jupiter.api.extension.*;
+import org.junit.jupiter.api.function.ThrowingSupplier;
+import org.opentest4j.AssertionFailedError;
+
+/**
+ * StatementBudgetExtension class - a JUnit extension that fails tests whose operations prepare more SQL statements
+ * than their budget, so N+1 queries and other statement regressions break the build.
+ *
+ * Statements are counted by {@link StatementCounter} on the test thread. A test can limit the whole method with
+ * {@link MaxStatements}, or take a {@link Budget} parameter to limit single operations:
+ * <pre>
+ *     budget.assertAtMost(1, "getUser", () -&gt; api.getUser(username, uuid));
+ * </pre>
+ *
+ * @author Karl Labrador
+ */
+public class StatementBudgetExtension implements BeforeTestExecutionCallback, AfterTestExecutionCallback, ParameterResolver {
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(StatementBudgetExtension.class);
+    private static final String START = "start";
+
+    /**
+     * Remembers the statement count before the test method runs
+     * @param context the test's context
+     */
+    @Override
+    public void beforeTestExecution(ExtensionContext context) {
+        context.getStore(NAMESPACE).put(START, StatementCounter.getCount());
+    }
+
+    /**
+     * Fails the test if it prepared more statements than its {@link MaxStatements} budget
+     * @param context the test's context
+     */
+    @Override
+    public void afterTestExecution(ExtensionContext context) {
+        long statements = StatementCounter.getCount() - context.getStore(NAMESPACE).get(START, Long.class);
+
+        context.getTestMethod()
+                .map(method -> method.getAnnotation(MaxStatements.class))
+                .ifPresent(budget -> {
+                    if (statements > budget.value()) {
+                        throw new AssertionFailedError(context.getDisplayName() + " prepared " + statements
+                                + " SQL statements, its budget is " + budget.value(), budget.value(), statements);
+                    }
+                });
+    }
+
+    /**
+     * Checks if a test parameter is a Budget
+     * @param parameterContext the parameter
+     * @param extensionContext the test's context
+     * @return true if the parameter is a Budget
+     */
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        return parameterContext.getParameter().getType() == Budget.class;
+    }
+
+    /**
+     * Creates a Budget for a test parameter
+     * @param parameterContext the parameter
+     * @param extensionContext the test's context
+     * @return a new Budget
+     */
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        return new Budget();
+    }
+
+    /**
+     * Limits the statements of single operations within a test
+     */
+    public static class Budget {
+        /**
+         * Runs an operation and fails if it prepared more statements than allowed
+         * @param maxStatements the most statements the operation may prepare
+         * @param operation name of the operation, used in the failure message
+         * @param call the operation
+         * @param <R> the type of the result
+         * @return the result of the operation
+         */
+        public <R> R assertAtMost(int maxStatements, String operation, ThrowingSupplier<R> call) {
+            long start = StatementCounter.getCount();
+            R result;
+
+            try {
+                result = call.get();
+            } catch (Throwable ex) {
+                throw new AssertionFailedError(operation + " threw " + ex, ex);
+            }
+
+            long statements = StatementCounter.getCount() - start;
+            if (statements > maxStatements) {
+                throw new AssertionFailedError(operation + " prepared " + statements
+                        + " SQL statements, its budget is " + maxStatements, maxStatements, statements);
+            }
+
+            return result;
+        }
+    }
+}
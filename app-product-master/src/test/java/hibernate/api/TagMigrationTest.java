@@ -0,0 +1,80 @@
+package hibernate.api;
+
+import hibernate.model.ImageData;
+import hibernate.model.User;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TagMigrationTest class runs sql/migrate_tags.sql against tags stored the old way, in a tags(imageid, tag) table,
+ * and tests that the images keep their tags and that new tags get IDs above the migrated ones.
+ *
+ * The script is written for MySQL, where tag_sequence is a table. H2 keeps it as a database sequence, so the
+ * script's UPDATE of tag_sequence is run as a restart of the sequence at the value the script would store.
+ *
+ * @author Karl Labrador
+ */
+class TagMigrationTest extends SeparateDatabaseTest {
+    private static final String SEQUENCE_UPDATE = "UPDATE tag_sequence SET next_val = ";
+
+    /**
+     * Tests the migration of three tags on two images, and creating a tag afterwards.
+     * Should fail if a link is lost or duplicated, or a new tag gets the ID of a migrated one.
+     */
+    @Test
+    void testMigrateTags() throws IOException {
+        User user = api.createUser("MigrationUser", "MigrationUUID");
+        List<ImageData> images = saveImages(user, "migrated", 2);
+        int first = images.get(0).getImageID();
+        int second = images.get(1).getImageID();
+
+        api.inTransaction(work -> {
+            work.getEntityManager().createNativeQuery("CREATE TABLE tags (imageid integer, tag varchar(255))").executeUpdate();
+            work.getEntityManager().createNativeQuery("INSERT INTO tags (imageid, tag) VALUES "
+                    + "(" + first + ", 'beach'), (" + first + ", 'summer'), (" + first + ", 'summer'), "
+                    + "(" + second + ", 'summer'), (" + second + ", 'winter'), (" + second + ", NULL)").executeUpdate();
+            return null;
+        });
+
+        runScript("/sql/migrate_tags.sql");
+
+        assertEquals(Map.of("beach", 1L, "summer", 2L, "winter", 1L), api.getTagCounts(user));
+        assertEquals(4, countRows("SELECT COUNT(*) FROM image_tags"));
+
+        long lastMigratedId = countRows("SELECT MAX(tagid) FROM tag");
+        assertTrue(api.getTag("new").getTagID() > lastMigratedId);
+    }
+
+    /**
+     * Runs the statements of a script from the classpath, one transaction each
+     * @param resource the script's resource name
+     */
+    private void runScript(String resource) throws IOException {
+        String script;
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        for (String statement : script.replaceAll("(?m)^--.*$", "").split(";")) {
+            String sql = statement.trim();
+
+            if (sql.startsWith(SEQUENCE_UPDATE)) {
+                String subquery = sql.substring(SEQUENCE_UPDATE.length()).trim();
+                long nextValue = countRows(subquery.substring(1, subquery.length() - 1));
+                sql = "ALTER SEQUENCE tag_sequence RESTART WITH " + nextValue;
+            }
+
+            if (!sql.isEmpty()) {
+                String update = sql;
+                api.inTransaction(work -> work.getEntityManager().createNativeQuery(update).executeUpdate());
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package hibernate.api;
+
+import hibernate.dao.TagDAO;
+import hibernate.model.ImageData;
+import hibernate.model.Tag;
+import hibernate.model.User;
+
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * TagTest class tests the tag and image_tags tables: adding or removing a tag writes the one link row, images are
+ * found, counted and paged through by tag, and a tag that several transactions create at once is stored once.
+ *
+ * @author Karl Labrador
+ */
+class TagTest extends SeparateDatabaseTest {
+    private static final int THREAD_COUNT = 8;
+    private User user;
+
+    /**
+     * Sets up a user
+     */
+    @BeforeAll
+    void setup() {
+        user = api.createUser("TagUser", "TagUUID");
+    }
+
+    /**
+     * Tests that adding a tag to an image with other tags inserts one link row, and that removing a tag deletes one,
+     * instead of rewriting the image's tag list.
+     * Should fail if the tag list is recreated, or the image ends up with the wrong tags.
+     */
+    @Test
+    void testTagChangesWriteOneRow() {
+        ImageData image = api.saveImage(user, createImage("tagged.jpg", "a", "b", "c"));
+        String linkCount = "SELECT COUNT(*) FROM image_tags WHERE imageid = " + image.getImageID();
+        Statistics statistics = api.getStatistics();
+
+        statistics.clear();
+        assertTrue(api.commit(new ChangeSet().addTag(image, "d")));
+        assertEquals(0, statistics.getCollectionRecreateCount());
+        assertEquals(1, statistics.getCollectionUpdateCount());
+        assertEquals(4, countRows(linkCount));
+
+        statistics.clear();
+        assertTrue(api.commit(new ChangeSet().removeTag(image, "a")));
+        assertEquals(0, statistics.getCollectionRecreateCount());
+        assertEquals(1, statistics.getCollectionUpdateCount());
+        assertEquals(3, countRows(linkCount));
+
+        assertEquals(Set.of("b", "c", "d"), new HashSet<>(api.getImage(image.getImageID()).getTagNames()));
+    }
+
+    /**
+     * Tests that images are found by tag, newest first, and only among the user's own images.
+     * Should fail if an image without the tag, or another user's image, is returned.
+     */
+    @Test
+    void testGetImagesByTag() {
+        User otherUser = api.createUser("OtherTagUser", "OtherTagUUID");
+        api.saveImage(otherUser, createImage("other.jpg", "sea"));
+
+        List<ImageData> images = api.saveImages(user, List.of(
+                createImage("sea.jpg", "sea"),
+                createImage("seaandsun.jpg", "sea", "sun"),
+                createImage("sun.jpg", "sun")));
+
+        assertEquals(List.of(images.get(1).getImageID(), images.get(0).getImageID()),
+                api.getImagesByTag(user, "sea").stream().map(ImageData::getImageID).collect(Collectors.toList()));
+        assertTrue(api.getImagesByTag(user, "unused").isEmpty());
+    }
+
+    /**
+     * Tests that the images are counted per tag in name order, leaving out tags the user does not use and images of
+     * other users.
+     * Should fail if a count is wrong, or the tags are not ordered by name.
+     */
+    @Test
+    void testCountByUser() {
+        User countUser = api.createUser("CountUser", "CountUUID");
+        User otherUser = api.createUser("OtherCountUser", "OtherCountUUID");
+        api.getTag("unused");
+
+        api.saveImages(countUser, List.of(
+                createImage("count1.jpg", "night", "city"),
+                createImage("count2.jpg", "night"),
+                createImage("count3.jpg", "autumn"),
+                createImage("count4.jpg")));
+        api.saveImage(otherUser, createImage("othercount.jpg", "night", "forest"));
+
+        Map<String, Long> counts = api.getTagCounts(countUser);
+
+        assertEquals(Map.of("autumn", 1L, "city", 1L, "night", 2L), counts);
+        assertEquals(List.of("autumn", "city", "night"), new ArrayList<>(counts.keySet()));
+        assertTrue(api.getTagCounts(api.createUser("EmptyCountUser", "EmptyCountUUID")).isEmpty());
+    }
+
+    /**
+     * Tests paging through the IDs of the images with a tag, newest first, where each page starts after the last ID
+     * of the previous one, up to an empty page. Images without the tag are skipped.
+     * Should fail if a page overlaps the previous one, is out of order, or holds an image without the tag.
+     */
+    @Test
+    void testImageIdsByTagPages() {
+        User pageUser = api.createUser("TagPageUser", "TagPageUUID");
+        List<Integer> taggedIds = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            taggedIds.add(0, api.saveImage(pageUser, createImage("page" + i + ".jpg", "paged")).getImageID());
+            api.saveImage(pageUser, createImage("unpaged" + i + ".jpg", "other"));
+        }
+
+        List<List<Integer>> pages = new ArrayList<>();
+        int afterImageId = 0;
+        do {
+            List<Integer> page = api.getImageIdsByTag(pageUser, "paged", afterImageId, 2);
+            pages.add(page);
+            afterImageId = page.isEmpty() ? -1 : page.get(page.size() - 1);
+        } while (afterImageId > 0);
+
+        assertEquals(List.of(taggedIds.subList(0, 2), taggedIds.subList(2, 4), taggedIds.subList(4, 5), List.of()), pages);
+        assertEquals(taggedIds, api.getImageIdsByTag(pageUser, "paged", 0, 10));
+        assertTrue(api.getImageIdsByTag(pageUser, "unused", 0, 10).isEmpty());
+    }
+
+    /**
+     * Tests that threads creating the same new tag at once all get the same tag, stored in one row.
+     * Should fail if a thread fails on the unique tag name, or gets a tag of its own.
+     */
+    @Test
+    void testConcurrentTagCreationSharesOneTag() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            List<Future<Tag>> futures = new ArrayList<>();
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return api.getTag("concurrent");
+                }));
+            }
+            start.countDown();
+
+            Set<Integer> tagIds = new HashSet<>();
+            for (Future<Tag> future : futures) {
+                tagIds.add(future.get().getTagID());
+            }
+
+            assertEquals(1, tagIds.size());
+            assertEquals(1, countRows("SELECT COUNT(*) FROM tag WHERE name = 'concurrent'"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that inserting a tag that another transaction has already created reads that tag instead.
+     * Should fail if the duplicate name is not caught, or a second row is stored.
+     */
+    @Test
+    void testInsertOfExistingTagReadsIt() {
+        Tag existing = api.getTag("existing");
+
+        Tag inserted = api.inTransaction(work ->
+                TagDAO.insertOrFind(work.getEntityManager().getEntityManagerFactory(), "existing"));
+
+        assertEquals(existing.getTagID(), inserted.getTagID());
+        assertEquals(1, countRows("SELECT COUNT(*) FROM tag WHERE name = 'existing'"));
+    }
+}
@@ -0,0 +1,163 @@
+package hibernate.sync;
+
+import hibernate.api.DataAPI;
+import hibernate.dao.UnitOfWork;
+import hibernate.model.ChangeLogEntry;
+import hibernate.model.ImageData;
+import hibernate.model.User;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import javax.persistence.EntityManager;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ReplicatorTest class tests that the Replicator pushes local changes to the remote database and pulls the changes
+ * other devices made there. Uses two in-memory H2 databases, one local and one remote.
+ *
+ * @author Karl Labrador
+ */
+class ReplicatorTest {
+    private static final String USERNAME = "ReplicaUser";
+    private static final String UUID = "ReplicaUUID";
+    private static final String REMOTE_URL = "jdbc:h2:mem:replica-remote";
+    private static DataAPI local;
+    private static DataAPI remote;
+    private static DataAPI otherDevice;
+    private static Replicator replicator;
+    private static User localUser;
+
+    /**
+     * Sets up the local and remote databases, a second device writing to the remote database, and a replicator
+     */
+    @BeforeAll
+    public static void setup() {
+        local = new DataAPI("app-product", Map.of(
+                "javax.persistence.jdbc.url", "jdbc:h2:mem:replica-local",
+                ChangeLogIntegrator.ENABLED, "true"));
+
+        Map<String, Object> remoteProperties = new HashMap<>(Replicator.remoteProperties("this-device"));
+        remoteProperties.put("javax.persistence.jdbc.url", REMOTE_URL);
+        remote = new DataAPI("app-product", remoteProperties);
+
+        // The schema was created by the remote factory above, so the second device must not recreate it
+        otherDevice = new DataAPI("app-product", Map.of(
+                "javax.persistence.jdbc.url", REMOTE_URL,
+                "hibernate.hbm2ddl.auto", "none",
+                ChangeLogIntegrator.ENABLED, "true",
+                ChangeLogIntegrator.ORIGIN, "other-device"));
+
+        replicator = new Replicator(local, "remote", () -> remote, USERNAME, UUID, "this-device");
+        localUser = local.createUser(USERNAME, UUID);
+    }
+
+    /**
+     * Tests that an image saved locally is written to the remote database with its tags, and that the local change
+     * log is emptied afterwards.
+     * Should fail if the remote image is missing, has other tags, or local entries are left.
+     */
+    @Test
+    void testPushesLocalImages() {
+        ImageData image = new ImageData();
+        image.setPath("C:\\User\\replica\\Pictures\\local.jpg");
+        image.addTag(local.getTag("beach"));
+        local.saveImages(localUser, List.of(image));
+
+        assertTrue(replicator.runOnce());
+
+        Optional<ImageData> remoteImage = remote.inTransaction(work ->
+                work.getImageDAO().findByPath(USERNAME, UUID, image.getPath()));
+        assertTrue(remoteImage.isPresent());
+        assertEquals(List.of("beach"), remoteImage.get().getTagNames());
+        assertTrue(local.inTransaction(work -> work.getChangeLogDAO().findOldest(10)).isEmpty());
+    }
+
+    /**
+     * Tests that an image another device saved to the remote database is written to the local database,
+     * without being recorded in the local change log, and that the pull listener is told about it.
+     * Should fail if the local image is missing, the pulled image is recorded for pushing, or the listener is not called.
+     */
+    @Test
+    void testPullsRemoteImagesFromOtherDevices() {
+        User remoteUser = findOrCreateRemoteUser();
+
+        ImageData image = new ImageData();
+        image.setPath("C:\\User\\replica\\Pictures\\remote.jpg");
+        otherDevice.saveImage(remoteUser, image);
+
+        AtomicInteger notified = new AtomicInteger();
+        replicator.setPullListener(notified::addAndGet);
+        assertTrue(replicator.runOnce());
+        replicator.setPullListener(pulled -> {});
+        assertTrue(notified.get() > 0);
+
+        assertTrue(local.inTransaction(work ->
+                work.getImageDAO().findByPath(USERNAME, UUID, image.getPath())).isPresent());
+        assertTrue(local.inTransaction(work -> work.getChangeLogDAO().findOldest(10)).isEmpty());
+    }
+
+    /**
+     * Tests two devices writing to the remote database at once, where the writer that was given the lower change log
+     * ID commits after a pull has already read the other writer's entry. The next pull must still copy its image.
+     * Should fail if the late entry is skipped because the pull cursor has moved past its ID.
+     */
+    @Test
+    void testPullsEntriesCommittedOutOfOrder() {
+        User remoteUser = findOrCreateRemoteUser();
+        assertTrue(replicator.runOnce());
+
+        ImageData lateImage = new ImageData();
+        lateImage.setPath("C:\\User\\replica\\Pictures\\late.jpg");
+        ImageData earlyImage = new ImageData();
+        earlyImage.setPath("C:\\User\\replica\\Pictures\\early.jpg");
+
+        try (UnitOfWork lateWriter = otherDevice.openUnitOfWork()) {
+            // Writes the image and its change log entry, which takes the lower ID, as ChangeLogListener does just
+            // before a commit, and then leaves the commit waiting
+            ChangeLogListener.withoutRecording(() -> {
+                EntityManager entityManager = lateWriter.getEntityManager();
+                lateImage.setUser(entityManager.find(User.class, remoteUser.getUserID()));
+                entityManager.persist(lateImage);
+                entityManager.persist(new ChangeLogEntry(USERNAME, UUID, lateImage.getPath(),
+                        ChangeLogEntry.Operation.UPSERT, "other-device"));
+                entityManager.flush();
+
+                return null;
+            });
+
+            otherDevice.saveImage(remoteUser, earlyImage);
+            assertTrue(replicator.runOnce());
+            assertTrue(existsLocally(earlyImage.getPath()));
+            assertFalse(existsLocally(lateImage.getPath()));
+
+            lateWriter.commit();
+        }
+
+        assertTrue(replicator.runOnce());
+        assertTrue(existsLocally(lateImage.getPath()));
+    }
+
+    /**
+     * Finds the replicated user in the remote database, or creates it there as the other device
+     * @return the remote User object
+     */
+    private static User findOrCreateRemoteUser() {
+        User remoteUser = otherDevice.getUser(USERNAME, UUID);
+
+        return remoteUser != null ? remoteUser : otherDevice.createUser(USERNAME, UUID);
+    }
+
+    /**
+     * Checks if an image of the replicated user exists in the local database
+     * @param path the image's path
+     * @return true if the image exists
+     */
+    private static boolean existsLocally(String path) {
+        return local.inTransaction(work -> work.getImageDAO().findByPath(USERNAME, UUID, path)).isPresent();
+    }
+}
@@ -0,0 +1,177 @@
+package metadata;
+
+import hibernate.model.Metadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utility.MetadataCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MetadataCacheTest class that tests that the {@link MetadataCache} remembers metadata across restarts,
+ * and forgets it when a file changes.
+ *
+ * @author Karl Labrador
+ */
+class MetadataCacheTest {
+    private final static Path TEST_IMAGE = Paths.get(System.getProperty("user.dir"), "src", "test", "resources", "TestImages", "MetadataTest.JPG");
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Stops {@link Metadata#generate} from using the cache of a test.
+     */
+    @AfterEach
+    void reset() {
+        Metadata.setCache(null);
+    }
+
+    /**
+     * Creates a Metadata object that could not have been read from the test image
+     * @return a Metadata object
+     */
+    private static Metadata createMetadata() {
+        Metadata metadata = new Metadata();
+        metadata.setWidth(10);
+        metadata.setHeight(20);
+        metadata.setMake("Cached");
+        metadata.setModel(null);
+        metadata.setCaptured(new Date(1_500_000_000_000L));
+
+        return metadata;
+    }
+
+    /**
+     * Tests that generated metadata is written to the cache, and read from it instead of the file after a restart.
+     * Should fail if the file is parsed again, or the cached metadata differs.
+     * @throws IOException if the test image cannot be copied
+     */
+    @Test
+    void testWarmReadSkipsParsing() throws IOException {
+        Path cachePath = directory.resolve("metadata.cache");
+        File image = Files.copy(TEST_IMAGE, directory.resolve("image.jpg")).toFile();
+
+        MetadataCache cache = new MetadataCache(cachePath);
+        Metadata.setCache(cache);
+        assertEquals("iPhone 5", Metadata.generate(image.getAbsolutePath()).getModel());
+        cache.put(image, createMetadata());
+        cache.close();
+
+        Metadata.setCache(new MetadataCache(cachePath));
+        Metadata metadata = Metadata.generate(image.getAbsolutePath());
+
+        assertEquals(10, metadata.getWidth());
+        assertEquals(20, metadata.getHeight());
+        assertEquals("Cached", metadata.getMake());
+        assertNull(metadata.getModel());
+        assertEquals(1_500_000_000_000L, metadata.getCaptured().getTime());
+    }
+
+    /**
+     * Tests that a file that has changed since it was cached is not read from the cache.
+     * Should fail if the cached metadata is returned.
+     * @throws IOException if the test image cannot be copied or touched
+     */
+    @Test
+    void testChangedFileIsMissed() throws IOException {
+        File image = Files.copy(TEST_IMAGE, directory.resolve("image.jpg")).toFile();
+        MetadataCache cache = new MetadataCache(directory.resolve("metadata.cache"));
+        cache.put(image, createMetadata());
+        assertTrue(cache.get(image).isPresent());
+
+        assertTrue(image.setLastModified(image.lastModified() - 60_000));
+
+        assertTrue(cache.get(image).isEmpty());
+        cache.close();
+    }
+
+    /**
+     * Tests that the least recently used entries are dropped beyond the maximum, also after compacting and reopening.
+     * Should fail if more entries than the maximum are kept, or the wrong one is dropped.
+     * @throws IOException if the test files cannot be written
+     */
+    @Test
+    void testMaximumEntries() throws IOException {
+        Path cachePath = directory.resolve("metadata.cache");
+        File first = Files.writeString(directory.resolve("first.jpg"), "1").toFile();
+        File second = Files.writeString(directory.resolve("second.jpg"), "2").toFile();
+        File third = Files.writeString(directory.resolve("third.jpg"), "3").toFile();
+
+        MetadataCache cache = new MetadataCache(cachePath, 2);
+        cache.put(first, createMetadata());
+        cache.put(second, createMetadata());
+        cache.get(first);
+        cache.put(third, createMetadata());
+        cache.compact();
+        cache.close();
+
+        MetadataCache reopened = new MetadataCache(cachePath, 2);
+        assertEquals(2, reopened.size());
+        assertTrue(reopened.get(first).isPresent());
+        assertTrue(reopened.get(second).isEmpty());
+        assertTrue(reopened.get(third).isPresent());
+        reopened.close();
+    }
+
+    /**
+     * Tests that a log cut short, as when the program stops while writing, keeps the entries before the cut.
+     * Should fail if the cache cannot be opened, or loses the complete entries.
+     * @throws IOException if the test files cannot be written
+     */
+    @Test
+    void testDamagedLogKeepsCompleteEntries() throws IOException {
+        Path cachePath = directory.resolve("metadata.cache");
+        File first = Files.writeString(directory.resolve("first.jpg"), "1").toFile();
+        File second = Files.writeString(directory.resolve("second.jpg"), "2").toFile();
+
+        MetadataCache cache = new MetadataCache(cachePath);
+        cache.put(first, createMetadata());
+        cache.put(second, createMetadata());
+        cache.close();
+        byte[] bytes = Files.readAllBytes(cachePath);
+        Files.write(cachePath, Arrays.copyOf(bytes, bytes.length - 5));
+
+        MetadataCache reopened = new MetadataCache(cachePath);
+        assertTrue(reopened.get(first).isPresent());
+        assertTrue(reopened.get(second).isEmpty());
+
+        reopened.put(second, createMetadata());
+        reopened.close();
+        assertEquals(2, new MetadataCache(cachePath).size());
+    }
+
+    /**
+     * Tests that creating a cache does not read its file, and that entries put since the last flush are written by
+     * {@link MetadataCache#flush()} without closing the cache.
+     * Should fail if the file is read when the cache is created, or a flushed entry is not in the file.
+     * @throws IOException if the test files cannot be written
+     */
+    @Test
+    void testLazyLoadAndFlush() throws IOException {
+        Path cachePath = directory.resolve("metadata.cache");
+        File image = Files.writeString(directory.resolve("image.jpg"), "1").toFile();
+
+        MetadataCache lazy = new MetadataCache(cachePath);
+        assertFalse(Files.exists(cachePath));
+
+        MetadataCache writer = new MetadataCache(cachePath);
+        writer.put(image, createMetadata());
+        writer.flush();
+
+        assertTrue(lazy.get(image).isPresent());
+        assertEquals(1, new MetadataCache(cachePath).size());
+
+        writer.close();
+        lazy.close();
+    }
+}
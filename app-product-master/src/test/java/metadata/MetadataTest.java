@@ -3,10 +3,17 @@ package metadata;
 import hibernate.model.Metadata;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -19,6 +26,9 @@ import static org.junit.jupiter.api.Assertions.*;
 class MetadataTest {
     private String filepath;
 
+    @TempDir
+    Path directory;
+
     /**
      * Sets up the test by making ready the test image.
      */
@@ -51,4 +61,71 @@ class MetadataTest {
         assertEquals("iPhone 5", metadata.getModel());
         assertNotNull(metadata.getCaptured());
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that the dimensions of a PNG image are read from its PNG directory.
+     * Should fail if the file type is not recognised from the parsed directories.
+     * @throws IOException if the test image cannot be written
+     */
+    @Test
+    void testRetrievePngDimensions() throws IOException {
+        Path png = directory.resolve("MetadataTest.png");
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "png", png.toFile());
+
+        Metadata metadata = Metadata.generate(png.toString());
+        assertNotNull(metadata);
+
+        assertEquals(30, metadata.getHeight());
+        assertEquals(40, metadata.getWidth());
+        assertEquals("", metadata.getMake());
+        assertNull(metadata.getCaptured());
+    }
+
+    /**
+     * Tests that a file that is not an image, or does not exist, gives no metadata.
+     * Should fail if metadata is returned, or an exception is thrown.
+     * @throws IOException if the test file cannot be written
+     */
+    @Test
+    void testRetrieveFromNonImage() throws IOException {
+        Path text = Files.writeString(directory.resolve("notes.txt"), "not an image");
+
+        assertNull(Metadata.generate(text.toString()));
+        assertNull(Metadata.generate(directory.resolve("missing.jpg").toString()));
+    }
+
+    /**
+     * Tests that the metadata of a JPEG is read from its header alone, by cutting the file off after the header.
+     * Should fail if the data retrieved is not equal to expected data.
+     * @throws IOException if the test image cannot be read or written
+     */
+    @Test
+    void testRetrieveFromHeaderOnly() throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(filepath));
+        Path header = Files.write(directory.resolve("header.jpg"), Arrays.copyOf(bytes, 16 * 1024));
+
+        Metadata metadata = Metadata.generate(header.toString());
+        assertNotNull(metadata);
+
+        assertEquals(2448, metadata.getHeight());
+        assertEquals(3264, metadata.getWidth());
+        assertEquals("Apple", metadata.getMake());
+        assertEquals("iPhone 5", metadata.getModel());
+        assertNotNull(metadata.getCaptured());
+    }
+
+    /**
+     * Tests that an image that is neither JPEG nor PNG is parsed in full after its header has been looked at.
+     * Should fail if no metadata is returned.
+     * @throws IOException if the test image cannot be written
+     */
+    @Test
+    void testRetrieveFromOtherFormat() throws IOException {
+        Path gif = directory.resolve("MetadataTest.gif");
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "gif", gif.toFile());
+
+        Metadata metadata = Metadata.generate(gif.toString());
+        assertNotNull(metadata);
+        assertEquals("", metadata.getMake());
+    }
+}
@@ -0,0 +1,239 @@
+package utility;
+
+import hibernate.model.Metadata;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MetadataExtractorTest class tests that {@link MetadataExtractor} reads the metadata of many files in parallel,
+ * reports its progress, can be cancelled, and quarantines files that pass its limits.
+ *
+ * @author Karl Labrador
+ */
+class MetadataExtractorTest {
+    private final static Path TEST_IMAGE = Paths.get(System.getProperty("user.dir"), "src", "test", "resources", "TestImages", "MetadataTest.JPG");
+    private static MetadataExtractor extractor;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Sets up an extractor with more than one thread
+     */
+    @BeforeAll
+    public static void setup() {
+        extractor = new MetadataExtractor(4);
+    }
+
+    /**
+     * Stops the extractor's threads
+     */
+    @AfterAll
+    public static void tearDown() {
+        extractor.close();
+    }
+
+    /**
+     * Copies the test image a number of times
+     * @param count number of copies
+     * @return the copies
+     * @throws IOException if the test image cannot be copied
+     */
+    private List<File> copies(int count) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(Files.copy(TEST_IMAGE, directory.resolve(i + ".jpg")).toFile());
+        }
+        return files;
+    }
+
+    /**
+     * Tests that every file is read, in the order given, and that progress is reported for each file.
+     * Should fail if a file is missing or out of order, its metadata is wrong, or progress is not reported.
+     * @throws IOException if the test images cannot be copied
+     */
+    @Test
+    void testExtractAll() throws IOException {
+        List<File> files = copies(20);
+        files.add(directory.resolve("missing.jpg").toFile());
+        AtomicInteger reported = new AtomicInteger();
+        AtomicInteger reportedTotal = new AtomicInteger();
+
+        MetadataExtractor.Extraction extraction = extractor.extract(files, (done, total) -> {
+            reportedTotal.set(total);
+            reported.incrementAndGet();
+        });
+        Map<File, Metadata> metadata = extraction.getResult().join();
+
+        assertEquals(files, new ArrayList<>(metadata.keySet()));
+        assertEquals(3264, metadata.get(files.get(0)).getWidth());
+        assertEquals("iPhone 5", metadata.get(files.get(19)).getModel());
+        assertNull(metadata.get(files.get(20)));
+        assertEquals(21, reported.get());
+        assertEquals(21, reportedTotal.get());
+        assertEquals(1.0, extraction.getProgress());
+    }
+
+    /**
+     * Tests that an extraction without files completes at once.
+     * Should fail if it does not complete, or completes with metadata.
+     */
+    @Test
+    void testExtractNothing() {
+        MetadataExtractor.Extraction extraction = extractor.extract(List.of(), (done, total) -> {});
+
+        assertTrue(extraction.getResult().join().isEmpty());
+        assertEquals(1.0, extraction.getProgress());
+    }
+
+    /**
+     * Tests that a cancelled extraction fails, and that the files it had not started on are skipped.
+     * Should fail if the extraction completes, or every file is read anyway.
+     * @throws IOException if the test images cannot be copied
+     */
+    @Test
+    void testCancel() throws IOException {
+        MetadataExtractor single = new MetadataExtractor(1);
+        List<File> files = copies(200);
+
+        MetadataExtractor.Extraction extraction = single.extract(files, (done, total) -> {});
+        assertTrue(extraction.cancel());
+
+        assertThrows(CancellationException.class, () -> extraction.getResult().join());
+        assertTrue(extraction.getResult().isCancelled());
+        assertTrue(extraction.getCompleted() < files.size());
+        single.close();
+    }
+
+    /**
+     * Tests that a file which is read past the limit is left out and quarantined, that later extractions skip it,
+     * and that it is read again once released.
+     * Should fail if the file is in the result while quarantined, is not quarantined, or is not read once released.
+     * @throws IOException if the test image cannot be copied
+     */
+    @Test
+    void testReadLimitQuarantines() throws IOException {
+        MetadataQuarantine quarantine = new MetadataQuarantine();
+        MetadataExtractor limited = new MetadataExtractor(1, Duration.ofSeconds(30), 1024, quarantine);
+        MetadataExtractor unlimited = new MetadataExtractor(quarantine);
+        List<File> files = copies(2);
+
+        MetadataExtractor.Extraction extraction = limited.extract(files, (done, total) -> {});
+        assertTrue(extraction.getResult().join().isEmpty());
+        assertEquals(files, new ArrayList<>(new TreeMap<>(extraction.getFailures()).keySet()));
+        assertTrue(extraction.getFailures().get(files.get(0)).contains("1024 bytes"));
+        assertTrue(quarantine.contains(files.get(0)));
+        assertEquals(2, quarantine.size());
+
+        MetadataExtractor.Extraction skipped = unlimited.extract(files, (done, total) -> {});
+        assertTrue(skipped.getResult().join().isEmpty());
+        assertTrue(skipped.getFailures().get(files.get(1)).startsWith("quarantined earlier"));
+
+        quarantine.release(List.of(files.get(1)));
+        Map<File, Metadata> released = unlimited.extract(files, (done, total) -> {}).getResult().join();
+        assertEquals(List.of(files.get(1)), new ArrayList<>(released.keySet()));
+        assertEquals("iPhone 5", released.get(files.get(1)).getModel());
+
+        limited.close();
+        unlimited.close();
+    }
+
+    /**
+     * Tests that a file whose parser gets stuck without reading is quarantined at its deadline, and that a thread is
+     * started in place of the stuck one, so the files queued behind it are read by an extractor with one thread.
+     * The extra thread is stopped once the parser finishes.
+     * Should fail if the extraction waits for the stuck parser, the file is not quarantined, or the pool keeps
+     * the extra thread.
+     * @throws Exception if the test images cannot be copied, or the extraction does not complete in time
+     */
+    @Test
+    void testStuckParserIsReplaced() throws Exception {
+        MetadataQuarantine quarantine = new MetadataQuarantine();
+        List<File> files = copies(3);
+        File stuck = files.get(0);
+        CountDownLatch release = new CountDownLatch(1);
+
+        MetadataExtractor single = new MetadataExtractor(1, Duration.ofMillis(200), Long.MAX_VALUE, quarantine, (file, guard) -> {
+            if (file.equals(stuck)) {
+                // Spins without reading, ignoring the interrupt, like a parser caught in a loop
+                while (release.getCount() > 0) {
+                    Thread.onSpinWait();
+                }
+            }
+            return Metadata.read(file, guard);
+        });
+
+        try {
+            MetadataExtractor.Extraction extraction = single.extract(files, (done, total) -> {});
+            Map<File, Metadata> metadata = extraction.getResult().get(10, TimeUnit.SECONDS);
+
+            assertEquals(files.subList(1, 3), new ArrayList<>(metadata.keySet()));
+            assertTrue(extraction.getFailures().get(stuck).startsWith("took longer"));
+            assertTrue(quarantine.contains(stuck));
+            assertEquals(2, single.getThreads());
+
+            release.countDown();
+            long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (single.getThreads() > 1 && System.nanoTime() < giveUp) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, single.getThreads());
+        } finally {
+            release.countDown();
+            single.close();
+        }
+    }
+
+    /**
+     * Tests that the default read limit shrinks with the heap and the number of threads, within its bounds.
+     * Should fail if the threads' limits add up to more than a quarter of the heap, unless the lower bound applies.
+     */
+    @Test
+    void testReadLimitScalesWithHeap() {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        long oneThread = MetadataExtractor.defaultReadLimit(1);
+        long fourThreads = MetadataExtractor.defaultReadLimit(4);
+
+        assertTrue(fourThreads <= oneThread);
+        assertTrue(oneThread <= 256L * 1024 * 1024);
+        assertTrue(fourThreads * 4 <= maxMemory / 4 || fourThreads == 1024L * 1024);
+    }
+
+    /**
+     * Tests that quarantined files are kept in the quarantine's file, and forgotten once they change.
+     * Should fail if a file is not quarantined after reopening, or is still quarantined after it has changed.
+     * @throws IOException if the test image cannot be copied
+     */
+    @Test
+    void testQuarantineIsKept() throws IOException {
+        Path path = directory.resolve("metadata.quarantine");
+        List<File> files = copies(2);
+
+        new MetadataQuarantine(path).add(files.get(0), "took too long");
+        new MetadataQuarantine(path).add(files.get(1), "read too much");
+
+        MetadataQuarantine reopened = new MetadataQuarantine(path);
+        assertEquals(2, reopened.size());
+        assertEquals("took too long", reopened.getReason(files.get(0)));
+        assertTrue(reopened.contains(files.get(1)));
+
+        assertTrue(files.get(1).setLastModified(files.get(1).lastModified() - 60_000));
+        assertFalse(reopened.contains(files.get(1)));
+    }
+}